@@ -0,0 +1,184 @@
+import java.util.Arrays;
+
+/**
+ * 分析ダッシュボード用の集計器。
+ * キーは {@link KeyDictionary} の ID、値は long 配列で保持し、ボクシングせずに加算します。
+ * いずれも並列走査用に部分集計の合流（名前で ID を突き合わせる）と、
+ * 編集・削除時の取り消し（{@link AggregationEngine.Retractable#retract}）に対応しています。
+ *
+ * dump / restore は {@link MaterializedAggregates} の永続化用で、
+ * 1 キー 1 行のタブ区切り（先頭列は種別 P / W / S）です。
+ */
+public final class Aggregates {
+
+    private Aggregates() {}
+
+    /** 商品別の販売数・廃棄数・原価・売価（sales.tsv） */
+    public static final class ProductStats implements AggregationEngine.Mergeable, AggregationEngine.Retractable {
+        public final KeyDictionary products = new KeyDictionary();
+        private long[] rows = new long[16], sold = new long[16], waste = new long[16], cost = new long[16], price = new long[16];
+
+        @Override public void accept(TsvReader.Row row) { add(row, 1); }
+        @Override public void retract(TsvReader.Row row) { add(row, -1); }
+
+        private void add(TsvReader.Row row, int sign) {
+            if (row.size() < 9) return;
+            int s = row.getInt(3), w = row.getInt(4), c = row.getInt(7), p = row.getInt(8);
+            int id = row.intern(2, products);
+            ensure(id);
+            rows[id] += sign;
+            sold[id] += sign * s;
+            waste[id] += sign * w;
+            cost[id] += sign * c;
+            price[id] += sign * p;
+        }
+
+        private void ensure(int id) {
+            if (id < sold.length) return;
+            int n = Math.max(id + 1, sold.length * 2);
+            rows = Arrays.copyOf(rows, n);
+            sold = Arrays.copyOf(sold, n);
+            waste = Arrays.copyOf(waste, n);
+            cost = Arrays.copyOf(cost, n);
+            price = Arrays.copyOf(price, n);
+        }
+
+        @Override public AggregationEngine.Mergeable emptyCopy() { return new ProductStats(); }
+
+        @Override public void mergeFrom(AggregationEngine.Mergeable other) {
+            ProductStats o = (ProductStats) other;
+            for (int i = 0; i < o.size(); i++) {
+                int id = products.idOf(o.name(i));
+                ensure(id);
+                rows[id] += o.rows[i];
+                sold[id] += o.sold[i];
+                waste[id] += o.waste[i];
+                cost[id] += o.cost[i];
+                price[id] += o.price[i];
+            }
+        }
+
+        void dump(StringBuilder sb) {
+            for (int id = 0; id < size(); id++) {
+                if (rows[id] == 0) continue;
+                sb.append("P\t").append(name(id)).append('\t').append(rows[id]).append('\t').append(sold[id])
+                  .append('\t').append(waste[id]).append('\t').append(cost[id]).append('\t').append(price[id]).append('\n');
+            }
+        }
+
+        void restore(TsvReader.Row row) {
+            int id = row.intern(1, products);
+            ensure(id);
+            rows[id] = row.getLong(2);
+            sold[id] = row.getLong(3);
+            waste[id] = row.getLong(4);
+            cost[id] = row.getLong(5);
+            price[id] = row.getLong(6);
+        }
+
+        public int size() { return products.size(); }
+        public String name(int id) { return products.name(id); }
+        /** 集計に含まれる行数（編集・削除で 0 になった商品は表示しない） */
+        public long rows(int id) { return rows[id]; }
+        public long sold(int id) { return sold[id]; }
+        public long waste(int id) { return waste[id]; }
+        public long cost(int id) { return cost[id]; }
+        public long price(int id) { return price[id]; }
+    }
+
+    /** 曜日別の販売数（0=月 … 6=日、sales.tsv） */
+    public static final class WeekdayDemand implements AggregationEngine.Mergeable, AggregationEngine.Retractable {
+        private final long[] sold = new long[7];
+
+        @Override public void accept(TsvReader.Row row) { add(row, 1); }
+        @Override public void retract(TsvReader.Row row) { add(row, -1); }
+
+        private void add(TsvReader.Row row, int sign) {
+            if (row.size() < 4) return;
+            int s = row.getInt(3);
+            long epochDay = row.getEpochDay(0);
+            if (epochDay == TsvReader.NO_DATE) return;
+            sold[weekday(epochDay)] += sign * s;
+        }
+
+        @Override public AggregationEngine.Mergeable emptyCopy() { return new WeekdayDemand(); }
+
+        @Override public void mergeFrom(AggregationEngine.Mergeable other) {
+            WeekdayDemand o = (WeekdayDemand) other;
+            for (int d = 0; d < 7; d++) sold[d] += o.sold[d];
+        }
+
+        void dump(StringBuilder sb) {
+            for (int d = 0; d < 7; d++) sb.append("W\t").append(d).append('\t').append(sold[d]).append('\n');
+        }
+
+        void restore(TsvReader.Row row) {
+            sold[row.getInt(1)] = row.getLong(2);
+        }
+
+        public long sold(int weekday) { return sold[weekday]; }
+
+        /** エポック日 → 0=月 … 6=日（1970-01-01 は木曜日） */
+        public static int weekday(long epochDay) {
+            return (int) Math.floorMod(epochDay + 3, 7L);
+        }
+    }
+
+    /** 店舗別の在庫合計と記録件数（inventory.tsv） */
+    public static final class StoreStock implements AggregationEngine.Mergeable, AggregationEngine.Retractable {
+        public final KeyDictionary stores = new KeyDictionary();
+        private long[] stock = new long[16];
+        private int[] rows = new int[16];
+
+        @Override public void accept(TsvReader.Row row) { add(row, 1); }
+        @Override public void retract(TsvReader.Row row) { add(row, -1); }
+
+        private void add(TsvReader.Row row, int sign) {
+            if (row.size() < 5) return;
+            int s = row.getInt(4);
+            int id = row.intern(1, stores);
+            ensure(id);
+            stock[id] += sign * s;
+            rows[id] += sign;
+        }
+
+        private void ensure(int id) {
+            if (id < stock.length) return;
+            int n = Math.max(id + 1, stock.length * 2);
+            stock = Arrays.copyOf(stock, n);
+            rows = Arrays.copyOf(rows, n);
+        }
+
+        @Override public AggregationEngine.Mergeable emptyCopy() { return new StoreStock(); }
+
+        @Override public void mergeFrom(AggregationEngine.Mergeable other) {
+            StoreStock o = (StoreStock) other;
+            for (int i = 0; i < o.size(); i++) {
+                int id = stores.idOf(o.name(i));
+                ensure(id);
+                stock[id] += o.stock[i];
+                rows[id] += o.rows[i];
+            }
+        }
+
+        void dump(StringBuilder sb) {
+            for (int id = 0; id < size(); id++) {
+                if (rows[id] == 0) continue;
+                sb.append("S\t").append(name(id)).append('\t').append(rows[id]).append('\t').append(stock[id]).append('\n');
+            }
+        }
+
+        void restore(TsvReader.Row row) {
+            int id = row.intern(1, stores);
+            ensure(id);
+            rows[id] = row.getInt(2);
+            stock[id] = row.getLong(3);
+        }
+
+        public int size() { return stores.size(); }
+        public String name(int id) { return stores.name(id); }
+        public long stock(int id) { return stock[id]; }
+        /** 集計に含まれる行数（記録日数）。削除で 0 になった店舗は表示しない */
+        public int rows(int id) { return rows[id]; }
+    }
+}
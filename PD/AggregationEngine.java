@@ -0,0 +1,243 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * 1 回の走査で複数の集計を同時に行うエンジン。
+ * データソースを 1 度だけ読み、登録されたすべての {@link Aggregator} へ同じ行を渡します。
+ *
+ * ファイルが大きい場合は行頭で揃えたバイト範囲（月別パーティションなら全セグメントの範囲）に分割し、ForkJoinPool 上で範囲ごとに
+ * 部分集計（{@link Mergeable#emptyCopy}）を作ってから合流させます。結果は逐次走査と同じです。
+ */
+public final class AggregationEngine {
+
+    /** 1 行ずつ受け取って集計するもの */
+    public interface Aggregator {
+        void accept(TsvReader.Row row);
+    }
+
+    /** 行の取り消し（編集・削除の反映）に対応する集計 */
+    public interface Retractable extends Aggregator {
+        void retract(TsvReader.Row row);
+    }
+
+    /** 並列走査に対応する集計。空の部分集計を作り、後から合流できること */
+    public interface Mergeable extends Aggregator {
+        Mergeable emptyCopy();
+        void mergeFrom(Mergeable other);
+    }
+
+    /** これ以上のサイズのファイルは並列に走査する */
+    private static final long PARALLEL_THRESHOLD = 8L * 1024 * 1024;
+    /** 1 範囲の目安サイズ */
+    private static final long CHUNK_SIZE = 4L * 1024 * 1024;
+
+    private AggregationEngine() {}
+
+    /**
+     * 販売実績（ベース＋ジャーナル）を 1 回走査し、読んだ行数を返します。
+     * ベースが大きく、すべての集計が {@link Mergeable} なら並列に走査します。
+     */
+    public static long scanSales(Aggregator... aggregators) throws IOException {
+        if (useParallel(SalesJournal.baseSize(), aggregators)) return scanSalesParallel(toMergeable(aggregators));
+        long[] rows = {0};
+        SalesJournal.forEachRow(row -> {
+            rows[0]++;
+            for (Aggregator a : aggregators) a.accept(row);
+        });
+        return rows[0];
+    }
+
+    /** 販売実績を常に並列で走査します */
+    public static long scanSalesParallel(Mergeable... aggregators) throws IOException {
+        return SalesJournal.withDelta((bases, delta) -> {
+            long rows = 0;
+            // 月別パーティションのときは全セグメントの範囲をまとめて分担する
+            if (!bases.isEmpty()) rows += scanParallel(bases, delta::isLive, aggregators);
+            long[] added = {0};
+            delta.forEachAdded(row -> {
+                added[0]++;
+                for (Aggregator a : aggregators) a.accept(row);
+            });
+            return rows + added[0];
+        });
+    }
+
+    /**
+     * 販売実績のうち記録日が [fromDay, toDay]（エポック日）の行だけを 1 回走査します。日付が読めない行も含みます。
+     * 月別パーティションなら範囲に重なるセグメントだけを読み、読む分が大きければ並列に走査します。
+     */
+    public static long scanSalesRange(long fromDay, long toDay, Mergeable... aggregators) throws IOException {
+        return SalesJournal.withDelta((bases, delta) -> {
+            Set<Path> skip = new HashSet<>();
+            if (SalesPartitions.enabled()) {
+                for (SalesPartitions.Segment seg : SalesPartitions.segments()) {
+                    if (!seg.overlaps(fromDay, toDay)) skip.add(seg.file());
+                }
+            }
+            List<Path> files = new ArrayList<>();
+            long size = 0;
+            for (Path p : bases) {
+                if (skip.contains(p)) continue;
+                files.add(p);
+                size += Files.size(p);
+            }
+            RowFilter filter = row -> !row.isBlank() && inRange(row, fromDay, toDay) && delta.isLive(row);
+            long rows = 0;
+            if (!files.isEmpty() && useParallel(size, aggregators)) {
+                rows = scanParallel(files, filter, aggregators);
+            } else {
+                long[] n = {0};
+                for (Path file : files) {
+                    TsvReader.forEach(file, row -> {
+                        if (!filter.accept(row)) return;
+                        n[0]++;
+                        for (Aggregator a : aggregators) a.accept(row);
+                    });
+                }
+                rows = n[0];
+            }
+            long[] added = {0};
+            delta.forEachAdded(row -> {
+                if (!inRange(row, fromDay, toDay)) return;
+                added[0]++;
+                for (Aggregator a : aggregators) a.accept(row);
+            });
+            return rows + added[0];
+        });
+    }
+
+    /** TSV ファイルを 1 回走査し（空行は除く）、読んだ行数を返します */
+    public static long scan(Path file, Aggregator... aggregators) throws IOException {
+        if (!Files.exists(file)) return 0;
+        if (useParallel(Files.size(file), aggregators)) return scanParallel(Collections.singletonList(file), row -> !row.isBlank(), toMergeable(aggregators));
+        long[] rows = {0};
+        TsvReader.forEach(file, row -> {
+            if (row.isBlank()) return;
+            rows[0]++;
+            for (Aggregator a : aggregators) a.accept(row);
+        });
+        return rows[0];
+    }
+
+    // ===== 並列走査 =====
+
+    private interface RowFilter {
+        boolean accept(TsvReader.Row row);
+    }
+
+    private static boolean inRange(TsvReader.Row row, long fromDay, long toDay) {
+        long day = row.getEpochDay(0);
+        return day == TsvReader.NO_DATE || (day >= fromDay && day <= toDay);
+    }
+
+    private static boolean useParallel(long size, Aggregator[] aggregators) {
+        if (Runtime.getRuntime().availableProcessors() < 2) return false;
+        if (size < PARALLEL_THRESHOLD) return false;
+        for (Aggregator a : aggregators) if (!(a instanceof Mergeable)) return false;
+        return true;
+    }
+
+    private static Mergeable[] toMergeable(Aggregator[] aggregators) {
+        Mergeable[] m = new Mergeable[aggregators.length];
+        for (int i = 0; i < m.length; i++) m[i] = (Mergeable) aggregators[i];
+        return m;
+    }
+
+    /** 各ファイルを範囲に分け、範囲ごとに部分集計して aggregators へ合流させます */
+    private static long scanParallel(List<Path> files, RowFilter filter, Mergeable[] aggregators) throws IOException {
+        int parallelism = ForkJoinPool.commonPool().getParallelism();
+        List<Range> ranges = new ArrayList<>();
+        for (Path file : files) {
+            long size = Files.size(file);
+            int parts = (int) Math.max(1, Math.min(parallelism * 4L, (size + CHUNK_SIZE - 1) / CHUNK_SIZE));
+            long[] bounds = TsvReader.splitLines(file, parts);
+            for (int i = 0; i + 1 < bounds.length; i++) ranges.add(new Range(file, bounds[i], bounds[i + 1]));
+        }
+        if (ranges.isEmpty()) return 0;
+        RangeTask root = new RangeTask(ranges, 0, ranges.size(), filter, aggregators);
+        Partial result;
+        try {
+            result = ForkJoinPool.commonPool().invoke(root);
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        for (int i = 0; i < aggregators.length; i++) aggregators[i].mergeFrom(result.aggregators[i]);
+        return result.rows;
+    }
+
+    private static final class Partial {
+        final Mergeable[] aggregators;
+        long rows;
+
+        Partial(Mergeable[] templates) {
+            aggregators = new Mergeable[templates.length];
+            for (int i = 0; i < templates.length; i++) aggregators[i] = templates[i].emptyCopy();
+        }
+
+        void merge(Partial other) {
+            for (int i = 0; i < aggregators.length; i++) aggregators[i].mergeFrom(other.aggregators[i]);
+            rows += other.rows;
+        }
+    }
+
+    /** 1 ファイルの行頭で揃えたバイト範囲 */
+    private static final class Range {
+        final Path file;
+        final long start, end;
+
+        Range(Path file, long start, long end) {
+            this.file = file;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /** ranges[lo] 〜 ranges[hi - 1] を担当し、1 範囲になるまで二分する */
+    private static final class RangeTask extends RecursiveTask<Partial> {
+        private final List<Range> ranges;
+        private final int lo, hi;
+        private final RowFilter filter;
+        private final Mergeable[] templates;
+
+        RangeTask(List<Range> ranges, int lo, int hi, RowFilter filter, Mergeable[] templates) {
+            this.ranges = ranges;
+            this.lo = lo;
+            this.hi = hi;
+            this.filter = filter;
+            this.templates = templates;
+        }
+
+        @Override protected Partial compute() {
+            if (hi - lo > 1) {
+                int mid = (lo + hi) >>> 1;
+                RangeTask left = new RangeTask(ranges, lo, mid, filter, templates);
+                left.fork();
+                Partial right = new RangeTask(ranges, mid, hi, filter, templates).compute();
+                Partial result = left.join();
+                result.merge(right);
+                return result;
+            }
+            Partial p = new Partial(templates);
+            try {
+                Range r = ranges.get(lo);
+                TsvReader.forEach(r.file, r.start, r.end, row -> {
+                    if (!filter.accept(row)) return;
+                    p.rows++;
+                    for (Aggregator a : p.aggregators) a.accept(row);
+                });
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            return p;
+        }
+    }
+}
@@ -8,12 +8,17 @@ import java.util.List;
 
 /**
  * 分析ダッシュボード
- * 商品別売上×廃棄率、店舗別在庫回転日数、曜日別需要パターンなどを可視化
+ * 商品別売上×廃棄率、店舗別在庫回転日数、曜日別需要パターン、カテゴリ別粗利率などを可視化
  */
 public class AnalyticsDashboard extends JFrame {
 
     private final JFrame parentDashboard;
-    private JLabel productWasteRateLabel, storeInventoryTurnsLabel, weeklyDemandLabel;
+    private JLabel productWasteRateLabel, storeInventoryTurnsLabel, weeklyDemandLabel, forecastLabel, recentStoreLabel,
+            categoryLabel;
+    /** 需要予測の表示件数 */
+    private static final int FORECAST_TOP = 10;
+    /** 店舗別実績の対象日数（昨日まで） */
+    private static final int RECENT_DAYS = 28;
 
     public AnalyticsDashboard(JFrame dashboard) {
         this.parentDashboard = dashboard;
@@ -27,6 +32,11 @@ public class AnalyticsDashboard extends JFrame {
         getContentPane().add(buildHeader(), BorderLayout.NORTH);
         getContentPane().add(buildAnalyticsArea(), BorderLayout.CENTER);
 
+        // 元ファイルが外部で変わったら集計を取り直す（合わない部分だけ再走査される）
+        DataWatcher.subscribe(this, this::loadAnalytics,
+                AppFiles.SALES_TSV, AppFiles.SALES_JOURNAL, AppFiles.SALES_INDEX, AppFiles.INVENTORY_TSV,
+                AppFiles.PRODUCTS_TSV);
+
         setVisible(true);
     }
 
@@ -89,6 +99,27 @@ public class AnalyticsDashboard extends JFrame {
         weeklyDemandLabel.setFont(new Font("Yu Gothic UI", Font.PLAIN, 14));
         JPanel weeklySection = createCardSection(weeklyDemandLabel);
         container.add(weeklySection);
+        container.add(Box.createVerticalStrut(16));
+
+        // === セクション4: 需要予測 ===
+        container.add(createSectionTitle("📈 翌日の需要予測（店舗×商品）"));
+        forecastLabel = new JLabel("データを読み込み中...");
+        forecastLabel.setFont(new Font("Yu Gothic UI", Font.PLAIN, 14));
+        container.add(createCardSection(forecastLabel));
+        container.add(Box.createVerticalStrut(16));
+
+        // === セクション5: 直近4週の店舗別実績（集計キューブから） ===
+        container.add(createSectionTitle("🗓 直近4週の店舗別実績"));
+        recentStoreLabel = new JLabel("データを読み込み中...");
+        recentStoreLabel.setFont(new Font("Yu Gothic UI", Font.PLAIN, 14));
+        container.add(createCardSection(recentStoreLabel));
+        container.add(Box.createVerticalStrut(16));
+
+        // === セクション6: カテゴリ別粗利率（販売実績×商品一覧） ===
+        container.add(createSectionTitle("🏷 カテゴリ別粗利率"));
+        categoryLabel = new JLabel("データを読み込み中...");
+        categoryLabel.setFont(new Font("Yu Gothic UI", Font.PLAIN, 14));
+        container.add(createCardSection(categoryLabel));
 
         container.add(Box.createVerticalGlue());
 
@@ -127,9 +158,61 @@ public class AnalyticsDashboard extends JFrame {
         new javax.swing.SwingWorker<Map<String, String>, Void>() {
             @Override protected Map<String, String> doInBackground() {
                 Map<String, String> result = new HashMap<>();
-                result.put("product", analyzeProductData());
-                result.put("store", analyzeStoreData());
-                result.put("weekly", analyzeWeeklyData());
+                // 保存時に差分更新された集計を取り出す（元ファイルと合わない部分だけ再走査される）
+                // （使うのは商品別と曜日別だけ。ほかの欄は読めなくても表示する）
+                MaterializedAggregates.Snapshot snap = null;
+                String snapError = null;
+                try {
+                    snap = MaterializedAggregates.snapshot();
+                } catch (Exception ex) {
+                    AppLogger.error("Analytics load error", ex);
+                    snapError = "データ読み込みエラー: " + ex.getMessage();
+                }
+                if (!SalesJournal.exists()) {
+                    result.put("product", "販売データがまだ記録されていません。");
+                    result.put("weekly", "販売データがまだ記録されていません。");
+                    result.put("forecast", "販売データがまだ記録されていません。");
+                    result.put("recent", "販売データがまだ記録されていません。");
+                    result.put("category", "販売データがまだ記録されていません。");
+                } else {
+                    result.put("product", snap != null ? formatProductData(snap.products) : snapError);
+                    result.put("weekly", snap != null ? formatWeeklyData(snap.weekly) : snapError);
+                    // 前回の状態から新しい日の分だけ当て直す
+                    try {
+                        result.put("forecast", formatForecast(DemandForecaster.update()));
+                    } catch (Exception ex) {
+                        AppLogger.error("Forecast error", ex);
+                        result.put("forecast", "予測エラー: " + ex.getMessage());
+                    }
+                    // 日×店舗×商品の集計キューブを切り出す（元の行は読まない）
+                    try {
+                        long today = LocalDate.now().toEpochDay();
+                        result.put("recent", formatRecentStores(
+                            SalesCube.slice(today - RECENT_DAYS, today - 1, null, null, SalesCube.By.STORE)));
+                    } catch (Exception ex) {
+                        AppLogger.error("Sales cube error", ex);
+                        result.put("recent", "データ読み込みエラー: " + ex.getMessage());
+                    }
+                    // 販売実績と商品一覧を結合する
+                    try {
+                        result.put("category", formatCategories(JoinReports.marginByCategory()));
+                    } catch (Exception ex) {
+                        AppLogger.error("Category margin error", ex);
+                        result.put("category", "データ読み込みエラー: " + ex.getMessage());
+                    }
+                }
+
+                if (!Files.exists(AppFiles.INVENTORY_TSV)) {
+                    result.put("store", "在庫データがまだ記録されていません。");
+                } else {
+                    // 在庫と販売実績を店舗×商品で結合する
+                    try {
+                        result.put("store", formatTurnover(JoinReports.byStore(JoinReports.turnover())));
+                    } catch (Exception ex) {
+                        AppLogger.error("Turnover error", ex);
+                        result.put("store", "データ読み込みエラー: " + ex.getMessage());
+                    }
+                }
                 return result;
             }
             @Override protected void done() {
@@ -138,6 +221,9 @@ public class AnalyticsDashboard extends JFrame {
                     productWasteRateLabel.setText(result.get("product"));
                     storeInventoryTurnsLabel.setText(result.get("store"));
                     weeklyDemandLabel.setText(result.get("weekly"));
+                    forecastLabel.setText(result.get("forecast"));
+                    recentStoreLabel.setText(result.get("recent"));
+                    categoryLabel.setText(result.get("category"));
                 } catch (Exception ex) {
                     AppLogger.error("Analytics load error", ex);
                 }
@@ -145,139 +231,88 @@ public class AnalyticsDashboard extends JFrame {
         }.execute();
     }
 
-    private String analyzeProductData() {
-        Path salesFile = Paths.get("sales.tsv");
-        if (!Files.exists(salesFile)) {
-            return "販売データがまだ記録されていません。";
-        }
-
-        StringBuilder result = new StringBuilder();
-        Map<String, Integer> productWaste = new HashMap<>();
-        Map<String, Integer> productSold = new HashMap<>();
-        Map<String, Integer> productCost = new HashMap<>();
-        Map<String, Integer> productPrice = new HashMap<>();
-
-        try {
-            java.util.List<String> lines = Files.readAllLines(salesFile, AppFiles.CHARSET);
-            for (String line : lines) {
-                if (line.trim().isEmpty()) continue;
-                String[] cols = line.split("\t", -1);
-                if (cols.length < 9) continue;
-
-                String product = cols[2];
-                int sold = Integer.parseInt(cols[3]);
-                int waste = Integer.parseInt(cols[4]);
-                int costPrice = Integer.parseInt(cols[7]);
-                int sellPrice = Integer.parseInt(cols[8]);
-
-                productWaste.merge(product, waste, Integer::sum);
-                productSold.merge(product, sold, Integer::sum);
-                productCost.merge(product, costPrice, Integer::sum);
-                productPrice.merge(product, sellPrice, Integer::sum);
-            }
-
-            result.append("<html>");
-            for (String product : productWaste.keySet()) {
-                int waste = productWaste.get(product);
-                int sold = productSold.getOrDefault(product, 0);
-                int total = sold + waste;
-                double wasteRate = total > 0 ? (waste * 100.0 / total) : 0;
-                int cost = productCost.getOrDefault(product, 0);
-                int price = productPrice.getOrDefault(product, 0);
-                double margin = (price - cost) > 0 ? ((price - cost) * 100.0 / price) : 0;
-
-                result.append(String.format("• %s: 廃棄率 %.1f%% | 粗利率 %.1f%% | 販売%d個 廃棄%d個<br>",
-                    product, wasteRate, margin, sold, waste));
-            }
-            result.append("</html>");
-        } catch (Exception ex) {
-            result.append("データ読み込みエラー: ").append(ex.getMessage());
+    private String formatProductData(Aggregates.ProductStats stats) {
+        StringBuilder result = new StringBuilder("<html>");
+        for (int id = 0; id < stats.size(); id++) {
+            if (stats.rows(id) == 0) continue;   // 編集・削除ですべての行がなくなった商品
+            long waste = stats.waste(id);
+            long sold = stats.sold(id);
+            long total = sold + waste;
+            double wasteRate = total > 0 ? (waste * 100.0 / total) : 0;
+            long cost = stats.cost(id);
+            long price = stats.price(id);
+            double margin = (price - cost) > 0 ? ((price - cost) * 100.0 / price) : 0;
+
+            result.append(String.format("• %s: 廃棄率 %.1f%% | 粗利率 %.1f%% | 販売%d個 廃棄%d個<br>",
+                stats.name(id), wasteRate, margin, sold, waste));
         }
-
-        return result.toString().isEmpty() ? "データなし" : result.toString();
+        result.append("</html>");
+        return result.toString();
     }
 
-    private String analyzeStoreData() {
-        Path inventoryFile = Paths.get("inventory.tsv");
-        if (!Files.exists(inventoryFile)) {
-            return "在庫データがまだ記録されていません。";
+    private String formatTurnover(List<JoinReports.Turnover> stores) {
+        StringBuilder result = new StringBuilder("<html>");
+        for (JoinReports.Turnover t : stores) {
+            double days = t.days();
+            result.append(String.format("• %s: 回転日数 %s | 平均在庫 %.1f個 | 1日の販売 %.1f個%s<br>", t.store,
+                Double.isInfinite(days) ? "—" : String.format("%.1f日", days), t.avgStock, t.dailySold,
+                t.unsoldStock > 0 ? String.format(" | 売れていない在庫 %.1f個", t.unsoldStock) : ""));
         }
-
-        StringBuilder result = new StringBuilder();
-        Map<String, Integer> storeInventory = new HashMap<>();
-        Map<String, Integer> storeDays = new HashMap<>();
-
-        try {
-            java.util.List<String> lines = Files.readAllLines(inventoryFile, AppFiles.CHARSET);
-            for (String line : lines) {
-                if (line.trim().isEmpty()) continue;
-                String[] cols = line.split("\t", -1);
-                if (cols.length < 4) continue;
-
-                String store = cols[1];
-                int stock = Integer.parseInt(cols[4]);
-                storeInventory.merge(store, stock, Integer::sum);
-                storeDays.merge(store, 1, Integer::sum);
-            }
-
-            result.append("<html>");
-            for (String store : storeInventory.keySet()) {
-                int inventory = storeInventory.get(store);
-                int days = storeDays.get(store);
-                result.append(String.format("• %s: 在庫 %d個 | 記録日数 %d日<br>", store, inventory, days));
-            }
-            result.append("</html>");
-        } catch (Exception ex) {
-            result.append("データ読み込みエラー: ").append(ex.getMessage());
-        }
-
-        return result.toString().isEmpty() ? "データなし" : result.toString();
+        result.append("</html>");
+        return result.toString();
     }
 
-    private String analyzeWeeklyData() {
-        Path salesFile = Paths.get("sales.tsv");
-        if (!Files.exists(salesFile)) {
-            return "販売データがまだ記録されていません。";
+    private String formatCategories(List<JoinReports.CategoryMargin> categories) {
+        StringBuilder result = new StringBuilder("<html>");
+        for (JoinReports.CategoryMargin c : categories) {
+            result.append(String.format("• %s: 粗利率 %.1f%% | 売上 %,d円 | 販売%d個<br>",
+                c.category, c.marginRate(), c.revenue, c.sold));
         }
+        result.append("</html>");
+        return result.toString();
+    }
 
-        StringBuilder result = new StringBuilder();
-        Map<String, Integer> weeklyDemand = new HashMap<>(7);
+    private String formatWeeklyData(Aggregates.WeekdayDemand weekly) {
         String[] dayNames = {"月", "火", "水", "木", "金", "土", "日"};
-        for (int i = 0; i < 7; i++) {
-            weeklyDemand.put(dayNames[i], 0);
+        StringBuilder result = new StringBuilder("<html>");
+        for (int d = 0; d < 7; d++) {
+            result.append(String.format("• %s曜日: %d個<br>", dayNames[d], weekly.sold(d)));
         }
+        result.append("</html>");
+        return result.toString();
+    }
 
-        try {
-            java.util.List<String> lines = Files.readAllLines(salesFile, AppFiles.CHARSET);
-            for (String line : lines) {
-                if (line.trim().isEmpty()) continue;
-                String[] cols = line.split("\t", -1);
-                if (cols.length < 4) continue;
-
-                String date = cols[0];
-                int sold = Integer.parseInt(cols[3]);
-                try {
-                    LocalDate ld = LocalDate.parse(date);
-                    int dayOfWeek = ld.getDayOfWeek().getValue(); // 1=Mon, 7=Sun
-                    if (dayOfWeek == 7) dayOfWeek = 0; // Sun -> last
-                    String dayName = dayNames[dayOfWeek - 1];
-                    weeklyDemand.merge(dayName, sold, Integer::sum);
-                } catch (Exception ex) {
-                    // skip
-                }
-            }
-
-            result.append("<html>");
-            for (String day : dayNames) {
-                int demand = weeklyDemand.get(day);
-                result.append(String.format("• %s曜日: %d個<br>", day, demand));
-            }
-            result.append("</html>");
-        } catch (Exception ex) {
-            result.append("データ読み込みエラー: ").append(ex.getMessage());
+    private String formatRecentStores(SalesCube.Slice slice) {
+        if (slice.size() == 0) return "直近" + RECENT_DAYS + "日の販売データがありません。";
+        StringBuilder result = new StringBuilder("<html>");
+        for (int i = 0; i < slice.size(); i++) {
+            long sold = slice.sold(i), waste = slice.waste(i);
+            double wasteRate = sold + waste > 0 ? waste * 100.0 / (sold + waste) : 0;
+            long revenue = slice.revenue(i), cost = slice.cost(i);
+            double margin = revenue > 0 ? (revenue - cost) * 100.0 / revenue : 0;
+            result.append(String.format("• %s: 販売%d個 | 廃棄率 %.1f%% | 返品%d個 | 売上 %,d円 | 粗利率 %.1f%%<br>",
+                slice.key(i), sold, wasteRate, slice.returns(i), revenue, margin));
         }
+        result.append("</html>");
+        return result.toString();
+    }
 
-        return result.toString().isEmpty() ? "データなし" : result.toString();
+    private String formatForecast(DemandForecaster.Model model) {
+        if (model.size() == 0) return "予測に使える過去の販売データがありません。";
+        long day = model.through() + 1;
+        Integer[] order = new Integer[model.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Double.compare(model.predict(b, day), model.predict(a, day)));
+        StringBuilder result = new StringBuilder("<html>");
+        result.append(String.format("%s の予測（販売数の多い順）<br>", LocalDate.ofEpochDay(day)));
+        for (int k = 0; k < Math.min(FORECAST_TOP, order.length); k++) {
+            int i = order[k];
+            double err = model.error(i);
+            result.append(String.format("• %s / %s: %.1f個%s<br>", model.store(i), model.item(i), model.predict(i, day),
+                Double.isNaN(err) ? "" : String.format("（誤差 ±%.1f）", err)));
+        }
+        result.append("</html>");
+        return result.toString();
     }
 
     public static void main(String[] args) {
@@ -15,6 +15,24 @@ public final class AppFiles {
     public static final Path STORES_TSV    = Paths.get("stores.tsv");
     public static final Path STORES_DAT    = Paths.get("stores.dat");
     public static final Path WEATHER_TSV   = Paths.get("weather.tsv");
+    public static final Path SALES_TSV     = Paths.get("sales.tsv");
+    public static final Path SALES_JOURNAL = Paths.get("sales.journal");
+    /** 月別パーティションのディレクトリ（あれば有効。{@link SalesPartitions}） */
+    public static final Path SALES_PARTS   = Paths.get("sales.parts");
+    public static final Path SALES_INDEX   = Paths.get("sales.index");
+    /** コンパクションで畳み込んだジャーナルの控え（差分エクスポートを使い始めると作られる） */
+    public static final Path SALES_CHANGELOG = Paths.get("sales.changelog");
+    /** コンパクションの途中経過（置き換えるファイルの一覧。終わると消える） */
+    public static final Path SALES_COMPACT = Paths.get("sales.compact");
+    /** 差分エクスポートの出力先 */
+    public static final Path DELTA_DIR     = Paths.get("delta");
+    public static final Path ANALYTICS_AGG = Paths.get("analytics.agg");
+    /** 日×店舗×商品の集計キューブ（{@link SalesCube}） */
+    public static final Path SALES_CUBE    = Paths.get("sales.cube");
+    /** 発注提案（{@link ReorderPlanner}） */
+    public static final Path REORDER_PROPOSAL = Paths.get("reorder_proposal.tsv");
+    /** 需要予測のモデルの状態（{@link DemandForecaster}） */
+    public static final Path FORECAST_STATE = Paths.get("forecast.state");
 
     private AppFiles(){}
 }
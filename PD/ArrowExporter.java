@@ -0,0 +1,100 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Predicate;
+
+/**
+ * 販売実績・在庫・天気を Arrow の IPC ファイル（.arrow / Feather v2）へ書き出します（画面に依存しない）。
+ * 元の TSV を 1 行ずつ流して {@link ArrowWriter} へ渡すだけなので、メモリは 1 バッチ分です。
+ * 店舗・商品などは辞書化した列、数量・金額は整数、日付は日付型で書くため、Python / R で型変換なしに読めます。
+ */
+public final class ArrowExporter {
+
+    private ArrowExporter() {}
+
+    /** 販売実績（ベース＋ジャーナル）。書いた行数を返します */
+    public static long exportSales(Path target, CsvExporter.Progress progress) throws IOException {
+        return exportSales(target, TsvReader.NO_DATE, 0, null, progress);
+    }
+
+    /** 期間（from / to はエポック日、含む。絞り込まないなら NO_DATE）と filter（null 可）で絞り込みます */
+    public static long exportSales(Path target, long from, long to, Predicate<TsvReader.Row> filter,
+                                   CsvExporter.Progress progress) throws IOException {
+        ArrowWriter w = new ArrowWriter(target,
+                ArrowWriter.Column.date("date", 0),
+                ArrowWriter.Column.dictionary("store", 1, 0),
+                ArrowWriter.Column.dictionary("item", 2, 1),
+                ArrowWriter.Column.int32("sold", 3),
+                ArrowWriter.Column.int32("waste", 4),
+                ArrowWriter.Column.int32("returned", 5),
+                ArrowWriter.Column.dictionary("return_reason", 6, 2),
+                ArrowWriter.Column.int32("cost_price", 7),
+                ArrowWriter.Column.int32("price", 8));
+        Source source = from == TsvReader.NO_DATE
+                ? SalesJournal::forEachRow
+                : h -> SalesJournal.forEachRowInRange(from, to, h);
+        return write(w, progress, CsvExporter.salesSize(), TsvReader.NO_DATE, 0, filter, source);
+    }
+
+    /** 在庫（inventory.tsv） */
+    public static long exportInventory(Path target, CsvExporter.Progress progress) throws IOException {
+        return exportInventory(target, TsvReader.NO_DATE, 0, null, progress);
+    }
+
+    public static long exportInventory(Path target, long from, long to, Predicate<TsvReader.Row> filter,
+                                       CsvExporter.Progress progress) throws IOException {
+        ArrowWriter w = new ArrowWriter(target,
+                ArrowWriter.Column.date("date", 0),
+                ArrowWriter.Column.dictionary("store", 1, 0),
+                ArrowWriter.Column.dictionary("item", 2, 1),
+                ArrowWriter.Column.date("expiry", 3),
+                ArrowWriter.Column.int32("stock", 4),
+                ArrowWriter.Column.int32("reorder_point", 5),
+                ArrowWriter.Column.dictionary("status", 6, 2),
+                ArrowWriter.Column.utf8("notes", 7));
+        return write(w, progress, size(AppFiles.INVENTORY_TSV), from, to, filter, h -> forEach(AppFiles.INVENTORY_TSV, h));
+    }
+
+    /** 天気（weather.tsv）。気温は小数 */
+    public static long exportWeather(Path target, CsvExporter.Progress progress) throws IOException {
+        return exportWeather(target, TsvReader.NO_DATE, 0, progress);
+    }
+
+    public static long exportWeather(Path target, long from, long to, CsvExporter.Progress progress) throws IOException {
+        ArrowWriter w = new ArrowWriter(target,
+                ArrowWriter.Column.date("date", 0),
+                ArrowWriter.Column.dictionary("weather", 1, 0),
+                ArrowWriter.Column.float64("temperature", 2),
+                ArrowWriter.Column.utf8("memo", 3));
+        return write(w, progress, size(AppFiles.WEATHER_TSV), from, to, null, h -> forEach(AppFiles.WEATHER_TSV, h));
+    }
+
+    private interface Source {
+        void forEach(TsvReader.RowHandler handler) throws IOException;
+    }
+
+    private static long write(ArrowWriter w, CsvExporter.Progress progress, long total, long from, long to,
+                              Predicate<TsvReader.Row> filter, Source source) throws IOException {
+        boolean done = false;
+        try {
+            source.forEach(CsvExporter.tracked(total, progress, row -> {
+                if (row.isBlank() || !CsvExporter.inRange(row, from, to)) return;
+                if (filter == null || filter.test(row)) w.add(row);
+            }));
+            w.close();
+            done = true;
+        } finally {
+            if (!done) w.abort();
+        }
+        if (progress != null) progress.update(total, total);
+        return w.rows();
+    }
+
+    private static void forEach(Path file, TsvReader.RowHandler handler) throws IOException {
+        if (Files.exists(file)) TsvReader.forEach(file, handler);
+    }
+
+    private static long size(Path file) throws IOException {
+        return Files.exists(file) ? Files.size(file) : 0;
+    }
+}
@@ -0,0 +1,531 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Apache Arrow の IPC ファイル形式（Feather v2、pyarrow.feather.read_table / pandas.read_feather / arrow::read_feather で読める）を
+ * 外部ライブラリなしで書き出します。
+ *
+ * TSV の行を {@link #add} で 1 行ずつ受け取り、{@link #BATCH_ROWS} 行ごとにレコードバッチとして書くので、
+ * メモリは 1 バッチ分と辞書（店舗名・商品名など）だけです。辞書列の値は全バッチで共通の辞書の番号で書き、
+ * 辞書そのものは最後にまとめて書きます（ファイル形式では辞書の位置はフッターから引かれる）。
+ * 型は 32 ビット整数・日付（日単位）・倍精度小数・文字列・辞書化した文字列で、解釈できない値は null になります。
+ */
+public final class ArrowWriter implements Closeable {
+
+    static final int BATCH_ROWS = 64 * 1024;
+
+    private static final byte[] MAGIC = "ARROW1".getBytes(StandardCharsets.US_ASCII);
+    private static final short METADATA_V5 = 4;
+    // Type 共用体の番号
+    private static final byte TYPE_INT = 2, TYPE_FLOAT = 3, TYPE_UTF8 = 5, TYPE_DATE = 8;
+    // MessageHeader 共用体の番号
+    private static final byte HEADER_SCHEMA = 1, HEADER_DICTIONARY = 2, HEADER_RECORD_BATCH = 3;
+
+    enum Kind { INT32, DATE, FLOAT64, UTF8, DICTIONARY }
+
+    /** 出力する列（TSV の source 列から作る） */
+    public static final class Column {
+        final String name;
+        final Kind kind;
+        final int source;
+        private final long dictionaryId;
+        private final KeyDictionary dictionary;
+
+        private int[] ints;
+        private long[] doubles;
+        private byte[] validity;
+        private int nulls;
+        private int[] offsets;
+        private byte[] data;
+        private int dataLength;
+
+        private Column(String name, Kind kind, int source, long dictionaryId) {
+            this.name = name;
+            this.kind = kind;
+            this.source = source;
+            this.dictionaryId = dictionaryId;
+            this.dictionary = kind == Kind.DICTIONARY ? new KeyDictionary() : null;
+            validity = new byte[BATCH_ROWS / 8];
+            if (kind == Kind.FLOAT64) doubles = new long[BATCH_ROWS];
+            else if (kind == Kind.UTF8) {
+                offsets = new int[BATCH_ROWS + 1];
+                data = new byte[64 * 1024];
+            } else ints = new int[BATCH_ROWS];
+        }
+
+        public static Column int32(String name, int source) { return new Column(name, Kind.INT32, source, -1); }
+        /** yyyy-MM-dd（エポック日で持つ） */
+        public static Column date(String name, int source) { return new Column(name, Kind.DATE, source, -1); }
+        public static Column float64(String name, int source) { return new Column(name, Kind.FLOAT64, source, -1); }
+        public static Column utf8(String name, int source) { return new Column(name, Kind.UTF8, source, -1); }
+        /** 種類の少ない文字列（店舗・商品など）。値は辞書の番号で持つ */
+        public static Column dictionary(String name, int source, long id) { return new Column(name, Kind.DICTIONARY, source, id); }
+
+        private void set(int i, TsvReader.Row row) {
+            boolean valid = source < row.size();
+            if (valid) {
+                switch (kind) {
+                    case INT32:
+                        try {
+                            ints[i] = row.getInt(source);
+                        } catch (NumberFormatException ex) {
+                            valid = false;
+                        }
+                        break;
+                    case DATE:
+                        long day = row.getEpochDay(source);
+                        valid = day != TsvReader.NO_DATE;
+                        if (valid) ints[i] = (int) day;
+                        break;
+                    case FLOAT64:
+                        try {
+                            doubles[i] = Double.doubleToRawLongBits(Double.parseDouble(row.getString(source).trim()));
+                        } catch (NumberFormatException ex) {
+                            valid = false;
+                        }
+                        break;
+                    case UTF8:
+                        int len = row.length(source);
+                        if (dataLength + len > data.length) data = Arrays.copyOf(data, Math.max(data.length * 2, dataLength + len));
+                        row.copyTo(source, data, dataLength);
+                        dataLength += len;
+                        break;
+                    case DICTIONARY:
+                        ints[i] = row.intern(source, dictionary);
+                        break;
+                }
+            }
+            if (kind == Kind.UTF8) offsets[i + 1] = dataLength;
+            if (!valid) {
+                if (kind != Kind.UTF8 && kind != Kind.FLOAT64) ints[i] = 0;
+                if (kind == Kind.FLOAT64) doubles[i] = 0;
+                nulls++;
+                validity[i >> 3] &= ~(1 << (i & 7));
+            } else {
+                validity[i >> 3] |= 1 << (i & 7);
+            }
+        }
+
+        private void reset() {
+            nulls = 0;
+            dataLength = 0;
+        }
+    }
+
+    private final Path target, tmp;
+    private final Column[] columns;
+    private final FileChannel ch;
+    private final List<long[]> batchBlocks = new ArrayList<>();
+    private final List<long[]> dictionaryBlocks = new ArrayList<>();
+    private int rows = 0;
+    private long totalRows = 0;
+    private boolean closed = false;
+
+    /** target へ書き出す（一時ファイルに書き、{@link #close} で置き換える） */
+    public ArrowWriter(Path target, Column... columns) throws IOException {
+        this.target = target;
+        this.tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        this.columns = columns;
+        ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        write(ByteBuffer.wrap(Arrays.copyOf(MAGIC, 8)));
+        Fb fb = new Fb();
+        int schema = schema(fb);
+        writeMessage(fb, HEADER_SCHEMA, schema, new ByteBuffer[0]);
+    }
+
+    /** 1 行追加します */
+    public void add(TsvReader.Row row) throws IOException {
+        for (Column c : columns) c.set(rows, row);
+        if (++rows == BATCH_ROWS) flushBatch();
+    }
+
+    public long rows() { return totalRows + rows; }
+
+    /** 残りのバッチ・辞書・フッターを書いてファイルを確定します */
+    @Override public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        boolean ok = false;
+        try {
+            if (rows > 0) flushBatch();
+            for (Column c : columns) if (c.kind == Kind.DICTIONARY) writeDictionary(c);
+            write(le(8).putInt(-1).putInt(0).flip());   // ストリームの終わり
+            Fb fb = new Fb();
+            int schema = schema(fb);
+            int dictionaries = blocks(fb, dictionaryBlocks);
+            int batches = blocks(fb, batchBlocks);
+            fb.startTable(5);
+            fb.fieldShort(0, METADATA_V5);
+            fb.fieldOffset(1, schema);
+            fb.fieldOffset(2, dictionaries);
+            fb.fieldOffset(3, batches);
+            byte[] footer = fb.finish(fb.endTable());
+            write(ByteBuffer.wrap(footer));
+            write(le(4).putInt(footer.length).flip());
+            write(ByteBuffer.wrap(MAGIC));
+            ch.force(true);
+            ok = true;
+        } finally {
+            ch.close();
+            if (!ok) Files.deleteIfExists(tmp);
+        }
+        AtomicFile.commit(tmp, target);
+    }
+
+    /** 書きかけのファイルを捨てます（中断・失敗時） */
+    public void abort() throws IOException {
+        if (closed) return;
+        closed = true;
+        ch.close();
+        Files.deleteIfExists(tmp);
+    }
+
+    // ===== レコードバッチ・辞書 =====
+
+    private void flushBatch() throws IOException {
+        List<ByteBuffer> buffers = new ArrayList<>();
+        for (Column c : columns) {
+            buffers.add(c.nulls == 0 ? ByteBuffer.allocate(0) : ByteBuffer.wrap(c.validity, 0, (rows + 7) / 8));
+            switch (c.kind) {
+                case FLOAT64: {
+                    ByteBuffer b = le(rows * 8);
+                    for (int i = 0; i < rows; i++) b.putLong(c.doubles[i]);
+                    buffers.add(b.flip());
+                    break;
+                }
+                case UTF8: {
+                    ByteBuffer b = le((rows + 1) * 4);
+                    for (int i = 0; i <= rows; i++) b.putInt(c.offsets[i]);
+                    buffers.add(b.flip());
+                    buffers.add(ByteBuffer.wrap(c.data, 0, c.dataLength));
+                    break;
+                }
+                default: {
+                    ByteBuffer b = le(rows * 4);
+                    for (int i = 0; i < rows; i++) b.putInt(c.ints[i]);
+                    buffers.add(b.flip());
+                }
+            }
+        }
+        Fb fb = new Fb();
+        long[] nodes = new long[columns.length * 2];
+        for (int i = 0; i < columns.length; i++) {
+            nodes[i * 2] = rows;
+            nodes[i * 2 + 1] = columns[i].nulls;
+        }
+        ByteBuffer[] body = buffers.toArray(new ByteBuffer[0]);
+        int batch = recordBatch(fb, rows, nodes, body);
+        batchBlocks.add(writeMessage(fb, HEADER_RECORD_BATCH, batch, body));
+        totalRows += rows;
+        rows = 0;
+        for (Column c : columns) c.reset();
+    }
+
+    private void writeDictionary(Column c) throws IOException {
+        KeyDictionary d = c.dictionary;
+        int n = d.size();
+        ByteBuffer offsets = le((n + 1) * 4);
+        int total = 0;
+        offsets.putInt(0);
+        for (int id = 0; id < n; id++) {
+            total += d.bytes(id).length;
+            offsets.putInt(total);
+        }
+        offsets.flip();
+        ByteBuffer values = ByteBuffer.allocate(total);
+        for (int id = 0; id < n; id++) values.put(d.bytes(id));
+        values.flip();
+        ByteBuffer[] body = {ByteBuffer.allocate(0), offsets, values};
+        Fb fb = new Fb();
+        int data = recordBatch(fb, n, new long[]{n, 0}, body);
+        fb.startTable(3);
+        fb.fieldLong(0, c.dictionaryId);
+        fb.fieldOffset(1, data);
+        fb.fieldByte(2, 0);
+        dictionaryBlocks.add(writeMessage(fb, HEADER_DICTIONARY, fb.endTable(), body));
+    }
+
+    // ===== メタデータ（FlatBuffers） =====
+
+    private int schema(Fb fb) {
+        int[] fields = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) fields[i] = field(fb, columns[i]);
+        int vector = fb.offsetVector(fields);
+        fb.startTable(4);
+        fb.fieldShort(0, 0);   // little endian
+        fb.fieldOffset(1, vector);
+        return fb.endTable();
+    }
+
+    private static int field(Fb fb, Column c) {
+        int name = fb.string(c.name);
+        byte typeId;
+        int type;
+        switch (c.kind) {
+            case INT32:
+                typeId = TYPE_INT;
+                type = intType(fb);
+                break;
+            case DATE:
+                typeId = TYPE_DATE;
+                fb.startTable(1);
+                fb.fieldShort(0, 0);   // DAY
+                type = fb.endTable();
+                break;
+            case FLOAT64:
+                typeId = TYPE_FLOAT;
+                fb.startTable(1);
+                fb.fieldShort(0, 2);   // DOUBLE
+                type = fb.endTable();
+                break;
+            default:
+                // 辞書列の型は辞書の値の型（文字列）
+                typeId = TYPE_UTF8;
+                fb.startTable(0);
+                type = fb.endTable();
+        }
+        int dictionary = 0;
+        if (c.kind == Kind.DICTIONARY) {
+            int indexType = intType(fb);
+            fb.startTable(4);
+            fb.fieldLong(0, c.dictionaryId);
+            fb.fieldOffset(1, indexType);
+            fb.fieldByte(2, 0);
+            dictionary = fb.endTable();
+        }
+        int children = fb.offsetVector(new int[0]);
+        fb.startTable(7);
+        fb.fieldOffset(0, name);
+        fb.fieldByte(1, 1);
+        fb.fieldByte(2, typeId);
+        fb.fieldOffset(3, type);
+        if (dictionary != 0) fb.fieldOffset(4, dictionary);
+        fb.fieldOffset(5, children);
+        return fb.endTable();
+    }
+
+    /** 符号付き 32 ビット整数 */
+    private static int intType(Fb fb) {
+        fb.startTable(2);
+        fb.fieldInt(0, 32);
+        fb.fieldByte(1, 1);
+        return fb.endTable();
+    }
+
+    /** nodes は (長さ, null 数) の組の並び。body の各バッファは 8 バイト境界に詰めて置く */
+    private static int recordBatch(Fb fb, long length, long[] nodes, ByteBuffer[] body) {
+        int n = nodes.length / 2;
+        fb.startVector(16, n, 8);
+        for (int i = n - 1; i >= 0; i--) {
+            fb.putLong(nodes[i * 2 + 1]);
+            fb.putLong(nodes[i * 2]);
+        }
+        int nodeVector = fb.endVector(n);
+        long[] offsets = new long[body.length];
+        long pos = 0;
+        for (int i = 0; i < body.length; i++) {
+            offsets[i] = pos;
+            pos += pad8(body[i].remaining());
+        }
+        fb.startVector(16, body.length, 8);
+        for (int i = body.length - 1; i >= 0; i--) {
+            fb.putLong(body[i].remaining());
+            fb.putLong(offsets[i]);
+        }
+        int bufferVector = fb.endVector(body.length);
+        fb.startTable(5);
+        fb.fieldLong(0, length);
+        fb.fieldOffset(1, nodeVector);
+        fb.fieldOffset(2, bufferVector);
+        return fb.endTable();
+    }
+
+    private static int blocks(Fb fb, List<long[]> blocks) {
+        fb.startVector(24, blocks.size(), 8);
+        for (int i = blocks.size() - 1; i >= 0; i--) {
+            long[] b = blocks.get(i);
+            fb.putLong(b[2]);
+            fb.putInt(0);
+            fb.putInt((int) b[1]);
+            fb.putLong(b[0]);
+        }
+        return fb.endVector(blocks.size());
+    }
+
+    /**
+     * メッセージ（継続マーカー・メタデータ長・メタデータ・本体）を書き、フッター用の
+     * {開始位置, メタデータ長, 本体長} を返します。
+     */
+    private long[] writeMessage(Fb fb, byte headerType, int header, ByteBuffer[] body) throws IOException {
+        long bodyLength = 0;
+        for (ByteBuffer b : body) bodyLength += pad8(b.remaining());
+        fb.startTable(5);
+        fb.fieldShort(0, METADATA_V5);
+        fb.fieldByte(1, headerType);
+        fb.fieldOffset(2, header);
+        fb.fieldLong(3, bodyLength);
+        byte[] meta = fb.finish(fb.endTable());
+        int metaLength = (int) pad8(meta.length);
+        long start = ch.position();
+        write(le(8).putInt(-1).putInt(metaLength).flip());
+        write(ByteBuffer.wrap(Arrays.copyOf(meta, metaLength)));
+        for (ByteBuffer b : body) {
+            int len = b.remaining();
+            write(b);
+            int pad = (int) (pad8(len) - len);
+            if (pad > 0) write(ByteBuffer.allocate(pad));
+        }
+        return new long[]{start, 8 + metaLength, bodyLength};
+    }
+
+    private void write(ByteBuffer b) throws IOException {
+        while (b.hasRemaining()) ch.write(b);
+    }
+
+    private static ByteBuffer le(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static long pad8(long n) {
+        return (n + 7) & ~7L;
+    }
+
+    /**
+     * FlatBuffers の最小限の組み立て（公式の FlatBufferBuilder と同じく後ろから前へ書く）。
+     * 子のテーブル・文字列・ベクタは親の startTable より前に作ること。
+     */
+    private static final class Fb {
+        private byte[] buf = new byte[1024];
+        private int space = buf.length;   // 次に書く位置（これより前が空き）
+        private int minAlign = 1;
+        private int[] vtable;
+        private int objectStart;
+
+        /** 末尾からの位置（参照に使う） */
+        int offset() { return buf.length - space; }
+
+        void startTable(int fields) {
+            vtable = new int[fields];
+            objectStart = offset();
+        }
+
+        void fieldByte(int slot, int v) { prep(1, 0); putByte(v); vtable[slot] = offset(); }
+        void fieldShort(int slot, int v) { prep(2, 0); putShort(v); vtable[slot] = offset(); }
+        void fieldInt(int slot, int v) { prep(4, 0); putInt(v); vtable[slot] = offset(); }
+        void fieldLong(int slot, long v) { prep(8, 0); putLong(v); vtable[slot] = offset(); }
+        void fieldOffset(int slot, int target) { addOffset(target); vtable[slot] = offset(); }
+
+        int endTable() {
+            prep(4, 0);
+            putInt(0);   // vtable への相対位置（後で埋める）
+            int object = offset();
+            int n = vtable.length;
+            while (n > 0 && vtable[n - 1] == 0) n--;
+            for (int i = n - 1; i >= 0; i--) {
+                prep(2, 0);
+                putShort(vtable[i] != 0 ? object - vtable[i] : 0);
+            }
+            prep(2, 0);
+            putShort(object - objectStart);
+            putShort((n + 2) * 2);
+            int at = buf.length - object;
+            int rel = offset() - object;
+            buf[at] = (byte) rel;
+            buf[at + 1] = (byte) (rel >>> 8);
+            buf[at + 2] = (byte) (rel >>> 16);
+            buf[at + 3] = (byte) (rel >>> 24);
+            vtable = null;
+            return object;
+        }
+
+        int string(String s) {
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            prep(4, b.length + 1);
+            putByte(0);
+            space -= b.length;
+            System.arraycopy(b, 0, buf, space, b.length);
+            putInt(b.length);
+            return offset();
+        }
+
+        void startVector(int elemSize, int count, int align) {
+            prep(4, elemSize * count);
+            prep(align, elemSize * count);
+        }
+
+        int endVector(int count) {
+            prep(4, 0);
+            putInt(count);
+            return offset();
+        }
+
+        int offsetVector(int[] targets) {
+            startVector(4, targets.length, 4);
+            for (int i = targets.length - 1; i >= 0; i--) addOffset(targets[i]);
+            return endVector(targets.length);
+        }
+
+        byte[] finish(int root) {
+            prep(minAlign, 4);
+            addOffset(root);
+            return Arrays.copyOfRange(buf, space, buf.length);
+        }
+
+        private void addOffset(int target) {
+            prep(4, 0);
+            putInt(offset() - target + 4);
+        }
+
+        /** この後 additional バイト書いた位置が size の倍数になるよう詰める */
+        private void prep(int size, int additional) {
+            if (size > minAlign) minAlign = size;
+            int pad = -(offset() + additional) & (size - 1);
+            grow(pad + size + additional);
+            for (int i = 0; i < pad; i++) buf[--space] = 0;
+        }
+
+        private void grow(int needed) {
+            while (space < needed) {
+                int old = buf.length;
+                byte[] bigger = new byte[old * 2];
+                System.arraycopy(buf, 0, bigger, old, old);
+                space += old;
+                buf = bigger;
+            }
+        }
+
+        void putByte(int v) {
+            grow(1);
+            buf[--space] = (byte) v;
+        }
+
+        void putShort(int v) {
+            grow(2);
+            space -= 2;
+            buf[space] = (byte) v;
+            buf[space + 1] = (byte) (v >>> 8);
+        }
+
+        void putInt(int v) {
+            grow(4);
+            space -= 4;
+            for (int k = 0; k < 4; k++) buf[space + k] = (byte) (v >>> (8 * k));
+        }
+
+        void putLong(long v) {
+            grow(8);
+            space -= 8;
+            for (int k = 0; k < 8; k++) buf[space + k] = (byte) (v >>> (8 * k));
+        }
+    }
+}
@@ -0,0 +1,74 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+/**
+ * クラッシュしても中途半端なファイルを残さない書き込み。
+ * 一時ファイルに書いて fsync してから rename で置き換え、ディレクトリも（できる環境では）fsync します。
+ * 追記は末尾に書いて fsync します（途中で切れた末尾は読み込み側で読み飛ばす）。
+ */
+public final class AtomicFile {
+
+    private AtomicFile() {}
+
+    /** target を data で置き換えます */
+    public static void write(Path target, byte[] data) throws IOException {
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(ch, data);
+            ch.force(true);
+        }
+        move(tmp, target);
+    }
+
+    /** 書き終えた一時ファイル tmp を fsync してから target と置き換えます（ストリームで書いた場合用） */
+    public static void commit(Path tmp, Path target) throws IOException {
+        sync(tmp);
+        move(tmp, target);
+    }
+
+    /** 書き終えたファイルの内容をディスクに確定させます */
+    public static void sync(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ch.force(true);
+        }
+    }
+
+    private static void move(Path tmp, Path target) throws IOException {
+        try {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        syncDirectory(target);
+    }
+
+    /** target の末尾に data を追加します（なければ作る） */
+    public static void append(Path target, byte[] data) throws IOException {
+        boolean created = !Files.exists(target);
+        try (FileChannel ch = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            writeFully(ch, data);
+            ch.force(true);
+        }
+        if (created) syncDirectory(target);
+    }
+
+    private static void writeFully(FileChannel ch, byte[] data) throws IOException {
+        ByteBuffer b = ByteBuffer.wrap(data);
+        while (b.hasRemaining()) ch.write(b);
+    }
+
+    /** rename をディスクに確定させる（Windows などディレクトリを開けない環境では何もしない） */
+    private static void syncDirectory(Path target) {
+        Path dir = target.toAbsolutePath().getParent();
+        if (dir == null) return;
+        try (FileChannel ch = FileChannel.open(dir, StandardOpenOption.READ)) {
+            ch.force(true);
+        } catch (IOException | UnsupportedOperationException ex) {
+            // 対応していない環境では rename の確定は OS に任せる
+        }
+    }
+}
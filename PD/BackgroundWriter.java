@@ -0,0 +1,124 @@
+import javax.swing.SwingUtilities;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * ファイル書き込み専用のバックグラウンドスレッド（グループコミット）。
+ * 同じキー（データセット）への書き込みが短時間に続いたら {@link Job#merge} で 1 回分にまとめ、
+ * EDT をブロックせずに書きます。キーごとの書き込み順は投入順のままです。
+ *
+ * 書き込みが終わったら（まとめられた分も含めて）各投入元の {@link Durability} を EDT で呼びます。
+ * 終了時はシャットダウンフックで残りを書き切ります。
+ */
+public final class BackgroundWriter {
+
+    /** 最初の投入からこの時間だけ待って、続く書き込みをまとめる */
+    private static final long COALESCE_MS = 40;
+    /** 終了時に書き切るのを待つ上限 */
+    private static final long SHUTDOWN_WAIT_SEC = 10;
+
+    /** 1 回分の書き込み */
+    public interface Job {
+        void run() throws IOException;
+
+        /** この後に next を書いた結果を 1 回で書ける Job（まとめられなければ null） */
+        default Job merge(Job next) { return null; }
+    }
+
+    /** 書き込みの結果（EDT で呼ばれる。成功なら error は null） */
+    public interface Durability {
+        void done(IOException error);
+    }
+
+    private static final class Pending {
+        Job job;
+        final List<Durability> callbacks = new ArrayList<>();
+
+        Pending(Job job, Durability cb) {
+            this.job = job;
+            if (cb != null) callbacks.add(cb);
+        }
+    }
+
+    private static final ScheduledExecutorService WRITER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "background-writer");
+        t.setDaemon(true);
+        return t;
+    });
+    private static final Object LOCK = new Object();
+    private static Map<String, Deque<Pending>> queued = new LinkedHashMap<>();
+    private static boolean scheduled = false;
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (!flush(SHUTDOWN_WAIT_SEC, TimeUnit.SECONDS)) AppLogger.warn("background writer did not finish before exit");
+        }, "background-writer-shutdown"));
+    }
+
+    private BackgroundWriter() {}
+
+    /** key のデータセットへの書き込みを投入します（cb は null 可） */
+    public static void submit(String key, Job job, Durability cb) {
+        synchronized (LOCK) {
+            Deque<Pending> q = queued.computeIfAbsent(key, k -> new ArrayDeque<>());
+            Pending last = q.peekLast();
+            Job merged = last == null ? null : last.job.merge(job);
+            if (merged != null) {
+                last.job = merged;
+                if (cb != null) last.callbacks.add(cb);
+            } else {
+                q.addLast(new Pending(job, cb));
+            }
+            if (!scheduled) {
+                scheduled = true;
+                WRITER.schedule(BackgroundWriter::drain, COALESCE_MS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /** 投入済みの書き込みをすべて書き終えるまで待ちます（時間内に終われば true） */
+    public static boolean flush(long timeout, TimeUnit unit) {
+        try {
+            WRITER.submit(BackgroundWriter::drain).get(timeout, unit);
+            return true;
+        } catch (TimeoutException ex) {
+            return false;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | RejectedExecutionException ex) {
+            AppLogger.error("background writer flush error", ex);
+            return false;
+        }
+    }
+
+    /** 書き込みスレッドで、その時点までに投入された分を書く */
+    private static void drain() {
+        Map<String, Deque<Pending>> batch;
+        synchronized (LOCK) {
+            batch = queued;
+            queued = new LinkedHashMap<>();
+            scheduled = false;
+        }
+        for (Map.Entry<String, Deque<Pending>> e : batch.entrySet()) {
+            for (Pending p : e.getValue()) {
+                IOException error = null;
+                try {
+                    p.job.run();
+                } catch (IOException ex) {
+                    error = ex;
+                } catch (RuntimeException ex) {
+                    error = new IOException(ex);
+                }
+                if (error != null) AppLogger.error("background write error: " + e.getKey(), error);
+                IOException result = error;
+                if (!p.callbacks.isEmpty()) {
+                    SwingUtilities.invokeLater(() -> {
+                        for (Durability cb : p.callbacks) cb.done(result);
+                    });
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+import java.util.List;
+
+/**
+ * JAN / UPC コード（数字 8〜14 桁を long にしたもの）→ 商品のハッシュ索引。
+ * キーは long 配列のオープンアドレス法で保持し、ボクシングや文字列比較なしに O(1) で引けます。
+ *
+ * 索引は不変で、商品の読み込み・保存時（{@link DataRepository}）に丸ごと作り直して差し替えます。
+ */
+public final class BarcodeIndex {
+
+    private static volatile BarcodeIndex current;
+
+    private final long[] keys;   // 0 は空き（コード 0 は登録しない）
+    private final ProductManagement.Product[] values;
+    private final int size;
+
+    private BarcodeIndex(List<ProductManagement.Product> products) {
+        int cap = 16;
+        while (cap < products.size() * 2) cap <<= 1;
+        keys = new long[cap];
+        values = new ProductManagement.Product[cap];
+        int n = 0;
+        int mask = cap - 1;
+        for (ProductManagement.Product p : products) {
+            long code = parse(p.barcode);
+            if (code <= 0) continue;
+            int i = hash(code) & mask;
+            while (keys[i] != 0 && keys[i] != code) i = (i + 1) & mask;
+            if (keys[i] == code) {
+                AppLogger.warn("duplicate barcode " + p.barcode + ": " + values[i].name + " / " + p.name);
+                continue;   // 先に登録された商品を優先
+            }
+            keys[i] = code;
+            values[i] = p;
+            n++;
+        }
+        size = n;
+    }
+
+    /** 現在の索引（商品が未読み込みならここで読み込む。EDT から呼ぶこと） */
+    public static BarcodeIndex current() {
+        BarcodeIndex ix = current;
+        if (ix != null) return ix;
+        DataRepository.products().loadNow();   // 読み込み時に rebuild される
+        if (current == null) rebuild(DataRepository.products().items());
+        return current;
+    }
+
+    /** 商品一覧から作り直して差し替えます */
+    static void rebuild(List<ProductManagement.Product> products) {
+        current = new BarcodeIndex(products);
+    }
+
+    public int size() { return size; }
+
+    /** コードに対応する商品（なければ null） */
+    public ProductManagement.Product find(long code) {
+        int slot = slot(code);
+        return slot < 0 ? null : values[slot];
+    }
+
+    /** コードの索引内の位置（0 以上 {@link #capacity} 未満。なければ -1）。位置ごとの配列で商品に値を持たせる用 */
+    public int slot(long code) {
+        if (code <= 0) return -1;
+        int mask = keys.length - 1;
+        for (int i = hash(code) & mask; keys[i] != 0; i = (i + 1) & mask) {
+            if (keys[i] == code) return i;
+        }
+        return -1;
+    }
+
+    /** 位置の数 */
+    public int capacity() { return keys.length; }
+
+    /** 位置の商品 */
+    public ProductManagement.Product product(int slot) { return values[slot]; }
+
+    /** スキャンした文字列で引きます（前後の空白は無視） */
+    public ProductManagement.Product find(CharSequence scanned) {
+        return find(parse(scanned));
+    }
+
+    /** 数字 8〜14 桁なら long、それ以外は -1 */
+    public static long parse(CharSequence s) {
+        if (s == null) return -1;
+        int start = 0, end = s.length();
+        while (start < end && s.charAt(start) <= ' ') start++;
+        while (end > start && s.charAt(end - 1) <= ' ') end--;
+        int len = end - start;
+        if (len < 8 || len > 14) return -1;
+        long v = 0;
+        for (int i = start; i < end; i++) {
+            int d = s.charAt(i) - '0';
+            if (d < 0 || d > 9) return -1;
+            v = v * 10 + d;
+        }
+        return v;
+    }
+
+    private static int hash(long code) {
+        long h = code * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,501 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * 画面なしで集計・エクスポートを実行するコマンドライン（夜間バッチ用）。データフォルダをカレントにして実行します。
+ *
+ * <pre>
+ *   java BatchCli analytics [--from 日付] [--to 日付] [--stores 店舗,...] [--report all|products|weekday|stores] [--out ファイル]
+ *   java BatchCli export sales|inventory|weather [--format csv|arrow] [--from 日付] [--to 日付] [--stores 店舗,...] [--out ファイル]
+ *   java BatchCli delta [sales|inventory|weather ...]
+ *   java BatchCli forecast [--days 日数] [--stores 店舗,...] [--mode update|rebuild] [--out ファイル]
+ *   java BatchCli reorder [--window 日数] [--lead 日数] [--review 日数] [--z 係数] [--out ファイル]
+ *   java BatchCli expiry [--days 日数] [--stores 店舗,...] [--out ファイル]
+ *   java BatchCli turnover [--level store|item] [--out ファイル]
+ *   java BatchCli categories [--out ファイル]
+ *   共通: [--timings ファイル]（所要時間をタブ区切りで追記。省略時は標準エラー）
+ * </pre>
+ *
+ * Swing / AWT のクラスは使わず（java.awt.headless も立てる）、画面版と同じ集計・エクスポートの処理を呼びます。
+ * 所要時間は 1 ステップ 1 行の「timing \t 開始日時 \t コマンド \t ステップ \t ミリ秒 \t 行数 \t バイト数」です。
+ * 終了コードは 0=成功、1=失敗、2=引数の誤り。
+ */
+public final class BatchCli {
+
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+    private static final String[] DAY_NAMES = {"月", "火", "水", "木", "金", "土", "日"};
+
+    /** 引数の誤り（使い方を表示して終了コード 2） */
+    private static final class UsageException extends Exception {
+        UsageException(String message) { super(message); }
+    }
+
+    private final String command;
+    private final Map<String, String> options = new LinkedHashMap<>();
+    private final List<String> operands = new ArrayList<>();
+    private final String started = LocalDateTime.now().format(TIMESTAMP);
+    private final List<String> timings = new ArrayList<>();
+
+    private BatchCli(String[] args) throws UsageException {
+        if (args.length == 0) throw new UsageException("command required");
+        command = args[0];
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].startsWith("--")) {
+                if (i + 1 == args.length) throw new UsageException("missing value for " + args[i]);
+                options.put(args[i].substring(2), args[++i]);
+            } else {
+                operands.add(args[i]);
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        long t0 = System.nanoTime();
+        int status;
+        BatchCli cli = null;
+        try {
+            cli = new BatchCli(args);
+            cli.startup();
+            cli.run();
+            status = 0;
+        } catch (UsageException ex) {
+            System.err.println("error: " + ex.getMessage());
+            usage(System.err);
+            status = 2;
+        } catch (Exception ex) {
+            AppLogger.error("batch " + (args.length > 0 ? args[0] : "") + " failed", ex);
+            status = 1;
+        }
+        if (cli != null) {
+            cli.timing("total", t0, -1, -1);
+            try {
+                cli.flushTimings();
+            } catch (IOException ex) {
+                AppLogger.error("timings write error", ex);
+            }
+        }
+        System.exit(status);
+    }
+
+    private void run() throws Exception {
+        switch (command) {
+            case "analytics": analytics(); break;
+            case "export": export(); break;
+            case "delta": delta(); break;
+            case "forecast": forecast(); break;
+            case "reorder": reorder(); break;
+            case "expiry": expiry(); break;
+            case "turnover": turnover(); break;
+            case "categories": categories(); break;
+            default: throw new UsageException("unknown command: " + command);
+        }
+    }
+
+    // ===== analytics =====
+
+    /**
+     * 商品別・曜日別（販売実績）と店舗別在庫（在庫）。絞り込みがなければ保存済みの実体化集計を、
+     * 期間・店舗の絞り込みがあれば販売実績は集計キューブの切り出しを使う（日付の読めない行は含まない）。
+     */
+    private void analytics() throws Exception {
+        String report = option("report", "all");
+        if (!Arrays.asList("all", "products", "weekday", "stores").contains(report)) throw new UsageException("unknown report: " + report);
+        long from = day("from", TsvReader.NO_DATE), to = day("to", Long.MAX_VALUE);
+        Set<String> stores = stores();
+        if (from == TsvReader.NO_DATE && to != Long.MAX_VALUE) from = Long.MIN_VALUE + 1;
+
+        StringBuilder productLines = new StringBuilder();
+        long[] weekdaySold = new long[7];
+        Aggregates.StoreStock stock;
+        long t = System.nanoTime();
+        if (from == TsvReader.NO_DATE && stores == null) {
+            MaterializedAggregates.Snapshot snap = MaterializedAggregates.snapshot();
+            Aggregates.ProductStats products = snap.products;
+            for (int id = 0; id < products.size(); id++) {
+                if (products.rows(id) == 0) continue;
+                productLine(productLines, products.name(id), products.rows(id), products.sold(id), products.waste(id),
+                        products.cost(id), products.price(id));
+            }
+            for (int d = 0; d < 7; d++) weekdaySold[d] = snap.weekly.sold(d);
+            stock = snap.stores;
+            timing("aggregate", t, -1, CsvExporter.salesSize());
+        } else {
+            long lo = from == TsvReader.NO_DATE ? Long.MIN_VALUE : from;
+            SalesCube.Slice products = SalesCube.slice(lo, to, stores, null, SalesCube.By.PRODUCT);
+            long rows = 0;
+            for (int i = 0; i < products.size(); i++) {
+                rows += products.rows(i);
+                productLine(productLines, products.key(i), products.rows(i), products.sold(i), products.waste(i),
+                        products.cost(i), products.revenue(i));
+            }
+            SalesCube.Slice weekly = SalesCube.slice(lo, to, stores, null, SalesCube.By.WEEKDAY);
+            for (int i = 0; i < weekly.size(); i++) weekdaySold[Arrays.asList(DAY_NAMES).indexOf(weekly.key(i))] = weekly.sold(i);
+            timing("aggregate.sales", t, rows, -1);
+            t = System.nanoTime();
+            stock = new Aggregates.StoreStock();
+            rows = AggregationEngine.scan(AppFiles.INVENTORY_TSV, new Filtered(filter(from, to, stores), stock));
+            timing("aggregate.inventory", t, rows, size(AppFiles.INVENTORY_TSV));
+        }
+
+        t = System.nanoTime();
+        StringBuilder sb = new StringBuilder();
+        if (report.equals("all") || report.equals("products")) {
+            sb.append("product\trows\tsold\twaste\twaste_rate\tcost\tprice\tmargin_rate\n").append(productLines);
+        }
+        if (report.equals("all") || report.equals("weekday")) {
+            if (sb.length() > 0) sb.append('\n');
+            sb.append("weekday\tsold\n");
+            for (int d = 0; d < 7; d++) sb.append(DAY_NAMES[d]).append('\t').append(weekdaySold[d]).append('\n');
+        }
+        if (report.equals("all") || report.equals("stores")) {
+            if (sb.length() > 0) sb.append('\n');
+            sb.append("store\trows\tstock\n");
+            for (int id = 0; id < stock.size(); id++) {
+                if (stock.rows(id) == 0) continue;
+                sb.append(stock.name(id)).append('\t').append(stock.rows(id)).append('\t').append(stock.stock(id)).append('\n');
+            }
+        }
+        byte[] out = sb.toString().getBytes(AppFiles.CHARSET);
+        emit(out);
+        timing("write", t, -1, out.length);
+    }
+
+    private static void productLine(StringBuilder sb, String name, long rows, long sold, long waste, long cost, long price) {
+        double wasteRate = sold + waste > 0 ? waste * 100.0 / (sold + waste) : 0;
+        double margin = price - cost > 0 ? (price - cost) * 100.0 / price : 0;
+        sb.append(String.format("%s\t%d\t%d\t%d\t%.1f\t%d\t%d\t%.1f%n", name, rows, sold, waste, wasteRate, cost, price, margin));
+    }
+
+    /** 条件を満たす行だけを渡す集計（並列走査の部分集計にも同じ条件を付ける） */
+    private static final class Filtered implements AggregationEngine.Mergeable {
+        private final Predicate<TsvReader.Row> filter;
+        private final AggregationEngine.Mergeable inner;
+
+        Filtered(Predicate<TsvReader.Row> filter, AggregationEngine.Mergeable inner) {
+            this.filter = filter;
+            this.inner = inner;
+        }
+
+        @Override public void accept(TsvReader.Row row) {
+            if (filter.test(row)) inner.accept(row);
+        }
+
+        @Override public AggregationEngine.Mergeable emptyCopy() { return new Filtered(filter, inner.emptyCopy()); }
+
+        @Override public void mergeFrom(AggregationEngine.Mergeable other) { inner.mergeFrom(((Filtered) other).inner); }
+    }
+
+    // ===== export =====
+
+    private void export() throws Exception {
+        if (operands.size() != 1) throw new UsageException("export needs one table: sales, inventory or weather");
+        String table = operands.get(0);
+        String format = option("format", "csv");
+        if (!format.equals("csv") && !format.equals("arrow")) throw new UsageException("unknown format: " + format);
+        long from = day("from", TsvReader.NO_DATE), to = day("to", Long.MAX_VALUE);
+        if (from == TsvReader.NO_DATE && to != Long.MAX_VALUE) from = Long.MIN_VALUE + 1;
+        Set<String> stores = stores();
+        Predicate<TsvReader.Row> filter = stores == null ? null : row -> row.size() > 1 && stores.contains(row.getString(1));
+        Path target = Paths.get(option("out", table + "_export." + format));
+        boolean csv = format.equals("csv");
+
+        long t = System.nanoTime();
+        long rows, read;
+        switch (table) {
+            case "sales":
+                if (!SalesJournal.exists()) throw new IOException("source not found: " + AppFiles.SALES_TSV);
+                read = CsvExporter.salesSize();
+                rows = csv ? CsvExporter.exportSales(target, from, to, filter, null)
+                           : ArrowExporter.exportSales(target, from, to, filter, null);
+                break;
+            case "inventory":
+                read = requireSize(AppFiles.INVENTORY_TSV);
+                rows = csv ? CsvExporter.exportFile(AppFiles.INVENTORY_TSV, target, from, to, filter, null)
+                           : ArrowExporter.exportInventory(target, from, to, filter, null);
+                break;
+            case "weather":
+                if (stores != null) throw new UsageException("weather has no store column");
+                read = requireSize(AppFiles.WEATHER_TSV);
+                rows = csv ? CsvExporter.exportFile(AppFiles.WEATHER_TSV, target, from, to, null)
+                           : ArrowExporter.exportWeather(target, from, to, null);
+                break;
+            default:
+                throw new UsageException("unknown table: " + table);
+        }
+        timing("export." + table + "." + format, t, rows, read);
+        System.out.println(target + "\t" + rows);
+    }
+
+    // ===== delta =====
+
+    private void delta() throws Exception {
+        List<DeltaExporter.Table> tables = new ArrayList<>();
+        for (String name : operands) {
+            DeltaExporter.Table found = null;
+            for (DeltaExporter.Table table : DeltaExporter.Table.values()) if (table.name.equals(name)) found = table;
+            if (found == null) throw new UsageException("unknown table: " + name);
+            tables.add(found);
+        }
+        if (tables.isEmpty()) tables.addAll(Arrays.asList(DeltaExporter.Table.values()));
+        for (DeltaExporter.Table table : tables) {
+            long t = System.nanoTime();
+            DeltaExporter.Result r = DeltaExporter.export(table);
+            timing("delta." + table.name, t, r.adds + r.deletes, -1);
+            System.out.println(table.name + "\t" + r.number + "\t" + r.mode + "\t" + r.adds + "\t" + r.deletes
+                    + "\t" + (r.file == null ? "-" : r.file));
+        }
+    }
+
+    // ===== forecast =====
+
+    /** 需要予測を当て直し（既定は前回からの差分）、学習した最後の日の翌日から days 日分を書きます */
+    private void forecast() throws Exception {
+        String mode = option("mode", "update");
+        if (!mode.equals("update") && !mode.equals("rebuild")) throw new UsageException("unknown mode: " + mode);
+        int days = intOption("days", 7);
+        Set<String> stores = stores();
+
+        long t = System.nanoTime();
+        DemandForecaster.Model model = mode.equals("rebuild") ? DemandForecaster.rebuild() : DemandForecaster.update();
+        timing("forecast." + mode, t, model.size(), CsvExporter.salesSize());
+
+        t = System.nanoTime();
+        StringBuilder sb = new StringBuilder("store\titem\tdate\tforecast\trmse\n");
+        long rows = 0;
+        for (int i = 0; i < model.size(); i++) {
+            if (stores != null && !stores.contains(model.store(i))) continue;
+            double err = model.error(i);
+            for (int d = 1; d <= days; d++) {
+                long day = model.through() + d;
+                sb.append(String.format("%s\t%s\t%s\t%.2f\t%s%n", model.store(i), model.item(i), LocalDate.ofEpochDay(day),
+                        model.predict(i, day), Double.isNaN(err) ? "" : String.format("%.2f", err)));
+                rows++;
+            }
+        }
+        byte[] out = sb.toString().getBytes(AppFiles.CHARSET);
+        emit(out);
+        timing("write", t, rows, out.length);
+    }
+
+    // ===== reorder =====
+
+    /** 全店舗×全商品の発注提案を reorder_proposal.tsv（--out）へ書き、発注ありの件数と合計数を表示します */
+    private void reorder() throws Exception {
+        ReorderPlanner.Options o = new ReorderPlanner.Options();
+        o.windowDays = intOption("window", o.windowDays);
+        o.leadDays = intOption("lead", o.leadDays);
+        o.reviewDays = intOption("review", o.reviewDays);
+        try {
+            o.serviceZ = Double.parseDouble(option("z", String.valueOf(o.serviceZ)));
+        } catch (NumberFormatException ex) {
+            throw new UsageException("bad --z: " + options.get("z"));
+        }
+        if (o.windowDays <= 0 || o.leadDays < 0 || o.reviewDays < 0) throw new UsageException("days must be positive");
+
+        long t = System.nanoTime();
+        List<ReorderPlanner.Line> lines = ReorderPlanner.plan(o);
+        timing("reorder.plan", t, lines.size(), -1);
+        t = System.nanoTime();
+        Path target = Paths.get(option("out", AppFiles.REORDER_PROPOSAL.toString()));
+        ReorderPlanner.write(lines, target);
+        timing("write", t, lines.size(), Files.size(target));
+        long orders = 0, units = 0;
+        for (ReorderPlanner.Line l : lines) {
+            if (l.orderQty == 0) continue;
+            orders++;
+            units += l.orderQty;
+        }
+        System.out.println(target + "\t" + lines.size() + "\t" + orders + "\t" + units);
+    }
+
+    // ===== expiry =====
+
+    /** 今日から days 日後までに期限が来る在庫ロットと売れ残り見込み（予測は前回からの差分で当て直す） */
+    private void expiry() throws Exception {
+        int days = intOption("days", 3);
+        if (days < 0) throw new UsageException("days must be positive");
+        Set<String> stores = stores();
+
+        long t = System.nanoTime();
+        DemandForecaster.Model forecast = SalesJournal.exists() ? DemandForecaster.update() : null;
+        timing("forecast.update", t, forecast == null ? 0 : forecast.size(), -1);
+
+        t = System.nanoTime();
+        long today = LocalDate.now().toEpochDay();
+        List<ExpiryIndex.Lot> lots = new ArrayList<>();
+        if (stores == null) lots.addAll(ExpiryIndex.expiring(today, days, null, forecast));
+        else for (String store : stores) lots.addAll(ExpiryIndex.expiring(today, days, store, forecast));
+        timing("expiry.scan", t, lots.size(), size(AppFiles.INVENTORY_TSV));
+
+        t = System.nanoTime();
+        StringBuilder sb = new StringBuilder("store\titem\texpiry\tdays_left\tstock\tsell_through\tat_risk\tscore\n");
+        for (ExpiryIndex.Lot l : lots) {
+            sb.append(l.store).append('\t').append(l.item).append('\t').append(LocalDate.ofEpochDay(l.expiry)).append('\t')
+              .append(l.daysLeft).append('\t').append(l.stock).append('\t').append(String.format("%.2f", l.sellThrough)).append('\t')
+              .append(l.atRisk).append('\t').append(String.format("%.2f", l.score)).append('\n');
+        }
+        byte[] out = sb.toString().getBytes(AppFiles.CHARSET);
+        emit(out);
+        timing("write", t, lots.size(), out.length);
+    }
+
+    // ===== turnover / categories =====
+
+    /** 在庫と販売実績を結合した在庫回転日数（店舗ごと、または店舗×商品ごと。売れていなければ inf） */
+    private void turnover() throws Exception {
+        String level = option("level", "store");
+        if (!level.equals("store") && !level.equals("item")) throw new UsageException("unknown level: " + level);
+        long t = System.nanoTime();
+        List<JoinReports.Turnover> lines = JoinReports.turnover();
+        if (level.equals("store")) lines = JoinReports.byStore(lines);
+        timing("join", t, lines.size(), size(AppFiles.INVENTORY_TSV) + CsvExporter.salesSize());
+
+        t = System.nanoTime();
+        StringBuilder sb = new StringBuilder(level.equals("store") ? "store" : "store\titem")
+                .append("\tavg_stock\tdaily_sold\tturnover_days\tunsold_stock\n");
+        for (JoinReports.Turnover l : lines) {
+            sb.append(l.store).append('\t');
+            if (l.item != null) sb.append(l.item).append('\t');
+            double days = l.days();
+            sb.append(String.format("%.2f\t%.2f\t%s\t%.2f%n", l.avgStock, l.dailySold,
+                    Double.isInfinite(days) ? "inf" : String.format("%.1f", days), l.unsoldStock));
+        }
+        byte[] out = sb.toString().getBytes(AppFiles.CHARSET);
+        emit(out);
+        timing("write", t, lines.size(), out.length);
+    }
+
+    /** 販売実績と商品一覧を結合したカテゴリ別の粗利率 */
+    private void categories() throws Exception {
+        long t = System.nanoTime();
+        List<JoinReports.CategoryMargin> lines = JoinReports.marginByCategory();
+        timing("join", t, lines.size(), size(AppFiles.PRODUCTS_TSV) + CsvExporter.salesSize());
+
+        t = System.nanoTime();
+        StringBuilder sb = new StringBuilder("category\tsold\trevenue\tcost\tmargin_rate\n");
+        for (JoinReports.CategoryMargin l : lines) {
+            sb.append(String.format("%s\t%d\t%d\t%d\t%.1f%n", l.category, l.sold, l.revenue, l.cost, l.marginRate()));
+        }
+        byte[] out = sb.toString().getBytes(AppFiles.CHARSET);
+        emit(out);
+        timing("write", t, lines.size(), out.length);
+    }
+
+    /** 結果を --out のファイル（省略時は標準出力）へ */
+    private void emit(byte[] out) throws IOException {
+        String target = options.get("out");
+        if (target == null) {
+            System.out.write(out);
+            System.out.flush();
+        } else {
+            AtomicFile.write(Paths.get(target), out);
+        }
+    }
+
+    // ===== 引数 =====
+
+    private String option(String name, String def) {
+        return options.getOrDefault(name, def);
+    }
+
+    private int intOption(String name, int def) throws UsageException {
+        String v = options.get(name);
+        if (v == null) return def;
+        try {
+            return Integer.parseInt(v);
+        } catch (NumberFormatException ex) {
+            throw new UsageException("bad number for --" + name + ": " + v);
+        }
+    }
+
+    /** yyyy-MM-dd をエポック日に（省略時は def） */
+    private long day(String name, long def) throws UsageException {
+        String v = options.get(name);
+        if (v == null) return def;
+        try {
+            return LocalDate.parse(v).toEpochDay();
+        } catch (DateTimeParseException ex) {
+            throw new UsageException("bad date for --" + name + ": " + v);
+        }
+    }
+
+    /** --stores のカンマ区切り（省略時は null = すべて） */
+    private Set<String> stores() {
+        String v = options.get("stores");
+        return v == null ? null : new HashSet<>(Arrays.asList(v.split(",")));
+    }
+
+    /** 期間（先頭列の日付）と店舗（2 列目）の条件 */
+    private static Predicate<TsvReader.Row> filter(long from, long to, Set<String> stores) {
+        return row -> {
+            if (row.size() < 2 || !CsvExporter.inRange(row, from, to)) return false;
+            return stores == null || stores.contains(row.getString(1));
+        };
+    }
+
+    private static long size(Path file) throws IOException {
+        return Files.exists(file) ? Files.size(file) : 0;
+    }
+
+    private static long requireSize(Path file) throws IOException {
+        if (!Files.exists(file)) throw new IOException("source not found: " + file);
+        return Files.size(file);
+    }
+
+    // ===== 所要時間 =====
+
+    /** JVM の起動から main までの時間 */
+    private void startup() {
+        ProcessHandle.current().info().startInstant().ifPresent(start ->
+                timings.add(line("startup", Instant.now().toEpochMilli() - start.toEpochMilli(), -1, -1)));
+    }
+
+    private void timing(String step, long startNanos, long rows, long bytes) {
+        timings.add(line(step, (System.nanoTime() - startNanos) / 1_000_000, rows, bytes));
+    }
+
+    private String line(String step, long millis, long rows, long bytes) {
+        return "timing\t" + started + "\t" + command + "\t" + step + "\t" + millis + "\t" + rows + "\t" + bytes;
+    }
+
+    private void flushTimings() throws IOException {
+        String target = options.get("timings");
+        if (target == null) {
+            for (String l : timings) System.err.println(l);
+        } else {
+            StringBuilder sb = new StringBuilder();
+            for (String l : timings) sb.append(l).append('\n');
+            AtomicFile.append(Paths.get(target), sb.toString().getBytes(AppFiles.CHARSET));
+        }
+    }
+
+    private static void usage(PrintStream out) {
+        out.println("usage:");
+        out.println("  java BatchCli analytics [--from yyyy-MM-dd] [--to yyyy-MM-dd] [--stores A,B] [--report all|products|weekday|stores] [--out FILE]");
+        out.println("  java BatchCli export sales|inventory|weather [--format csv|arrow] [--from yyyy-MM-dd] [--to yyyy-MM-dd] [--stores A,B] [--out FILE]");
+        out.println("  java BatchCli delta [sales|inventory|weather ...]");
+        out.println("  java BatchCli forecast [--days N] [--stores A,B] [--mode update|rebuild] [--out FILE]");
+        out.println("  java BatchCli reorder [--window N] [--lead N] [--review N] [--z Z] [--out FILE]");
+        out.println("  java BatchCli expiry [--days N] [--stores A,B] [--out FILE]");
+        out.println("  java BatchCli turnover [--level store|item] [--out FILE]");
+        out.println("  java BatchCli categories [--out FILE]");
+        out.println("  options: --timings FILE (append timing lines; default stderr)");
+    }
+}
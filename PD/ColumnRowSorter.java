@@ -0,0 +1,264 @@
+import javax.swing.RowSorter;
+import javax.swing.SortOrder;
+import javax.swing.SwingWorker;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * {@link ColumnTableModel} 用の RowSorter。
+ * TableRowSorter のように比較のたびにセルの値（日付文字列など）を取り出して比べる代わりに、
+ * 列ごとの int ソートキー（{@link ColumnTableModel#sortKey}）と行番号を 1 つの long に詰めて
+ * long 配列のまま並べ替えます。複数キーは下位のキーから安定に並べ替えを重ねます。
+ *
+ * 行の追加・編集・削除は二分探索で差し込み／取り除くだけで、全体の並べ替えはしません。
+ * 行数が多いときの全体の並べ替え（読み込み直後・キーやフィルタの変更）はバックグラウンドで行い、
+ * 終わるまではフィルタだけ適用した元の順序で表示します。
+ */
+public final class ColumnRowSorter extends RowSorter<ColumnTableModel> {
+
+    /** これ以上の行数なら全体の並べ替えをバックグラウンドで行う */
+    private static final int ASYNC_THRESHOLD = 50_000;
+    /** 保持するソートキーの最大数 */
+    private static final int MAX_SORT_KEYS = 3;
+
+    private final ColumnTableModel model;
+    private List<SortKey> sortKeys = Collections.emptyList();
+    private IntPredicate filter;
+
+    private int[] viewToModel = new int[0];
+    private int[] modelToView = new int[0];   // フィルタで除外された行は -1
+
+    private int generation = 0;               // 変更のたびに増やし、古い非同期結果を捨てる
+    private boolean sortPending = false;      // 非同期の並べ替え待ち（その間の変更は全体の並べ替えで吸収）
+
+    public ColumnRowSorter(ColumnTableModel model) {
+        this.model = model;
+        resort();
+    }
+
+    // ===== キー・フィルタ =====
+
+    @Override public ColumnTableModel getModel() { return model; }
+
+    @Override public List<? extends SortKey> getSortKeys() { return sortKeys; }
+
+    @Override public void setSortKeys(List<? extends SortKey> keys) {
+        List<SortKey> next = keys == null ? Collections.emptyList()
+                : Collections.unmodifiableList(new ArrayList<>(keys));
+        if (next.equals(sortKeys)) return;
+        sortKeys = next;
+        fireSortOrderChanged();
+        resort();
+    }
+
+    /** ヘッダークリック：同じ列なら昇順／降順を切り替え、違う列なら先頭キーにする */
+    @Override public void toggleSortOrder(int column) {
+        List<SortKey> keys = new ArrayList<>(sortKeys);
+        SortOrder order = SortOrder.ASCENDING;
+        for (int i = 0; i < keys.size(); i++) {
+            if (keys.get(i).getColumn() == column) {
+                if (i == 0) order = keys.get(0).getSortOrder() == SortOrder.ASCENDING ? SortOrder.DESCENDING : SortOrder.ASCENDING;
+                keys.remove(i);
+                break;
+            }
+        }
+        keys.add(0, new SortKey(column, order));
+        if (keys.size() > MAX_SORT_KEYS) keys = keys.subList(0, MAX_SORT_KEYS);
+        setSortKeys(keys);
+    }
+
+    /** モデル行番号で判定するフィルタ（null で解除） */
+    public void setRowFilter(IntPredicate filter) {
+        this.filter = filter;
+        resort();
+    }
+
+    // ===== 変換 =====
+
+    @Override public int convertRowIndexToModel(int index) {
+        if (index < 0 || index >= viewToModel.length) throw new IndexOutOfBoundsException("Invalid index " + index);
+        return viewToModel[index];
+    }
+
+    @Override public int convertRowIndexToView(int index) {
+        if (index < 0 || index >= modelToView.length) throw new IndexOutOfBoundsException("Invalid index " + index);
+        return modelToView[index];
+    }
+
+    @Override public int getViewRowCount() { return viewToModel.length; }
+    @Override public int getModelRowCount() { return model.getRowCount(); }
+
+    // ===== モデルの変更 =====
+
+    @Override public void modelStructureChanged() { resort(); }
+    @Override public void allRowsChanged() { resort(); }
+
+    @Override public void rowsInserted(int firstRow, int endRow) {
+        if (sortPending || endRow > firstRow) {
+            // まとめて追加された場合は全体を並べ直す
+            resort();
+            return;
+        }
+        int[] old = viewToModel;
+        int[] next = new int[old.length + 1];
+        int n = 0;
+        for (int m : old) next[n++] = m >= firstRow ? m + 1 : m;
+        if (include(firstRow)) n = insert(next, n, firstRow);
+        commit(Arrays.copyOf(next, n), old);
+    }
+
+    @Override public void rowsDeleted(int firstRow, int endRow) {
+        if (sortPending) {
+            resort();
+            return;
+        }
+        int count = endRow - firstRow + 1;
+        int[] old = viewToModel;
+        int[] next = new int[old.length];
+        int n = 0;
+        for (int m : old) {
+            if (m < firstRow) next[n++] = m;
+            else if (m > endRow) next[n++] = m - count;
+        }
+        // まとめて削除されたときは範囲ごとに通知が来るので、モデルの行数ではなくこの範囲を除いた数で持つ
+        commit(Arrays.copyOf(next, n), old, modelToView.length - count);
+    }
+
+    @Override public void rowsUpdated(int firstRow, int endRow) {
+        if (sortPending || endRow - firstRow > 16) {
+            resort();
+            return;
+        }
+        int[] old = viewToModel;
+        int[] next = new int[old.length + endRow - firstRow + 1];   // フィルタ外から入る行の分
+        int n = 0;
+        for (int m : old) if (m < firstRow || m > endRow) next[n++] = m;
+        for (int r = firstRow; r <= endRow; r++) if (include(r)) n = insert(next, n, r);
+        commit(Arrays.copyOf(next, n), old);
+    }
+
+    @Override public void rowsUpdated(int firstRow, int endRow, int column) {
+        rowsUpdated(firstRow, endRow);
+    }
+
+    // ===== 並べ替え =====
+
+    private boolean include(int modelRow) {
+        return filter == null || filter.test(modelRow);
+    }
+
+    /** order[0, n) の並びを保ったまま modelRow を二分探索で差し込み、新しい長さを返す */
+    private int insert(int[] order, int n, int modelRow) {
+        int lo = 0, hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareRows(order[mid], modelRow) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        System.arraycopy(order, lo, order, lo + 1, n - lo);
+        order[lo] = modelRow;
+        return n + 1;
+    }
+
+    /** 全体の並べ替えと同じ順序（キー順、同順位はモデル行番号順） */
+    private int compareRows(int a, int b) {
+        for (SortKey k : sortKeys) {
+            if (k.getSortOrder() == SortOrder.UNSORTED) continue;
+            int ka = model.sortKey(a, k.getColumn()), kb = model.sortKey(b, k.getColumn());
+            if (ka != kb) {
+                int c = Integer.compare(ka, kb);
+                return k.getSortOrder() == SortOrder.DESCENDING ? -c : c;
+            }
+        }
+        return Integer.compare(a, b);
+    }
+
+    /**
+     * フィルタを適用して全体を並べ直します。
+     * キーの取り出しは EDT で行い（モデルは EDT 専用）、long 配列の並べ替えだけを必要に応じて別スレッドで行います。
+     */
+    private void resort() {
+        int gen = ++generation;
+        int rows = model.getRowCount();
+        int[] order = new int[rows];
+        int n = 0;
+        for (int r = 0; r < rows; r++) if (include(r)) order[n++] = r;
+        int[] filtered = Arrays.copyOf(order, n);
+
+        List<int[]> keys = new ArrayList<>();
+        List<Boolean> descending = new ArrayList<>();
+        for (SortKey k : sortKeys) {
+            if (k.getSortOrder() == SortOrder.UNSORTED) continue;
+            int[] key = new int[rows];
+            for (int r : filtered) key[r] = model.sortKey(r, k.getColumn());
+            keys.add(key);
+            descending.add(k.getSortOrder() == SortOrder.DESCENDING);
+        }
+        if (keys.isEmpty()) {
+            sortPending = false;
+            commit(filtered, viewToModel);
+            return;
+        }
+        if (n < ASYNC_THRESHOLD) {
+            sortPending = false;
+            commit(sortByKeys(filtered, keys, descending, false), viewToModel);
+            return;
+        }
+        // 大きい表：並べ替えが終わるまではフィルタ済みの元の順序を表示しておく
+        sortPending = true;
+        commit(filtered, viewToModel);
+        new SwingWorker<int[], Void>() {
+            @Override protected int[] doInBackground() {
+                return sortByKeys(filtered.clone(), keys, descending, true);
+            }
+            @Override protected void done() {
+                if (gen != generation) return;   // 途中で変更があった（新しい並べ替えが走っている）
+                try {
+                    sortPending = false;
+                    commit(get(), viewToModel);
+                } catch (Exception ex) {
+                    AppLogger.error("row sort error", ex);
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * 下位のキーから順に (キー << 32 | 現在の位置) を並べ替えて、安定な複数キーの並べ替えにします。
+     * 降順は ~key（大小が反転する）で表します。
+     */
+    private static int[] sortByKeys(int[] order, List<int[]> keys, List<Boolean> descending, boolean parallel) {
+        int n = order.length;
+        long[] packed = new long[n];
+        for (int k = keys.size() - 1; k >= 0; k--) {
+            int[] key = keys.get(k);
+            boolean desc = descending.get(k);
+            for (int i = 0; i < n; i++) {
+                int v = key[order[i]];
+                packed[i] = ((long) (desc ? ~v : v) << 32) | i;
+            }
+            if (parallel) Arrays.parallelSort(packed);
+            else Arrays.sort(packed);
+            int[] next = new int[n];
+            for (int i = 0; i < n; i++) next[i] = order[(int) packed[i]];
+            order = next;
+        }
+        return order;
+    }
+
+    private void commit(int[] nextViewToModel, int[] previous) {
+        commit(nextViewToModel, previous, model.getRowCount());
+    }
+
+    private void commit(int[] nextViewToModel, int[] previous, int modelRows) {
+        viewToModel = nextViewToModel;
+        int[] m2v = new int[modelRows];
+        Arrays.fill(m2v, -1);
+        for (int v = 0; v < viewToModel.length; v++) m2v[viewToModel[v]] = v;
+        modelToView = m2v;
+        fireRowSorterChanged(previous);
+    }
+}
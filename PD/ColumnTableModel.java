@@ -0,0 +1,385 @@
+import javax.swing.table.AbstractTableModel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.text.Collator;
+
+/**
+ * 列ごとにプリミティブ配列で値を持つ TableModel。
+ * DefaultTableModel のように 1 セル 1 String（Vector の Vector）で持たず、
+ * 数値列は int 配列、文字列・日付列は {@link KeyDictionary} の ID（int）で保持します。
+ * 日付列は辞書の 1 エントリごとにエポック日を持つため、並べ替えや期間判定で再パースしません。
+ *
+ * ファイルの原文はそのまま復元できます（"05" や空欄など正規の整数表記でない数値セルは原文を辞書に残す）。
+ * 描画用の行スタイル（{@link #computeStyle}）は行ごとにキャッシュし、行が変わったときだけ計算し直します。
+ * EDT からのみ操作すること。大量の読み込みは {@link Loader} をバックグラウンドで作り、{@link #load} で差し替えます。
+ */
+public abstract class ColumnTableModel extends AbstractTableModel {
+
+    /** 列の型 */
+    public enum Kind { TEXT, INT, DATE }
+
+    /** 行スタイル未計算の印 */
+    private static final byte STYLE_UNSET = -1;
+    /** 数値の表示文字列キャッシュ（直接マップ）。数量・価格は値の種類が少ないので描画時の生成をほぼなくせる */
+    private static final int TEXT_CACHE_SIZE = 1024;
+
+    private final String[] names;
+    private final Kind[] kinds;
+    private Columns data;
+    private final int[] cachedInts = new int[TEXT_CACHE_SIZE];
+    private final String[] cachedTexts = new String[TEXT_CACHE_SIZE];
+
+    protected ColumnTableModel(String[] names, Kind[] kinds) {
+        this.names = names;
+        this.kinds = kinds;
+        this.data = new Columns(kinds);
+    }
+
+    // ===== TableModel =====
+
+    @Override public int getRowCount() { return data.size; }
+    @Override public int getColumnCount() { return names.length; }
+    @Override public String getColumnName(int c) { return names[c]; }
+    @Override public Class<?> getColumnClass(int c) { return kinds[c] == Kind.INT ? Integer.class : String.class; }
+    @Override public boolean isCellEditable(int r, int c) { return false; }
+
+    /** 数値列は Integer（正規の整数表記でなければ原文）、それ以外は文字列 */
+    @Override public Object getValueAt(int r, int c) {
+        if (kinds[c] == Kind.INT && !data.isRaw(r, c)) return data.values[c][r];
+        return data.text(r, c);
+    }
+
+    // ===== 型付きアクセス =====
+
+    public Kind getKind(int c) { return kinds[c]; }
+
+    /** ファイルに書かれていたとおりの文字列 */
+    public String getText(int r, int c) {
+        if (kinds[c] != Kind.INT || data.isRaw(r, c)) return data.text(r, c);
+        int v = data.values[c][r];
+        int slot = v & (TEXT_CACHE_SIZE - 1);
+        String s = cachedTexts[slot];
+        if (s == null || cachedInts[slot] != v) {
+            s = Integer.toString(v);
+            cachedInts[slot] = v;
+            cachedTexts[slot] = s;
+        }
+        return s;
+    }
+
+    /** 行スタイル。初回だけ {@link #computeStyle} を呼び、以後は行が変わるまでキャッシュを返す */
+    public final int getStyle(int r) {
+        byte s = data.styles[r];
+        if (s == STYLE_UNSET) {
+            s = (byte) computeStyle(r);
+            data.styles[r] = s;
+        }
+        return s;
+    }
+
+    /** 行スタイルのキャッシュを捨てて描画し直します（スタイルが行の外の情報に依存していて、それが変わったとき） */
+    protected void restyle() {
+        Arrays.fill(data.styles, STYLE_UNSET);
+        if (data.size > 0) fireTableRowsUpdated(0, data.size - 1);
+    }
+
+    /** 行の表示スタイル（0〜127、意味はサブクラスが決める）。既定は 0 */
+    protected int computeStyle(int r) { return 0; }
+
+    /**
+     * 並べ替え用の int キー（{@link ColumnRowSorter} が使う）。
+     * 数値列は値、日付列はエポック日、文字列列は辞書内の文字列順の順位。読めない値は最後（Integer.MAX_VALUE）。
+     */
+    public int sortKey(int r, int c) {
+        switch (kinds[c]) {
+            case INT:
+                return data.isRaw(r, c) ? Integer.MAX_VALUE : data.values[c][r];
+            case DATE: {
+                long d = getEpochDay(r, c);
+                return d == TsvReader.NO_DATE ? Integer.MAX_VALUE : (int) d;
+            }
+            default:
+                return data.ranks(c)[data.values[c][r]];
+        }
+    }
+
+    /** 数値列の値。整数として読めないセルは def */
+    public int getInt(int r, int c, int def) {
+        return data.isRaw(r, c) ? def : data.values[c][r];
+    }
+
+    /** 日付列のエポック日。日付として読めないセルは {@link TsvReader#NO_DATE} */
+    public long getEpochDay(int r, int c) { return data.days[c][data.values[c][r]]; }
+
+    /** 文字列・日付列の辞書 ID（{@link #dictionary} で名前に戻せる） */
+    public int getId(int r, int c) { return data.values[c][r]; }
+
+    /** 列の辞書。削除・編集で使われなくなった値も残るので、件数は上限として扱うこと */
+    public KeyDictionary dictionary(int c) { return data.dicts[c]; }
+
+    /** 1 行分の原文 */
+    public String[] getRow(int r) {
+        String[] row = new String[kinds.length];
+        for (int c = 0; c < row.length; c++) row[c] = data.text(r, c);
+        return row;
+    }
+
+    // ===== 更新（イベントは 1 操作 1 回） =====
+
+    public void addRow(String[] row) {
+        data.add(row);
+        fireTableRowsInserted(data.size - 1, data.size - 1);
+    }
+
+    public void addRows(Collection<String[]> rows) {
+        if (rows.isEmpty()) return;
+        int first = data.size;
+        for (String[] row : rows) data.add(row);
+        fireTableRowsInserted(first, data.size - 1);
+    }
+
+    public void setRow(int r, String[] row) {
+        data.set(r, row);
+        fireTableRowsUpdated(r, r);
+    }
+
+    public void removeRow(int r) {
+        data.remove(new int[]{r});
+        fireTableRowsDeleted(r, r);
+    }
+
+    /**
+     * 複数行をまとめて削除します（1 回の詰め直しで済ませる）。
+     * 通知は連続する範囲ごとに後ろの範囲から出すので、並べ替えは削除分だけを詰め、全体を並べ直しません。
+     */
+    public void removeRows(int[] rows) {
+        if (rows.length == 0) return;
+        int[] sorted = rows.clone();
+        Arrays.sort(sorted);
+        data.remove(sorted);
+        for (int end = sorted.length - 1; end >= 0; ) {
+            int start = end;
+            while (start > 0 && sorted[start - 1] >= sorted[start] - 1) start--;
+            fireTableRowsDeleted(sorted[start], sorted[end]);
+            end = start - 1;
+        }
+    }
+
+    /** バックグラウンドで読み込むためのローダーを作ります */
+    public Loader newLoader() { return new Loader(new Columns(kinds)); }
+
+    /** ローダーの内容で全行を置き換えます（イベントは 1 回） */
+    public void load(Loader loader) {
+        data = loader.columns;
+        fireTableDataChanged();
+    }
+
+    /** 全行を削除します */
+    public void clear() {
+        data = new Columns(kinds);
+        fireTableDataChanged();
+    }
+
+    /**
+     * モデルとは独立に列を組み立てるローダー。EDT 以外で使い、完成後に {@link #load} へ渡します。
+     */
+    public static final class Loader {
+        private final Columns columns;
+
+        private Loader(Columns columns) { this.columns = columns; }
+
+        /** TSV の 1 行を追加します（String を作らずバイト列から辞書へ） */
+        public void add(TsvReader.Row row) { columns.add(row); }
+
+        public void add(String[] row) { columns.add(row); }
+
+        public int size() { return columns.size; }
+    }
+
+    // ===== 列ストレージ =====
+
+    private static final class Columns {
+        final Kind[] kinds;
+        int size;
+        final int[][] values;          // INT は値、TEXT / DATE は辞書 ID
+        final int[][] raw;             // INT で正規の整数表記でないセルの原文 ID+1（0 は数値）。不要な列は null
+        final KeyDictionary[] dicts;   // TEXT / DATE は値の辞書、INT は原文の辞書
+        final long[][] days;           // DATE の辞書 ID → エポック日
+        byte[] styles;                 // 行スタイルのキャッシュ（STYLE_UNSET は未計算）
+        final int[][] ranks;           // TEXT の辞書 ID → 文字列順の順位（辞書が増えたら作り直す）
+
+        Columns(Kind[] kinds) {
+            this.kinds = kinds;
+            int n = kinds.length;
+            values = new int[n][64];
+            raw = new int[n][];
+            dicts = new KeyDictionary[n];
+            days = new long[n][];
+            styles = new byte[64];
+            ranks = new int[n][];
+            for (int c = 0; c < n; c++) {
+                dicts[c] = new KeyDictionary();
+                if (kinds[c] == Kind.DATE) days[c] = new long[16];
+            }
+        }
+
+        /** 辞書の全エントリを文字列順（TableRowSorter と同じ Collator）に並べた順位 */
+        int[] ranks(int c) {
+            KeyDictionary dict = dicts[c];
+            int[] rank = ranks[c];
+            if (rank != null && rank.length == dict.size()) return rank;
+            Integer[] ids = new Integer[dict.size()];
+            for (int i = 0; i < ids.length; i++) ids[i] = i;
+            Collator collator = Collator.getInstance();
+            Arrays.sort(ids, (a, b) -> collator.compare(dict.name(a), dict.name(b)));
+            rank = new int[ids.length];
+            for (int i = 0; i < ids.length; i++) rank[ids[i]] = i;
+            ranks[c] = rank;
+            return rank;
+        }
+
+        boolean isRaw(int r, int c) { return raw[c] != null && raw[c][r] != 0; }
+
+        String text(int r, int c) {
+            if (kinds[c] != Kind.INT) return dicts[c].name(values[c][r]);
+            if (isRaw(r, c)) return dicts[c].name(raw[c][r] - 1);
+            return Integer.toString(values[c][r]);
+        }
+
+        void add(String[] row) {
+            ensure(size + 1);
+            set(size++, row);
+        }
+
+        void add(TsvReader.Row row) {
+            ensure(size + 1);
+            int r = size++;
+            styles[r] = STYLE_UNSET;
+            for (int c = 0; c < kinds.length; c++) {
+                if (c >= row.size()) {
+                    setText(r, c, "");
+                    continue;
+                }
+                int before = dicts[c].size();
+                switch (kinds[c]) {
+                    case INT: {
+                        long v;
+                        try {
+                            v = row.getLong(c);
+                        } catch (NumberFormatException ex) {
+                            v = Long.MIN_VALUE;
+                        }
+                        if (v >= Integer.MIN_VALUE && v <= Integer.MAX_VALUE && row.length(c) == decimalLength(v)) {
+                            setInt(r, c, (int) v);
+                        } else {
+                            setRaw(r, c, row.intern(c, dicts[c]));
+                        }
+                        break;
+                    }
+                    case DATE: {
+                        int id = row.intern(c, dicts[c]);
+                        values[c][r] = id;
+                        if (dicts[c].size() > before) setDay(c, id, row.getEpochDay(c));
+                        break;
+                    }
+                    default:
+                        values[c][r] = row.intern(c, dicts[c]);
+                        break;
+                }
+            }
+        }
+
+        void set(int r, String[] row) {
+            styles[r] = STYLE_UNSET;
+            for (int c = 0; c < kinds.length; c++) {
+                setText(r, c, c < row.length && row[c] != null ? row[c] : "");
+            }
+        }
+
+        private void setText(int r, int c, String s) {
+            int before = dicts[c].size();
+            switch (kinds[c]) {
+                case INT: {
+                    int v = 0;
+                    boolean ok;
+                    try {
+                        v = Integer.parseInt(s);
+                        ok = Integer.toString(v).equals(s);
+                    } catch (NumberFormatException ex) {
+                        ok = false;
+                    }
+                    if (ok) setInt(r, c, v);
+                    else setRaw(r, c, dicts[c].idOf(s));
+                    break;
+                }
+                case DATE: {
+                    int id = dicts[c].idOf(s);
+                    values[c][r] = id;
+                    if (dicts[c].size() > before) {
+                        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+                        setDay(c, id, TsvReader.parseEpochDay(b, 0, b.length));
+                    }
+                    break;
+                }
+                default:
+                    values[c][r] = dicts[c].idOf(s);
+                    break;
+            }
+        }
+
+        private void setInt(int r, int c, int v) {
+            values[c][r] = v;
+            if (raw[c] != null) raw[c][r] = 0;
+        }
+
+        private void setRaw(int r, int c, int id) {
+            if (raw[c] == null) raw[c] = new int[values[c].length];
+            values[c][r] = 0;
+            raw[c][r] = id + 1;
+        }
+
+        private void setDay(int c, int id, long epochDay) {
+            if (id >= days[c].length) days[c] = Arrays.copyOf(days[c], Math.max(id + 1, days[c].length * 2));
+            days[c][id] = epochDay;
+        }
+
+        /** 昇順の行番号をまとめて取り除き、残りを詰めます */
+        void remove(int[] sortedRows) {
+            for (int c = 0; c < kinds.length; c++) {
+                compact(values[c], sortedRows);
+                if (raw[c] != null) compact(raw[c], sortedRows);
+            }
+            compact(styles, sortedRows);
+            size -= sortedRows.length;
+        }
+
+        /** a は int[] / byte[] */
+        private void compact(Object a, int[] sortedRows) {
+            int w = sortedRows[0];
+            for (int i = 0; i < sortedRows.length; i++) {
+                int from = sortedRows[i] + 1;
+                int to = i + 1 < sortedRows.length ? sortedRows[i + 1] : size;
+                System.arraycopy(a, from, a, w, to - from);
+                w += to - from;
+            }
+        }
+
+        private void ensure(int n) {
+            if (n <= values[0].length) return;
+            int cap = Math.max(n, values[0].length * 2);
+            for (int c = 0; c < kinds.length; c++) {
+                values[c] = Arrays.copyOf(values[c], cap);
+                if (raw[c] != null) raw[c] = Arrays.copyOf(raw[c], cap);
+            }
+            styles = Arrays.copyOf(styles, cap);
+        }
+
+        /** 正規の 10 進表記での文字数（符号を含む） */
+        private static int decimalLength(long v) {
+            int n = v < 0 ? 2 : 1;
+            for (long x = Math.abs(v); x >= 10; x /= 10) n++;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CancellationException;
+import java.util.function.Predicate;
+
+/**
+ * TSV → CSV のストリーミング変換（画面に依存しない）。
+ * 1 行ずつ読み、列の境界を 1 回だけ求めて元の UTF-8 のバイト列をそのままバッファ付きチャネルへ書きます。
+ * 行を溜めないので、メモリ使用量は元ファイルの大きさに関係なく一定です。
+ *
+ * 出力は一時ファイルに書いて最後に置き換えるため、失敗・中断したときに途中までのファイルは残りません。
+ */
+public final class CsvExporter {
+
+    private static final int OUT_BUFFER = 256 * 1024;
+    /** この行数ごとに進捗を知らせ、中断を確認する */
+    private static final int PROGRESS_EVERY = 8192;
+
+    /** 進捗の通知先（書き込みスレッドから呼ばれる） */
+    public interface Progress {
+        /** done / total は読んだバイト数の目安 */
+        void update(long done, long total);
+        /** true を返すと中断する（{@link CancellationException}） */
+        boolean isCancelled();
+    }
+
+    /** 変換元（1 行ずつ流すもの） */
+    private interface Source {
+        void forEach(TsvReader.RowHandler handler) throws IOException;
+    }
+
+    private CsvExporter() {}
+
+    /**
+     * TSV ファイルを CSV にします。from / to（エポック日、含む）を指定すると先頭列の日付で絞り込みます
+     * （解釈できない日付の行は含める）。絞り込まない場合は {@link TsvReader#NO_DATE} を渡します。書いた行数を返します。
+     */
+    public static long exportFile(Path source, Path target, long from, long to, Progress progress) throws IOException {
+        return exportFile(source, target, from, to, null, progress);
+    }
+
+    /** filter（null 可）を満たす行だけを書きます（店舗での絞り込みなど） */
+    public static long exportFile(Path source, Path target, long from, long to, Predicate<TsvReader.Row> filter,
+                                  Progress progress) throws IOException {
+        long total = Files.size(source);
+        return export(h -> TsvReader.forEach(source, h), target, total, from, to, filter, progress);
+    }
+
+    /** 販売実績（ベース＋ジャーナル）を CSV にします。期間を指定すると重なる月のパーティションだけを読みます */
+    public static long exportSales(Path target, long from, long to, Progress progress) throws IOException {
+        return exportSales(target, from, to, null, progress);
+    }
+
+    /** filter（null 可）を満たす行だけを書きます */
+    public static long exportSales(Path target, long from, long to, Predicate<TsvReader.Row> filter,
+                                   Progress progress) throws IOException {
+        long total = salesSize();
+        Source source = from == TsvReader.NO_DATE
+                ? SalesJournal::forEachRow
+                : h -> SalesJournal.forEachRowInRange(from, to, h);
+        return export(source, target, total, TsvReader.NO_DATE, 0, filter, progress);
+    }
+
+    /**
+     * 販売実績の日×店舗の集計（{@link SalesCube} から切り出す）を CSV にします。from / to はエポック日（含む）。
+     * 先頭に見出し行を付けます。書いた集計行の数を返します。
+     */
+    public static long exportSalesSummary(Path target, long from, long to, Progress progress) throws IOException {
+        SalesCube.Slice slice = SalesCube.slice(from, to, null, null, SalesCube.By.DAY, SalesCube.By.STORE);
+        StringBuilder sb = new StringBuilder("date\tstore\trows\tsold\twaste\treturns\trevenue\tcost\n");
+        for (int i = 0; i < slice.size(); i++) {
+            sb.append(slice.key(i, 0)).append('\t').append(slice.key(i, 1)).append('\t')
+              .append(slice.rows(i)).append('\t').append(slice.sold(i)).append('\t').append(slice.waste(i)).append('\t')
+              .append(slice.returns(i)).append('\t').append(slice.revenue(i)).append('\t').append(slice.cost(i)).append('\n');
+        }
+        // 集計は小さいので TSV にしてから、ほかと同じ変換（クォートの扱い）を通す
+        byte[] tsv = sb.toString().getBytes(AppFiles.CHARSET);
+        return export(h -> TsvReader.forEach(tsv, h), target, tsv.length, TsvReader.NO_DATE, 0, null, progress) - 1;
+    }
+
+    private static long export(Source source, Path target, long total, long from, long to,
+                               Predicate<TsvReader.Row> filter, Progress progress) throws IOException {
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        long[] rows = {0};
+        boolean done = false;
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             OutputStream out = new BufferedOutputStream(Channels.newOutputStream(ch), OUT_BUFFER)) {
+            source.forEach(tracked(total, progress, row -> {
+                if (row.isBlank() || !inRange(row, from, to)) return;
+                if (filter != null && !filter.test(row)) return;
+                writeCsv(row, out);
+                rows[0]++;
+            }));
+            out.flush();
+            done = true;
+        } finally {
+            if (!done) Files.deleteIfExists(tmp);
+        }
+        AtomicFile.commit(tmp, target);
+        if (progress != null) progress.update(total, total);
+        return rows[0];
+    }
+
+    /**
+     * handler の前で読んだバイト数を数え、{@link #PROGRESS_EVERY} 行ごとに進捗を知らせて中断を確認します
+     * （ほかのエクスポートでも使う）。progress は null 可。
+     */
+    static TsvReader.RowHandler tracked(long total, Progress progress, TsvReader.RowHandler handler) {
+        if (progress == null) return handler;
+        long[] read = {0};
+        int[] sinceReport = {0};
+        return row -> {
+            read[0] += row.byteLength() + 1;
+            if (++sinceReport[0] >= PROGRESS_EVERY) {
+                sinceReport[0] = 0;
+                if (progress.isCancelled()) throw new CancellationException();
+                progress.update(read[0], total);
+            }
+            handler.row(row);
+        };
+    }
+
+    /** 先頭列の日付が from〜to（含む）か。from が {@link TsvReader#NO_DATE} なら常に true、解釈できない日付も true */
+    static boolean inRange(TsvReader.Row row, long from, long to) {
+        if (from == TsvReader.NO_DATE) return true;
+        long day = row.getEpochDay(0);
+        return day == TsvReader.NO_DATE || (day >= from && day <= to);
+    }
+
+    /** 販売実績の読み込み量の目安（ベース＋ジャーナル） */
+    static long salesSize() throws IOException {
+        return SalesJournal.baseSize() + (Files.exists(AppFiles.SALES_JOURNAL) ? Files.size(AppFiles.SALES_JOURNAL) : 0);
+    }
+
+    /** 1 行を CSV で書く（カンマ・ダブルクォート・改行を含む列だけクォート） */
+    private static void writeCsv(TsvReader.Row row, OutputStream out) throws IOException {
+        for (int i = 0; i < row.size(); i++) {
+            if (i > 0) out.write(',');
+            if (row.contains(i, ',') || row.contains(i, '"') || row.contains(i, '\r')) {
+                out.write('"');
+                out.write(row.getString(i).replace("\"", "\"\"").getBytes(AppFiles.CHARSET));
+                out.write('"');
+            } else {
+                row.writeTo(i, out);
+            }
+        }
+        out.write('\n');
+    }
+}
@@ -73,15 +73,11 @@ public class DashboardSimple extends JFrame {
     refreshInventoryCard();
     refreshProductCard();
 
-        // 戻ってきた時に再読込
-        addWindowListener(new WindowAdapter() {
-            @Override public void windowActivated(WindowEvent e) {
-                refreshWeatherCard();
-                refreshStoreCard();
-                refreshInventoryCard();
-                refreshProductCard();
-            }
-        });
+        // 外部でファイルが変わったら該当するカードだけ更新（自分の保存は各画面から直接更新される）
+        DataWatcher.subscribe(this, this::refreshWeatherCard, AppFiles.WEATHER_TSV);
+        DataWatcher.subscribe(this, this::refreshStoreCard, AppFiles.STORES_TSV);
+        DataWatcher.subscribe(this, this::refreshInventoryCard, AppFiles.INVENTORY_TSV);
+        DataWatcher.subscribe(this, this::refreshProductCard, AppFiles.PRODUCTS_TSV);
 
         setVisible(true);
     }
@@ -194,37 +190,15 @@ public class DashboardSimple extends JFrame {
             weatherValueLabel.setToolTipText(null);
             return;
         }
-        // 非同期で読み込み（UI スレッド保護）
-        new javax.swing.SwingWorker<Void, Void>() {
-            private int count = 0;
-            private String latest = null;
-            private String err = null;
-            @Override protected Void doInBackground() {
-                try {
-                    java.util.List<String> lines = java.nio.file.Files.readAllLines(p, AppFiles.CHARSET);
-                    for (String line : lines) {
-                        if (line.trim().isEmpty()) continue;
-                        String[] cols = line.split("\t", -1);
-                        if (cols.length >= 1) {
-                            String date = cols[0].trim();
-                            if (!date.isEmpty()) latest = (latest == null || date.compareTo(latest) > 0) ? date : latest;
-                        }
-                        count++;
-                    }
-                } catch (Exception ex) {
-                    err = ex.getMessage();
-                    AppLogger.error("refreshWeatherCard read error", ex);
-                }
-                return null;
+        // 要約はスタンプが合えば読み直さない（合わないときだけバックグラウンドで再集計）
+        new SummaryWorker(p, "refreshWeatherCard") {
+            @Override void show(FileSummary.Summary s) {
+                weatherValueLabel.setText(s.rows == 0 ? "未入力" : s.rows + " 件");
+                weatherValueLabel.setToolTipText(s.latestDate == null ? null : "最新日付: " + s.latestDate);
             }
-            @Override protected void done() {
-                if (err != null) {
-                    weatherValueLabel.setText("読込エラー");
-                    weatherValueLabel.setToolTipText(err);
-                } else {
-                    weatherValueLabel.setText(count == 0 ? "未入力" : count + " 件");
-                    weatherValueLabel.setToolTipText(latest == null ? null : "最新日付: " + latest);
-                }
+            @Override void showError(String err) {
+                weatherValueLabel.setText("読込エラー");
+                weatherValueLabel.setToolTipText(err);
             }
         }.execute();
     }
@@ -238,24 +212,14 @@ public class DashboardSimple extends JFrame {
             productValueLabel.setToolTipText(null);
             return;
         }
-        new javax.swing.SwingWorker<Void, Void>() {
-            private int count = 0;
-            private String err = null;
-            @Override protected Void doInBackground() {
-                try {
-                    java.util.List<String> lines = java.nio.file.Files.readAllLines(p, AppFiles.CHARSET);
-                    for (String line : lines) if (!line.trim().isEmpty()) count++;
-                } catch (Exception ex) { err = ex.getMessage(); AppLogger.error("refreshProductCard read error", ex); }
-                return null;
+        new SummaryWorker(p, "refreshProductCard") {
+            @Override void show(FileSummary.Summary s) {
+                productValueLabel.setText(s.rows + " 件");
+                productValueLabel.setToolTipText(null);
             }
-            @Override protected void done() {
-                if (err != null) {
-                    productValueLabel.setText("読込エラー");
-                    productValueLabel.setToolTipText(err);
-                } else {
-                    productValueLabel.setText(count + " 件");
-                    productValueLabel.setToolTipText(null);
-                }
+            @Override void showError(String err) {
+                productValueLabel.setText("読込エラー");
+                productValueLabel.setToolTipText(err);
             }
         }.execute();
     }
@@ -268,33 +232,18 @@ public class DashboardSimple extends JFrame {
             storeValueLabel.setText("0 店舗");
             return;
         }
-        new javax.swing.SwingWorker<Void, Void>() {
-            private int count = 0;
-            private String err = null;
-            @Override protected Void doInBackground() {
-                try {
-                    java.util.List<String> lines = java.nio.file.Files.readAllLines(p, AppFiles.CHARSET);
-                    for (String line : lines) {
-                        if (!line.trim().isEmpty()) count++;
-                    }
-                } catch (Exception ex) {
-                    err = ex.getMessage();
-                    AppLogger.error("refreshStoreCard read error", ex);
-                }
-                return null;
+        new SummaryWorker(p, "refreshStoreCard") {
+            @Override void show(FileSummary.Summary s) {
+                storeValueLabel.setText(s.rows + " 店舗");
             }
-            @Override protected void done() {
-                if (err != null) {
-                    storeValueLabel.setText("読込エラー");
-                    storeValueLabel.setToolTipText(err);
-                } else {
-                    storeValueLabel.setText(count + " 店舗");
-                }
+            @Override void showError(String err) {
+                storeValueLabel.setText("読込エラー");
+                storeValueLabel.setToolTipText(err);
             }
         }.execute();
     }
 
-    /** inventory.tsv → 在庫合計 */
+    /** inventory.tsv → 商品の種類数（例：おにぎり5個、鮭おにぎり3個 → 2）＋在庫合計(tooltip) */
     public void refreshInventoryCard() {
         if (inventoryValueLabel == null) return;
         Path p = AppFiles.INVENTORY_TSV;
@@ -302,39 +251,45 @@ public class DashboardSimple extends JFrame {
             inventoryValueLabel.setText("0 個");
             return;
         }
-        new javax.swing.SwingWorker<Void, Void>() {
-            private int total = 0;
-            private String err = null;
-            @Override protected Void doInBackground() {
-                try {
-                    java.util.List<String> lines = java.nio.file.Files.readAllLines(p, AppFiles.CHARSET);
-                    // distinct 商品名の数をカウントする（例：おにぎり5個、鮭おにぎり3個 → 2）
-                    java.util.Set<String> names = new java.util.HashSet<>();
-                    for (String line : lines) {
-                        if (line.trim().isEmpty()) continue;
-                        String[] cols = line.split("\t", -1);
-                        if (cols.length >= 3) {
-                            String name = cols[2].trim();
-                            if (!name.isEmpty()) names.add(name);
-                        }
-                    }
-                    total = names.size();
-                } catch (Exception ex) {
-                    err = ex.getMessage();
-                    AppLogger.error("refreshInventoryCard read error", ex);
-                }
-                return null;
+        new SummaryWorker(p, "refreshInventoryCard") {
+            @Override void show(FileSummary.Summary s) {
+                inventoryValueLabel.setText(s.distinctItems + " 個");
+                inventoryValueLabel.setToolTipText("在庫合計: " + s.totalStock);
             }
-            @Override protected void done() {
-                if (err != null) {
-                    inventoryValueLabel.setText("読込エラー");
-                } else {
-                    inventoryValueLabel.setText(total + " 個");
-                }
+            @Override void showError(String err) {
+                inventoryValueLabel.setText("読込エラー");
             }
         }.execute();
     }
 
+    /** 要約の取得（通常は stat のみ）をバックグラウンドで行い、EDT でカードへ反映する */
+    private abstract static class SummaryWorker extends javax.swing.SwingWorker<FileSummary.Summary, Void> {
+        private final Path file;
+        private final String logName;
+
+        SummaryWorker(Path file, String logName) {
+            this.file = file;
+            this.logName = logName;
+        }
+
+        abstract void show(FileSummary.Summary s);
+        abstract void showError(String err);
+
+        @Override protected FileSummary.Summary doInBackground() throws Exception {
+            return FileSummary.get(file);
+        }
+
+        @Override protected void done() {
+            try {
+                show(get());
+            } catch (Exception ex) {
+                Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                AppLogger.error(logName + " read error", cause);
+                showError(cause.getMessage());
+            }
+        }
+    }
+
     public static void main(String[] args) {
         SwingUtilities.invokeLater(DashboardSimple::new);
     }
@@ -0,0 +1,561 @@
+import javax.swing.JOptionPane;
+import javax.swing.SwingWorker;
+import java.awt.Component;
+import java.awt.Window;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 各画面で共有する、プロセスに 1 つのデータ置き場。
+ * 在庫・販売実績・商品・店舗・天気をそれぞれ最初に必要になったときに 1 回だけ読み込み、以後は常駐させます。
+ * 画面はここの表モデル／リストを直接表示し、保存もここを通します（画面を開き直しても読み直さない）。
+ *
+ * 外部でファイルが書き換えられた場合は {@link DataWatcher} の通知で読み直し、リスナーへ知らせます。
+ * 中身は EDT からだけ触ること（読み込みはバックグラウンドで行い、EDT で差し替える）。
+ * 分析用集計とダッシュボードの件数は {@link MaterializedAggregates} と {@link FileSummary} が別に保持します。
+ */
+public final class DataRepository {
+
+    /** 一度だけ読み込んで常駐させるデータ */
+    public abstract static class Source<R> {
+        private final String name;
+        private boolean loaded, loading, reloadRequested;
+        private final List<Runnable> waiters = new ArrayList<>();
+        private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+        Source(String name) { this.name = name; }
+
+        /** バックグラウンドで読む */
+        abstract R read() throws Exception;
+        /** EDT で差し替える */
+        abstract void apply(R data);
+
+        public boolean isLoaded() { return loaded; }
+
+        /** 読み込み済みならすぐ、未読み込みなら読み込み後に r を実行します */
+        public void whenLoaded(Runnable r) {
+            if (loaded) {
+                r.run();
+                return;
+            }
+            waiters.add(r);
+            load();
+        }
+
+        /** 未読み込みならこの場で読み込みます（起動直後に同期で必要な場合） */
+        public void loadNow() {
+            if (loaded) return;
+            try {
+                apply(read());
+            } catch (Exception ex) {
+                AppLogger.error(name + " load error", ex);
+            }
+            loaded = true;
+            runWaiters();
+        }
+
+        /** 中身が変わったとき（読み直し・他の画面での保存）に r を呼びます。owner が閉じたら解除 */
+        public void addListener(Window owner, Runnable r) {
+            listeners.add(r);
+            owner.addWindowListener(new WindowAdapter() {
+                @Override public void windowClosed(WindowEvent e) { listeners.remove(r); }
+            });
+        }
+
+        public void fireChanged() {
+            for (Runnable r : listeners) r.run();
+        }
+
+        /** 外部で変更されたとき：読み込み済みなら読み直す */
+        void reload() {
+            if (!loaded && !loading) return;   // まだ誰も使っていない（次に使うときに読む）
+            if (loading) {
+                reloadRequested = true;
+                return;
+            }
+            load();
+        }
+
+        private void load() {
+            if (loading) return;
+            loading = true;
+            new SwingWorker<R, Void>() {
+                @Override protected R doInBackground() throws Exception { return read(); }
+                @Override protected void done() {
+                    loading = false;
+                    try {
+                        apply(get());
+                    } catch (Exception ex) {
+                        Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                        AppLogger.error(name + " load error", cause);
+                        JOptionPane.showMessageDialog(null, name + " の読み込みに失敗: " + cause.getMessage(),
+                                "エラー", JOptionPane.ERROR_MESSAGE);
+                    }
+                    boolean first = !loaded;
+                    loaded = true;
+                    runWaiters();
+                    if (!first) fireChanged();
+                    if (reloadRequested) {
+                        reloadRequested = false;
+                        load();
+                    }
+                }
+            }.execute();
+        }
+
+        private void runWaiters() {
+            List<Runnable> ws = new ArrayList<>(waiters);
+            waiters.clear();
+            for (Runnable r : ws) r.run();
+        }
+    }
+
+    /** 列指向の表モデルを持つデータ（在庫・販売実績） */
+    public static final class Table<M extends ColumnTableModel> extends Source<ColumnTableModel.Loader> {
+        private final M model;
+        private final Reader reader;
+
+        interface Reader {
+            void read(ColumnTableModel.Loader loader) throws IOException;
+        }
+
+        Table(String name, M model, Reader reader) {
+            super(name);
+            this.model = model;
+            this.reader = reader;
+        }
+
+        public M model() { return model; }
+
+        @Override ColumnTableModel.Loader read() throws IOException {
+            ColumnTableModel.Loader loader = model.newLoader();
+            reader.read(loader);
+            return loader;
+        }
+
+        @Override void apply(ColumnTableModel.Loader loader) { model.load(loader); }
+    }
+
+    /** 画面で共有する可変リスト（商品・店舗・天気） */
+    public static class Dataset<T> extends Source<List<T>> {
+        private final List<T> items = new ArrayList<>();
+        private final ListReader<T> reader;
+
+        interface ListReader<T> {
+            List<T> read() throws Exception;
+        }
+
+        Dataset(String name, ListReader<T> reader) {
+            super(name);
+            this.reader = reader;
+        }
+
+        /** 共有しているリストそのもの（変更したら対応する save を呼ぶ） */
+        public List<T> items() { return items; }
+
+        @Override List<T> read() throws Exception { return reader.read(); }
+
+        @Override void apply(List<T> data) {
+            items.clear();
+            items.addAll(data);
+        }
+    }
+
+    private static final Table<InventoryTableModel> INVENTORY = new Table<>("inventory.tsv", new InventoryTableModel(),
+            loader -> {
+                if (!Files.exists(AppFiles.INVENTORY_TSV)) return;
+                TsvReader.forEach(AppFiles.INVENTORY_TSV, row -> {
+                    if (row.isBlank() || row.size() < 8) return;
+                    loader.add(row);
+                });
+            });
+
+    // ベース（sales.tsv）＋ジャーナルを再生しながら 1 行ずつ流す
+    private static final Table<SalesTableModel> SALES = new Table<>("sales.tsv", new SalesTableModel(),
+            loader -> SalesJournal.forEachRow(loader::add));
+
+    private static final Dataset<ProductManagement.Product> PRODUCTS = new Dataset<ProductManagement.Product>(
+            "products", DataRepository::readProducts) {
+        @Override void apply(List<ProductManagement.Product> data) {
+            super.apply(data);
+            BarcodeIndex.rebuild(data);
+        }
+    };
+
+    private static final Dataset<StoreManagement.Store> STORES = new Dataset<>("stores", DataRepository::readStores);
+    private static final Dataset<String[]> WEATHER = new Dataset<>("weather.tsv", DataRepository::readWeather);
+
+    /** products.dat のレコード（版 1: 名前, カテゴリ, バーコード, 備考, 日数, 在庫, 売価, 原価） */
+    private static final RecordFile.Codec<ProductManagement.Product> PRODUCT_CODEC = new RecordFile.Codec<ProductManagement.Product>() {
+        @Override public String kind() { return "PROD"; }
+        @Override public int version() { return 1; }
+        @Override public void write(RecordFile.Out out, ProductManagement.Product p) {
+            out.writeString(p.name);
+            out.writeString(p.category);
+            out.writeString(p.barcode);
+            out.writeString(p.notes);
+            out.writeInt(p.shelfDays);
+            out.writeInt(p.stock);
+            out.writeInt(p.price);
+            out.writeInt(p.costPrice);
+        }
+        @Override public ProductManagement.Product read(RecordFile.In in, int version) {
+            String name = in.readString(), category = in.readString(), barcode = in.readString(), notes = in.readString();
+            int shelfDays = in.readInt(), stock = in.readInt(), price = in.readInt(), costPrice = in.readInt();
+            return new ProductManagement.Product(name, category, barcode, shelfDays, stock, price, costPrice, notes);
+        }
+    };
+
+    /** stores.dat のレコード（版 1: 店舗名, カテゴリ, 住所, 担当者, 電話番号） */
+    private static final RecordFile.Codec<StoreManagement.Store> STORE_CODEC = new RecordFile.Codec<StoreManagement.Store>() {
+        @Override public String kind() { return "STOR"; }
+        @Override public int version() { return 1; }
+        @Override public void write(RecordFile.Out out, StoreManagement.Store s) {
+            out.writeString(s.name);
+            out.writeString(s.category);
+            out.writeString(s.address);
+            out.writeString(s.contact);
+            out.writeString(s.phone);
+        }
+        @Override public StoreManagement.Store read(RecordFile.In in, int version) {
+            return new StoreManagement.Store(in.readString(), in.readString(), in.readString(), in.readString(), in.readString());
+        }
+    };
+
+    static {
+        DataWatcher.subscribe(INVENTORY::reload, AppFiles.INVENTORY_TSV);
+        DataWatcher.subscribe(SALES::reload, AppFiles.SALES_TSV, AppFiles.SALES_JOURNAL, AppFiles.SALES_INDEX);
+        DataWatcher.subscribe(PRODUCTS::reload, AppFiles.PRODUCTS_DAT, AppFiles.PRODUCTS_TSV);
+        DataWatcher.subscribe(STORES::reload, AppFiles.STORES_DAT, AppFiles.STORES_TSV);
+        DataWatcher.subscribe(WEATHER::reload, AppFiles.WEATHER_TSV);
+    }
+
+    private DataRepository() {}
+
+    public static Table<InventoryTableModel> inventory() { return INVENTORY; }
+    public static Table<SalesTableModel> sales() { return SALES; }
+    public static Dataset<ProductManagement.Product> products() { return PRODUCTS; }
+    public static Dataset<StoreManagement.Store> stores() { return STORES; }
+    /** 天気の記録 {日付, 天気, 気温, 備考}（新しいものが先頭） */
+    public static Dataset<String[]> weather() { return WEATHER; }
+
+    // ===== 保存 =====
+    // 書き込みはすべて BackgroundWriter に渡す。EDT では保存内容の写しを作るだけで、
+    // 続けて保存された分は書き込みスレッドで 1 回にまとめる。onSaved は fsync まで終わってから EDT で呼ぶ。
+
+    /**
+     * 在庫の表モデル全体を inventory.tsv へ書き戻します（バックグラウンド）。
+     * removed / added は分析用集計へ差分で反映する行です。成功したら onSaved を EDT で呼びます。
+     */
+    public static void saveInventory(Component parent, List<String> removed, List<String> added, Runnable onSaved) {
+        InventoryTableModel model = INVENTORY.model();
+        List<String> out = new ArrayList<>(model.getRowCount());
+        for (int r = 0; r < model.getRowCount(); r++) out.add(String.join("\t", model.getRow(r)));
+        BackgroundWriter.submit("inventory", new InventoryWrite(out, removed, added),
+                report(parent, "inventory.tsv", onSaved));
+    }
+
+    /** 販売実績の変更分だけをジャーナルへ追記します（バックグラウンド、投入順に 1 件ずつ） */
+    public static void saveSales(Component parent, List<String[]> removed, List<String[]> added) {
+        BackgroundWriter.submit("sales", () -> SalesJournal.write(removed, added), report(parent, "sales.tsv", null));
+    }
+
+    /**
+     * 商品一覧を products.dat（本体）と products.tsv（ダッシュボード・外部ツール用）へ書き、バーコード索引を作り直します。
+     * TSV を先に書くので、通常は .dat のほうが新しくなります（TSV が新しければ外部で編集されたとみなす）。
+     */
+    public static void saveProducts(Component parent, Runnable onSaved) {
+        List<ProductManagement.Product> snapshot = new ArrayList<>(PRODUCTS.items());
+        // スキャン入力用のバーコード索引は書き込みを待たずに保存内容に合わせる
+        BarcodeIndex.rebuild(snapshot);
+        BackgroundWriter.submit("products", new ListWrite(AppFiles.PRODUCTS_TSV, productLines(snapshot),
+                AppFiles.PRODUCTS_DAT, RecordFile.encode(snapshot, PRODUCT_CODEC), PRODUCT_CODEC, null, null),
+                report(parent, "products.dat", onSaved));
+    }
+
+    /** 商品を 1 件追加し、両ファイルの末尾へ足します（書き直さない） */
+    public static void addProduct(Component parent, ProductManagement.Product p, Runnable onSaved) {
+        PRODUCTS.items().add(p);
+        List<ProductManagement.Product> snapshot = new ArrayList<>(PRODUCTS.items());
+        BarcodeIndex.rebuild(snapshot);
+        BackgroundWriter.submit("products", new ListWrite(AppFiles.PRODUCTS_TSV, productLines(snapshot),
+                AppFiles.PRODUCTS_DAT, RecordFile.encode(snapshot, PRODUCT_CODEC), PRODUCT_CODEC,
+                Collections.singletonList(productLine(p)), RecordFile.encodeRecords(Collections.singletonList(p), PRODUCT_CODEC)),
+                report(parent, "products.dat", onSaved));
+    }
+
+    /** 店舗一覧を stores.dat（本体）と stores.tsv（ダッシュボード用）へ書きます */
+    public static void saveStores(Component parent, Runnable onSaved) {
+        List<StoreManagement.Store> snapshot = new ArrayList<>(STORES.items());
+        BackgroundWriter.submit("stores", new ListWrite(AppFiles.STORES_TSV, storeLines(snapshot),
+                AppFiles.STORES_DAT, RecordFile.encode(snapshot, STORE_CODEC), STORE_CODEC, null, null),
+                report(parent, "stores.dat", onSaved));
+    }
+
+    /** 店舗を 1 件追加し、両ファイルの末尾へ足します（書き直さない） */
+    public static void addStore(Component parent, StoreManagement.Store s, Runnable onSaved) {
+        STORES.items().add(s);
+        List<StoreManagement.Store> snapshot = new ArrayList<>(STORES.items());
+        BackgroundWriter.submit("stores", new ListWrite(AppFiles.STORES_TSV, storeLines(snapshot),
+                AppFiles.STORES_DAT, RecordFile.encode(snapshot, STORE_CODEC), STORE_CODEC,
+                Collections.singletonList(storeLine(s)), RecordFile.encodeRecords(Collections.singletonList(s), STORE_CODEC)),
+                report(parent, "stores.dat", onSaved));
+    }
+
+    /** 天気の記録を weather.tsv へ書きます */
+    public static void saveWeather(Component parent, Runnable onSaved) {
+        List<String> lines = new ArrayList<>(WEATHER.items().size());
+        for (String[] r : WEATHER.items()) {
+            lines.add(encodeWeather(r[0]) + "\t" + encodeWeather(r[1]) + "\t" + encodeWeather(r[2]) + "\t" + encodeWeather(r[3]));
+        }
+        BackgroundWriter.submit("weather", new TsvWrite(AppFiles.WEATHER_TSV, lines), report(parent, "weather.tsv", onSaved));
+    }
+
+    /** 書き込み結果を画面へ返す（失敗ならダイアログ、成功なら onSaved） */
+    private static BackgroundWriter.Durability report(Component parent, String file, Runnable onSaved) {
+        return err -> {
+            if (err != null) {
+                JOptionPane.showMessageDialog(parent,
+                        file + " の保存に失敗: " + err.getMessage(), "エラー", JOptionPane.ERROR_MESSAGE);
+            } else if (onSaved != null) {
+                onSaved.run();
+            }
+        };
+    }
+
+    /** TSV 全体の書き直し（続いたら最後の内容だけ書く） */
+    private static final class TsvWrite implements BackgroundWriter.Job {
+        private final Path file;
+        private final List<String> lines;
+
+        TsvWrite(Path file, List<String> lines) {
+            this.file = file;
+            this.lines = lines;
+        }
+
+        @Override public void run() throws IOException { FileSummary.write(file, lines); }
+
+        @Override public BackgroundWriter.Job merge(BackgroundWriter.Job next) { return next; }
+    }
+
+    /**
+     * inventory.tsv の書き直しと、分析用集計・期限索引への差分反映。
+     * どちらも行の足し引きだけなので、続いた保存は最後の内容と差分の連結で 1 回にまとめられる。
+     */
+    private static final class InventoryWrite implements BackgroundWriter.Job {
+        private final List<String> out, removed, added;
+
+        InventoryWrite(List<String> out, List<String> removed, List<String> added) {
+            this.out = out;
+            this.removed = removed;
+            this.added = added;
+        }
+
+        @Override public void run() throws IOException {
+            ExpiryIndex.update(() -> MaterializedAggregates.updateInventory(
+                    () -> FileSummary.write(AppFiles.INVENTORY_TSV, out), removed, added), removed, added);
+        }
+
+        @Override public BackgroundWriter.Job merge(BackgroundWriter.Job next) {
+            InventoryWrite n = (InventoryWrite) next;
+            return new InventoryWrite(n.out, concat(removed, n.removed), concat(added, n.added));
+        }
+    }
+
+    /**
+     * TSV と .dat の組（商品・店舗）の書き込み。appendLines が null なら両方を書き直し、
+     * それ以外は追加分だけ末尾へ足す（.dat が追記できない状態なら whole で書き直す）。
+     * lines / whole は常に書き込み後の全体で、まとめるときは後の内容を使う。
+     */
+    private static final class ListWrite implements BackgroundWriter.Job {
+        private final Path tsv, dat;
+        private final List<String> lines;
+        private final byte[] whole;
+        private final RecordFile.Codec<?> codec;
+        private final List<String> appendLines;
+        private final byte[] appendRecords;
+
+        ListWrite(Path tsv, List<String> lines, Path dat, byte[] whole, RecordFile.Codec<?> codec,
+                  List<String> appendLines, byte[] appendRecords) {
+            this.tsv = tsv;
+            this.lines = lines;
+            this.dat = dat;
+            this.whole = whole;
+            this.codec = codec;
+            this.appendLines = appendLines;
+            this.appendRecords = appendRecords;
+        }
+
+        @Override public void run() throws IOException {
+            // TSV を先に書く（.dat のほうが新しくなるように）
+            if (appendLines == null) {
+                FileSummary.write(tsv, lines);
+                AtomicFile.write(dat, whole);
+            } else {
+                FileSummary.append(tsv, appendLines);
+                RecordFile.appendEncoded(dat, appendRecords, whole, codec);
+            }
+            DataWatcher.noteWritten(dat);
+        }
+
+        @Override public BackgroundWriter.Job merge(BackgroundWriter.Job next) {
+            ListWrite n = (ListWrite) next;
+            if (n.appendLines == null) return n;
+            if (appendLines == null) return new ListWrite(tsv, n.lines, dat, n.whole, codec, null, null);
+            byte[] records = Arrays.copyOf(appendRecords, appendRecords.length + n.appendRecords.length);
+            System.arraycopy(n.appendRecords, 0, records, appendRecords.length, n.appendRecords.length);
+            return new ListWrite(tsv, n.lines, dat, n.whole, codec, concat(appendLines, n.appendLines), records);
+        }
+    }
+
+    private static <T> List<T> concat(List<T> a, List<T> b) {
+        List<T> out = new ArrayList<>(a.size() + b.size());
+        out.addAll(a);
+        out.addAll(b);
+        return out;
+    }
+
+    private static List<String> productLines(List<ProductManagement.Product> products) {
+        List<String> lines = new ArrayList<>(products.size());
+        for (ProductManagement.Product p : products) lines.add(productLine(p));
+        return lines;
+    }
+
+    private static List<String> storeLines(List<StoreManagement.Store> stores) {
+        List<String> lines = new ArrayList<>(stores.size());
+        for (StoreManagement.Store s : stores) lines.add(storeLine(s));
+        return lines;
+    }
+
+    private static String productLine(ProductManagement.Product p) {
+        return tsvSafe(p.name) + "\t" + tsvSafe(p.category) + "\t" +
+               tsvSafe(p.barcode) + "\t" + p.shelfDays + "\t" +
+               p.stock + "\t" + p.price + "\t" + p.costPrice + "\t" + tsvSafe(p.notes);
+    }
+
+    private static String storeLine(StoreManagement.Store s) {
+        return tsvSafe(s.name) + "\t" + tsvSafe(s.category) + "\t" + tsvSafe(s.address) + "\t"
+                + tsvSafe(s.contact) + "\t" + tsvSafe(s.phone);
+    }
+
+    // ===== 読み込み =====
+
+    /**
+     * 保存済みの商品一覧を読み込みます。
+     * 通常は products.dat（レコード形式）を読みます。TSV のほうが新しい（外部で編集された）場合と、
+     * .dat が旧形式（Java のシリアライズ）の場合は、読んだ内容でレコード形式の .dat を作り直します。
+     */
+    private static List<ProductManagement.Product> readProducts() throws IOException, ClassNotFoundException {
+        Path dat = AppFiles.PRODUCTS_DAT, tsv = AppFiles.PRODUCTS_TSV;
+        if (RecordFile.isRecordFile(dat) && !newer(tsv, dat)) return RecordFile.read(dat, PRODUCT_CODEC);
+
+        List<ProductManagement.Product> list = new ArrayList<>();
+        if (Files.exists(tsv)) {
+            TsvReader.forEach(tsv, c -> {
+                if (c.isBlank()) return;  // 空行をスキップ
+                if (c.size() >= 8) {
+                    // 新形式（原価あり）: name, category, barcode, shelfDays, stock, price, costPrice, notes
+                    int cp = c.getInt(6, 0);
+                    list.add(new ProductManagement.Product(c.getString(0), c.getString(1), c.getString(2),
+                            c.getInt(3), c.getInt(4), c.getInt(5), cp, c.getString(7)));
+                } else if (c.size() >= 7) {
+                    // 旧形式（原価なし）: name, category, barcode, shelfDays, stock, price, notes
+                    list.add(new ProductManagement.Product(c.getString(0), c.getString(1), c.getString(2),
+                            c.getInt(3), c.getInt(4), c.getInt(5), c.getString(6)));
+                }
+            });
+        } else if (RecordFile.isLegacySerialized(dat)) {
+            list.addAll(DataRepository.<ProductManagement.Product>readSerialized(dat));
+        } else {
+            return list;
+        }
+        migrate(dat, list, PRODUCT_CODEC);
+        return list;
+    }
+
+    /** 店舗一覧を読み込みます（形式の扱いは {@link #readProducts} と同じ。旧形式の .dat は TSV より優先） */
+    private static List<StoreManagement.Store> readStores() throws IOException, ClassNotFoundException {
+        Path dat = AppFiles.STORES_DAT, tsv = AppFiles.STORES_TSV;
+        if (RecordFile.isRecordFile(dat) && !newer(tsv, dat)) return RecordFile.read(dat, STORE_CODEC);
+
+        List<StoreManagement.Store> list = new ArrayList<>();
+        if (RecordFile.isLegacySerialized(dat)) {
+            // 旧版では .dat が本体（TSV は画面表示のたびに書き出していた写しで、空のこともある）
+            list.addAll(DataRepository.<StoreManagement.Store>readSerialized(dat));
+            FileSummary.write(tsv, storeLines(list));   // .dat より先に書く（.dat のほうが新しくなるように）
+        } else if (Files.exists(tsv)) {
+            TsvReader.forEach(tsv, c -> {
+                if (c.isBlank()) return;
+                String[] f = new String[5];
+                for (int i = 0; i < 5; i++) f[i] = i < c.size() ? c.getString(i) : "";
+                list.add(new StoreManagement.Store(f[0], f[1], f[2], f[3], f[4]));
+            });
+        } else {
+            return list;
+        }
+        migrate(dat, list, STORE_CODEC);
+        return list;
+    }
+
+    /** 旧形式（ObjectOutputStream で書いた ArrayList） */
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> readSerialized(Path file) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new ObjectInputStream(Files.newInputStream(file))) {
+            return (List<T>) ois.readObject();
+        } catch (EOFException ex) {
+            AppLogger.info(file + " empty or truncated, skipping load");
+            return Collections.emptyList();
+        }
+    }
+
+    /** レコード形式で書き直します。旧形式のファイルは初回だけ .bak として残す */
+    private static <T> void migrate(Path dat, List<T> items, RecordFile.Codec<T> codec) {
+        try {
+            if (RecordFile.isLegacySerialized(dat)) {
+                Path bak = dat.resolveSibling(dat.getFileName() + ".bak");
+                if (!Files.exists(bak)) Files.copy(dat, bak);
+                AppLogger.info("migrating " + dat + " to record format (" + items.size() + " records)");
+            }
+            RecordFile.write(dat, items, codec);
+            DataWatcher.noteWritten(dat);
+        } catch (IOException ex) {
+            // 書けなくても読んだ内容は使える（次回また移行を試みる）
+            AppLogger.error("migrate " + dat + " error", ex);
+        }
+    }
+
+    /** a が存在し、b より後に更新されているか */
+    private static boolean newer(Path a, Path b) throws IOException {
+        return Files.exists(a) && Files.getLastModifiedTime(a).compareTo(Files.getLastModifiedTime(b)) > 0;
+    }
+
+    private static List<String[]> readWeather() throws IOException {
+        List<String[]> list = new ArrayList<>();
+        if (!Files.exists(AppFiles.WEATHER_TSV)) return list;
+        TsvReader.forEach(AppFiles.WEATHER_TSV, row -> {
+            if (row.size() >= 4) list.add(new String[]{row.getString(0), row.getString(1), row.getString(2), row.getString(3)});
+        });
+        return list;
+    }
+
+    // タブ・改行をエスケープ（天気の TSV 用の簡易処理）
+    private static String encodeWeather(String s) {
+        if (s == null) return "";
+        return s.replace("\t", "    ").replace("\r", " ").replace("\n", " ");
+    }
+
+    private static String tsvSafe(String s) {
+        if (s == null) return "";
+        return s.replace("\t", " ").replace("\r", " ").replace("\n", " ");
+    }
+}
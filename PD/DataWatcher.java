@@ -0,0 +1,148 @@
+import javax.swing.SwingUtilities;
+import java.awt.Window;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * データフォルダ（作業ディレクトリ）を WatchService で監視し、外部で書き換えられたデータファイルだけを通知します。
+ * 連続したイベントは {@link #DEBOUNCE_MS} 静かになるまでまとめ、変更のあったファイルごとに
+ * メモリ上のキャッシュを無効化してから、購読している画面へ EDT で通知します。
+ *
+ * アプリ自身の書き込みは {@link #noteWritten} で記録したスタンプ（サイズと更新日時）と一致するので通知しません。
+ * 要約（{@link FileSummary}）と分析用集計（{@link MaterializedAggregates}）はスタンプで有効性を判定するため、
+ * ここで無効化する必要はありません。常駐データ（{@link DataRepository}）は購読して読み直します。
+ */
+public final class DataWatcher {
+
+    /** イベントがこの時間途切れたらまとめて通知する */
+    private static final long DEBOUNCE_MS = 300;
+
+    private static final Set<Path> WATCHED = new HashSet<>(Arrays.asList(
+            AppFiles.INVENTORY_TSV, AppFiles.SALES_TSV, AppFiles.SALES_JOURNAL, AppFiles.SALES_INDEX, AppFiles.PRODUCTS_TSV,
+            AppFiles.PRODUCTS_DAT, AppFiles.STORES_TSV, AppFiles.STORES_DAT, AppFiles.WEATHER_TSV));
+
+    private static final Map<Path, String> written = new ConcurrentHashMap<>();   // 自分で書いた直後のスタンプ
+    private static final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private static boolean started = false;
+
+    private DataWatcher() {}
+
+    private static final class Subscription {
+        final Set<Path> files;
+        final Runnable action;
+
+        Subscription(Set<Path> files, Runnable action) {
+            this.files = files;
+            this.action = action;
+        }
+    }
+
+    /** 監視スレッドを開始します（2 回目以降は何もしない） */
+    public static synchronized void start() {
+        if (started) return;
+        started = true;
+        Thread t = new Thread(DataWatcher::run, "data-watcher");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * files のいずれかが外部で変更されたら action を EDT で実行します（1 回のまとめ通知につき 1 回）。
+     * owner が閉じられたら購読を解除します。
+     */
+    public static void subscribe(Window owner, Runnable action, Path... files) {
+        start();
+        Subscription s = new Subscription(new HashSet<>(Arrays.asList(files)), action);
+        subscriptions.add(s);
+        owner.addWindowListener(new WindowAdapter() {
+            @Override public void windowClosed(WindowEvent e) { subscriptions.remove(s); }
+        });
+    }
+
+    /** 画面に属さない購読（プロセスの終了まで有効） */
+    public static void subscribe(Runnable action, Path... files) {
+        start();
+        subscriptions.add(new Subscription(new HashSet<>(Arrays.asList(files)), action));
+    }
+
+    /** アプリ自身が file を書き終えたことを記録します（このスタンプのままなら通知しない） */
+    public static void noteWritten(Path file) {
+        try {
+            written.put(file, FileSummary.stamp(file));
+        } catch (IOException ex) {
+            written.remove(file);
+        }
+    }
+
+    // ===== 監視スレッド =====
+
+    private static void run() {
+        Path dir = Paths.get("").toAbsolutePath();
+        try (WatchService ws = dir.getFileSystem().newWatchService()) {
+            dir.register(ws, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+            Set<Path> pending = new HashSet<>();
+            while (true) {
+                WatchKey key = pending.isEmpty() ? ws.take() : ws.poll(DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+                if (key == null) {
+                    // 静かになった：まとめて処理
+                    flush(pending);
+                    pending = new HashSet<>();
+                    continue;
+                }
+                for (WatchEvent<?> ev : key.pollEvents()) {
+                    if (ev.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        pending.addAll(WATCHED);   // 取りこぼした可能性があるので全部確認する
+                        continue;
+                    }
+                    Path name = (Path) ev.context();
+                    if (WATCHED.contains(name)) pending.add(name);
+                }
+                if (!key.reset()) {
+                    AppLogger.warn("data directory is no longer watchable: " + dir);
+                    return;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException ex) {
+            AppLogger.error("data watcher error", ex);
+        }
+    }
+
+    /** 自分の書き込みを除き、キャッシュを無効化して購読者へ通知する */
+    private static void flush(Set<Path> pending) {
+        Set<Path> changed = new HashSet<>();
+        for (Path p : pending) {
+            String stamp;
+            try {
+                stamp = FileSummary.stamp(p);
+            } catch (IOException ex) {
+                stamp = "";
+            }
+            if (stamp.equals(written.get(p))) continue;
+            written.remove(p);
+            changed.add(p);
+        }
+        if (changed.isEmpty()) return;
+        AppLogger.info("external change: " + changed);
+        invalidate(changed);
+        SwingUtilities.invokeLater(() -> {
+            for (Subscription s : subscriptions) {
+                if (!Collections.disjoint(s.files, changed)) s.action.run();
+            }
+        });
+    }
+
+    /** 変更されたファイルに対応するメモリ上のキャッシュだけを捨てる */
+    private static void invalidate(Set<Path> changed) {
+        if (changed.contains(AppFiles.SALES_TSV) || changed.contains(AppFiles.SALES_JOURNAL)
+                || changed.contains(AppFiles.SALES_INDEX)) SalesJournal.invalidate();
+    }
+}
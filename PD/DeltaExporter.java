@@ -0,0 +1,379 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 前回のエクスポート以降に追加・変更された行だけを、番号付きの差分ファイルとして書き出します（画面に依存しない）。
+ *
+ * 出力は delta/ の下に、表ごとに
+ * <ul>
+ *   <li>表.000001.tsv … 差分。1 行目は見出し、以降は 操作(A/D) \t row_id \t 元の列…</li>
+ *   <li>表.manifest.tsv … 差分の一覧（番号 \t ファイル \t 作成日時 \t 方式 \t 追加数 \t 削除数 \t 連番 \t スタンプ）</li>
+ *   <li>表.000001.rows … その時点の全行の row_id（並べた 64 ビット値。次回の比較用）</li>
+ * </ul>
+ * 受け取る側はマニフェストの番号順に適用します（ファイルが "-" の行は水位線だけ進めた記録なので読み飛ばす）。row_id は行の内容のハッシュで、同じ内容の行は同じ row_id です
+ * （D は同じ row_id の行を 1 行消す）。マニフェストの最終行が水位線で、マニフェストへの追記で差分が確定します。
+ *
+ * 販売実績は前回の連番より後のジャーナル操作だけを読みます（コンパクション済みの操作は sales.changelog から）。
+ * 変更履歴で追えない場合（初回・外部でのベースの書き換え）と、在庫・天気は、前回の row_id と今の全行を比べます。
+ * 元ファイルのスタンプが前回と同じなら何も読まずに終わります。
+ */
+public final class DeltaExporter {
+
+    /** 差分エクスポートの対象 */
+    public enum Table {
+        SALES("sales", SalesJournal.COLUMNS,
+                "date", "store", "item", "sold", "waste", "returned", "return_reason", "cost_price", "price"),
+        INVENTORY("inventory", 8, "date", "store", "item", "expiry", "stock", "reorder_point", "status", "notes"),
+        WEATHER("weather", 4, "date", "weather", "temperature", "memo");
+
+        final String name;
+        final int columns;
+        final String[] header;
+
+        Table(String name, int columns, String... header) {
+            this.name = name;
+            this.columns = columns;
+            this.header = header;
+        }
+
+        private Path source() {
+            return this == INVENTORY ? AppFiles.INVENTORY_TSV : AppFiles.WEATHER_TSV;
+        }
+    }
+
+    /** 1 回分の結果（変更がなければ number は前回のまま、file は null） */
+    public static final class Result {
+        public final Table table;
+        public final int number;
+        public final Path file;
+        public final String mode;
+        public final long adds, deletes;
+
+        Result(Table table, int number, Path file, String mode, long adds, long deletes) {
+            this.table = table;
+            this.number = number;
+            this.file = file;
+            this.mode = mode;
+            this.adds = adds;
+            this.deletes = deletes;
+        }
+    }
+
+    private static final Path DIR = AppFiles.DELTA_DIR;
+
+    /** マニフェストの最終行（前回の水位線） */
+    private static final class Mark {
+        final int number;
+        final long seq;
+        final String stamp;
+
+        Mark(int number, long seq, String stamp) {
+            this.number = number;
+            this.seq = seq;
+            this.stamp = stamp;
+        }
+    }
+
+    private DeltaExporter() {}
+
+    /** 前回以降の差分を書き出します */
+    public static Result export(Table table) throws IOException {
+        Files.createDirectories(DIR);
+        return table == Table.SALES ? SalesJournal.withReadLock(DeltaExporter::exportSales) : exportFile(table);
+    }
+
+    // ===== 販売実績 =====
+
+    /** 販売実績の読み取りロックを保持して呼ぶ（この間はコンパクションも追記も入らない） */
+    private static Result exportSales() throws IOException {
+        Table t = Table.SALES;
+        Mark last = lastMark(t);
+        String stamp = SalesJournal.baseStamp();
+        // 変更履歴を読み、前回の連番より後の操作を集める
+        long[] maxSeq = {last == null ? 0 : last.seq};
+        long[] seen = {Long.MIN_VALUE};
+        long[] coveredFrom = {Long.MAX_VALUE};
+        String[] expected = {last == null ? null : last.stamp};
+        List<String> ops = new ArrayList<>();
+        SalesJournal.forEachChange(r -> {
+            if (r.size() < 2) return;
+            long seq;
+            try {
+                seq = r.getLong(0);
+            } catch (NumberFormatException ex) {
+                return;
+            }
+            String op = r.getString(1);
+            if ("C".equals(op)) {
+                coveredFrom[0] = Math.min(coveredFrom[0], seq);
+                if (last != null && seq >= last.seq && r.size() >= 3) expected[0] = r.getString(2);
+            }
+            if (seq > maxSeq[0]) maxSeq[0] = seq;
+            if (seq <= seen[0] && !"C".equals(op)) return;   // 控えとジャーナルで重なった分
+            if (!"C".equals(op)) seen[0] = seq;
+            if (last == null || seq <= last.seq) return;
+            if (("A".equals(op) || "D".equals(op)) && r.size() >= 2 + t.columns) ops.add(op + "\t" + r.join(2, t.columns));
+        });
+        // 変更履歴が前回の連番から続いていて、ベースも変更履歴どおりなら差分だけで済む
+        boolean journal = last != null && last.seq >= 0 && coveredFrom[0] <= last.seq && stamp.equals(expected[0]);
+        Result result;
+        if (journal) {
+            if (!ops.isEmpty()) result = writeOps(t, last, ops, maxSeq[0], stamp);
+            else if (maxSeq[0] == last.seq && stamp.equals(last.stamp)) result = unchanged(t, last);
+            else result = unchanged(t, last, maxSeq[0], stamp);
+        } else {
+            result = writeSnapshotDiff(t, last, SalesJournal::forEachRow, maxSeq[0], stamp);
+        }
+        // 次回はここから（それ以前の控えは不要）
+        SalesJournal.startChangelog(maxSeq[0]);
+        return result;
+    }
+
+    /** ジャーナルの操作をそのまま差分にします（D も内容つき） */
+    private static Result writeOps(Table t, Mark last, List<String> ops, long seq, String stamp) throws IOException {
+        int number = last.number + 1;
+        long[] added = new long[ops.size()], removed = new long[ops.size()];
+        int na = 0, nd = 0;
+        Path file = deltaFile(t, number);
+        Path tmp = tmp(file);
+        try (BufferedWriter w = Files.newBufferedWriter(tmp, AppFiles.CHARSET)) {
+            writeHeader(w, t);
+            for (String op : ops) {
+                String line = op.substring(2);
+                long id = rowId(line);
+                if (op.charAt(0) == 'A') added[na++] = id;
+                else removed[nd++] = id;
+                w.write(op.charAt(0) + "\t" + hex(id) + "\t" + line);
+                w.newLine();
+            }
+        }
+        long[] rows = applyOps(readRows(t, last.number), Arrays.copyOf(added, na), Arrays.copyOf(removed, nd));
+        return commit(t, number, tmp, file, "journal", na, nd, rows, seq, stamp, last);
+    }
+
+    // ===== 在庫・天気 =====
+
+    private static Result exportFile(Table t) throws IOException {
+        Path source = t.source();
+        Mark last = lastMark(t);
+        String stamp = FileSummary.stamp(source);
+        if (last != null && stamp.equals(last.stamp)) return unchanged(t, last);
+        return writeSnapshotDiff(t, last, h -> {
+            if (Files.exists(source)) TsvReader.forEach(source, h);
+        }, -1, stamp);
+    }
+
+    // ===== 全行の比較 =====
+
+    private interface Source {
+        void forEach(TsvReader.RowHandler handler) throws IOException;
+    }
+
+    /**
+     * 今の全行の row_id を前回の row_id と比べ、増えた行（A、内容つき）と減った行（D、row_id のみ）を書きます。
+     * 前回がなければ全行を A で書きます（方式 full）。
+     */
+    private static Result writeSnapshotDiff(Table t, Mark last, Source source, long seq, String stamp) throws IOException {
+        long[][] ids = {new long[1024]};
+        int[] n = {0};
+        source.forEach(r -> {
+            if (r.isBlank()) return;
+            if (n[0] == ids[0].length) ids[0] = Arrays.copyOf(ids[0], n[0] * 2);
+            ids[0][n[0]++] = rowId(columns(r, t.columns));
+        });
+        long[] current = Arrays.copyOf(ids[0], n[0]);
+        Arrays.sort(current);
+        long[] previous = last == null ? new long[0] : readRows(t, last.number);
+        long[] added = subtract(current, previous), removed = subtract(previous, current);
+        if (last != null && added.length == 0 && removed.length == 0) return unchanged(t, last, seq, stamp);
+
+        int number = last == null ? 1 : last.number + 1;
+        Path file = deltaFile(t, number);
+        Path tmp = tmp(file);
+        // 同じ row_id が複数あるときは増えた数だけ書く
+        int[] remaining = counts(added);
+        long[] addedKeys = distinct(added);
+        try (BufferedWriter w = Files.newBufferedWriter(tmp, AppFiles.CHARSET)) {
+            writeHeader(w, t);
+            if (added.length > 0) {
+                source.forEach(r -> {
+                    if (r.isBlank()) return;
+                    String line = columns(r, t.columns);
+                    long id = rowId(line);
+                    int k = Arrays.binarySearch(addedKeys, id);
+                    if (k < 0 || remaining[k] == 0) return;
+                    remaining[k]--;
+                    w.write("A\t" + hex(id) + "\t" + line);
+                    w.newLine();
+                });
+            }
+            String empty = "\t".repeat(t.columns - 1);
+            for (long id : removed) {
+                w.write("D\t" + hex(id) + "\t" + empty);
+                w.newLine();
+            }
+        }
+        return commit(t, number, tmp, file, last == null ? "full" : "snapshot", added.length, removed.length,
+                current, seq, stamp, last);
+    }
+
+    // ===== 確定 =====
+
+    /** row_id 一覧を書き、マニフェストへ追記して差分を確定します。古い row_id 一覧は消す */
+    private static Result commit(Table t, int number, Path tmp, Path file, String mode, long adds, long deletes,
+                                 long[] rows, long seq, String stamp, Mark last) throws IOException {
+        AtomicFile.commit(tmp, file);
+        ByteBuffer b = ByteBuffer.allocate(rows.length * 8).order(ByteOrder.LITTLE_ENDIAN);
+        for (long id : rows) b.putLong(id);
+        AtomicFile.write(rowsFile(t, number), b.array());
+        String line = number + "\t" + file.getFileName() + "\t"
+                + LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME) + "\t" + mode + "\t"
+                + adds + "\t" + deletes + "\t" + seq + "\t" + stamp + "\n";
+        AtomicFile.append(manifest(t), line.getBytes(AppFiles.CHARSET));
+        if (last != null) Files.deleteIfExists(rowsFile(t, last.number));
+        AppLogger.info("delta export " + t.name + " #" + number + " (" + mode + "): +" + adds + " -" + deletes);
+        return new Result(t, number, file, mode, adds, deletes);
+    }
+
+    private static Result unchanged(Table t, Mark last) {
+        return new Result(t, last.number, null, "unchanged", 0, 0);
+    }
+
+    /** 内容は同じだがスタンプ・連番が進んだ場合：水位線だけ進める（差分ファイルは作らない） */
+    private static Result unchanged(Table t, Mark last, long seq, String stamp) throws IOException {
+        String line = last.number + "\t-\t" + LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME)
+                + "\tunchanged\t0\t0\t" + seq + "\t" + stamp + "\n";
+        AtomicFile.append(manifest(t), line.getBytes(AppFiles.CHARSET));
+        return unchanged(t, last);
+    }
+
+    /** マニフェストの最終行（なければ null） */
+    private static Mark lastMark(Table t) throws IOException {
+        Path m = manifest(t);
+        if (!Files.exists(m)) return null;
+        Mark[] last = {null};
+        TsvReader.forEach(m, r -> {
+            if (r.size() < 8) return;
+            try {
+                last[0] = new Mark(r.getInt(0), r.getLong(6), r.getString(7));
+            } catch (NumberFormatException ex) {
+                // 壊れた行は読み飛ばす
+            }
+        });
+        return last[0];
+    }
+
+    private static long[] readRows(Table t, int number) throws IOException {
+        Path f = rowsFile(t, number);
+        if (!Files.exists(f)) throw new IOException("missing row ids for " + t.name + " #" + number + ": " + f);
+        ByteBuffer b = ByteBuffer.wrap(Files.readAllBytes(f)).order(ByteOrder.LITTLE_ENDIAN);
+        long[] rows = new long[b.remaining() / 8];
+        for (int i = 0; i < rows.length; i++) rows[i] = b.getLong();
+        return rows;
+    }
+
+    // ===== row_id の多重集合（並べた long[]） =====
+
+    /** a − b（どちらも昇順、同じ値は個数で数える） */
+    private static long[] subtract(long[] a, long[] b) {
+        long[] out = new long[a.length];
+        int n = 0, j = 0;
+        for (long v : a) {
+            while (j < b.length && b[j] < v) j++;
+            if (j < b.length && b[j] == v) j++;
+            else out[n++] = v;
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    /** rows ＋ added − removed（added / removed は未整列でよい） */
+    private static long[] applyOps(long[] rows, long[] added, long[] removed) {
+        Arrays.sort(added);
+        Arrays.sort(removed);
+        long[] merged = new long[rows.length + added.length];
+        int i = 0, j = 0, n = 0;
+        while (i < rows.length || j < added.length) {
+            if (j == added.length || (i < rows.length && rows[i] <= added[j])) merged[n++] = rows[i++];
+            else merged[n++] = added[j++];
+        }
+        return subtract(merged, removed);
+    }
+
+    private static long[] distinct(long[] sorted) {
+        long[] out = new long[sorted.length];
+        int n = 0;
+        for (int i = 0; i < sorted.length; i++) if (i == 0 || sorted[i] != sorted[i - 1]) out[n++] = sorted[i];
+        return Arrays.copyOf(out, n);
+    }
+
+    /** distinct(sorted) と同じ並びで各値の個数 */
+    private static int[] counts(long[] sorted) {
+        int[] out = new int[sorted.length];
+        int n = -1;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) n++;
+            out[n]++;
+        }
+        return Arrays.copyOf(out, n + 1);
+    }
+
+    /** 行（タブ区切りの列）の 64 ビットハッシュ（FNV-1a を攪拌したもの） */
+    static long rowId(String line) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : line.getBytes(AppFiles.CHARSET)) {
+            h ^= b & 0xFF;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /** 先頭 n 列をタブ区切りで（足りない列は空、余分な列は落とす） */
+    private static String columns(TsvReader.Row r, int n) {
+        if (r.size() >= n) return r.join(0, n);
+        return r.join(0, r.size()) + "\t".repeat(n - r.size());
+    }
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /** 16 桁の 16 進（String.format は行ごとには重い） */
+    private static String hex(long id) {
+        char[] c = new char[16];
+        for (int i = 15; i >= 0; i--, id >>>= 4) c[i] = HEX[(int) (id & 0xF)];
+        return new String(c);
+    }
+
+    private static void writeHeader(BufferedWriter w, Table t) throws IOException {
+        w.write("op\trow_id\t" + String.join("\t", t.header));
+        w.newLine();
+    }
+
+    private static Path deltaFile(Table t, int number) {
+        return DIR.resolve(String.format("%s.%06d.tsv", t.name, number));
+    }
+
+    private static Path rowsFile(Table t, int number) {
+        return DIR.resolve(String.format("%s.%06d.rows", t.name, number));
+    }
+
+    private static Path manifest(Table t) {
+        return DIR.resolve(t.name + ".manifest.tsv");
+    }
+
+    private static Path tmp(Path file) {
+        return file.resolveSibling(file.getFileName() + ".tmp");
+    }
+}
@@ -0,0 +1,426 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * 店舗×商品ごとの需要予測（画面に依存しない）。
+ *
+ * モデルは曜日の季節性つき指数平滑（加法型 Holt-Winters、トレンドなし）に、気温の回帰項を足したものです。
+ * <pre>
+ *   予測 = 水準 + 曜日成分[曜日] + 係数 × (気温 − 平均気温)
+ * </pre>
+ * 係数は忘却つきの逐次最小二乗で更新し、平滑化係数（水準・曜日）は系列ごとに候補から 1 期先誤差の小さいものを選びます。
+ * 状態は系列ごとの数個の double なので、新しい日の分は前回の状態から続けて更新するだけで済みます（{@link #update}）。
+ *
+ * 学習に使うのは昨日までの日（当日はまだ入力中のため）で、販売実績は前回より後の日の分だけを読みます
+ * （月別パーティションなら該当する月だけ）。過去の日の修正は {@link #rebuild} で全件から当て直したときに反映されます。
+ * 系列ごとの計算は独立しているので、並列に行います。状態は forecast.state に保存します。
+ */
+public final class DemandForecaster {
+
+    private static final Path FILE = AppFiles.FORECAST_STATE;
+    private static final int STATE_VERSION = 1;
+
+    /** 水準・曜日成分の平滑化係数の候補 */
+    private static final double[] ALPHAS = {0.05, 0.1, 0.2, 0.4};
+    private static final double[] GAMMAS = {0.05, 0.15, 0.3};
+    /** 気温係数の忘却率（1 日あたり） */
+    private static final double FORGET = 0.98;
+    /** 初期値を決める日数と、誤差に数えない立ち上がりの日数 */
+    private static final int INIT_DAYS = 28;
+    private static final int WARMUP = 14;
+
+    /** 1 系列の状態の並び（double 配列の添字） */
+    private static final int LEVEL = 0, SEASON = 1, SXX = 8, SXY = 9, SSE = 10, OBS = 11, STATE = 12;
+
+    private static final Object LOCK = new Object();
+    private static Model current;
+
+    private DemandForecaster() {}
+
+    /** 当て終えたモデル（取得後は変わらない） */
+    public static final class Model {
+        private final KeyDictionary series;
+        private final long through;
+        private final double tempMean;
+        private final double[] alpha, gamma;
+        private final double[] state;
+        private Temperatures temps;
+
+        private Model(KeyDictionary series, int size, long through, double tempMean) {
+            this.series = series;
+            this.through = through;
+            this.tempMean = tempMean;
+            alpha = new double[size];
+            gamma = new double[size];
+            state = new double[size * STATE];
+        }
+
+        public int size() { return alpha.length; }
+
+        /** 学習に使った最後の日（エポック日。データがなければ {@link TsvReader#NO_DATE}） */
+        public long through() { return through; }
+
+        public String store(int i) {
+            String key = series.name(i);
+            return key.substring(0, key.indexOf('\t'));
+        }
+
+        public String item(int i) {
+            String key = series.name(i);
+            return key.substring(key.indexOf('\t') + 1);
+        }
+
+        /** 店舗×商品の系列番号（なければ -1） */
+        public int find(String store, String item) {
+            int id = series.find(store + "\t" + item);
+            return id < size() ? id : -1;
+        }
+
+        /** day（エポック日）の販売数の予測。気温は weather.tsv にその日があれば使う */
+        public double predict(int i, long day) {
+            int s = i * STATE;
+            double v = state[s + LEVEL] + state[s + SEASON + Aggregates.WeekdayDemand.weekday(day)]
+                    + beta(state, s) * temps.x(day, tempMean);
+            return Math.max(0, v);
+        }
+
+        /** 1 期先予測の誤差（二乗平均平方根、立ち上がりを除く。日数が足りなければ NaN） */
+        public double error(int i) {
+            int s = i * STATE;
+            double n = state[s + OBS] - WARMUP;
+            return n > 0 ? Math.sqrt(state[s + SSE] / n) : Double.NaN;
+        }
+    }
+
+    /** 前回の状態から、新しい日の分だけ当て直します（状態がなければ全件から） */
+    public static Model update() throws IOException {
+        synchronized (LOCK) {
+            if (current == null) current = load();
+            if (current == null) return rebuild();
+            Temperatures temps = Temperatures.read();
+            long from = current.through == TsvReader.NO_DATE ? TsvReader.NO_DATE : current.through + 1;
+            DailySales sales = new DailySales(from, lastClosedDay());
+            if (from == TsvReader.NO_DATE) AggregationEngine.scanSales(sales);
+            else SalesJournal.forEachRowInRange(from, sales.to, sales::accept);
+            if (sales.maxDay == TsvReader.NO_DATE) {
+                current.temps = temps;
+                return current;
+            }
+            long t0 = System.nanoTime();
+            current = advance(current, sales, temps);
+            save(current);
+            AppLogger.info("demand forecast updated through " + LocalDate.ofEpochDay(current.through) + ": "
+                    + current.size() + " series, " + (System.nanoTime() - t0) / 1_000_000 + " ms");
+            return current;
+        }
+    }
+
+    /** 販売実績の全件から当て直します（過去の日の修正を反映する） */
+    public static Model rebuild() throws IOException {
+        synchronized (LOCK) {
+            Temperatures temps = Temperatures.read();
+            DailySales sales = new DailySales(TsvReader.NO_DATE, lastClosedDay());
+            AggregationEngine.scanSales(sales);
+            long t0 = System.nanoTime();
+            Model empty = new Model(new KeyDictionary(), 0, TsvReader.NO_DATE, temps.mean());
+            current = sales.maxDay == TsvReader.NO_DATE ? empty : advance(empty, sales, temps);
+            current.temps = temps;
+            save(current);
+            AppLogger.info("demand forecast rebuilt: " + current.size() + " series, "
+                    + (System.nanoTime() - t0) / 1_000_000 + " ms");
+            return current;
+        }
+    }
+
+    /** 当日は入力中なので、学習は昨日まで */
+    private static long lastClosedDay() {
+        return LocalDate.now().toEpochDay() - 1;
+    }
+
+    // ===== 当てはめ =====
+
+    /** prev の状態を sales の日（prev.through の翌日〜sales.maxDay）で進めた新しいモデル。新しい系列は最初から当てる */
+    private static Model advance(Model prev, DailySales sales, Temperatures temps) {
+        KeyDictionary keys = new KeyDictionary();
+        for (int i = 0; i < prev.size(); i++) keys.idOf(prev.series.bytes(i), 0, prev.series.bytes(i).length);
+        int[] history = new int[prev.size()];
+        Arrays.fill(history, -1);
+        for (int h = 0; h < sales.keys.size(); h++) {
+            if (sales.values[h] == null) continue;
+            int id = keys.idOf(sales.keys.bytes(h), 0, sales.keys.bytes(h).length);
+            if (id >= history.length) history = Arrays.copyOf(history, Math.max(id + 1, history.length * 2));
+            history[id] = h;
+        }
+        int size = keys.size();
+        long end = Math.max(prev.through, sales.maxDay);
+        Model m = new Model(keys, size, end, prev.tempMean);
+        m.temps = temps;
+        System.arraycopy(prev.alpha, 0, m.alpha, 0, prev.size());
+        System.arraycopy(prev.gamma, 0, m.gamma, 0, prev.size());
+        System.arraycopy(prev.state, 0, m.state, 0, prev.state.length);
+        int[] hist = history;
+        IntStream.range(0, size).parallel().forEach(i -> {
+            int h = i < hist.length ? hist[i] : -1;
+            if (i < prev.size()) {
+                for (long day = prev.through + 1; day <= end; day++) {
+                    step(m.state, i * STATE, m.alpha[i], m.gamma[i], sales.sold(h, day), temps.x(day, m.tempMean), day);
+                }
+            } else {
+                fit(m, i, sales, h, end, temps);
+            }
+        });
+        return m;
+    }
+
+    /** 系列 i を初めから当てます。平滑化係数は候補のうち 1 期先誤差が最小のもの */
+    private static void fit(Model m, int i, DailySales sales, int h, long end, Temperatures temps) {
+        long first = sales.first[h];
+        double[] trial = new double[STATE];
+        double best = Double.MAX_VALUE;
+        for (double a : ALPHAS) {
+            for (double g : GAMMAS) {
+                run(trial, a, g, sales, h, first, end, temps, m.tempMean);
+                double sse = trial[SSE];
+                if (sse < best) {
+                    best = sse;
+                    m.alpha[i] = a;
+                    m.gamma[i] = g;
+                }
+            }
+        }
+        run(trial, m.alpha[i], m.gamma[i], sales, h, first, end, temps, m.tempMean);
+        System.arraycopy(trial, 0, m.state, i * STATE, STATE);
+    }
+
+    /** 初期化してから first〜end を順に当てた状態を st へ */
+    private static void run(double[] st, double alpha, double gamma, DailySales sales, int h, long first, long end,
+                            Temperatures temps, double tempMean) {
+        Arrays.fill(st, 0);
+        // 水準は最初の数週の平均、曜日成分はその曜日の平均との差
+        long initEnd = Math.min(end, first + INIT_DAYS - 1);
+        double[] sum = new double[7];
+        int[] count = new int[7];
+        double total = 0;
+        for (long day = first; day <= initEnd; day++) {
+            int wd = Aggregates.WeekdayDemand.weekday(day);
+            int y = sales.sold(h, day);
+            sum[wd] += y;
+            count[wd]++;
+            total += y;
+        }
+        st[LEVEL] = total / (initEnd - first + 1);
+        for (int wd = 0; wd < 7; wd++) if (count[wd] > 0) st[SEASON + wd] = sum[wd] / count[wd] - st[LEVEL];
+        for (long day = first; day <= end; day++) {
+            step(st, 0, alpha, gamma, sales.sold(h, day), temps.x(day, tempMean), day);
+        }
+    }
+
+    /** 1 日分の更新（st[s..s+STATE) が 1 系列の状態） */
+    private static void step(double[] st, int s, double alpha, double gamma, double y, double x, long day) {
+        int wd = SEASON + Aggregates.WeekdayDemand.weekday(day);
+        double r = y - st[s + LEVEL] - st[s + wd];   // 気温以外で説明できない分
+        double e = r - beta(st, s) * x;               // 1 期先の誤差
+        if (st[s + OBS]++ >= WARMUP) st[s + SSE] += e * e;
+        st[s + LEVEL] += alpha * e;
+        st[s + wd] += gamma * (1 - alpha) * e;
+        st[s + SXX] = FORGET * st[s + SXX] + x * x;
+        st[s + SXY] = FORGET * st[s + SXY] + x * r;
+    }
+
+    private static double beta(double[] st, int s) {
+        return st[s + SXX] > 0 ? st[s + SXY] / st[s + SXX] : 0;
+    }
+
+    // ===== 日別の販売数 =====
+
+    /** 店舗×商品ごとの日別販売数（[from, to] の日のみ）。並列走査用に合流できる */
+    private static final class DailySales implements AggregationEngine.Mergeable {
+        final KeyDictionary keys = new KeyDictionary();
+        final long from, to;
+        int[][] values = new int[16][];
+        long[] first = new long[16];
+        long maxDay = TsvReader.NO_DATE;
+
+        DailySales(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override public void accept(TsvReader.Row row) {
+            if (row.size() < 4) return;
+            long day = row.getEpochDay(0);
+            if (day == TsvReader.NO_DATE || day < from || day > to) return;
+            add(row.intern(1, 2, keys), day, row.getInt(3, 0));
+        }
+
+        private void add(int id, long day, int sold) {
+            if (id >= values.length) {
+                int n = Math.max(id + 1, values.length * 2);
+                values = Arrays.copyOf(values, n);
+                first = Arrays.copyOf(first, n);
+            }
+            int[] v = values[id];
+            if (v == null) {
+                v = values[id] = new int[32];
+                first[id] = day;
+            } else if (day < first[id]) {
+                // 前へ伸ばす（並列走査では後ろの範囲から来ることがある）
+                int shift = (int) (first[id] - day);
+                int[] w = new int[v.length + Math.max(shift, v.length)];
+                System.arraycopy(v, 0, w, w.length - v.length, v.length);
+                first[id] -= w.length - v.length;
+                v = values[id] = w;
+            }
+            int at = (int) (day - first[id]);
+            if (at >= v.length) v = values[id] = Arrays.copyOf(v, Math.max(at + 1, v.length * 2));
+            v[at] += sold;
+            if (day > maxDay) maxDay = day;
+        }
+
+        /** h が -1（この期間に行のない系列）なら 0 */
+        int sold(int h, long day) {
+            if (h < 0) return 0;
+            long at = day - first[h];
+            return at >= 0 && at < values[h].length ? values[h][(int) at] : 0;
+        }
+
+        @Override public AggregationEngine.Mergeable emptyCopy() { return new DailySales(from, to); }
+
+        @Override public void mergeFrom(AggregationEngine.Mergeable other) {
+            DailySales o = (DailySales) other;
+            for (int h = 0; h < o.keys.size(); h++) {
+                int[] v = o.values[h];
+                if (v == null) continue;
+                int id = keys.idOf(o.keys.bytes(h), 0, o.keys.bytes(h).length);
+                for (int k = 0; k < v.length; k++) if (v[k] != 0) add(id, o.first[h] + k, v[k]);
+                if (id >= values.length || values[id] == null) add(id, o.first[h], 0);
+            }
+            if (o.maxDay > maxDay) maxDay = o.maxDay;
+        }
+    }
+
+    // ===== 気温 =====
+
+    /** weather.tsv の日別の気温（ない日は NaN） */
+    private static final class Temperatures {
+        private final long base;
+        private final double[] values;
+
+        private Temperatures(long base, double[] values) {
+            this.base = base;
+            this.values = values;
+        }
+
+        /** 日付の範囲を求めてから配列に読む（天気は 1 日 1 行なので小さい） */
+        static Temperatures read() throws IOException {
+            if (!Files.exists(AppFiles.WEATHER_TSV)) return new Temperatures(0, new double[0]);
+            long[] range = {Long.MAX_VALUE, Long.MIN_VALUE};
+            TsvReader.forEach(AppFiles.WEATHER_TSV, row -> {
+                long day = row.size() < 3 ? TsvReader.NO_DATE : row.getEpochDay(0);
+                if (day == TsvReader.NO_DATE) return;
+                range[0] = Math.min(range[0], day);
+                range[1] = Math.max(range[1], day);
+            });
+            if (range[0] > range[1]) return new Temperatures(0, new double[0]);
+            double[] v = new double[(int) (range[1] - range[0] + 1)];
+            Arrays.fill(v, Double.NaN);
+            TsvReader.forEach(AppFiles.WEATHER_TSV, row -> {
+                long day = row.size() < 3 ? TsvReader.NO_DATE : row.getEpochDay(0);
+                if (day == TsvReader.NO_DATE) return;
+                try {
+                    v[(int) (day - range[0])] = Double.parseDouble(row.getString(2).trim());
+                } catch (NumberFormatException ex) {
+                    // 未入力（"-" など）
+                }
+            });
+            return new Temperatures(range[0], v);
+        }
+
+        double mean() {
+            double sum = 0;
+            int n = 0;
+            for (double t : values) {
+                if (Double.isNaN(t)) continue;
+                sum += t;
+                n++;
+            }
+            return n == 0 ? 0 : sum / n;
+        }
+
+        /** 回帰に使う値（平均気温との差、記録のない日は 0 = 影響なし） */
+        double x(long day, double mean) {
+            long at = day - base;
+            if (at < 0 || at >= values.length) return 0;
+            double t = values[(int) at];
+            return Double.isNaN(t) ? 0 : t - mean;
+        }
+    }
+
+    // ===== 保存 =====
+
+    /**
+     * 1 行目は「#forecast \t 版 \t 学習した最後の日 \t 平均気温」、以降は 1 系列 1 行で
+     * 店舗 \t 商品 \t α \t γ \t 水準 \t 曜日成分×7 \t Sxx \t Sxy \t 誤差二乗和 \t 日数。
+     */
+    private static void save(Model m) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("#forecast\t").append(STATE_VERSION).append('\t')
+          .append(m.through == TsvReader.NO_DATE ? "-" : LocalDate.ofEpochDay(m.through).toString())
+          .append('\t').append(m.tempMean).append('\n');
+        for (int i = 0; i < m.size(); i++) {
+            sb.append(m.series.name(i)).append('\t').append(m.alpha[i]).append('\t').append(m.gamma[i]);
+            for (int k = 0; k < STATE; k++) sb.append('\t').append(m.state[i * STATE + k]);
+            sb.append('\n');
+        }
+        try {
+            AtomicFile.write(FILE, sb.toString().getBytes(AppFiles.CHARSET));
+        } catch (IOException ex) {
+            // 保存できなくても予測は使える（次回は全件から当て直す）
+            AppLogger.error("forecast state save error", ex);
+        }
+    }
+
+    /** 保存済みの状態（なし・版違い・壊れている場合は null） */
+    private static Model load() throws IOException {
+        if (!Files.exists(FILE)) return null;
+        KeyDictionary keys = new KeyDictionary();
+        long[] through = {TsvReader.NO_DATE};
+        double[] tempMean = {0};
+        double[][] rows = {new double[64 * (STATE + 2)]};
+        boolean[] ok = {false};
+        try {
+            TsvReader.forEach(FILE, row -> {
+                if (row.isBlank()) return;
+                if (row.getString(0).equals("#forecast")) {
+                    ok[0] = row.size() >= 4 && row.getInt(1, -1) == STATE_VERSION;
+                    if (!row.getString(2).equals("-")) through[0] = row.getEpochDay(2);
+                    tempMean[0] = Double.parseDouble(row.getString(3));
+                    return;
+                }
+                if (row.size() < 4 + STATE) throw new IllegalStateException("short row");
+                int id = row.intern(0, 2, keys);
+                if (id != keys.size() - 1) throw new IllegalStateException("duplicate series");
+                int at = id * (STATE + 2);
+                if (at + STATE + 2 > rows[0].length) rows[0] = Arrays.copyOf(rows[0], rows[0].length * 2);
+                for (int k = 0; k < STATE + 2; k++) rows[0][at + k] = Double.parseDouble(row.getString(2 + k));
+            });
+        } catch (RuntimeException ex) {
+            AppLogger.warn("forecast state is broken, rebuilding: " + ex);
+            return null;
+        }
+        if (!ok[0]) return null;
+        Model m = new Model(keys, keys.size(), through[0], tempMean[0]);
+        for (int i = 0; i < m.size(); i++) {
+            int at = i * (STATE + 2);
+            m.alpha[i] = rows[0][at];
+            m.gamma[i] = rows[0][at + 1];
+            System.arraycopy(rows[0], at + 2, m.state, i * STATE, STATE);
+        }
+        m.temps = Temperatures.read();
+        return m;
+    }
+}
@@ -0,0 +1,180 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 在庫の賞味期限の索引と、廃棄リスクの見積もり（画面に依存しない）。
+ *
+ * 在庫行を「店舗×期限日」の順に並べた木（キーは 店舗 ID &lt;&lt; 32 | 期限のエポック日）に、
+ * 同じ店舗・商品・期限の行をまとめたロットとして持ちます。
+ * 「この店舗で N 日以内に期限が来るもの」は木の範囲を辿るだけなので、表全体を並べ替えずに結果の件数に比例した時間で求まります。
+ *
+ * 在庫の保存のたびに {@link #update} で削除行・追加行を反映します。外部でファイルが変わったときなど、
+ * 索引が inventory.tsv（サイズと更新日時）と合わなければ、次の問い合わせで全件から作り直します（保存はしない）。
+ * 期限が読めない行は索引に入れません。
+ */
+public final class ExpiryIndex {
+
+    /** 期限の近いロット 1 件と、その廃棄リスク */
+    public static final class Lot {
+        public final String store, item;
+        /** 期限（エポック日）と、今日から数えた残り日数 */
+        public final long expiry;
+        public final int daysLeft;
+        public final int stock;
+        /** 今日から期限日までの予測販売数（同じ商品で先に期限が来るロットが売った分を差し引いた、このロットに回る分） */
+        public final double sellThrough;
+        /** 売れ残りの見込み数と、在庫に対する割合（0〜1。予測がない商品は 1） */
+        public final int atRisk;
+        public final double score;
+
+        Lot(String store, String item, long expiry, int daysLeft, int stock, double sellThrough) {
+            this.store = store;
+            this.item = item;
+            this.expiry = expiry;
+            this.daysLeft = daysLeft;
+            this.stock = stock;
+            this.sellThrough = sellThrough;
+            this.atRisk = (int) Math.ceil(Math.max(0, stock - sellThrough));
+            this.score = (double) atRisk / stock;
+        }
+    }
+
+    private static final Object LOCK = new Object();
+    private static final KeyDictionary STORES = new KeyDictionary();
+    /** 店舗×期限日 → 商品名 → {在庫数, 行数} */
+    private static final TreeMap<Long, Map<String, int[]>> LOTS = new TreeMap<>();
+    /** 索引が対応している inventory.tsv（null なら未作成） */
+    private static String stamp;
+
+    private ExpiryIndex() {}
+
+    /**
+     * 在庫ファイルを書き込み、削除行・追加行（8 列のタブ区切り）を索引へ反映します。
+     * 書き込み前から索引が古ければ何もしない（次の問い合わせで作り直す）。
+     */
+    public static void update(MaterializedAggregates.Write write, List<String> removed, List<String> added) throws IOException {
+        synchronized (LOCK) {
+            boolean current = stamp != null && stamp.equals(FileSummary.stamp(AppFiles.INVENTORY_TSV));
+            write.run();
+            if (!current) return;
+            try {
+                for (String line : removed) apply(line, -1);
+                for (String line : added) apply(line, 1);
+                stamp = FileSummary.stamp(AppFiles.INVENTORY_TSV);
+            } catch (IOException | RuntimeException ex) {
+                AppLogger.error("expiry index update error", ex);
+                stamp = null;
+            }
+        }
+    }
+
+    /**
+     * 今日から days 日後までに期限が来るロット（店舗、期限、商品の順）。store が null ならすべての店舗。
+     * forecast があれば予測販売数から売れ残りを見積もり、なければ（または系列がなければ）在庫すべてを売れ残りとみなします。
+     * 同じ商品の中では期限の近いロットから売れる（先入れ先出し）ものとします。
+     */
+    public static List<Lot> expiring(long today, int days, String store, DemandForecaster.Model forecast) throws IOException {
+        List<Lot> out = new ArrayList<>();
+        synchronized (LOCK) {
+            ensureCurrent();
+            if (store != null) {
+                int id = STORES.find(store);
+                if (id >= 0) collect(id, today, today + days, forecast, out);
+            } else {
+                for (int id = 0; id < STORES.size(); id++) collect(id, today, today + days, forecast, out);
+            }
+        }
+        return out;
+    }
+
+    /** 商品ごとの、今日以降で最も近い期限 {エポック日, その日の在庫数}（全店舗。在庫 0 のロットは除く） */
+    public static Map<String, long[]> nearest(long today) throws IOException {
+        Map<String, long[]> out = new HashMap<>();
+        synchronized (LOCK) {
+            ensureCurrent();
+            for (int id = 0; id < STORES.size(); id++) {
+                for (Map.Entry<Long, Map<String, int[]>> e : LOTS.subMap(key(id, today), true, key(id, Integer.MAX_VALUE), true).entrySet()) {
+                    long day = e.getKey() & 0xFFFFFFFFL;
+                    for (Map.Entry<String, int[]> lot : e.getValue().entrySet()) {
+                        if (lot.getValue()[0] <= 0 || lot.getValue()[1] <= 0) continue;
+                        long[] n = out.get(lot.getKey());
+                        if (n == null) out.put(lot.getKey(), new long[]{day, lot.getValue()[0]});
+                        else if (day < n[0]) { n[0] = day; n[1] = lot.getValue()[0]; }
+                        else if (day == n[0]) n[1] += lot.getValue()[0];
+                    }
+                }
+            }
+        }
+        return out;
+    }
+
+    // ===== 内部処理 =====
+
+    /** 1 店舗分。木の範囲を期限順に辿り、商品ごとに累積の予測販売数と、先に期限が来たロットが売った数を持ち回る */
+    private static void collect(int storeId, long from, long to, DemandForecaster.Model forecast, List<Lot> out) {
+        String store = STORES.name(storeId);
+        // 商品 → {予測を足した最後の日, 累積予測, 先に期限が来たロットが売った数}
+        // （売れ残って期限切れになった分は需要を使わないので、後のロットに回る）
+        Map<String, double[]> running = new HashMap<>();
+        for (Map.Entry<Long, Map<String, int[]>> e : LOTS.subMap(key(storeId, from), true, key(storeId, to), true).entrySet()) {
+            long day = e.getKey() & 0xFFFFFFFFL;
+            for (Map.Entry<String, int[]> lot : e.getValue().entrySet()) {
+                int stock = lot.getValue()[0];
+                if (stock <= 0 || lot.getValue()[1] <= 0) continue;
+                String item = lot.getKey();
+                double[] r = running.get(item);
+                if (r == null) running.put(item, r = new double[]{from - 1, 0, 0});
+                int series = forecast == null ? -1 : forecast.find(store, item);
+                if (series >= 0) {
+                    for (long d = (long) r[0] + 1; d <= day; d++) r[1] += forecast.predict(series, d);
+                }
+                r[0] = day;
+                double sellThrough = Math.max(0, Math.min(stock, r[1] - r[2]));
+                r[2] += sellThrough;
+                out.add(new Lot(store, item, day, (int) (day - from), stock, sellThrough));
+            }
+        }
+    }
+
+    private static void ensureCurrent() throws IOException {
+        String now = FileSummary.stamp(AppFiles.INVENTORY_TSV);
+        if (now.equals(stamp)) return;
+        long t0 = System.nanoTime();
+        LOTS.clear();
+        if (Files.exists(AppFiles.INVENTORY_TSV)) {
+            TsvReader.forEach(AppFiles.INVENTORY_TSV, row -> apply(row, 1));
+        }
+        stamp = now;
+        AppLogger.info("expiry index rebuilt: " + LOTS.size() + " store-days, " + (System.nanoTime() - t0) / 1_000_000 + " ms");
+    }
+
+    private static void apply(String line, int sign) throws IOException {
+        TsvReader.forEach((line + "\n").getBytes(AppFiles.CHARSET), row -> apply(row, sign));
+    }
+
+    private static void apply(TsvReader.Row row, int sign) {
+        if (row.isBlank() || row.size() < 5) return;
+        long expiry = row.getEpochDay(3);
+        if (expiry == TsvReader.NO_DATE || expiry < 0) return;
+        long k = key(STORES.idOf(row.getString(1)), expiry);
+        String item = row.getString(2);
+        // まとめられた保存では追加より先に同じ行の削除が来ることがあるので、足し引きの順によらない形にする
+        Map<String, int[]> items = LOTS.computeIfAbsent(k, x -> new TreeMap<>());
+        int[] lot = items.computeIfAbsent(item, x -> new int[2]);
+        lot[0] += sign * row.getInt(4, 0);
+        lot[1] += sign;
+        if (lot[0] == 0 && lot[1] == 0) {
+            items.remove(item);
+            if (items.isEmpty()) LOTS.remove(k);
+        }
+    }
+
+    private static long key(int storeId, long epochDay) {
+        return ((long) storeId << 32) | (epochDay & 0xFFFFFFFFL);
+    }
+}
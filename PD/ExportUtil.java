@@ -1,12 +1,13 @@
 import java.io.*;
 import java.nio.file.*;
 import java.time.LocalDate;
-import java.util.*;
+import java.util.concurrent.CancellationException;
 import javax.swing.*;
 
 /**
  * CSVエクスポート ユーティリティ
  * 在庫・販売・廃棄データを日付範囲で抽出し CSV に出力
+ * 分析用には型付きの列形式（Arrow / Feather v2、pandas.read_feather などで読める）でも出力できます
  */
 public class ExportUtil {
 
@@ -21,7 +22,20 @@ public class ExportUtil {
      * 販売データを CSV でエクスポート
      */
     public static void exportSalesCSV(JFrame parent, LocalDate startDate, LocalDate endDate) {
-        exportTSVtoCSV(parent, Paths.get("sales.tsv"), "sales_export.csv", startDate, endDate);
+        exportTSVtoCSV(parent, AppFiles.SALES_TSV, "sales_export.csv", startDate, endDate);
+    }
+
+    /**
+     * 販売の日別×店舗別の集計を CSV でエクスポート（集計キューブから。元の行は読まない）
+     */
+    public static void exportSalesSummaryCSV(JFrame parent, LocalDate startDate, LocalDate endDate) {
+        if (!SalesJournal.exists()) {
+            JOptionPane.showMessageDialog(parent, "ソースファイルが見つかりません: " + AppFiles.SALES_TSV, "エラー", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        long from = startDate.toEpochDay(), to = endDate.toEpochDay();
+        runExport(parent, AppFiles.SALES_CUBE, "sales_summary_export.csv",
+                (target, progress) -> CsvExporter.exportSalesSummary(target, from, to, progress));
     }
 
     /**
@@ -38,60 +52,113 @@ public class ExportUtil {
         exportTSVtoCSV(parent, AppFiles.STORES_TSV, "stores_export.csv", null, null);
     }
 
+    /**
+     * 販売データを Arrow（Feather v2）でエクスポート（Python / R で型付きのまま速く読める）
+     */
+    public static void exportSalesArrow(JFrame parent) {
+        if (!SalesJournal.exists()) {
+            JOptionPane.showMessageDialog(parent, "ソースファイルが見つかりません: " + AppFiles.SALES_TSV, "エラー", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        runExport(parent, AppFiles.SALES_TSV, "sales_export.arrow", ArrowExporter::exportSales);
+    }
+
+    /**
+     * 在庫データを Arrow でエクスポート
+     */
+    public static void exportInventoryArrow(JFrame parent) {
+        exportArrow(parent, AppFiles.INVENTORY_TSV, "inventory_export.arrow", ArrowExporter::exportInventory);
+    }
+
+    /**
+     * 天気データを Arrow でエクスポート
+     */
+    public static void exportWeatherArrow(JFrame parent) {
+        exportArrow(parent, AppFiles.WEATHER_TSV, "weather_export.arrow", ArrowExporter::exportWeather);
+    }
+
+    /**
+     * 前回以降の差分を delta/ へエクスポート（販売・在庫・天気。変更のない表は書かない）
+     */
+    public static void exportDeltas(JFrame parent) {
+        new SwingWorker<String, Void>() {
+            @Override protected String doInBackground() throws Exception {
+                StringBuilder sb = new StringBuilder();
+                for (DeltaExporter.Table table : DeltaExporter.Table.values()) {
+                    DeltaExporter.Result r = DeltaExporter.export(table);
+                    sb.append(table.name).append(": ");
+                    if (r.file == null) sb.append("変更なし");
+                    else sb.append(r.file.getFileName()).append("（+").append(r.adds).append(" / -").append(r.deletes).append("）");
+                    sb.append('\n');
+                }
+                return sb.toString();
+            }
+
+            @Override protected void done() {
+                try {
+                    JOptionPane.showMessageDialog(parent, "✓ 差分エクスポート完了\n\n" + get() + "\n保存先: " + AppFiles.DELTA_DIR,
+                        "成功", JOptionPane.INFORMATION_MESSAGE);
+                } catch (Exception ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    JOptionPane.showMessageDialog(parent, "差分エクスポート失敗: " + cause.getMessage(), "エラー", JOptionPane.ERROR_MESSAGE);
+                    AppLogger.error("Delta export failed", cause);
+                }
+            }
+        }.execute();
+    }
+
+    private static void exportArrow(JFrame parent, Path sourceFile, String exportName, Task task) {
+        if (!Files.exists(sourceFile)) {
+            JOptionPane.showMessageDialog(parent, "ソースファイルが見つかりません: " + sourceFile, "エラー", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        runExport(parent, sourceFile, exportName, task);
+    }
+
     /**
      * TSV を CSV に変換してエクスポート
      */
     private static void exportTSVtoCSV(JFrame parent, Path sourceFile, String exportName, LocalDate startDate, LocalDate endDate) {
-        if (!Files.exists(sourceFile)) {
+        // 販売実績はベース＋ジャーナルで構成されるため、存在確認も読み込みも SalesJournal 経由
+        boolean sales = AppFiles.SALES_TSV.equals(sourceFile);
+        if (sales ? !SalesJournal.exists() : !Files.exists(sourceFile)) {
             JOptionPane.showMessageDialog(parent, "ソースファイルが見つかりません: " + sourceFile, "エラー", JOptionPane.ERROR_MESSAGE);
             return;
         }
+        long from = startDate == null ? TsvReader.NO_DATE : startDate.toEpochDay();
+        long to = endDate == null ? 0 : endDate.toEpochDay();
+        // 販売実績は期間に重なる月のパーティションだけを読む
+        runExport(parent, sourceFile, exportName, sales
+                ? (target, progress) -> CsvExporter.exportSales(target, from, to, progress)
+                : (target, progress) -> CsvExporter.exportFile(sourceFile, target, from, to, progress));
+    }
+
+    /** 1 回分の書き出し（バックグラウンドで呼ばれる） */
+    private interface Task {
+        long run(Path target, CsvExporter.Progress progress) throws IOException;
+    }
 
-        new javax.swing.SwingWorker<String, Void>() {
+    /** 書き出しは CsvExporter / ArrowExporter がストリーミングで行う（行を溜めない）。進捗表示から中断できる */
+    private static void runExport(JFrame parent, Path sourceFile, String exportName, Task task) {
+        ProgressMonitor monitor = new ProgressMonitor(parent, "エクスポート中: " + sourceFile, null, 0, 100);
+        monitor.setMillisToDecideToPopup(300);
+
+        SwingWorker<String, Void> worker = new SwingWorker<String, Void>() {
             private Exception err;
 
             @Override protected String doInBackground() {
-                try {
-                    List<String> csvLines = new ArrayList<>();
-                    List<String> tsvLines = Files.readAllLines(sourceFile, AppFiles.CHARSET);
-
-                    for (String line : tsvLines) {
-                        if (line.trim().isEmpty()) continue;
-
-                        // 日付フィルター（存在する場合）
-                        if (startDate != null && endDate != null) {
-                            String[] cols = line.split("\t", -1);
-                            if (cols.length > 0) {
-                                try {
-                                    LocalDate recordDate = LocalDate.parse(cols[0]);
-                                    if (recordDate.isBefore(startDate) || recordDate.isAfter(endDate)) {
-                                        continue;
-                                    }
-                                } catch (Exception ex) {
-                                    // date parse failed, include anyway
-                                }
-                            }
-                        }
-
-                        // TSV を CSV に変換（タブをカンマに、クォート処理）
-                        String[] cols = line.split("\t", -1);
-                        StringBuilder csv = new StringBuilder();
-                        for (int i = 0; i < cols.length; i++) {
-                            if (i > 0) csv.append(",");
-                            String col = cols[i];
-                            // クォート処理：カンマやダブルクォートを含む場合
-                            if (col.contains(",") || col.contains("\"") || col.contains("\n")) {
-                                col = "\"" + col.replace("\"", "\"\"") + "\"";
-                            }
-                            csv.append(col);
-                        }
-                        csvLines.add(csv.toString());
+                SwingWorker<String, Void> self = this;
+                CsvExporter.Progress progress = new CsvExporter.Progress() {
+                    @Override public void update(long done, long total) {
+                        setProgress(total <= 0 ? 0 : (int) Math.min(100, done * 100 / total));
                     }
-
-                    // ファイル出力
-                    Path exportPath = Paths.get(exportName);
-                    Files.write(exportPath, csvLines, AppFiles.CHARSET);
+                    @Override public boolean isCancelled() { return self.isCancelled(); }
+                };
+                try {
+                    task.run(Paths.get(exportName), progress);
                     return exportName;
+                } catch (CancellationException ex) {
+                    return null;
                 } catch (Exception ex) {
                     err = ex;
                     return null;
@@ -99,7 +166,10 @@ public class ExportUtil {
             }
 
             @Override protected void done() {
-                if (err != null) {
+                monitor.close();
+                if (isCancelled()) {
+                    AppLogger.info("Export cancelled: " + exportName);
+                } else if (err != null) {
                     JOptionPane.showMessageDialog(parent, "エクスポート失敗: " + err.getMessage(), "エラー", JOptionPane.ERROR_MESSAGE);
                     AppLogger.error("Export failed", err);
                 } else {
@@ -115,7 +185,13 @@ public class ExportUtil {
                     }
                 }
             }
-        }.execute();
+        };
+        worker.addPropertyChangeListener(e -> {
+            if (!"progress".equals(e.getPropertyName())) return;
+            monitor.setProgress((Integer) e.getNewValue());
+            if (monitor.isCanceled()) worker.cancel(false);
+        });
+        worker.execute();
     }
 
     /**
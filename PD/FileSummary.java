@@ -0,0 +1,226 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * データファイルごとの要約（行数・最新日付・在庫合計・商品の種類数）をサイドカー（例：inventory.tsv.summary）に保存します。
+ * ダッシュボードのカード更新はファイルを読み直さず、ファイルのサイズと更新日時（スタンプ）が
+ * 要約と一致すればそのまま使います。一致しない（外部で書き換えられた）場合だけ全件を読み直します。
+ *
+ * 書き込み側は {@link #write} でファイルを書くと、書いた行から要約も作り直します（ファイルの再読込なし）。
+ */
+public final class FileSummary {
+
+    /** 要約の値 */
+    public static final class Summary {
+        public final int rows;
+        public final String latestDate;   // 日付列がないファイル・日付がない場合は null
+        public final long totalStock;
+        public final int distinctItems;
+        final String stamp;
+
+        Summary(String stamp, int rows, String latestDate, long totalStock, int distinctItems) {
+            this.stamp = stamp;
+            this.rows = rows;
+            this.latestDate = latestDate;
+            this.totalStock = totalStock;
+            this.distinctItems = distinctItems;
+        }
+    }
+
+    /** ファイルごとの集計対象の列（-1 は対象外） */
+    private static final class Spec {
+        final int dateCol, itemCol, stockCol;
+
+        Spec(int dateCol, int itemCol, int stockCol) {
+            this.dateCol = dateCol;
+            this.itemCol = itemCol;
+            this.stockCol = stockCol;
+        }
+    }
+
+    private static final Spec COUNT_ONLY = new Spec(-1, -1, -1);
+    private static final Map<Path, Spec> SPECS = Map.of(
+            AppFiles.WEATHER_TSV, new Spec(0, -1, -1),      // 日付, 天気, 気温, 備考
+            AppFiles.INVENTORY_TSV, new Spec(0, 2, 4),      // 記録日, 店舗, 商品, 賞味期限, 在庫数, ...
+            AppFiles.PRODUCTS_TSV, new Spec(-1, 0, 4));     // 商品名, カテゴリ, バーコード, 日数, 在庫, ...
+
+    private static final Summary EMPTY = new Summary("-", 0, null, 0, 0);
+    private static final Map<Path, Summary> CACHE = new ConcurrentHashMap<>();
+
+    private FileSummary() {}
+
+    /**
+     * 要約を返します。スタンプが合えばメモリまたはサイドカーの値を、合わなければ読み直した値を返します。
+     */
+    public static Summary get(Path file) throws IOException {
+        String stamp = stamp(file);
+        if ("-".equals(stamp)) return EMPTY;
+        Summary s = CACHE.get(file);
+        if (s != null && s.stamp.equals(stamp)) return s;
+        synchronized (lockFor(file)) {
+            s = readSidecar(file);
+            if (s == null || !s.stamp.equals(stamp)) {
+                Accumulator acc = new Accumulator(spec(file));
+                TsvReader.forEach(file, acc::row);
+                // 読んでいる間に書き換えられた場合は保存しない（次回読み直す）
+                String after = stamp(file);
+                s = acc.result(after);
+                if (after.equals(stamp)) writeSidecar(file, s);
+            }
+            CACHE.put(file, s);
+            return s;
+        }
+    }
+
+    /** ファイル全体を lines で書き換え（{@link AtomicFile}）、同じ行から要約を作って保存します */
+    public static void write(Path file, List<String> lines) throws IOException {
+        byte[] data = toBytes(lines);
+        Accumulator acc = new Accumulator(spec(file));
+        TsvReader.forEach(data, acc::row);
+        synchronized (lockFor(file)) {
+            AtomicFile.write(file, data);
+            DataWatcher.noteWritten(file);
+            Summary s = acc.result(stamp(file));
+            CACHE.put(file, s);
+            writeSidecar(file, s);
+        }
+    }
+
+    /**
+     * ファイルの末尾に lines を追加します。追加前の要約が有効なら追加分だけ足し込みます
+     * （種類数は追加行だけでは分からないので、種類数を持つファイルは次回読み直し）。
+     */
+    public static void append(Path file, List<String> lines) throws IOException {
+        byte[] data = toBytes(lines);
+        Accumulator acc = new Accumulator(spec(file));
+        TsvReader.forEach(data, acc::row);
+        synchronized (lockFor(file)) {
+            Summary before = CACHE.get(file);
+            if (before == null) before = readSidecar(file);
+            String stampBefore = stamp(file);
+            boolean current = before != null && before.stamp.equals(stampBefore);
+            if (needsNewline(file)) {
+                byte[] withNewline = new byte[data.length + 1];
+                withNewline[0] = '\n';
+                System.arraycopy(data, 0, withNewline, 1, data.length);
+                data = withNewline;
+            }
+            AtomicFile.append(file, data);
+            DataWatcher.noteWritten(file);
+            if (!current || spec(file).itemCol >= 0) {
+                CACHE.remove(file);
+                return;
+            }
+            String latest = before.latestDate;
+            if (acc.latest != null && (latest == null || acc.latest.compareTo(latest) > 0)) latest = acc.latest;
+            Summary s = new Summary(stamp(file), before.rows + acc.rows, latest, before.totalStock + acc.stock, 0);
+            CACHE.put(file, s);
+            writeSidecar(file, s);
+        }
+    }
+
+    /** 末尾が改行で終わっていない（外部で編集された）ファイルか */
+    private static boolean needsNewline(Path file) throws IOException {
+        if (!Files.exists(file) || Files.size(file) == 0) return false;
+        try (java.nio.channels.FileChannel ch = java.nio.channels.FileChannel.open(file, StandardOpenOption.READ)) {
+            java.nio.ByteBuffer b = java.nio.ByteBuffer.allocate(1);
+            ch.read(b, ch.size() - 1);
+            return b.get(0) != '\n';
+        }
+    }
+
+    /** サイズと更新日時（ファイルがなければ "-"） */
+    static String stamp(Path file) throws IOException {
+        if (!Files.exists(file)) return "-";
+        BasicFileAttributes a = Files.readAttributes(file, BasicFileAttributes.class);
+        return a.size() + ":" + a.lastModifiedTime().toMillis();
+    }
+
+    // ===== 内部処理 =====
+
+    private static final Map<Path, Object> LOCKS = new ConcurrentHashMap<>();
+
+    private static Object lockFor(Path file) {
+        return LOCKS.computeIfAbsent(file, k -> new Object());
+    }
+
+    private static Spec spec(Path file) {
+        return SPECS.getOrDefault(file, COUNT_ONLY);
+    }
+
+    private static Path sidecar(Path file) {
+        return file.resolveSibling(file.getFileName() + ".summary");
+    }
+
+    /** stamp, 行数, 最新日付, 在庫合計, 種類数 の 1 行。読めなければ null */
+    private static Summary readSidecar(Path file) {
+        Path p = sidecar(file);
+        if (!Files.exists(p)) return null;
+        Summary[] out = {null};
+        try {
+            TsvReader.forEach(p, row -> {
+                if (out[0] != null || row.isBlank() || row.size() < 5) return;
+                out[0] = new Summary(row.getString(0), row.getInt(1),
+                        row.isEmpty(2) ? null : row.getString(2), row.getLong(3), row.getInt(4));
+            });
+        } catch (IOException | RuntimeException ex) {
+            AppLogger.error("read summary error: " + p, ex);
+            return null;
+        }
+        return out[0];
+    }
+
+    private static void writeSidecar(Path file, Summary s) {
+        Path p = sidecar(file);
+        String line = s.stamp + "\t" + s.rows + "\t" + (s.latestDate == null ? "" : s.latestDate)
+                + "\t" + s.totalStock + "\t" + s.distinctItems + "\n";
+        try (BufferedWriter w = Files.newBufferedWriter(p, AppFiles.CHARSET)) {
+            w.write(line);
+        } catch (IOException ex) {
+            // 保存できなくても次回読み直すだけなので続行
+            AppLogger.error("write summary error: " + p, ex);
+        }
+    }
+
+    private static byte[] toBytes(List<String> lines) {
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) sb.append(line).append('\n');
+        return sb.toString().getBytes(AppFiles.CHARSET);
+    }
+
+    /** 1 回の走査で要約を作る */
+    private static final class Accumulator {
+        private final Spec spec;
+        private final Set<String> items = new HashSet<>();
+        private int rows;
+        private String latest;
+        private long stock;
+
+        Accumulator(Spec spec) { this.spec = spec; }
+
+        void row(TsvReader.Row row) {
+            if (row.isBlank()) return;
+            rows++;
+            if (spec.dateCol >= 0 && row.size() > spec.dateCol) {
+                String date = row.getString(spec.dateCol).trim();
+                if (!date.isEmpty() && (latest == null || date.compareTo(latest) > 0)) latest = date;
+            }
+            if (spec.itemCol >= 0 && row.size() > spec.itemCol) {
+                String name = row.getString(spec.itemCol).trim();
+                if (!name.isEmpty()) items.add(name);
+            }
+            if (spec.stockCol >= 0 && row.size() > spec.stockCol) stock += row.getInt(spec.stockCol, 0);
+        }
+
+        Summary result(String stamp) {
+            return new Summary(stamp, rows, latest, stock, items.size());
+        }
+    }
+}
@@ -0,0 +1,251 @@
+import java.util.Arrays;
+
+/**
+ * TSV の表どうしのハッシュ結合（画面に依存しない）。
+ *
+ * 結合する表は {@link Table} として、キーの列と必要な列だけを取り出し、列ごとのプリミティブ配列に持ちます。
+ * キーは表ごとの {@link KeyDictionary} で連番 ID にするので、ハッシュ表は ID で引く int の配列だけで済み、
+ * 結合中に文字列を作りません。集約する表（{@link Table#grouped}）はキーごとに 1 行へまとめながら読むため、
+ * 販売実績のような大きな表も店舗×商品の数まで小さくなり、多対多で行の組が膨らむこともありません。
+ *
+ * {@link #join} は行の少ない方をハッシュ表を作る側、多い方を探す側にして、それぞれ 1 回ずつなめます。
+ * 表は {@link AggregationEngine.Mergeable} なので {@link AggregationEngine#scan} で読め、大きなファイルは並列に読まれます。
+ * 集計済みの結果（{@link SalesCube} の切り出しなど）は {@link Table#add} で行を読まずに入れられます。
+ */
+public final class HashJoin {
+
+    /** 取り出す列と、集約するときのまとめ方 */
+    public static final class Column {
+        private enum Kind { SUM, MIN, MAX, MIN_DATE, MAX_DATE, TEXT }
+
+        private final int col;
+        private final Kind kind;
+
+        private Column(int col, Kind kind) {
+            this.col = col;
+            this.kind = kind;
+        }
+
+        /** 整数列の合計（読めない値は 0） */
+        public static Column sum(int col) { return new Column(col, Kind.SUM); }
+        /** 整数列の最小・最大（読めない値は 0） */
+        public static Column min(int col) { return new Column(col, Kind.MIN); }
+        public static Column max(int col) { return new Column(col, Kind.MAX); }
+        /** 日付列（yyyy-MM-dd）の最初・最後のエポック日。読めない日付は無視し、1 つもなければ {@link TsvReader#NO_DATE} */
+        public static Column minDate(int col) { return new Column(col, Kind.MIN_DATE); }
+        public static Column maxDate(int col) { return new Column(col, Kind.MAX_DATE); }
+        /** 文字列の列（ID で持つ。集約するときは最初に読んだ値） */
+        public static Column text(int col) { return new Column(col, Kind.TEXT); }
+    }
+
+    /** 結合した行の組（表の行番号）。{@link #leftJoin} で右に対応する行がなければ right は -1 */
+    public interface Match {
+        void match(int left, int right);
+    }
+
+    /**
+     * 結合に使う表。keyFrom 列から keyCount 列をタブ区切りのまま 1 つのキーとし、指定した列だけを持ちます。
+     * 列の足りない行は読みません。
+     */
+    public static final class Table implements AggregationEngine.Mergeable {
+        public final KeyDictionary keys = new KeyDictionary();
+        private final int keyFrom, keyCount;
+        private final boolean grouped;
+        private final Column[] columns;
+        /** TEXT の列ごとの辞書（ほかは null） */
+        private final KeyDictionary[] texts;
+        /** 読むのに必要な列数 */
+        private final int width;
+
+        private int size;
+        private int[] key = new int[16];
+        private int[] count = new int[16];
+        private final long[][] values;
+
+        private Table(int keyFrom, int keyCount, boolean grouped, Column[] columns) {
+            this.keyFrom = keyFrom;
+            this.keyCount = keyCount;
+            this.grouped = grouped;
+            this.columns = columns;
+            texts = new KeyDictionary[columns.length];
+            values = new long[columns.length][16];
+            int w = keyFrom + keyCount;
+            for (int c = 0; c < columns.length; c++) {
+                if (columns[c].kind == Column.Kind.TEXT) texts[c] = new KeyDictionary();
+                w = Math.max(w, columns[c].col + 1);
+            }
+            width = w;
+        }
+
+        /** 1 行ずつそのまま持つ表 */
+        public static Table rows(int keyFrom, int keyCount, Column... columns) {
+            return new Table(keyFrom, keyCount, false, columns);
+        }
+
+        /** キーごとに 1 行へ集約する表（行番号はキーの ID と同じ） */
+        public static Table grouped(int keyFrom, int keyCount, Column... columns) {
+            return new Table(keyFrom, keyCount, true, columns);
+        }
+
+        public int size() { return size; }
+
+        /** 行のキー（複数列ならタブ区切り） */
+        public String key(int row) { return keys.name(key[row]); }
+
+        /** 行にまとめた元の行数（集約しない表では 1） */
+        public int count(int row) { return count[row]; }
+
+        /** c 番目に指定した列の値（TEXT の列は ID、なければ -1） */
+        public long get(int row, int c) {
+            long v = values[c][row];
+            return columns[c].kind == Column.Kind.MIN_DATE && v == Long.MAX_VALUE ? TsvReader.NO_DATE : v;
+        }
+
+        /** c 番目に指定した TEXT の列の値（なければ空文字） */
+        public String text(int row, int c) {
+            long id = values[c][row];
+            return id < 0 ? "" : texts[c].name((int) id);
+        }
+
+        @Override public void accept(TsvReader.Row row) {
+            if (row.size() < width) return;
+            int r = rowFor(row.intern(keyFrom, keyCount, keys));
+            count[r]++;
+            for (int c = 0; c < columns.length; c++) {
+                Column col = columns[c];
+                switch (col.kind) {
+                    case SUM: case MIN: case MAX: fold(c, r, row.getInt(col.col, 0)); break;
+                    case MIN_DATE:
+                    case MAX_DATE: {
+                        long d = row.getEpochDay(col.col);
+                        if (d != TsvReader.NO_DATE) fold(c, r, d);
+                        break;
+                    }
+                    case TEXT: if (values[c][r] < 0) values[c][r] = row.intern(col.col, texts[c]); break;
+                }
+            }
+        }
+
+        /**
+         * 集計済みの 1 行を足します。key は複数列ならタブ区切り、values は指定した列の順（日付はエポック日）。
+         * TEXT の列がある表には使えません。
+         */
+        public void add(String key, long... values) {
+            if (values.length != columns.length) throw new IllegalArgumentException("values: " + values.length + " of " + columns.length);
+            int r = rowFor(keys.idOf(key));
+            count[r]++;
+            for (int c = 0; c < columns.length; c++) {
+                if (columns[c].kind == Column.Kind.TEXT) throw new IllegalArgumentException("text column " + c);
+                fold(c, r, values[c]);
+            }
+        }
+
+        @Override public AggregationEngine.Mergeable emptyCopy() { return new Table(keyFrom, keyCount, grouped, columns); }
+
+        @Override public void mergeFrom(AggregationEngine.Mergeable other) {
+            Table o = (Table) other;
+            int[] ids = new int[o.keys.size()];
+            for (int k = 0; k < ids.length; k++) ids[k] = keys.idOf(o.keys.bytes(k), 0, o.keys.bytes(k).length);
+            for (int i = 0; i < o.size; i++) {
+                int r = rowFor(ids[o.key[i]]);
+                count[r] += o.count[i];
+                for (int c = 0; c < columns.length; c++) {
+                    long x = o.values[c][i];
+                    if (columns[c].kind != Column.Kind.TEXT) {
+                        fold(c, r, x);
+                    } else if (values[c][r] < 0 && x >= 0) {
+                        byte[] b = o.texts[c].bytes((int) x);
+                        values[c][r] = texts[c].idOf(b, 0, b.length);
+                    }
+                }
+            }
+        }
+
+        /** 数値の列 c の行 r に x をまとめる */
+        private void fold(int c, int r, long x) {
+            long[] v = values[c];
+            switch (columns[c].kind) {
+                case SUM: v[r] += x; break;
+                case MIN: case MIN_DATE: v[r] = Math.min(v[r], x); break;
+                case MAX: case MAX_DATE: v[r] = Math.max(v[r], x); break;
+                default: throw new IllegalStateException(String.valueOf(columns[c].kind));
+            }
+        }
+
+        /** キー ID の行（集約する表ではキーごとに 1 行、しない表では毎回新しい行） */
+        private int rowFor(int k) {
+            if (grouped && k < size) return k;
+            int r = size++;
+            if (r == key.length) {
+                int n = r * 2;
+                key = Arrays.copyOf(key, n);
+                count = Arrays.copyOf(count, n);
+                for (int c = 0; c < values.length; c++) values[c] = Arrays.copyOf(values[c], n);
+            }
+            key[r] = k;
+            count[r] = 0;
+            for (int c = 0; c < columns.length; c++) {
+                switch (columns[c].kind) {
+                    case MIN: case MIN_DATE: values[c][r] = Long.MAX_VALUE; break;
+                    case MAX: case MAX_DATE: values[c][r] = Long.MIN_VALUE; break;
+                    case TEXT: values[c][r] = -1; break;
+                    default: values[c][r] = 0;
+                }
+            }
+            return r;
+        }
+    }
+
+    private HashJoin() {}
+
+    /** キーが一致する行の組をすべて渡します（内部結合）。組の数を返します。順序は決まっていません */
+    public static long join(Table left, Table right, Match match) {
+        return join(left, right, false, match);
+    }
+
+    /** 内部結合に加え、右に一致する行のない左の行を right = -1 で渡します（左外部結合） */
+    public static long leftJoin(Table left, Table right, Match match) {
+        return join(left, right, true, match);
+    }
+
+    private static long join(Table left, Table right, boolean keepLeft, Match match) {
+        // 行の少ない方でハッシュ表を作る
+        boolean buildLeft = left.size <= right.size;
+        Table build = buildLeft ? left : right, probe = buildLeft ? right : left;
+        // キー ID ごとの行の連結リスト（行番号の順に辿れるよう後ろから積む）
+        int[] head = new int[build.keys.size()];
+        Arrays.fill(head, -1);
+        int[] next = new int[build.size];
+        for (int r = build.size - 1; r >= 0; r--) {
+            next[r] = head[build.key[r]];
+            head[build.key[r]] = r;
+        }
+        // 探す側のキー ID → 作る側のキー ID（キーのバイト列を引くのはキーごとに 1 回）
+        int[] map = new int[probe.keys.size()];
+        for (int k = 0; k < map.length; k++) map[k] = build.keys.find(probe.keys.bytes(k), 0, probe.keys.bytes(k).length);
+
+        boolean[] matched = keepLeft && buildLeft ? new boolean[build.size] : null;
+        long pairs = 0;
+        for (int p = 0; p < probe.size; p++) {
+            int k = map[probe.key[p]];
+            int b = k < 0 ? -1 : head[k];
+            if (b < 0 && keepLeft && !buildLeft) {
+                match.match(p, -1);
+                continue;
+            }
+            for (; b >= 0; b = next[b]) {
+                pairs++;
+                if (!buildLeft) {
+                    match.match(p, b);
+                } else {
+                    if (matched != null) matched[b] = true;
+                    match.match(b, p);
+                }
+            }
+        }
+        if (matched != null) {
+            for (int b = 0; b < build.size; b++) if (!matched[b]) match.match(b, -1);
+        }
+        return pairs;
+    }
+}
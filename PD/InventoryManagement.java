@@ -12,16 +12,26 @@ import java.util.List;
 public class InventoryManagement extends JFrame {
 
     // TSV: 日付,店舗,商品,在庫数,発注点,状態,備考
-    private static final Path DATA_FILE = AppFiles.INVENTORY_TSV;
+
+    /** 行スタイル（InventoryTableModel.STYLE_*）ごとの色：その他 / 要補充（赤・太字） / 正常（緑） / 発注提案あり（橙・太字） */
+    private static final RowStyleRenderer.Style[] ROW_STYLES = {
+        new RowStyleRenderer.Style(Color.WHITE, Color.BLACK, false),
+        new RowStyleRenderer.Style(new Color(255, 240, 240), new Color(180, 20, 20), true),
+        new RowStyleRenderer.Style(new Color(240, 255, 240), new Color(0, 100, 40), false),
+        new RowStyleRenderer.Style(new Color(255, 246, 225), new Color(170, 90, 0), true),
+    };
 
     private final JFrame parentDashboard;
 
-    private DefaultTableModel model;
+    private InventoryTableModel model;
     private JTable table;
-    private TableRowSorter<TableModel> sorter;
+    private ColumnRowSorter sorter;
 
     private JComboBox<String> storeFilter;
     private JButton addBtn;
+    private JButton scanBtn;
+    private JButton proposalBtn;
+    private JButton expiryBtn;
     private JButton deleteBtn;
     private JButton editBtn;
     private JButton backBtn;
@@ -38,10 +48,14 @@ public class InventoryManagement extends JFrame {
         getContentPane().add(buildHeader(), BorderLayout.NORTH);
         getContentPane().add(buildTableArea(), BorderLayout.CENTER);
 
-        // 初期ロード
-        loadDataToModel();
-        buildStoreFilterItems();
-        applyDefaultSort();  // 要補充が先頭に来る並び
+        // 在庫は初回だけ読み込み、以後は常駐している表モデルをそのまま表示する。
+        // 外部（POS の取り込みなど）で変わって読み直されたときも店舗候補と並びを作り直す
+        DataRepository.inventory().whenLoaded(this::onDataLoaded);
+        DataRepository.inventory().addListener(this, this::onDataLoaded);
+        // 表モデルは画面間で共有なので、閉じたらこの画面の表をモデルから外す
+        addWindowListener(new java.awt.event.WindowAdapter() {
+            @Override public void windowClosed(java.awt.event.WindowEvent e) { model.removeTableModelListener(table); }
+        });
 
         setVisible(true);
     }
@@ -71,6 +85,18 @@ public class InventoryManagement extends JFrame {
     Theme.styleButton(addBtn, new Color(255, 165, 92));
     addBtn.addActionListener(e -> openAddDialog());
 
+    scanBtn = new JButton("スキャン入力");
+    Theme.styleButton(scanBtn, new Color(120, 180, 160));
+    scanBtn.addActionListener(e -> openScanDialog());
+
+    proposalBtn = new JButton("発注提案");
+    Theme.styleButton(proposalBtn, new Color(230, 150, 60));
+    proposalBtn.addActionListener(e -> runReorderProposal());
+
+    expiryBtn = new JButton("期限チェック");
+    Theme.styleButton(expiryBtn, new Color(200, 120, 140));
+    expiryBtn.addActionListener(e -> runExpiryCheck());
+
     editBtn = new JButton("編集");
     Theme.styleButton(editBtn, new Color(100, 160, 220));
     editBtn.setEnabled(false);
@@ -93,6 +119,9 @@ public class InventoryManagement extends JFrame {
         right.add(storeFilter);
         right.add(editBtn);
         right.add(deleteBtn);
+        right.add(expiryBtn);
+        right.add(proposalBtn);
+        right.add(scanBtn);
         right.add(addBtn);
     right.add(backBtn);
 
@@ -103,10 +132,7 @@ public class InventoryManagement extends JFrame {
 
     // テーブル本体
     private JComponent buildTableArea() {
-        String[] cols = {"記録日", "店舗", "商品", "賞味期限", "在庫数", "発注点", "状態", "備考"};
-        model = new DefaultTableModel(cols, 0) {
-            @Override public boolean isCellEditable(int r, int c) { return false; }
-        };
+        model = DataRepository.inventory().model();
 
         table = new JTable(model);
         table.setRowHeight(28);
@@ -125,70 +151,15 @@ public class InventoryManagement extends JFrame {
         });
 
         // ソーター（カスタム並べ替え：要補充が上に来る）
-        sorter = new TableRowSorter<>(table.getModel());
+        // 状態列は 要補充 < 正常、日付はエポック日の int キーで比較（InventoryTableModel#sortKey）
+        sorter = new ColumnRowSorter(model);
         table.setRowSorter(sorter);
 
-        // 状態列（index=6）の比較：要補充 < 正常（=上に来る）
-        sorter.setComparator(6, (a, b) -> {
-            String sa = a == null ? "" : a.toString();
-            String sb = b == null ? "" : b.toString();
-            int ra = statusRank(sa);
-            int rb = statusRank(sb);
-            return Integer.compare(ra, rb);
-        });
-        // 日付列（index=0）は新しい方を上に
-        sorter.setComparator(0, (a, b) -> {
-            try {
-                LocalDate da = LocalDate.parse(a.toString());
-                LocalDate db = LocalDate.parse(b.toString());
-                // 降順にしたいので逆
-                return -da.compareTo(db);
-            } catch (Exception ex) {
-                return 0;
-            }
-        });
-
         // 初期のキーは applyDefaultSort() 側で設定
         JScrollPane sp = new JScrollPane(table);
         sp.setBorder(new EmptyBorder(10, 16, 16, 16));
-        // 行レンダラー：状態が「要補充」の場合、赤く目立たせる
-        javax.swing.table.DefaultTableCellRenderer rowRenderer = new javax.swing.table.DefaultTableCellRenderer() {
-            @Override
-            public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus, int row, int column) {
-                Component c = super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
-                // デフォルトの選択色を尊重
-                Color selBg = table.getSelectionBackground();
-                Color selFg = table.getSelectionForeground();
-                try {
-                    int modelRow = table.convertRowIndexToModel(row);
-                    Object statusObj = table.getModel().getValueAt(modelRow, 6);
-                    String status = statusObj == null ? "" : statusObj.toString().trim();
-                    if (isSelected) {
-                        c.setBackground(selBg);
-                        c.setForeground(selFg);
-                    } else if ("要補充".equals(status)) {
-                        // 要補充は赤系で強調
-                        c.setForeground(new Color(180, 20, 20));
-                        c.setFont(c.getFont().deriveFont(Font.BOLD));
-                        c.setBackground(new Color(255, 240, 240));
-                    } else if ("正常".equals(status)) {
-                        // 正常は緑系で軽く表示
-                        c.setForeground(new Color(0, 100, 40));
-                        c.setBackground(new Color(240, 255, 240));
-                    } else {
-                        // その他は通常色
-                        c.setForeground(Color.BLACK);
-                        c.setBackground(Color.WHITE);
-                    }
-                    if (c instanceof JComponent) ((JComponent)c).setOpaque(true);
-                } catch (Exception ex) {
-                    // 念のためエラー発生時はデフォルトに戻す
-                    c.setForeground(Color.BLACK);
-                    if (!isSelected) c.setBackground(Color.WHITE);
-                }
-                return c;
-            }
-        };
+        // 行レンダラー：状態が「要補充」の場合、赤く目立たせる（スタイルはモデルが行ごとにキャッシュ）
+        RowStyleRenderer rowRenderer = new RowStyleRenderer(model, ROW_STYLES);
         // 全カラムに適用して行単位での強調を有効化
         for (int i = 0; i < model.getColumnCount(); i++) {
             table.getColumnModel().getColumn(i).setCellRenderer(rowRenderer);
@@ -213,105 +184,176 @@ public class InventoryManagement extends JFrame {
         int[] modelRows = new int[viewRows.length];
         for (int i = 0; i < viewRows.length; i++) modelRows[i] = table.convertRowIndexToModel(viewRows[i]);
         java.util.Arrays.sort(modelRows);
-        for (int i = modelRows.length - 1; i >= 0; i--) {
-            model.removeRow(modelRows[i]);
-        }
+        java.util.List<String> removed = new ArrayList<>();
+        for (int i = modelRows.length - 1; i >= 0; i--) removed.add(rowLine(modelRows[i]));
+        model.removeRows(modelRows);
 
-        saveModelToFile();
+        saveModelToFile(removed, java.util.Collections.emptyList());
         buildStoreFilterItems();
         applyDefaultSort();
     }
 
-    private int statusRank(String s) {
-        if ("要補充".equals(s)) return 0; // 先頭
-        if ("正常".equals(s)) return 1;
-        return 2;
-    }
-
     private void applyDefaultSort() {
         List<RowSorter.SortKey> keys = new ArrayList<>();
-        // まず状態（要補充を先頭にするため ASC / カスタムコンパレータ）
-        keys.add(new RowSorter.SortKey(5, SortOrder.ASCENDING));
-        // 次に日付（新しい順を上に：Comparator側で逆転しているので ASCでOK）
-        keys.add(new RowSorter.SortKey(0, SortOrder.ASCENDING));
-        sorter.setSortKeys(keys);
-        sorter.sort();
+        // まず状態（要補充を先頭に）
+        keys.add(new RowSorter.SortKey(InventoryTableModel.STATUS, SortOrder.ASCENDING));
+        // 次に日付（新しい順を上に）
+        keys.add(new RowSorter.SortKey(InventoryTableModel.DATE, SortOrder.DESCENDING));
+        sorter.setSortKeys(keys);   // 同じキーなら何もしない（追加・編集分は差し込み済み）
+    }
+
+    // 読み込み完了（初回・外部変更による読み直し）
+    private void onDataLoaded() {
+        buildStoreFilterItems();
+        applyDefaultSort();  // 要補充が先頭に来る並び
+        loadProposal();
     }
 
-    // TSVロード
-    private void loadDataToModel() {
-        model.setRowCount(0);
-        if (!Files.exists(DATA_FILE)) return;
-        // 非同期ロード
-        new javax.swing.SwingWorker<Void, Object[]>() {
-            private String err = null;
-            @Override protected Void doInBackground() {
+    // 前回の発注提案があれば、該当する行を強調する
+    private void loadProposal() {
+        new SwingWorker<Set<String>, Void>() {
+            @Override protected Set<String> doInBackground() throws Exception {
+                return ReorderPlanner.readProposed(AppFiles.REORDER_PROPOSAL);
+            }
+            @Override protected void done() {
                 try {
-                    java.util.List<String> lines = java.nio.file.Files.readAllLines(DATA_FILE, AppFiles.CHARSET);
-                    for (String line : lines) {
-                        if (line.trim().isEmpty()) continue;
-                        String[] c = line.split("\t", -1);
-                        if (c.length < 8) continue;
-                        publish(new Object[]{c[0], c[1], c[2], c[3], c[4], c[5], c[6], c[7]});
-                    }
+                    model.setProposed(get());
+                    applyDefaultSort();
                 } catch (Exception ex) {
-                    err = ex.getMessage();
-                    AppLogger.error("loadDataToModel error", ex);
+                    AppLogger.error("Reorder proposal load error", ex);
                 }
-                return null;
             }
-            @Override protected void process(java.util.List<Object[]> chunks) {
-                for (Object[] row : chunks) model.addRow(row);
+        }.execute();
+    }
+
+    // 全店舗×全商品の発注提案を計算して reorder_proposal.tsv に書き、該当する行を強調する
+    private void runReorderProposal() {
+        proposalBtn.setEnabled(false);
+        new SwingWorker<List<ReorderPlanner.Line>, Void>() {
+            @Override protected List<ReorderPlanner.Line> doInBackground() throws Exception {
+                List<ReorderPlanner.Line> lines = ReorderPlanner.plan(new ReorderPlanner.Options());
+                ReorderPlanner.write(lines, AppFiles.REORDER_PROPOSAL);
+                return lines;
             }
             @Override protected void done() {
-                if (err != null) JOptionPane.showMessageDialog(InventoryManagement.this,
-                        "inventory.tsv の読み込みに失敗: " + err, "エラー", JOptionPane.ERROR_MESSAGE);
-                applyDefaultSort();
+                proposalBtn.setEnabled(true);
+                try {
+                    List<ReorderPlanner.Line> lines = get();
+                    Set<String> keys = new HashSet<>();
+                    int units = 0;
+                    for (ReorderPlanner.Line l : lines) {
+                        if (l.orderQty == 0) continue;
+                        keys.add(l.store + "\t" + l.item);
+                        units += l.orderQty;
+                    }
+                    model.setProposed(keys);
+                    applyDefaultSort();
+                    JOptionPane.showMessageDialog(InventoryManagement.this,
+                        "✓ 発注提案を作成しました\n\n対象: " + lines.size() + " 件（店舗×商品）\n発注あり: "
+                            + keys.size() + " 件 / 合計 " + units + " 個\n\nファイル: " + AppFiles.REORDER_PROPOSAL,
+                        "発注提案", JOptionPane.INFORMATION_MESSAGE);
+                } catch (Exception ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    AppLogger.error("Reorder proposal error", cause);
+                    JOptionPane.showMessageDialog(InventoryManagement.this, "発注提案の作成に失敗: " + cause.getMessage(),
+                        "エラー", JOptionPane.ERROR_MESSAGE);
+                }
             }
         }.execute();
     }
 
-    // TSV保存（モデル全体を書き戻し）
-    private void saveModelToFile() {
-        // 非同期保存（UI をブロックしない）
-        java.util.List<String> out = new ArrayList<>();
-        for (int r = 0; r < model.getRowCount(); r++) {
-            StringBuilder sb = new StringBuilder();
-            for (int c = 0; c < model.getColumnCount(); c++) {
-                if (c > 0) sb.append('\t');
-                Object v = model.getValueAt(r, c);
-                sb.append(v == null ? "" : v.toString());
-            }
-            out.add(sb.toString());
-        }
-        new javax.swing.SwingWorker<Void, Void>(){
-            private String err = null;
-            @Override protected Void doInBackground(){
-                try { java.nio.file.Files.write(DATA_FILE, out, AppFiles.CHARSET); }
-                catch (Exception ex) { err = ex.getMessage(); AppLogger.error("saveModelToFile error", ex); }
-                return null;
+    // 期限が近い在庫を廃棄リスク（売れ残り見込み）の大きい順に一覧する。店舗フィルタ中ならその店舗だけ
+    private void runExpiryCheck() {
+        JSpinner daysSpinner = new JSpinner(new SpinnerNumberModel(3, 0, 60, 1));
+        JPanel form = new JPanel(new GridLayout(0, 2, 8, 8));
+        form.add(new JLabel("今日から何日後まで"));
+        form.add(daysSpinner);
+        int r = JOptionPane.showConfirmDialog(this, form, "期限チェック",
+                JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        if (r != JOptionPane.OK_OPTION) return;
+        int days = (int) daysSpinner.getValue();
+        String selected = (String) storeFilter.getSelectedItem();
+        String store = selected == null || "全店舗".equals(selected) ? null : selected;
+
+        expiryBtn.setEnabled(false);
+        new SwingWorker<List<ExpiryIndex.Lot>, Void>() {
+            @Override protected List<ExpiryIndex.Lot> doInBackground() throws Exception {
+                // 予測が使えなくても期限の一覧は出す（在庫すべてを売れ残り扱い）
+                DemandForecaster.Model forecast = null;
+                try {
+                    if (SalesJournal.exists()) forecast = DemandForecaster.update();
+                } catch (Exception ex) {
+                    AppLogger.error("Forecast error", ex);
+                }
+                List<ExpiryIndex.Lot> lots = ExpiryIndex.expiring(LocalDate.now().toEpochDay(), days, store, forecast);
+                lots.sort((a, b) -> a.atRisk != b.atRisk ? Integer.compare(b.atRisk, a.atRisk) : Long.compare(a.expiry, b.expiry));
+                return lots;
             }
-            @Override protected void done(){
-                if (err != null) {
-                    JOptionPane.showMessageDialog(InventoryManagement.this,
-                            "inventory.tsv の保存に失敗: " + err, "エラー", JOptionPane.ERROR_MESSAGE);
-                } else {
-                    // 保存成功したらダッシュボードの在庫表示を更新
-                    if (parentDashboard instanceof DashboardSimple) {
-                        ((DashboardSimple) parentDashboard).refreshInventoryCard();
-                    }
+            @Override protected void done() {
+                expiryBtn.setEnabled(true);
+                try {
+                    showExpiryLots(get(), days, store);
+                } catch (Exception ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    AppLogger.error("Expiry check error", cause);
+                    JOptionPane.showMessageDialog(InventoryManagement.this, "期限チェックに失敗: " + cause.getMessage(),
+                        "エラー", JOptionPane.ERROR_MESSAGE);
                 }
             }
         }.execute();
     }
 
+    private void showExpiryLots(List<ExpiryIndex.Lot> lots, int days, String store) {
+        String scope = (store == null ? "全店舗" : store) + "・" + days + " 日後まで";
+        if (lots.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "期限が近い在庫はありません（" + scope + "）。", "期限チェック",
+                JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        String[] cols = {"店舗", "商品", "賞味期限", "残り日数", "在庫数", "予測販売", "売れ残り見込み", "リスク"};
+        Object[][] data = new Object[lots.size()][];
+        int atRisk = 0;
+        for (int i = 0; i < lots.size(); i++) {
+            ExpiryIndex.Lot l = lots.get(i);
+            data[i] = new Object[]{l.store, l.item, LocalDate.ofEpochDay(l.expiry).toString(), l.daysLeft, l.stock,
+                    String.format("%.1f", l.sellThrough), l.atRisk, Math.round(l.score * 100) + "%"};
+            atRisk += l.atRisk;
+        }
+        JTable lotTable = new JTable(data, cols);
+        lotTable.setDefaultEditor(Object.class, null);
+        lotTable.setRowHeight(24);
+        JScrollPane sp = new JScrollPane(lotTable);
+        sp.setPreferredSize(new Dimension(760, 360));
+        JPanel panel = new JPanel(new BorderLayout(0, 8));
+        panel.add(new JLabel(scope + "：" + lots.size() + " ロット / 売れ残り見込み 合計 " + atRisk + " 個"), BorderLayout.NORTH);
+        panel.add(sp, BorderLayout.CENTER);
+        JOptionPane.showMessageDialog(this, panel, "期限チェック", JOptionPane.PLAIN_MESSAGE);
+    }
+
+    // 1 行分を TSV の 1 行にする
+    private String rowLine(int r) {
+        return String.join("\t", model.getRow(r));
+    }
+
+    // TSV保存（モデル全体を書き戻し）。removed / added は分析用集計へ差分で反映する
+    private void saveModelToFile(java.util.List<String> removed, java.util.List<String> added) {
+        // 非同期保存（UI をブロックしない）。保存成功したらダッシュボードの在庫表示を更新
+        DataRepository.saveInventory(this, removed, added, () -> {
+            if (parentDashboard instanceof DashboardSimple) {
+                ((DashboardSimple) parentDashboard).refreshInventoryCard();
+            }
+        });
+    }
+
     // フィルタの中身（店舗候補）作成
     private void buildStoreFilterItems() {
         // 既存アイテムを一旦クリアしつつ「全店舗」を先頭に
+        // 店舗は辞書 ID で持っているので、使われている ID だけを拾う
+        KeyDictionary dict = model.dictionary(InventoryTableModel.STORE);
+        boolean[] used = new boolean[dict.size()];
+        for (int r = 0; r < model.getRowCount(); r++) used[model.getId(r, InventoryTableModel.STORE)] = true;
         Set<String> shops = new TreeSet<>();
-        for (int r = 0; r < model.getRowCount(); r++) {
-            shops.add(model.getValueAt(r, 1).toString());
-        }
+        for (int id = 0; id < used.length; id++) if (used[id]) shops.add(dict.name(id));
         storeFilter.removeAllItems();
         storeFilter.addItem("全店舗");
         for (String s : shops) storeFilter.addItem(s);
@@ -324,17 +366,35 @@ public class InventoryManagement extends JFrame {
         if (selected == null || "全店舗".equals(selected)) {
             sorter.setRowFilter(null);
         } else {
-            sorter.setRowFilter(new RowFilter<TableModel, Integer>() {
-                @Override
-                public boolean include(Entry<? extends TableModel, ? extends Integer> entry) {
-                    String shop = entry.getStringValue(1);
-                    return selected.equals(shop);
-                }
-            });
+            int storeId = model.dictionary(InventoryTableModel.STORE).find(selected);
+            sorter.setRowFilter(r -> model.getId(r, InventoryTableModel.STORE) == storeId);
         }
         applyDefaultSort(); // フィルタ後も並び順は維持
     }
 
+    // スキャナでまとめて読み取り、入荷分として 1 回の保存で追加する
+    private void openScanDialog() {
+        String[] store = new String[1];
+        java.util.List<ScanBatchDialog.Entry> entries = ScanBatchDialog.show(this, "在庫のスキャン入力", store);
+        if (entries == null) return;
+        LocalDate today = LocalDate.now();
+        java.util.List<String[]> rows = new ArrayList<>(entries.size());
+        for (ScanBatchDialog.Entry e : entries) {
+            rows.add(new String[]{
+                today.toString(), store[0], e.product.name,
+                today.plusDays(Math.max(0, e.product.shelfDays)).toString(),
+                String.valueOf(e.qty), "0", "正常", ""
+            });
+        }
+        int first = model.getRowCount();
+        model.addRows(rows);
+        java.util.List<String> added = new ArrayList<>(rows.size());
+        for (int r = first; r < model.getRowCount(); r++) added.add(rowLine(r));
+        saveModelToFile(java.util.Collections.emptyList(), added);
+        buildStoreFilterItems();
+        applyDefaultSort();
+    }
+
     // 追加ダイアログ
     private void openAddDialog() {
         LocalDate today = LocalDate.now();
@@ -404,8 +464,9 @@ public class InventoryManagement extends JFrame {
         // 状態の自動補正：在庫<=発注点なら要補充にする
         if (stock <= reorder) status = "要補充";
 
-        model.addRow(new Object[]{date, shop, item, expiry, stockStr, reorderStr, status, note});
-        saveModelToFile();
+        model.addRow(new String[]{date, shop, item, expiry, stockStr, reorderStr, status, note});
+        saveModelToFile(java.util.Collections.emptyList(),
+                java.util.Collections.singletonList(rowLine(model.getRowCount() - 1)));
         buildStoreFilterItems();
         applyDefaultSort();
     }
@@ -416,14 +477,15 @@ public class InventoryManagement extends JFrame {
         if (viewRows == null || viewRows.length != 1) return;
         int modelRow = table.convertRowIndexToModel(viewRows[0]);
 
-        String curDate = String.valueOf(model.getValueAt(modelRow, 0));
-        String curShop = String.valueOf(model.getValueAt(modelRow, 1));
-        String curItem = String.valueOf(model.getValueAt(modelRow, 2));
-        String curExpiry = String.valueOf(model.getValueAt(modelRow, 3));
-        String curStock = String.valueOf(model.getValueAt(modelRow, 4));
-        String curReorder = String.valueOf(model.getValueAt(modelRow, 5));
-        String curStatus = String.valueOf(model.getValueAt(modelRow, 6));
-        String curNote = String.valueOf(model.getValueAt(modelRow, 7));
+        String[] cur = model.getRow(modelRow);
+        String curDate = cur[0];
+        String curShop = cur[1];
+        String curItem = cur[2];
+        String curExpiry = cur[3];
+        String curStock = cur[4];
+        String curReorder = cur[5];
+        String curStatus = cur[6];
+        String curNote = cur[7];
 
         JTextField dateField = new JTextField(curDate);
         JTextField storeField = new JTextField(curShop);
@@ -498,16 +560,11 @@ public class InventoryManagement extends JFrame {
         // 状態の自動補正：在庫<=発注点なら要補充にする
         if (stock <= reorder) status = "要補充";
 
-        model.setValueAt(date, modelRow, 0);
-        model.setValueAt(shop, modelRow, 1);
-        model.setValueAt(item, modelRow, 2);
-        model.setValueAt(expiry, modelRow, 3);
-        model.setValueAt(stockStr, modelRow, 4);
-        model.setValueAt(reorderStr, modelRow, 5);
-        model.setValueAt(status, modelRow, 6);
-        model.setValueAt(note, modelRow, 7);
+        String before = rowLine(modelRow);
+        model.setRow(modelRow, new String[]{date, shop, item, expiry, stockStr, reorderStr, status, note});
 
-        saveModelToFile();
+        saveModelToFile(java.util.Collections.singletonList(before),
+                java.util.Collections.singletonList(rowLine(modelRow)));
         buildStoreFilterItems();
         applyDefaultSort();
     }
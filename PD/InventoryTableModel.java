@@ -0,0 +1,47 @@
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * 在庫テーブルのモデル（inventory.tsv の 8 列）
+ */
+public final class InventoryTableModel extends ColumnTableModel {
+
+    public static final int DATE = 0, STORE = 1, ITEM = 2, EXPIRY = 3, STOCK = 4,
+            REORDER = 5, STATUS = 6, NOTE = 7;
+
+    /** 行スタイル：その他 / 要補充 / 正常 / 発注提案あり */
+    public static final int STYLE_OTHER = 0, STYLE_REORDER = 1, STYLE_OK = 2, STYLE_PROPOSED = 3;
+
+    /** 発注提案のある店舗×商品（"店舗\t商品"、{@link ReorderPlanner#readProposed}） */
+    private Set<String> proposed = Collections.emptySet();
+
+    public InventoryTableModel() {
+        super(new String[]{"記録日", "店舗", "商品", "賞味期限", "在庫数", "発注点", "状態", "備考"},
+              new Kind[]{Kind.DATE, Kind.TEXT, Kind.TEXT, Kind.DATE, Kind.INT, Kind.INT, Kind.TEXT, Kind.TEXT});
+    }
+
+    /** 発注提案を差し替え、該当する行を強調し直します */
+    public void setProposed(Set<String> keys) {
+        proposed = keys;
+        restyle();
+    }
+
+    @Override protected int computeStyle(int r) {
+        String status = getText(r, STATUS).trim();
+        if ("要補充".equals(status)) return STYLE_REORDER;
+        if (!proposed.isEmpty() && proposed.contains(getText(r, STORE) + "\t" + getText(r, ITEM))) return STYLE_PROPOSED;
+        if ("正常".equals(status)) return STYLE_OK;
+        return STYLE_OTHER;
+    }
+
+    /** 状態列は 要補充 → 発注提案あり → 正常 → その他 の順（行スタイルのキャッシュを流用） */
+    @Override public int sortKey(int r, int c) {
+        if (c != STATUS) return super.sortKey(r, c);
+        switch (getStyle(r)) {
+            case STYLE_REORDER: return 0;
+            case STYLE_PROPOSED: return 1;
+            case STYLE_OK: return 2;
+            default: return 3;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 販売実績・在庫・商品を結合して求める分析（{@link HashJoin} を使う。画面に依存しない）。
+ * 販売実績は元の行を読まず、{@link SalesCube} を店舗×商品・商品ごとに切り出して使います。
+ * 在庫と商品一覧はそれぞれ 1 回走査して集約してから結合します。
+ */
+public final class JoinReports {
+
+    /** 在庫回転日数（店舗×商品、または店舗ごとの合計。店舗ごとなら item は null） */
+    public static final class Turnover {
+        public final String store, item;
+        /** 在庫の記録日あたりの平均在庫 */
+        public final double avgStock;
+        /** 販売の記録期間（店舗の最初〜最後の販売日）あたりの平均販売数 */
+        public final double dailySold;
+        /** 平均在庫のうち、全期間で 1 個も売れていない商品の分 */
+        public final double unsoldStock;
+
+        Turnover(String store, String item, double avgStock, double dailySold, double unsoldStock) {
+            this.store = store;
+            this.item = item;
+            this.avgStock = avgStock;
+            this.dailySold = dailySold;
+            this.unsoldStock = unsoldStock;
+        }
+
+        /** 平均在庫 ÷ 1 日の販売数。売れていなければ無限大 */
+        public double days() { return dailySold > 0 ? avgStock / dailySold : Double.POSITIVE_INFINITY; }
+    }
+
+    /** カテゴリごとの販売数・売上・原価 */
+    public static final class CategoryMargin {
+        public final String category;
+        public final long sold, revenue, cost;
+
+        CategoryMargin(String category, long sold, long revenue, long cost) {
+            this.category = category;
+            this.sold = sold;
+            this.revenue = revenue;
+            this.cost = cost;
+        }
+
+        /** 粗利率（%）。売上がなければ 0 */
+        public double marginRate() { return revenue > 0 ? (revenue - cost) * 100.0 / revenue : 0; }
+    }
+
+    /** products.tsv に載っていない商品のカテゴリ */
+    public static final String UNREGISTERED = "（商品一覧にない）";
+    /** カテゴリが空の商品 */
+    public static final String UNCATEGORIZED = "（未分類）";
+
+    private JoinReports() {}
+
+    /**
+     * 在庫のある店舗×商品ごとの在庫回転日数（店舗・商品の順）。
+     * 在庫（店舗×商品の在庫数の合計と、店舗ごとの記録日数）と販売実績（店舗×商品の販売数と、店舗ごとの販売期間）を
+     * 店舗×商品で左外部結合します。販売のない商品は回転日数が無限大になります。
+     * 販売実績は集計キューブから取るため、記録日の読めない行は数えません。
+     */
+    public static List<Turnover> turnover() throws IOException {
+        HashJoin.Table stock = HashJoin.Table.grouped(1, 2, HashJoin.Column.sum(4));
+        HashJoin.Table snapshots = HashJoin.Table.grouped(0, 2);   // 記録日×店舗
+        AggregationEngine.scan(AppFiles.INVENTORY_TSV, stock, snapshots);
+        HashJoin.Table sold = HashJoin.Table.grouped(0, 2, HashJoin.Column.sum(2));
+        Map<String, Long> salesDays = new HashMap<>();
+        if (SalesJournal.exists()) {
+            SalesCube.Slice items = SalesCube.slice(Long.MIN_VALUE, Long.MAX_VALUE, null, null,
+                    SalesCube.By.STORE, SalesCube.By.PRODUCT);
+            for (int i = 0; i < items.size(); i++) sold.add(items.key(i, 0) + "\t" + items.key(i, 1), items.sold(i));
+            // 店舗ごとに日付順に並ぶので、最初と最後の日が販売期間
+            SalesCube.Slice days = SalesCube.slice(Long.MIN_VALUE, Long.MAX_VALUE, null, null,
+                    SalesCube.By.STORE, SalesCube.By.DAY);
+            for (int i = 0, j; i < days.size(); i = j) {
+                for (j = i + 1; j < days.size() && days.key(j, 0).equals(days.key(i, 0)); j++) {}
+                long first = LocalDate.parse(days.key(i, 1)).toEpochDay();
+                long last = LocalDate.parse(days.key(j - 1, 1)).toEpochDay();
+                salesDays.put(days.key(i, 0), last - first + 1);
+            }
+        }
+
+        Map<String, Integer> snapshotDays = new HashMap<>();
+        for (int r = 0; r < snapshots.size(); r++) snapshotDays.merge(snapshots.key(r).split("\t", -1)[1], 1, Integer::sum);
+
+        List<Turnover> out = new ArrayList<>();
+        HashJoin.leftJoin(stock, sold, (l, r) -> {
+            String[] key = stock.key(l).split("\t", -1);
+            double avgStock = (double) stock.get(l, 0) / snapshotDays.get(key[0]);
+            long days = salesDays.getOrDefault(key[0], 0L);
+            double daily = r < 0 || days == 0 ? 0 : Math.max(0, sold.get(r, 0)) / (double) days;
+            out.add(new Turnover(key[0], key[1], avgStock, daily, daily > 0 ? 0 : avgStock));
+        });
+        out.sort((a, b) -> {
+            int c = a.store.compareTo(b.store);
+            return c != 0 ? c : a.item.compareTo(b.item);
+        });
+        return out;
+    }
+
+    /** 店舗×商品の回転日数を店舗ごとに合計します（平均在庫の合計 ÷ 1 日の販売数の合計） */
+    public static List<Turnover> byStore(List<Turnover> items) {
+        Map<String, double[]> sums = new LinkedHashMap<>();
+        for (Turnover t : items) {
+            double[] s = sums.computeIfAbsent(t.store, k -> new double[3]);
+            s[0] += t.avgStock;
+            s[1] += t.dailySold;
+            s[2] += t.unsoldStock;
+        }
+        List<Turnover> out = new ArrayList<>();
+        for (Map.Entry<String, double[]> e : sums.entrySet()) {
+            double[] s = e.getValue();
+            out.add(new Turnover(e.getKey(), null, s[0], s[1], s[2]));
+        }
+        return out;
+    }
+
+    /**
+     * カテゴリ別の販売数・売上・原価（カテゴリ名の順）。
+     * 商品ごとの販売実績（集計キューブの切り出し）を、商品一覧（products.tsv の商品名→カテゴリ）と左外部結合します。
+     */
+    public static List<CategoryMargin> marginByCategory() throws IOException {
+        HashJoin.Table sales = HashJoin.Table.grouped(0, 1,
+                HashJoin.Column.sum(1), HashJoin.Column.sum(2), HashJoin.Column.sum(3));
+        if (SalesJournal.exists()) {
+            SalesCube.Slice items = SalesCube.slice(Long.MIN_VALUE, Long.MAX_VALUE, null, null, SalesCube.By.PRODUCT);
+            for (int i = 0; i < items.size(); i++) sales.add(items.key(i), items.sold(i), items.revenue(i), items.cost(i));
+        }
+        HashJoin.Table categories = HashJoin.Table.grouped(0, 1, HashJoin.Column.text(1));
+        AggregationEngine.scan(AppFiles.PRODUCTS_TSV, categories);
+
+        Map<String, long[]> sums = new TreeMap<>();
+        HashJoin.leftJoin(sales, categories, (l, r) -> {
+            String category = r < 0 ? UNREGISTERED : categories.text(r, 0).trim();
+            if (category.isEmpty()) category = UNCATEGORIZED;
+            long[] s = sums.computeIfAbsent(category, k -> new long[3]);
+            for (int c = 0; c < 3; c++) s[c] += sales.get(l, c);
+        });
+        List<CategoryMargin> out = new ArrayList<>();
+        for (Map.Entry<String, long[]> e : sums.entrySet()) {
+            long[] s = e.getValue();
+            out.add(new CategoryMargin(e.getKey(), s[0], s[1], s[2]));
+        }
+        return out;
+    }
+}
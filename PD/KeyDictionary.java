@@ -0,0 +1,108 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 文字列キー（店舗名・商品名など）を 0 始まりの連番 ID に割り当てる辞書。
+ * TSV のバイト列から直接引けるため、行ごとに String を生成せずに集計できます。
+ * オープンアドレス法のハッシュ表で、ID は登録順です。スレッドセーフではありません。
+ */
+public final class KeyDictionary {
+
+    private byte[][] keys = new byte[16][];
+    private String[] names = new String[16];
+    private int[] hashes = new int[16];
+    private int[] slots = new int[32];   // ID+1（0 は空き）
+    private int size;
+
+    public int size() { return size; }
+
+    /** ID に対応する文字列 */
+    public String name(int id) {
+        String s = names[id];
+        if (s == null) {
+            s = new String(keys[id], StandardCharsets.UTF_8);
+            names[id] = s;
+        }
+        return s;
+    }
+
+    /** ID に対応する UTF-8 のバイト列（書き換えないこと） */
+    public byte[] bytes(int id) { return keys[id]; }
+
+    /** 文字列の ID（未登録なら登録） */
+    public int idOf(String key) {
+        byte[] b = key.getBytes(StandardCharsets.UTF_8);
+        int id = idOf(b, 0, b.length);
+        if (names[id] == null) names[id] = key;
+        return id;
+    }
+
+    /** バイト列 [off, off+len) の ID（未登録なら登録） */
+    public int idOf(byte[] b, int off, int len) {
+        int h = hash(b, off, len);
+        int mask = slots.length - 1;
+        for (int i = h & mask; ; i = (i + 1) & mask) {
+            int slot = slots[i];
+            if (slot == 0) {
+                int id = add(Arrays.copyOfRange(b, off, off + len), h);
+                slots[i] = id + 1;
+                if (size * 2 > slots.length) rehash();
+                return id;
+            }
+            int id = slot - 1;
+            if (hashes[id] == h && equals(keys[id], b, off, len)) return id;
+        }
+    }
+
+    /** 登録済みなら ID、なければ -1 */
+    public int find(String key) {
+        byte[] b = key.getBytes(StandardCharsets.UTF_8);
+        return find(b, 0, b.length);
+    }
+
+    /** バイト列 [off, off+len) が登録済みなら ID、なければ -1（登録しない） */
+    public int find(byte[] b, int off, int len) {
+        int h = hash(b, off, len);
+        int mask = slots.length - 1;
+        for (int i = h & mask; ; i = (i + 1) & mask) {
+            int slot = slots[i];
+            if (slot == 0) return -1;
+            int id = slot - 1;
+            if (hashes[id] == h && equals(keys[id], b, off, len)) return id;
+        }
+    }
+
+    private int add(byte[] key, int h) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            names = Arrays.copyOf(names, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+        keys[size] = key;
+        hashes[size] = h;
+        return size++;
+    }
+
+    private void rehash() {
+        int[] next = new int[slots.length * 2];
+        int mask = next.length - 1;
+        for (int id = 0; id < size; id++) {
+            int i = hashes[id] & mask;
+            while (next[i] != 0) i = (i + 1) & mask;
+            next[i] = id + 1;
+        }
+        slots = next;
+    }
+
+    private static int hash(byte[] b, int off, int len) {
+        int h = 1;
+        for (int i = off; i < off + len; i++) h = 31 * h + b[i];
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean equals(byte[] key, byte[] b, int off, int len) {
+        if (key.length != len) return false;
+        for (int i = 0; i < len; i++) if (key[i] != b[off + i]) return false;
+        return true;
+    }
+}
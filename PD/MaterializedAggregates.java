@@ -0,0 +1,235 @@
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.List;
+
+/**
+ * 分析ダッシュボード用の集計を保持し、書き込みのたびに差分で更新する「実体化」集計。
+ * 販売実績・在庫の保存時に追加行を accept、削除行（編集前の行を含む）を retract するため、
+ * ダッシュボードを開くたびに全件を走査し直す必要がありません。
+ *
+ * 集計は analytics.agg に保存し、元ファイルのサイズと更新日時（スタンプ）で有効性を判定します。
+ * 外部でファイルが書き換えられた場合など、スタンプが合わない部分だけを次回の {@link #snapshot} で再構築します。
+ * 保存は {@link BackgroundWriter} に任せ、続く更新とまとめて書きます（書けずに終了しても、古いスタンプのまま再構築されるだけ）。
+ *
+ * ロック順は「販売ジャーナルのロック → このクラスのロック」です。
+ */
+public final class MaterializedAggregates {
+
+    /** 取り出した集計のコピー（呼び出し側で自由に読める） */
+    public static final class Snapshot {
+        public final Aggregates.ProductStats products;
+        public final Aggregates.WeekdayDemand weekly;
+        public final Aggregates.StoreStock stores;
+
+        Snapshot(Aggregates.ProductStats products, Aggregates.WeekdayDemand weekly, Aggregates.StoreStock stores) {
+            this.products = products;
+            this.weekly = weekly;
+            this.stores = stores;
+        }
+    }
+
+    /** 元ファイルへの書き込み処理 */
+    public interface Write {
+        void run() throws IOException;
+    }
+
+    private static final Path FILE = AppFiles.ANALYTICS_AGG;
+    private static final Object LOCK = new Object();
+
+    private static boolean loaded = false;
+    private static String salesStamp = "";       // 集計が対応している sales.tsv + sales.index + sales.journal
+    private static String inventoryStamp = "";   // 集計が対応している inventory.tsv
+    private static Aggregates.ProductStats products = new Aggregates.ProductStats();
+    private static Aggregates.WeekdayDemand weekly = new Aggregates.WeekdayDemand();
+    private static Aggregates.StoreStock stores = new Aggregates.StoreStock();
+
+    private MaterializedAggregates() {}
+
+    /**
+     * 現在の集計を返します。元ファイルと合わない部分はここで走査し直します。
+     */
+    public static Snapshot snapshot() throws IOException {
+        return SalesJournal.withReadLock(() -> {
+            synchronized (LOCK) {
+                load();
+                boolean dirty = false;
+                String s = salesStamp();
+                if (!s.equals(salesStamp)) {
+                    Aggregates.ProductStats p = new Aggregates.ProductStats();
+                    Aggregates.WeekdayDemand w = new Aggregates.WeekdayDemand();
+                    AggregationEngine.scanSales(p, w);
+                    products = p;
+                    weekly = w;
+                    salesStamp = s;
+                    dirty = true;
+                }
+                String i = inventoryStamp();
+                if (!i.equals(inventoryStamp)) {
+                    Aggregates.StoreStock st = new Aggregates.StoreStock();
+                    AggregationEngine.scan(AppFiles.INVENTORY_TSV, st);
+                    stores = st;
+                    inventoryStamp = i;
+                    dirty = true;
+                }
+                if (dirty) saveLater();
+                return new Snapshot(copy(products), copy(weekly), copy(stores));
+            }
+        });
+    }
+
+    /**
+     * 販売実績を書き込み、削除行・追加行（9 列のタブ区切り）を集計へ反映します。
+     * {@link SalesJournal} が書き込みロックを保持した状態で呼びます。
+     */
+    static void updateSales(Write write, List<String> removed, List<String> added) throws IOException {
+        synchronized (LOCK) {
+            boolean current = loadQuietly() && salesStamp.equals(salesStamp());
+            write.run();
+            if (!current) return;   // 既に古い。次回の snapshot で再構築する
+            if (!apply(removed, added, products, weekly)) {
+                salesStamp = "";
+                return;
+            }
+            salesStamp = salesStamp();
+            saveLater();
+        }
+    }
+
+    /**
+     * 在庫ファイルを書き込み、削除行・追加行（8 列のタブ区切り）を集計へ反映します。
+     */
+    public static void updateInventory(Write write, List<String> removed, List<String> added) throws IOException {
+        synchronized (LOCK) {
+            boolean current = loadQuietly() && inventoryStamp.equals(inventoryStamp());
+            write.run();
+            if (!current) return;
+            if (!apply(removed, added, stores)) {
+                inventoryStamp = "";
+                return;
+            }
+            inventoryStamp = inventoryStamp();
+            saveLater();
+        }
+    }
+
+    // ===== 内部処理 =====
+
+    /** 削除行を retract、追加行を accept。数値が解釈できない行があれば false（呼び出し側で無効化） */
+    private static boolean apply(List<String> removed, List<String> added, AggregationEngine.Retractable... aggs) {
+        try {
+            TsvReader.forEach(toBytes(removed), row -> {
+                if (row.isBlank()) return;
+                for (AggregationEngine.Retractable a : aggs) a.retract(row);
+            });
+            TsvReader.forEach(toBytes(added), row -> {
+                if (row.isBlank()) return;
+                for (AggregationEngine.Retractable a : aggs) a.accept(row);
+            });
+            return true;
+        } catch (IOException | RuntimeException ex) {
+            AppLogger.error("materialized aggregates update error", ex);
+            return false;
+        }
+    }
+
+    private static byte[] toBytes(List<String> lines) {
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) sb.append(line).append('\n');
+        return sb.toString().getBytes(AppFiles.CHARSET);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends AggregationEngine.Mergeable> T copy(T agg) {
+        T c = (T) agg.emptyCopy();
+        c.mergeFrom(agg);
+        return c;
+    }
+
+    private static String salesStamp() throws IOException {
+        return stamp(AppFiles.SALES_TSV) + "/" + stamp(AppFiles.SALES_INDEX) + "/" + stamp(AppFiles.SALES_JOURNAL);
+    }
+
+    private static String inventoryStamp() throws IOException {
+        return stamp(AppFiles.INVENTORY_TSV);
+    }
+
+    private static String stamp(Path file) throws IOException {
+        return FileSummary.stamp(file);
+    }
+
+    private static boolean loadQuietly() {
+        try {
+            load();
+            return true;
+        } catch (Exception ex) {
+            AppLogger.error("load analytics.agg error", ex);
+            return false;
+        }
+    }
+
+    /** 保存済みの集計を読み込みます（初回のみ）。壊れた区分はスタンプを空にして再構築させる */
+    private static void load() throws IOException {
+        if (loaded) return;
+        loaded = true;
+        if (!Files.exists(FILE)) return;
+        String[] stamps = {"", ""};
+        Aggregates.ProductStats p = new Aggregates.ProductStats();
+        Aggregates.WeekdayDemand w = new Aggregates.WeekdayDemand();
+        Aggregates.StoreStock st = new Aggregates.StoreStock();
+        boolean[] broken = {false, false};
+        TsvReader.forEach(FILE, row -> {
+            if (row.isBlank()) return;
+            String kind = row.getString(0);
+            try {
+                switch (kind) {
+                    case "#sales": stamps[0] = row.getString(1); break;
+                    case "#inventory": stamps[1] = row.getString(1); break;
+                    case "P": p.restore(row); break;
+                    case "W": w.restore(row); break;
+                    case "S": st.restore(row); break;
+                    default: break;
+                }
+            } catch (RuntimeException ex) {
+                if ("S".equals(kind)) broken[1] = true;
+                else broken[0] = true;
+            }
+        });
+        products = p;
+        weekly = w;
+        stores = st;
+        salesStamp = broken[0] ? "" : stamps[0];
+        inventoryStamp = broken[1] ? "" : stamps[1];
+    }
+
+    /** 保存する Job（まだ書いていなければ、後の保存はこれ 1 回にまとまる） */
+    private static final BackgroundWriter.Job SAVE = new BackgroundWriter.Job() {
+        @Override public void run() {
+            synchronized (LOCK) {
+                saveQuietly();
+            }
+        }
+
+        @Override public BackgroundWriter.Job merge(BackgroundWriter.Job next) { return this; }
+    };
+
+    /** analytics.agg の保存を書き込みスレッドへ予約します（呼び出し側のロックの外で、その時点の集計を書く） */
+    private static void saveLater() {
+        BackgroundWriter.submit("analytics.agg", SAVE, null);
+    }
+
+    /** LOCK を保持して呼ぶこと */
+    private static void saveQuietly() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("#sales\t").append(salesStamp).append('\n');
+        sb.append("#inventory\t").append(inventoryStamp).append('\n');
+        products.dump(sb);
+        weekly.dump(sb);
+        stores.dump(sb);
+        try {
+            AtomicFile.write(FILE, sb.toString().getBytes(AppFiles.CHARSET));
+        } catch (IOException ex) {
+            // 保存できなくても次回起動時に再構築されるだけなので続行
+            AppLogger.error("save analytics.agg error", ex);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 部分一致検索用の n-gram（1 文字＋2 文字）転置インデックス。
+ * 各項目は複数のフィールド（商品名・カテゴリ・バーコードなど）を持ち、どれか 1 つに部分一致すればヒットです。
+ * 検索語の 2-gram のポスティングを短い順に積集合し、残った候補だけを contains で確認します。
+ * 大文字小文字は区別しません。構築後は読み取り専用です。
+ */
+public final class NgramIndex {
+
+    private final String[][] fields;            // 小文字化済みのフィールド
+    private final Map<Integer, int[]> unigrams;  // 1 文字 → 項目番号（昇順・重複なし）
+    private final Map<Integer, int[]> bigrams;   // 2 文字（c1 << 16 | c2）→ 項目番号
+
+    /** fields[i] が項目 i のフィールド（null は空扱い） */
+    public NgramIndex(List<String[]> items) {
+        int n = items.size();
+        fields = new String[n][];
+        Map<Integer, IntList> uni = new HashMap<>(), bi = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            String[] src = items.get(i);
+            String[] f = new String[src.length];
+            for (int k = 0; k < src.length; k++) {
+                String s = src[k] == null ? "" : src[k].toLowerCase(Locale.ROOT);
+                f[k] = s;
+                for (int j = 0; j < s.length(); j++) {
+                    add(uni, s.charAt(j), i);
+                    if (j + 1 < s.length()) add(bi, bigram(s.charAt(j), s.charAt(j + 1)), i);
+                }
+            }
+            fields[i] = f;
+        }
+        unigrams = freeze(uni);
+        bigrams = freeze(bi);
+    }
+
+    public int size() { return fields.length; }
+
+    /** 部分一致する項目番号（昇順）。空の検索語は全件 */
+    public int[] search(String query) {
+        String q = query == null ? "" : query.toLowerCase(Locale.ROOT);
+        if (q.isEmpty()) {
+            int[] all = new int[fields.length];
+            for (int i = 0; i < all.length; i++) all[i] = i;
+            return all;
+        }
+        // 検索語の gram ごとのポスティングを集め、短いものから積集合をとる
+        List<int[]> lists = new ArrayList<>();
+        if (q.length() == 1) {
+            lists.add(unigrams.get((int) q.charAt(0)));
+        } else {
+            for (int j = 0; j + 1 < q.length(); j++) lists.add(bigrams.get(bigram(q.charAt(j), q.charAt(j + 1))));
+        }
+        for (int[] p : lists) if (p == null) return new int[0];
+        lists.sort((a, b) -> Integer.compare(a.length, b.length));
+        int[] candidates = lists.get(0);
+        for (int k = 1; k < lists.size() && candidates.length > 0; k++) candidates = intersect(candidates, lists.get(k));
+
+        // gram がすべて含まれても連続しているとは限らないので確認する
+        int[] hits = new int[candidates.length];
+        int n = 0;
+        for (int i : candidates) {
+            for (String f : fields[i]) {
+                if (f.contains(q)) {
+                    hits[n++] = i;
+                    break;
+                }
+            }
+        }
+        return Arrays.copyOf(hits, n);
+    }
+
+    private static int bigram(char a, char b) { return (a << 16) | b; }
+
+    private static void add(Map<Integer, IntList> build, int gram, int item) {
+        IntList list = build.get(gram);
+        if (list == null) build.put(gram, list = new IntList());
+        if (list.size == 0 || list.data[list.size - 1] != item) list.add(item);
+    }
+
+    private static Map<Integer, int[]> freeze(Map<Integer, IntList> build) {
+        Map<Integer, int[]> m = new HashMap<>(build.size() * 2);
+        for (Map.Entry<Integer, IntList> e : build.entrySet()) m.put(e.getKey(), e.getValue().toArray());
+        return m;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] out = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) i++;
+            else if (a[i] > b[j]) j++;
+            else {
+                out[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private static final class IntList {
+        int[] data = new int[4];
+        int size;
+
+        void add(int v) {
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = v;
+        }
+
+        int[] toArray() { return Arrays.copyOf(data, size); }
+    }
+}
@@ -11,6 +11,7 @@ import java.util.List;
 
 public class ProductManagement extends JFrame {
 
+    // Serializable は旧形式 products.dat の移行で読むためだけに残している（保存は RecordFile）
     static class Product implements Serializable {
         private static final long serialVersionUID = 1L;
         String name, category, barcode, notes;
@@ -24,8 +25,18 @@ public class ProductManagement extends JFrame {
         }
     }
 
-    // カード表示はFlowLayout（折り返し）
-    private final JPanel cardArea = new JPanel(new FlowLayout(FlowLayout.LEFT, 20, 20));
+    // カード表示は仮想化グリッド（見えている分だけカードを作り、スクロールで使い回す）
+    private static final int CARD_W = 270, CARD_H = 210, CARD_GAP = 20;
+    /** 検索入力のデバウンス（ms） */
+    private static final int SEARCH_DELAY_MS = 150;
+    private final VirtualCardGrid<Product> cardArea = new VirtualCardGrid<>(CARD_W, CARD_H, CARD_GAP,
+            new VirtualCardGrid.CardFactory<Product>() {
+                @Override public JComponent create() { return new ProductCard(); }
+                @Override public void bind(JComponent card, Product p) { ((ProductCard) card).bind(p); }
+            });
+    private final javax.swing.Timer searchTimer = new javax.swing.Timer(SEARCH_DELAY_MS, e -> renderCards());
+    /** 商品名・カテゴリ・バーコードの n-gram インデックス（products が変わったら null にして作り直す） */
+    private NgramIndex searchIndex;
     private final DashboardSimple parentDashboard;
 
     private final JTextField searchField = new JTextField();
@@ -34,15 +45,49 @@ public class ProductManagement extends JFrame {
     private final JButton addBtn = new JButton("＋ 新規商品");
     private final JButton bulkDeleteBtn = new JButton("一括削除");
 
-    private final List<Product> products = new ArrayList<>();
-
-    private Path datFile() { return AppFiles.PRODUCTS_DAT; }
+    private final List<Product> products = DataRepository.products().items();   // 画面間で共有
+    /** 商品名 → 在庫の最も近い期限 {エポック日, 在庫数}（{@link ExpiryIndex#nearest}。読み込むまでは空） */
+    private Map<String, long[]> nearestExpiry = Collections.emptyMap();
 
     public ProductManagement(DashboardSimple dashboard) {
         this.parentDashboard = dashboard;
         initUI();
-        loadProducts();
+        // 読み込みは初回だけバックグラウンドで（以後は常駐分）。読み込むまでは一覧が空なので、保存を伴う操作は止めておく
+        addBtn.setEnabled(false);
+        bulkDeleteBtn.setEnabled(false);
+        DataRepository.products().whenLoaded(this::onProductsLoaded);
+        DataRepository.products().addListener(this, this::onProductsReloaded);
+        DataRepository.inventory().addListener(this, this::loadNearestExpiry);
+        loadNearestExpiry();
+    }
+
+    private void onProductsLoaded(){
         if (products.isEmpty()) seedDemo();
+        addBtn.setEnabled(true);
+        bulkDeleteBtn.setEnabled(true);
+        onProductsReloaded();
+    }
+
+    // カードの「最短期限」を在庫の期限索引から取り直す（shelfDays は登録時の日数で、日が経っても減らないため）
+    private void loadNearestExpiry(){
+        new SwingWorker<Map<String, long[]>, Void>() {
+            @Override protected Map<String, long[]> doInBackground() throws Exception {
+                return ExpiryIndex.nearest(LocalDate.now().toEpochDay());
+            }
+            @Override protected void done() {
+                try {
+                    nearestExpiry = get();
+                    renderCards();
+                } catch (Exception ex) {
+                    AppLogger.error("Expiry index load error", ex);
+                }
+            }
+        }.execute();
+    }
+
+    // 外部で商品ファイルが変わり、読み直されたとき
+    private void onProductsReloaded(){
+        searchIndex = null;
         rebuildCategoryFilter();
         renderCards();
     }
@@ -99,7 +144,7 @@ public class ProductManagement extends JFrame {
         searchWrap.setPreferredSize(new Dimension(0, 28));
         searchField.setBorder(null);
         searchField.setFont(new Font("Yu Gothic UI", Font.PLAIN, 14));
-        searchField.setToolTipText("商品名で検索…");
+        searchField.setToolTipText("商品名・カテゴリ・バーコードで検索…");
         searchWrap.add(new JLabel("  🔍 "), BorderLayout.WEST);
         searchWrap.add(searchField, BorderLayout.CENTER);
 
@@ -117,7 +162,7 @@ public class ProductManagement extends JFrame {
         searchRow.add(filterWrap, BorderLayout.EAST);
 
         // カード表示部
-        cardArea.setOpaque(false);
+        cardArea.setEmptyText("該当する商品がありません。");
         JScrollPane sc = new JScrollPane(cardArea);
         sc.setBorder(new EmptyBorder(12, 16, 16, 16));
         sc.getViewport().setBackground(new Color(250, 244, 252));
@@ -130,8 +175,9 @@ public class ProductManagement extends JFrame {
         getContentPane().add(topArea, BorderLayout.NORTH);
         getContentPane().add(sc, BorderLayout.CENTER);
 
-        // イベント
-        searchField.getDocument().addDocumentListener(new SimpleDocListener(this::renderCards));
+        // イベント（入力が止まってから検索する）
+        searchTimer.setRepeats(false);
+        searchField.getDocument().addDocumentListener(new SimpleDocListener(searchTimer::restart));
         categoryFilter.addActionListener(e -> renderCards());
     }
 
@@ -139,16 +185,6 @@ public class ProductManagement extends JFrame {
         Theme.styleButton(b, bg);
     }
 
-    private JPanel pill(String text, Color bg){
-        JPanel p = new JPanel(new FlowLayout(FlowLayout.CENTER, 10, 4));
-        p.setBackground(bg);
-        p.setBorder(new EmptyBorder(2,10,2,10));
-        JLabel l = new JLabel(text);
-        l.setFont(new Font("Yu Gothic UI", Font.PLAIN, 12));
-        p.add(l);
-        return p;
-    }
-
     /** 新規商品の追加（期限＝年/月/日の3分割入力） */
     private void showAddDialog(){
         JTextField tfName  = new JTextField();
@@ -211,7 +247,7 @@ public class ProductManagement extends JFrame {
                 int costPrice = tfCostPrice.getText().trim().isEmpty() ? 0 : Integer.parseInt(tfCostPrice.getText().trim());
                 int stock = tfStock.getText().trim().isEmpty()? 0 : Integer.parseInt(tfStock.getText().trim());
 
-                products.add(new Product(
+                addProduct(new Product(
                         name,
                         tfCat.getText().trim(),
                         tfBarcode.getText().trim(),
@@ -221,7 +257,6 @@ public class ProductManagement extends JFrame {
                         costPrice,
                         taNote.getText().trim()
                 ));
-                saveProducts();
                 rebuildCategoryFilter();
                 renderCards();
             } catch (NumberFormatException nfe) {
@@ -233,224 +268,187 @@ public class ProductManagement extends JFrame {
     }
 
     private void renderCards(){
-        String q = searchField.getText().trim().toLowerCase();
+        searchTimer.stop();
+        String q = searchField.getText().trim();
         String cat = (String) categoryFilter.getSelectedItem();
 
-        cardArea.removeAll();
-
-        List<Product> filtered = new ArrayList<>();
-        for (Product p : products){
-            boolean match = q.isEmpty() || p.name.toLowerCase().contains(q);
-            boolean catOk = "すべて".equals(cat) || (p.category!=null && p.category.equals(cat));
-            if (match && catOk) filtered.add(p);
+        if (searchIndex == null) {
+            List<String[]> fields = new ArrayList<>(products.size());
+            for (Product p : products) fields.add(new String[]{p.name, p.category, p.barcode});
+            searchIndex = new NgramIndex(fields);
         }
-
-        if (filtered.isEmpty()){
-            JLabel msg = new JLabel("該当する商品がありません。", SwingConstants.LEFT);
-            msg.setForeground(new Color(130,130,140));
-            cardArea.add(msg);
-        } else {
-            for (Product p : filtered) cardArea.add(productCard(p));
+        List<Product> filtered = new ArrayList<>();
+        for (int i : searchIndex.search(q)){
+            Product p = products.get(i);
+            boolean catOk = cat == null || "すべて".equals(cat) || (p.category!=null && p.category.equals(cat));
+            if (catOk) filtered.add(p);
         }
+        cardArea.setItems(filtered);
 
         header.setText("登録商品（" + products.size() + "件）");
-        cardArea.revalidate();
-        cardArea.repaint();
         // TSV は保存処理側で書き出す（render 時の自動書き込みは競合の元になるため削除）
     }
 
-    private JPanel productCard(Product p){
-    StyledCard card = new StyledCard(Theme.PRODUCT_TOP, Theme.PRODUCT_BOTTOM);
-    card.setBorder(new EmptyBorder(14,16,16,16));
-    card.setPreferredSize(new Dimension(270, 210)); // 固定サイズで縦長防止
-
-        JLabel name = new JLabel("<html><b>" + escape(p.name) + "</b></html>");
-        name.setFont(new Font("Yu Gothic UI", Font.PLAIN, 18));
-
-    JPanel top = new JPanel(new BorderLayout());
-    top.setOpaque(false);
-    top.add(name, BorderLayout.WEST);
-
-        JPanel tag = pill((p.category==null||p.category.isEmpty())?"未分類":p.category, new Color(240,250,240));
-
-        JPanel priceBox = new JPanel(new BorderLayout());
-        priceBox.setOpaque(false);
-        JLabel priceLabel = new JLabel("販売価格");
-        priceLabel.setForeground(new Color(120,120,130));
-        JLabel priceVal = new JLabel("¥" + p.price);
-        priceVal.setFont(new Font("Yu Gothic UI", Font.BOLD, 22));
-        priceBox.add(priceLabel, BorderLayout.NORTH);
-        priceBox.add(Box.createVerticalStrut(4), BorderLayout.CENTER);
-        priceBox.add(priceVal, BorderLayout.SOUTH);
-
-        JLabel costLabel = new JLabel("原価: ¥" + p.costPrice);
-        costLabel.setForeground(new Color(100, 100, 100));
-        costLabel.setFont(new Font("Yu Gothic UI", Font.PLAIN, 12));
-
-        JPanel meta = new JPanel();
-        meta.setOpaque(false);
-        meta.setLayout(new BoxLayout(meta, BoxLayout.Y_AXIS));
-        meta.add(new JLabel("🔖  " + (p.barcode==null||p.barcode.isEmpty()? "-" : p.barcode)));
-        meta.add(Box.createVerticalStrut(4));
-        meta.add(new JLabel("⏳  期限まで: " + p.shelfDays + "日"));
-        meta.add(Box.createVerticalStrut(4));
-        meta.add(costLabel);
-
-    JButton del = new JButton("削除");
-    Theme.styleButton(del, new Color(200, 60, 60));
-        del.addActionListener(e -> {
-            int ans = JOptionPane.showConfirmDialog(this,
-                    "「" + p.name + "」を削除しますか？", "削除の確認",
-                    JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
-            if (ans == JOptionPane.YES_OPTION){
-                products.remove(p);
-                saveProducts();
-                rebuildCategoryFilter();
-                renderCards();
-            }
-        });
-
-    JButton edit = new JButton("編集");
-    Theme.styleButton(edit, new Color(100, 160, 220));
-    edit.addActionListener(e -> onEditProduct(p));
-
-        JPanel bottom = new JPanel(new FlowLayout(FlowLayout.RIGHT));
-        bottom.setOpaque(false);
-        bottom.add(edit);
-        bottom.add(del);
-
-        JPanel center = new JPanel(new BorderLayout());
-        center.setOpaque(false);
-        center.add(tag, BorderLayout.NORTH);
-        center.add(priceBox, BorderLayout.CENTER);
-
-        JPanel detailWrap = new JPanel(new BorderLayout());
-        detailWrap.setOpaque(false);
-        detailWrap.setBorder(new CompoundBorder(
-                new MatteBorder(1,0,0,0, new Color(235,235,235)),
-                new EmptyBorder(8,0,0,0)
-        ));
-        detailWrap.add(meta, BorderLayout.CENTER);
+    /** 商品カード。グリッドから使い回されるので、表示内容は bind で差し替える */
+    private final class ProductCard extends StyledCard {
+        private final JLabel name = new JLabel();
+        private final JLabel tag = new JLabel();
+        private final JLabel priceVal = new JLabel();
+        private final JLabel barcode = new JLabel();
+        private final JLabel shelf = new JLabel();
+        private final JLabel costLabel = new JLabel();
+        private Product product;
+
+        ProductCard(){
+            super(Theme.PRODUCT_TOP, Theme.PRODUCT_BOTTOM);
+            setBorder(new EmptyBorder(14,16,16,16));
+
+            name.setFont(new Font("Yu Gothic UI", Font.PLAIN, 18));
+            JPanel top = new JPanel(new BorderLayout());
+            top.setOpaque(false);
+            top.add(name, BorderLayout.WEST);
+
+            JPanel tagPill = new JPanel(new FlowLayout(FlowLayout.CENTER, 10, 4));
+            tagPill.setBackground(new Color(240,250,240));
+            tagPill.setBorder(new EmptyBorder(2,10,2,10));
+            tag.setFont(new Font("Yu Gothic UI", Font.PLAIN, 12));
+            tagPill.add(tag);
+
+            JPanel priceBox = new JPanel(new BorderLayout());
+            priceBox.setOpaque(false);
+            JLabel priceLabel = new JLabel("販売価格");
+            priceLabel.setForeground(new Color(120,120,130));
+            priceVal.setFont(new Font("Yu Gothic UI", Font.BOLD, 22));
+            priceBox.add(priceLabel, BorderLayout.NORTH);
+            priceBox.add(Box.createVerticalStrut(4), BorderLayout.CENTER);
+            priceBox.add(priceVal, BorderLayout.SOUTH);
+
+            costLabel.setForeground(new Color(100, 100, 100));
+            costLabel.setFont(new Font("Yu Gothic UI", Font.PLAIN, 12));
+
+            JPanel meta = new JPanel();
+            meta.setOpaque(false);
+            meta.setLayout(new BoxLayout(meta, BoxLayout.Y_AXIS));
+            meta.add(barcode);
+            meta.add(Box.createVerticalStrut(4));
+            meta.add(shelf);
+            meta.add(Box.createVerticalStrut(4));
+            meta.add(costLabel);
+
+            JButton del = new JButton("削除");
+            Theme.styleButton(del, new Color(200, 60, 60));
+            del.addActionListener(e -> {
+                Product p = product;
+                int ans = JOptionPane.showConfirmDialog(ProductManagement.this,
+                        "「" + p.name + "」を削除しますか？", "削除の確認",
+                        JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
+                if (ans == JOptionPane.YES_OPTION){
+                    products.remove(p);
+                    saveProducts();
+                    rebuildCategoryFilter();
+                    renderCards();
+                }
+            });
+
+            JButton edit = new JButton("編集");
+            Theme.styleButton(edit, new Color(100, 160, 220));
+            edit.addActionListener(e -> onEditProduct(product));
+
+            JPanel bottom = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+            bottom.setOpaque(false);
+            bottom.add(edit);
+            bottom.add(del);
+
+            JPanel center = new JPanel(new BorderLayout());
+            center.setOpaque(false);
+            center.add(tagPill, BorderLayout.NORTH);
+            center.add(priceBox, BorderLayout.CENTER);
+
+            JPanel detailWrap = new JPanel(new BorderLayout());
+            detailWrap.setOpaque(false);
+            detailWrap.setBorder(new CompoundBorder(
+                    new MatteBorder(1,0,0,0, new Color(235,235,235)),
+                    new EmptyBorder(8,0,0,0)
+            ));
+            detailWrap.add(meta, BorderLayout.CENTER);
+
+            add(top, BorderLayout.NORTH);
+            add(center, BorderLayout.CENTER);
+            add(detailWrap, BorderLayout.SOUTH);
+            add(bottom, BorderLayout.PAGE_END);
+        }
 
-        card.add(top, BorderLayout.NORTH);
-        card.add(center, BorderLayout.CENTER);
-        card.add(detailWrap, BorderLayout.SOUTH);
-        card.add(bottom, BorderLayout.PAGE_END);
-        return card;
+        void bind(Product p){
+            product = p;
+            name.setText("<html><b>" + escape(p.name) + "</b></html>");
+            tag.setText((p.category==null||p.category.isEmpty())?"未分類":p.category);
+            priceVal.setText("¥" + p.price);
+            barcode.setText("🔖  " + (p.barcode==null||p.barcode.isEmpty()? "-" : p.barcode));
+            long[] near = nearestExpiry.get(p.name);
+            if (near != null) {
+                shelf.setText("⏳  最短期限まで: " + (near[0] - LocalDate.now().toEpochDay()) + "日（" + near[1] + "個）");
+            } else {
+                shelf.setText("⏳  期限日数: " + p.shelfDays + "日（在庫なし）");
+            }
+            costLabel.setText("原価: ¥" + p.costPrice);
+        }
     }
 
     private String escape(String s){ return s==null? "" : s.replace("<","&lt;").replace(">","&gt;"); }
 
     private void saveProducts(){
-        // 同期保存（簡潔で確実）
-        java.util.List<Product> snapshot = new ArrayList<>(products);
-        // TSV
-        java.util.List<String> lines = new java.util.ArrayList<>();
-        for (Product p : snapshot){
-            lines.add(tsv(p.name) + "\t" + tsv(p.category) + "\t" +
-                      tsv(p.barcode) + "\t" + p.shelfDays + "\t" +
-                      p.stock + "\t" + p.price + "\t" + p.costPrice + "\t" + tsv(p.notes));
-        }
-        try {
-            java.nio.file.Files.write(AppFiles.PRODUCTS_TSV, lines, AppFiles.CHARSET,
-                    java.nio.file.StandardOpenOption.CREATE, java.nio.file.StandardOpenOption.TRUNCATE_EXISTING);
-        } catch (Exception ex) { AppLogger.error("writeProductsTSV error", ex); JOptionPane.showMessageDialog(ProductManagement.this, "保存に失敗しました: " + ex.getMessage()); }
+        // 商品が変わったので検索インデックスは次の表示で作り直す
+        searchIndex = null;
+        // 書き込みはバックグラウンド（続いた保存はまとめて 1 回）。バーコード索引はすぐ作り直される
+        DataRepository.saveProducts(this, this::afterProductsSaved);
+    }
 
-        // 保存成功後、ダッシュボードが渡されていれば件数を更新させる
+    // 1 件追加（ファイルは末尾へ追記するだけ）
+    private void addProduct(Product p){
+        searchIndex = null;
+        DataRepository.addProduct(this, p, this::afterProductsSaved);
+    }
+
+    private void afterProductsSaved(){
+        // 保存完了（ディスクへ確定）後、ダッシュボードが渡されていれば件数を更新させる
         if (parentDashboard != null) parentDashboard.refreshProductCard();
 
-        // --- 新規商品を在庫管理(inventory.tsv)にも反映 ---
-        try {
-            java.util.List<String> invLines = new ArrayList<>();
-            java.util.Set<String> invItems = new HashSet<>();
-            Path invPath = AppFiles.INVENTORY_TSV;
-            if (java.nio.file.Files.exists(invPath)) {
-                for (String line : java.nio.file.Files.readAllLines(invPath, AppFiles.CHARSET)) {
-                    if (line.trim().isEmpty()) continue;
-                    String[] c = line.split("\t", -1);
-                    if (c.length >= 3) invItems.add(c[2]); // 商品名
-                    invLines.add(line);
-                }
-            }
-            LocalDate today = LocalDate.now();
-            for (Product p : products) {
-                if (!invItems.contains(p.name)) {
-                    // 在庫数が0や空欄なら1、0より大きければその値
-                    int stock = (p.stock > 0) ? p.stock : 1;
-                    // 記録日, 店舗, 商品, 賞味期限, 在庫数, 発注点, 状態, 備考
-                    String row = today + "\t" + "" + "\t" + p.name + "\t" + today.plusDays(p.shelfDays) + "\t" + stock + "\t0\t正常\t";
-                    invLines.add(row);
-                }
-            }
-            java.nio.file.Files.write(invPath, invLines, AppFiles.CHARSET,
-                java.nio.file.StandardOpenOption.CREATE, java.nio.file.StandardOpenOption.TRUNCATE_EXISTING);
-        } catch (Exception ex) {
-            AppLogger.error("auto add to inventory.tsv error", ex);
-        }
+        // --- 新規商品を在庫管理にも反映（常駐している在庫表を見て、ファイルは読み直さない） ---
+        DataRepository.inventory().whenLoaded(this::addNewProductsToInventory);
     }
 
-    @SuppressWarnings("unchecked")
-    private void loadProducts(){
-        // まず TSV があればそちらを優先して読み込む（段階的移行）
-        Path tsv = AppFiles.PRODUCTS_TSV;
-        if (java.nio.file.Files.exists(tsv)){
-            try {
-                java.util.List<String> lines = java.nio.file.Files.readAllLines(tsv, AppFiles.CHARSET);
-                for (String line : lines){
-                    if (line.trim().isEmpty()) continue;  // 空行をスキップ
-                    String[] c = line.split("\t", -1);
-                    if (c.length >= 8){
-                        // 新形式（原価あり）: name, category, barcode, shelfDays, stock, price, costPrice, notes
-                        int cp = 0;
-                        try { cp = Integer.parseInt(c[6]); } catch (Exception ex) {}
-                        Product p = new Product(c[0], c[1], c[2], Integer.parseInt(c[3]), Integer.parseInt(c[4]), Integer.parseInt(c[5]), cp, c[7]);
-                        products.add(p);
-                    } else if (c.length >= 7) {
-                        // 旧形式（原価なし）: name, category, barcode, shelfDays, stock, price, notes
-                        Product p = new Product(c[0], c[1], c[2], Integer.parseInt(c[3]), Integer.parseInt(c[4]), Integer.parseInt(c[5]), c[6]);
-                        products.add(p);
-                    }
-                }
-            } catch (Exception ex){ 
-                AppLogger.error("loadProducts from tsv error", ex);
-                JOptionPane.showMessageDialog(ProductManagement.this, "商品TSVの読み込みに失敗しました: " + ex.getMessage());
+    private void addNewProductsToInventory(){
+        InventoryTableModel inv = DataRepository.inventory().model();
+        KeyDictionary names = inv.dictionary(InventoryTableModel.ITEM);
+        java.util.Set<String> invItems = new HashSet<>();
+        boolean[] used = new boolean[names.size()];
+        for (int r = 0; r < inv.getRowCount(); r++) used[inv.getId(r, InventoryTableModel.ITEM)] = true;
+        for (int id = 0; id < used.length; id++) if (used[id]) invItems.add(names.name(id));
+
+        LocalDate today = LocalDate.now();
+        java.util.List<String[]> rows = new ArrayList<>();
+        for (Product p : products) {
+            if (invItems.add(p.name)) {
+                // 在庫数が0や空欄なら1、0より大きければその値
+                int stock = (p.stock > 0) ? p.stock : 1;
+                // 記録日, 店舗, 商品, 賞味期限, 在庫数, 発注点, 状態, 備考
+                rows.add(new String[]{today.toString(), "", p.name, today.plusDays(p.shelfDays).toString(),
+                        String.valueOf(stock), "0", "正常", ""});
             }
-            return;
-        }
-        // TSV が無ければ従来の dat を試す
-        Path f = datFile();
-        if (!java.nio.file.Files.exists(f)) return;
-        try (ObjectInputStream ois = new ObjectInputStream(java.nio.file.Files.newInputStream(f))){
-            Object obj = ois.readObject();
-            java.util.List<Product> loaded = (ArrayList<Product>) obj;
-            for (Product p : loaded) products.add(p);
-        } catch (java.io.EOFException ex){
-            AppLogger.info("products.dat empty or truncated, skipping load");
-        } catch (Exception ex){
-            AppLogger.error("loadProducts error", ex);
-            JOptionPane.showMessageDialog(ProductManagement.this, "商品データの読み込みに失敗しました: " + ex.getMessage());
         }
+        if (rows.isEmpty()) return;
+        int first = inv.getRowCount();
+        inv.addRows(rows);
+        java.util.List<String> added = new ArrayList<>(rows.size());
+        for (int r = first; r < inv.getRowCount(); r++) added.add(String.join("\t", inv.getRow(r)));
+        DataRepository.saveInventory(this, java.util.Collections.emptyList(), added, () -> {
+            if (parentDashboard != null) parentDashboard.refreshInventoryCard();
+            loadNearestExpiry();
+        });
     }
 
     private String escapeJson(String s){ if (s==null) return ""; return s.replace("\\", "\\\\").replace("\"","\\\"").replace("\n","\\n"); }
 
-    private void writeProductsTSV(){
-        List<String> lines = new ArrayList<>();
-        for (Product p : products){
-            lines.add(tsv(p.name) + "\t" + tsv(p.category) + "\t" +
-                      tsv(p.barcode) + "\t" + p.shelfDays + "\t" +
-                      p.stock + "\t" + p.price + "\t" + tsv(p.notes));
-        }
-        try {
-            Files.write(AppFiles.PRODUCTS_TSV, lines, AppFiles.CHARSET,
-                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
-        } catch (IOException ex) {
-            AppLogger.error("TSV保存失敗", ex);
-        }
-    }
-
-    private String tsv(String s){ return (s==null)?"":s.replace("\t"," ").replace("\r"," ").replace("\n"," "); }
-
     private void rebuildCategoryFilter(){
         Object sel = categoryFilter.getSelectedItem();
         Set<String> cats = new TreeSet<>();
@@ -0,0 +1,251 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 店舗・商品の保存用のバイナリレコード形式（Java のシリアライズの置き換え）。
+ *
+ * ヘッダー 16 バイト: マジック "PDRF" / 形式バージョン(u16) / スキーマバージョン(u16) / 種類(ASCII 4 文字) / 予約(4)
+ * 以降はレコードの並び: 長さ(int) + 本体。本体は {@link Codec} が int と文字列（長さ int + UTF-8、null は -1）で書きます。
+ *
+ * 読み込みはファイルを mmap して先頭から 1 回なめるだけです。件数をヘッダーに持たないので、
+ * 追加は末尾へレコードを足すだけで書き直しは不要です。途中で切れた末尾のレコードは読み飛ばします。
+ * スキーマを変えたときは version を上げ、古い版のレコードは {@link Codec#read} で版ごとに読み分けます。
+ */
+public final class RecordFile {
+
+    private static final int MAGIC = 0x50445246;   // "PDRF"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    /** Java のシリアライズ（ObjectOutputStream）の先頭 2 バイト */
+    private static final int JAVA_SERIAL_MAGIC = 0xACED;
+
+    /** 1 種類のレコードの読み書き */
+    public interface Codec<T> {
+        /** 種類（ASCII 4 文字、取り違え防止） */
+        String kind();
+        /** 現在のスキーマバージョン */
+        int version();
+        void write(Out out, T item);
+        /** version は書かれたときのスキーマバージョン */
+        T read(In in, int version);
+    }
+
+    private RecordFile() {}
+
+    /** このクラスの形式で書かれたファイルか */
+    public static boolean isRecordFile(Path file) throws IOException {
+        return header(file) == MAGIC;
+    }
+
+    /** Java のシリアライズで書かれた旧形式か（移行対象） */
+    public static boolean isLegacySerialized(Path file) throws IOException {
+        return (header(file) >>> 16) == JAVA_SERIAL_MAGIC;
+    }
+
+    /** 全レコードを読みます（ファイルがなければ空） */
+    public static <T> List<T> read(Path file, Codec<T> codec) throws IOException {
+        List<T> out = new ArrayList<>();
+        if (!Files.exists(file)) return out;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size == 0) return out;
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            map.order(ByteOrder.BIG_ENDIAN);
+            int version = checkHeader(map, codec, file);
+            while (map.remaining() >= 4) {
+                int len = map.getInt();
+                if (len < 0 || len > map.remaining()) {
+                    AppLogger.warn("truncated record in " + file + " at " + (map.position() - 4) + ", ignoring the rest");
+                    break;
+                }
+                ByteBuffer body = map.slice();
+                body.limit(len);
+                out.add(codec.read(new In(body), version));
+                map.position(map.position() + len);
+            }
+        }
+        return out;
+    }
+
+    /** 全レコードで書き直します（一時ファイルに書いて fsync してから置き換え） */
+    public static <T> void write(Path file, List<T> items, Codec<T> codec) throws IOException {
+        AtomicFile.write(file, encode(items, codec));
+    }
+
+    /**
+     * 末尾にレコードを追加します。ファイルがない・旧形式・スキーマが古い・末尾が途中で切れている場合は
+     * current 全体で書き直します（切れた末尾の後ろに足すと、読み込みで切れ目から先がすべて読み飛ばされるため）。
+     * current は追加後の全件（書き直しが必要なときだけ使う）。
+     */
+    public static <T> void append(Path file, List<T> added, List<T> current, Codec<T> codec) throws IOException {
+        if (!canAppend(file, codec)) {
+            write(file, current, codec);
+            return;
+        }
+        AtomicFile.append(file, encodeRecords(added, codec));
+    }
+
+    /**
+     * {@link #append} の符号化済み版（書き込みスレッドに渡す用）。
+     * records は {@link #encodeRecords}、whole は書き直しが必要なときの {@link #encode} の結果。
+     */
+    public static void appendEncoded(Path file, byte[] records, byte[] whole, Codec<?> codec) throws IOException {
+        if (canAppend(file, codec)) AtomicFile.append(file, records);
+        else AtomicFile.write(file, whole);
+    }
+
+    /** ヘッダー付きのファイル全体のバイト列 */
+    public static <T> byte[] encode(List<T> items, Codec<T> codec) {
+        Out out = new Out();
+        out.header(codec);
+        for (T item : items) out.record(codec, item);
+        return out.toByteArray();
+    }
+
+    /** 追記用のレコード列（ヘッダーなし） */
+    public static <T> byte[] encodeRecords(List<T> items, Codec<T> codec) {
+        Out out = new Out();
+        for (T item : items) out.record(codec, item);
+        return out.toByteArray();
+    }
+
+    // ===== 内部処理 =====
+
+    private static boolean canAppend(Path file, Codec<?> codec) throws IOException {
+        if (!Files.exists(file) || Files.size(file) < HEADER_SIZE) return false;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer h = ByteBuffer.allocate(HEADER_SIZE);
+            while (h.hasRemaining() && ch.read(h) > 0) { }
+            h.flip();
+            if (h.getInt() != MAGIC || h.getShort() != FORMAT_VERSION || h.getShort() != codec.version()
+                    || h.getInt() != kindTag(codec.kind())) return false;
+            if (complete(ch)) return true;
+            AppLogger.warn("truncated record at the end of " + file + ", rewriting it");
+            return false;
+        }
+    }
+
+    /** 長さを辿って、最後のレコードがファイルの末尾でちょうど終わっているか */
+    private static boolean complete(FileChannel ch) throws IOException {
+        long size = ch.size();
+        MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        map.order(ByteOrder.BIG_ENDIAN);
+        long pos = HEADER_SIZE;
+        while (size - pos >= 4) {
+            int len = map.getInt((int) pos);
+            if (len < 0 || len > size - pos - 4) return false;
+            pos += 4 + len;
+        }
+        return pos == size;
+    }
+
+    /** ヘッダーを確認し、書かれたときのスキーマバージョンを返す */
+    private static int checkHeader(ByteBuffer b, Codec<?> codec, Path file) throws IOException {
+        if (b.remaining() < HEADER_SIZE || b.getInt() != MAGIC) throw new IOException("not a record file: " + file);
+        int format = b.getShort() & 0xFFFF;
+        int version = b.getShort() & 0xFFFF;
+        int kind = b.getInt();
+        b.getInt();   // 予約
+        if (format != FORMAT_VERSION) throw new IOException("unsupported record format " + format + ": " + file);
+        if (kind != kindTag(codec.kind())) throw new IOException("unexpected record kind in " + file);
+        if (version > codec.version()) throw new IOException("record schema " + version + " is newer than this app: " + file);
+        return version;
+    }
+
+    /** 先頭 4 バイト（足りなければ 0） */
+    private static int header(Path file) throws IOException {
+        if (!Files.exists(file)) return 0;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer b = ByteBuffer.allocate(4);
+            while (b.hasRemaining() && ch.read(b) > 0) { }
+            return b.hasRemaining() ? 0 : b.getInt(0);
+        }
+    }
+
+    private static int kindTag(String kind) {
+        byte[] k = kind.getBytes(StandardCharsets.US_ASCII);
+        if (k.length != 4) throw new IllegalArgumentException("kind must be 4 ASCII chars: " + kind);
+        return ByteBuffer.wrap(k).getInt();
+    }
+
+    /** レコードの書き出し先（伸長するバイト列） */
+    public static final class Out {
+        private byte[] buf = new byte[256];
+        private int size;
+
+        public void writeInt(int v) {
+            ensure(4);
+            buf[size++] = (byte) (v >>> 24);
+            buf[size++] = (byte) (v >>> 16);
+            buf[size++] = (byte) (v >>> 8);
+            buf[size++] = (byte) v;
+        }
+
+        public void writeString(String s) {
+            if (s == null) {
+                writeInt(-1);
+                return;
+            }
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            writeInt(b.length);
+            ensure(b.length);
+            System.arraycopy(b, 0, buf, size, b.length);
+            size += b.length;
+        }
+
+        private void header(Codec<?> codec) {
+            writeInt(MAGIC);
+            writeInt((FORMAT_VERSION << 16) | codec.version());
+            writeInt(kindTag(codec.kind()));
+            writeInt(0);
+        }
+
+        /** 長さを後から埋める */
+        private <T> void record(Codec<T> codec, T item) {
+            int at = size;
+            writeInt(0);
+            codec.write(this, item);
+            int len = size - at - 4;
+            buf[at] = (byte) (len >>> 24);
+            buf[at + 1] = (byte) (len >>> 16);
+            buf[at + 2] = (byte) (len >>> 8);
+            buf[at + 3] = (byte) len;
+        }
+
+        private void ensure(int n) {
+            if (size + n > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + n));
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(buf, size);
+        }
+    }
+
+    /** 1 レコード分の読み取り（範囲外は例外） */
+    public static final class In {
+        private final ByteBuffer b;
+
+        In(ByteBuffer b) { this.b = b; }
+
+        public int readInt() { return b.getInt(); }
+
+        public String readString() {
+            int len = b.getInt();
+            if (len < 0) return null;
+            byte[] s = new byte[len];
+            b.get(s);
+            return new String(s, StandardCharsets.UTF_8);
+        }
+
+        /** 後のスキーマで足した項目が、古い版のレコードにあるか */
+        public boolean hasMore() { return b.hasRemaining(); }
+    }
+}
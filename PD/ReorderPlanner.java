@@ -0,0 +1,240 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * 全店舗×全商品の発注提案（推奨発注点と発注数）をまとめて計算します（画面に依存しない）。
+ *
+ * 直近 windowDays 日の日別販売数から平均と標準偏差を求め、
+ * <pre>
+ *   発注点   = 平均 × リードタイム + z × 標準偏差 × √リードタイム
+ *   補充目標 = 平均 × (リードタイム + 発注間隔) + z × 標準偏差 × √(リードタイム + 発注間隔)
+ * </pre>
+ * とします。補充目標は賞味期限内に売り切れる量（平均 × 商品の期限日数）までに抑えます。
+ * 手持ちは在庫のうち、次の入荷（リードタイム後）まで期限が残るものだけを数え、手持ちが発注点以下なら補充目標までを発注します。
+ *
+ * 販売実績は期間に重なる月だけを、在庫とともに 1 回ずつ並列に走査し、系列ごとの計算も並列に行います。
+ */
+public final class ReorderPlanner {
+
+    /** 計算の条件 */
+    public static final class Options {
+        /** 販売の速さを見る日数（昨日まで） */
+        public int windowDays = 28;
+        /** 発注から入荷までの日数 */
+        public int leadDays = 1;
+        /** 発注の間隔（日） */
+        public int reviewDays = 1;
+        /** 欠品を避ける確率に対応する係数（1.65 ≒ 95%） */
+        public double serviceZ = 1.65;
+    }
+
+    /** 1 店舗×1 商品の提案 */
+    public static final class Line {
+        public final String store, item;
+        public final double avgDaily, sdDaily;
+        public final int onHand, shelfDays, reorderPoint, orderUpTo, orderQty;
+
+        Line(String store, String item, double avgDaily, double sdDaily, int onHand, int shelfDays,
+             int reorderPoint, int orderUpTo, int orderQty) {
+            this.store = store;
+            this.item = item;
+            this.avgDaily = avgDaily;
+            this.sdDaily = sdDaily;
+            this.onHand = onHand;
+            this.shelfDays = shelfDays;
+            this.reorderPoint = reorderPoint;
+            this.orderUpTo = orderUpTo;
+            this.orderQty = orderQty;
+        }
+    }
+
+    private static final String HEADER =
+            "store\titem\tavg_daily\tsd_daily\ton_hand\tshelf_days\treorder_point\torder_up_to\torder_qty";
+
+    private ReorderPlanner() {}
+
+    /** 販売実績と在庫のどちらかにある店舗×商品すべての提案（店舗・商品の順） */
+    public static List<Line> plan(Options o) throws IOException {
+        long today = LocalDate.now().toEpochDay();
+        long from = today - o.windowDays, to = today - 1;
+        WindowSales sales = new WindowSales(from, o.windowDays);
+        AggregationEngine.scanSalesRange(from, to, sales);
+        OnHand stock = new OnHand(today + o.leadDays);
+        AggregationEngine.scan(AppFiles.INVENTORY_TSV, stock);
+        Map<String, Integer> shelf = shelfDays();
+
+        // 販売・在庫の店舗×商品をまとめる
+        KeyDictionary keys = new KeyDictionary();
+        int[] salesOf = new int[0], stockOf = new int[0];
+        for (int h = 0; h < sales.keys.size(); h++) {
+            int id = keys.idOf(sales.keys.bytes(h), 0, sales.keys.bytes(h).length);
+            salesOf = put(salesOf, id, h);
+        }
+        for (int h = 0; h < stock.keys.size(); h++) {
+            int id = keys.idOf(stock.keys.bytes(h), 0, stock.keys.bytes(h).length);
+            stockOf = put(stockOf, id, h);
+        }
+        int n = keys.size();
+        int[] sOf = Arrays.copyOf(salesOf, n), iOf = Arrays.copyOf(stockOf, n);
+        for (int i = salesOf.length; i < n; i++) sOf[i] = -1;
+        for (int i = stockOf.length; i < n; i++) iOf[i] = -1;
+
+        Line[] lines = new Line[n];
+        double sqrtL = Math.sqrt(o.leadDays), sqrtLR = Math.sqrt(o.leadDays + o.reviewDays);
+        IntStream.range(0, n).parallel().forEach(i -> {
+            String key = keys.name(i);
+            int tab = key.indexOf('\t');
+            String store = key.substring(0, tab), item = key.substring(tab + 1);
+            double sum = 0, sq = 0;
+            if (sOf[i] >= 0) {
+                for (int v : sales.daily[sOf[i]]) {
+                    sum += v;
+                    sq += (double) v * v;
+                }
+            }
+            double avg = sum / o.windowDays;
+            double sd = Math.sqrt(Math.max(0, sq / o.windowDays - avg * avg));
+            int onHand = iOf[i] >= 0 ? (int) stock.stock[iOf[i]] : 0;
+            int shelfDays = shelf.getOrDefault(item, 0);
+            int rop = (int) Math.ceil(avg * o.leadDays + o.serviceZ * sd * sqrtL);
+            int upTo = (int) Math.ceil(avg * (o.leadDays + o.reviewDays) + o.serviceZ * sd * sqrtLR);
+            // 期限内に売り切れる量を超えては積まない（発注点は下回らない）
+            if (shelfDays > 0) upTo = Math.max(rop, Math.min(upTo, (int) Math.ceil(avg * shelfDays)));
+            int qty = avg > 0 && onHand <= rop ? Math.max(0, upTo - onHand) : 0;
+            lines[i] = new Line(store, item, avg, sd, onHand, shelfDays, rop, upTo, qty);
+        });
+        List<Line> out = new ArrayList<>(Arrays.asList(lines));
+        out.sort((a, b) -> {
+            int c = a.store.compareTo(b.store);
+            return c != 0 ? c : a.item.compareTo(b.item);
+        });
+        return out;
+    }
+
+    /** 提案をタブ区切りで書きます（一時ファイル経由で置き換え） */
+    public static void write(List<Line> lines, Path file) throws IOException {
+        StringBuilder sb = new StringBuilder(HEADER).append('\n');
+        for (Line l : lines) {
+            sb.append(l.store).append('\t').append(l.item).append('\t')
+              .append(fixed2(l.avgDaily)).append('\t').append(fixed2(l.sdDaily)).append('\t')
+              .append(l.onHand).append('\t').append(l.shelfDays).append('\t').append(l.reorderPoint).append('\t')
+              .append(l.orderUpTo).append('\t').append(l.orderQty).append('\n');
+        }
+        AtomicFile.write(file, sb.toString().getBytes(AppFiles.CHARSET));
+    }
+
+    /** 保存済みの提案で発注数が 1 以上の店舗×商品（"店舗\t商品"）。ファイルがなければ空 */
+    public static Set<String> readProposed(Path file) throws IOException {
+        if (!Files.exists(file)) return Collections.emptySet();
+        Set<String> keys = new HashSet<>();
+        TsvReader.forEach(file, row -> {
+            if (row.size() < 9 || row.getString(0).equals("store")) return;
+            if (row.getInt(8, 0) > 0) keys.add(row.join(0, 2));
+        });
+        return keys;
+    }
+
+    /** 小数 2 桁（0 以上の値用。String.format は行ごとには重い） */
+    private static String fixed2(double v) {
+        long c = Math.round(v * 100);
+        long frac = c % 100;
+        return (c / 100) + (frac < 10 ? ".0" : ".") + frac;
+    }
+
+    private static int[] put(int[] a, int i, int v) {
+        if (i >= a.length) {
+            int old = a.length;
+            a = Arrays.copyOf(a, Math.max(i + 1, old * 2));
+            Arrays.fill(a, old, a.length, -1);
+        }
+        a[i] = v;
+        return a;
+    }
+
+    /** 商品名 → 期限日数（products.tsv。商品一覧の保存時に .dat と一緒に書かれる） */
+    private static Map<String, Integer> shelfDays() throws IOException {
+        Map<String, Integer> map = new HashMap<>();
+        if (!Files.exists(AppFiles.PRODUCTS_TSV)) return map;
+        TsvReader.forEach(AppFiles.PRODUCTS_TSV, row -> {
+            if (row.size() >= 4) map.put(row.getString(0), row.getInt(3, 0));
+        });
+        return map;
+    }
+
+    // ===== 集計 =====
+
+    /** 店舗×商品ごとの日別販売数（from から days 日分） */
+    private static final class WindowSales implements AggregationEngine.Mergeable {
+        final KeyDictionary keys = new KeyDictionary();
+        final long from;
+        final int days;
+        int[][] daily = new int[16][];
+
+        WindowSales(long from, int days) {
+            this.from = from;
+            this.days = days;
+        }
+
+        @Override public void accept(TsvReader.Row row) {
+            if (row.size() < 4) return;
+            long at = row.getEpochDay(0) - from;
+            if (at < 0 || at >= days) return;   // 日付が読めない行もここで除く
+            add(row.intern(1, 2, keys), (int) at, row.getInt(3, 0));
+        }
+
+        private void add(int id, int at, int sold) {
+            if (id >= daily.length) daily = Arrays.copyOf(daily, Math.max(id + 1, daily.length * 2));
+            if (daily[id] == null) daily[id] = new int[days];
+            daily[id][at] += sold;
+        }
+
+        @Override public AggregationEngine.Mergeable emptyCopy() { return new WindowSales(from, days); }
+
+        @Override public void mergeFrom(AggregationEngine.Mergeable other) {
+            WindowSales o = (WindowSales) other;
+            for (int h = 0; h < o.keys.size(); h++) {
+                int id = keys.idOf(o.keys.bytes(h), 0, o.keys.bytes(h).length);
+                for (int d = 0; d < days; d++) add(id, d, o.daily[h][d]);
+            }
+        }
+    }
+
+    /** 店舗×商品ごとの手持ち（期限が usableFrom 以降、または読めない在庫行の合計） */
+    private static final class OnHand implements AggregationEngine.Mergeable {
+        final KeyDictionary keys = new KeyDictionary();
+        final long usableFrom;
+        long[] stock = new long[16];
+
+        OnHand(long usableFrom) { this.usableFrom = usableFrom; }
+
+        @Override public void accept(TsvReader.Row row) {
+            if (row.size() < 5) return;
+            long expiry = row.getEpochDay(3);
+            int id = row.intern(1, 2, keys);
+            if (id >= stock.length) stock = Arrays.copyOf(stock, Math.max(id + 1, stock.length * 2));
+            if (expiry == TsvReader.NO_DATE || expiry >= usableFrom) stock[id] += row.getInt(4, 0);
+        }
+
+        @Override public AggregationEngine.Mergeable emptyCopy() { return new OnHand(usableFrom); }
+
+        @Override public void mergeFrom(AggregationEngine.Mergeable other) {
+            OnHand o = (OnHand) other;
+            for (int h = 0; h < o.keys.size(); h++) {
+                int id = keys.idOf(o.keys.bytes(h), 0, o.keys.bytes(h).length);
+                if (id >= stock.length) stock = Arrays.copyOf(stock, Math.max(id + 1, stock.length * 2));
+                stock[id] += o.stock[h];
+            }
+        }
+    }
+}
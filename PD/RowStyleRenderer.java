@@ -0,0 +1,62 @@
+import javax.swing.*;
+import javax.swing.table.DefaultTableCellRenderer;
+import java.awt.*;
+
+/**
+ * {@link ColumnTableModel} の行スタイルで色分けする共有レンダラー。
+ * スタイルはモデルが行ごとにキャッシュしているので、描画時は配列を引くだけで
+ * Color / Font の生成や値のパースを行いません。全列に同じインスタンスを設定して使います。
+ */
+public final class RowStyleRenderer extends DefaultTableCellRenderer {
+
+    /** 1 つの行スタイル（背景色・文字色・太字） */
+    public static final class Style {
+        final Color background;
+        final Color foreground;
+        final boolean bold;
+
+        public Style(Color background, Color foreground, boolean bold) {
+            this.background = background;
+            this.foreground = foreground;
+            this.bold = bold;
+        }
+    }
+
+    private final ColumnTableModel model;
+    private final Style[] styles;   // 添字 = ColumnTableModel#getStyle の値
+    private Font baseFont, boldFont;
+
+    public RowStyleRenderer(ColumnTableModel model, Style... styles) {
+        this.model = model;
+        this.styles = styles;
+        setOpaque(true);
+    }
+
+    @Override
+    public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus, int row, int column) {
+        // 値の文字列化はモデルに任せる（value のボクシング値は使わない）
+        super.getTableCellRendererComponent(table, null, isSelected, hasFocus, row, column);
+        int modelRow = table.convertRowIndexToModel(row);
+        int modelCol = table.convertColumnIndexToModel(column);
+        setText(model.getText(modelRow, modelCol));
+        if (isSelected) {
+            setBackground(table.getSelectionBackground());
+            setForeground(table.getSelectionForeground());
+            return this;
+        }
+        Style s = styles[model.getStyle(modelRow)];
+        setBackground(s.background);
+        setForeground(s.foreground);
+        if (s.bold) setFont(bold(table.getFont()));
+        return this;
+    }
+
+    /** 太字フォントはテーブルのフォントが変わったときだけ作り直す */
+    private Font bold(Font f) {
+        if (f != baseFont) {
+            baseFont = f;
+            boldFont = f.deriveFont(Font.BOLD);
+        }
+        return boldFont;
+    }
+}
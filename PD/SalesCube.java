@@ -0,0 +1,684 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 販売実績を 日×店舗×商品 ごとに合計した集計キューブ（販売数・廃棄数・返品数・売上・原価・行数）。
+ * 店舗と商品は {@link KeyDictionary} の ID、各セルの値は列ごとのプリミティブ配列で持ち、
+ * 「店舗 X の直近 4 週を曜日別に」のような切り出し（{@link #slice}）は元の行を読まずにセルをなめるだけで済みます。
+ *
+ * 販売実績の書き込みのたびに、{@link MaterializedAggregates} と同じく削除行・追加行を差分で反映します。
+ * sales.cube にはジャーナルを畳み込んだ時点の内容（ベース分）を、ベースの各ファイルのスタンプとともに保存します。
+ * 起動後の初回は保存分を読み、スタンプの変わった月のセグメントだけを読み直してから、ジャーナルの差分を足します
+ * （平の sales.tsv が変わったときは全件から作り直す）。日付が読めない行は含みません。
+ *
+ * ロック順は「販売ジャーナルのロック → このクラスのロック」です。
+ */
+public final class SalesCube implements AggregationEngine.Mergeable, AggregationEngine.Retractable {
+
+    /** 切り口 */
+    public enum By { TOTAL, DAY, WEEKDAY, MONTH, STORE, PRODUCT }
+
+    /** 切り出した結果。切り口の値の組ごとの合計（行のない組は含まない。日付は古い順、店舗・商品は名前順） */
+    public static final class Slice {
+        private final By[] by;
+        private final String[][] keys;
+        private final long[] rows, sold, waste, returns, revenue, cost;
+
+        private Slice(By[] by, int n) {
+            this.by = by;
+            keys = new String[n][];
+            rows = new long[n];
+            sold = new long[n];
+            waste = new long[n];
+            returns = new long[n];
+            revenue = new long[n];
+            cost = new long[n];
+        }
+
+        public int size() { return rows.length; }
+        /** i 件目の、dim 番目の切り口の値（日付は yyyy-MM-dd、月は yyyy-MM、曜日は 月〜日） */
+        public String key(int i, int dim) { return keys[i][dim]; }
+        public String key(int i) { return keys[i][0]; }
+        public By by(int dim) { return by[dim]; }
+        public long rows(int i) { return rows[i]; }
+        public long sold(int i) { return sold[i]; }
+        public long waste(int i) { return waste[i]; }
+        public long returns(int i) { return returns[i]; }
+        public long revenue(int i) { return revenue[i]; }
+        public long cost(int i) { return cost[i]; }
+    }
+
+    private static final String[] DAY_NAMES = {"月", "火", "水", "木", "金", "土", "日"};
+    /** 切り口の組の数がこれ以下なら組を配列で直接引く（多ければ、セルのある組だけをハッシュ表で持つ） */
+    private static final long DENSE_GROUPS = 1 << 16;
+
+    private static final Path FILE = AppFiles.SALES_CUBE;
+    private static final int MAGIC = 0x50444342;   // "PDCB"
+    private static final int VERSION = 1;
+    private static final Object LOCK = new Object();
+
+    /** ベース＋ジャーナルを反映した現在のキューブと、それが対応する販売実績のスタンプ */
+    private static SalesCube current;
+    private static String currentStamp = "";
+
+    // ===== セル =====
+
+    public final KeyDictionary stores = new KeyDictionary();
+    public final KeyDictionary products = new KeyDictionary();
+    private int size;
+    /** [0, sorted) は日付順（詰め直したときに並べる）。以降は後から足されたセル */
+    private int sorted;
+    private int[] day = new int[16], store = new int[16], product = new int[16];
+    private int[] rows = new int[16], sold = new int[16], waste = new int[16], returns = new int[16];
+    private long[] revenue = new long[16], cost = new long[16];
+    private int[] slots = new int[32];   // セル番号+1（0 は空き）
+
+    @Override public void accept(TsvReader.Row row) { add(row, 1); }
+    @Override public void retract(TsvReader.Row row) { add(row, -1); }
+
+    private void add(TsvReader.Row row, int sign) {
+        if (row.size() < SalesJournal.COLUMNS) return;
+        long d = row.getEpochDay(0);
+        if (d == TsvReader.NO_DATE) return;
+        int c = cell((int) d, row.intern(1, stores), row.intern(2, products));
+        rows[c] += sign;
+        sold[c] += sign * row.getInt(3, 0);
+        waste[c] += sign * row.getInt(4, 0);
+        returns[c] += sign * row.getInt(5, 0);
+        cost[c] += sign * row.getInt(7, 0);
+        revenue[c] += sign * row.getInt(8, 0);
+    }
+
+    @Override public AggregationEngine.Mergeable emptyCopy() { return new SalesCube(); }
+
+    @Override public void mergeFrom(AggregationEngine.Mergeable other) {
+        SalesCube o = (SalesCube) other;
+        int[] s = remap(o.stores, stores), p = remap(o.products, products);
+        for (int i = 0; i < o.size; i++) {
+            int c = cell(o.day[i], s[o.store[i]], p[o.product[i]]);
+            rows[c] += o.rows[i];
+            sold[c] += o.sold[i];
+            waste[c] += o.waste[i];
+            returns[c] += o.returns[i];
+            revenue[c] += o.revenue[i];
+            cost[c] += o.cost[i];
+        }
+    }
+
+    public int size() { return size; }
+
+    /** 日×店舗×商品のセル番号（なければ作る） */
+    private int cell(int d, int s, int p) {
+        int mask = slots.length - 1;
+        for (int i = hash(d, s, p) & mask; ; i = (i + 1) & mask) {
+            int slot = slots[i];
+            if (slot == 0) {
+                int c = size++;
+                if (c == day.length) grow();
+                day[c] = d;
+                store[c] = s;
+                product[c] = p;
+                slots[i] = c + 1;
+                if (size * 2 > slots.length) rehash(slots.length * 2);
+                return c;
+            }
+            int c = slot - 1;
+            if (day[c] == d && store[c] == s && product[c] == p) return c;
+        }
+    }
+
+    private void grow() {
+        int n = day.length * 2;
+        day = Arrays.copyOf(day, n);
+        store = Arrays.copyOf(store, n);
+        product = Arrays.copyOf(product, n);
+        rows = Arrays.copyOf(rows, n);
+        sold = Arrays.copyOf(sold, n);
+        waste = Arrays.copyOf(waste, n);
+        returns = Arrays.copyOf(returns, n);
+        revenue = Arrays.copyOf(revenue, n);
+        cost = Arrays.copyOf(cost, n);
+    }
+
+    private void rehash(int capacity) {
+        int[] next = new int[capacity];
+        int mask = capacity - 1;
+        for (int c = 0; c < size; c++) {
+            int i = hash(day[c], store[c], product[c]) & mask;
+            while (next[i] != 0) i = (i + 1) & mask;
+            next[i] = c + 1;
+        }
+        slots = next;
+    }
+
+    private static int hash(int d, int s, int p) {
+        int h = d * 0x9E3779B1 + s * 0x85EBCA6B + p * 0xC2B2AE35;
+        return h ^ (h >>> 15);
+    }
+
+    private static int[] remap(KeyDictionary from, KeyDictionary to) {
+        int[] ids = new int[from.size()];
+        for (int i = 0; i < ids.length; i++) ids[i] = to.idOf(from.bytes(i), 0, from.bytes(i).length);
+        return ids;
+    }
+
+    /**
+     * 行のなくなったセルと、drop の日の範囲 {最初, 最後} に入るセルを除き、日付順に詰め直します
+     * （期間の切り出しが二分探索で範囲のセルだけを見られるように）。
+     */
+    private void retain(List<long[]> drop) {
+        long[] keys = new long[size];
+        int n = 0;
+        for (int c = 0; c < size; c++) {
+            if (rows[c] == 0 && sold[c] == 0 && waste[c] == 0 && returns[c] == 0 && revenue[c] == 0 && cost[c] == 0) continue;
+            boolean dropped = false;
+            for (long[] r : drop) dropped |= day[c] >= r[0] && day[c] <= r[1];
+            if (!dropped) keys[n++] = ((long) day[c] << 32) | c;
+        }
+        Arrays.sort(keys, 0, n);
+        int capacity = 16;
+        while (capacity < n) capacity *= 2;
+        int[] d2 = new int[capacity], s2 = new int[capacity], p2 = new int[capacity], r2 = new int[capacity],
+                sold2 = new int[capacity], w2 = new int[capacity], ret2 = new int[capacity];
+        long[] rev2 = new long[capacity], cost2 = new long[capacity];
+        for (int i = 0; i < n; i++) {
+            int c = (int) keys[i];
+            d2[i] = day[c];
+            s2[i] = store[c];
+            p2[i] = product[c];
+            r2[i] = rows[c];
+            sold2[i] = sold[c];
+            w2[i] = waste[c];
+            ret2[i] = returns[c];
+            rev2[i] = revenue[c];
+            cost2[i] = cost[c];
+        }
+        day = d2;
+        store = s2;
+        product = p2;
+        rows = r2;
+        sold = sold2;
+        waste = w2;
+        returns = ret2;
+        revenue = rev2;
+        cost = cost2;
+        size = n;
+        sorted = n;
+        int slotCapacity = 32;
+        while (slotCapacity < size * 2) slotCapacity *= 2;
+        rehash(slotCapacity);
+    }
+
+    /** 日付順の部分で、日が day 以上になる最初のセル */
+    private int lowerBound(long d) {
+        int lo = 0, hi = sorted;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (day[mid] < d) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    // ===== 切り出し =====
+
+    /**
+     * 記録日が [fromDay, toDay]（エポック日）で、店舗・商品が stores / products（null ならすべて）に入るセルを、
+     * by の切り口（複数なら組）ごとに合計します。
+     */
+    public static Slice slice(long fromDay, long toDay, Set<String> stores, Set<String> products, By... by) throws IOException {
+        return SalesJournal.withReadLock(() -> {
+            synchronized (LOCK) {
+                if (current == null || !currentStamp.equals(salesStamp())) {
+                    SalesJournal.withDelta((bases, delta) -> {
+                        rebuild(bases, delta);
+                        return null;
+                    });
+                }
+                return current.select(fromDay, toDay, stores, products, by);
+            }
+        });
+    }
+
+    private Slice select(long fromDay, long toDay, Set<String> storeNames, Set<String> productNames, By[] by) {
+        boolean[] sMask = mask(stores, storeNames), pMask = mask(products, productNames);
+        long lo = fromDay, hi = toDay;
+        // 日付順の部分は期間の分だけ、後から足された分は全部を見る
+        int[] spans = {lowerBound(lo), hi == Long.MAX_VALUE ? sorted : lowerBound(hi + 1), sorted, size};
+        // 日・月の切り口は、該当するセルのある日の範囲で配列を取る
+        int minDay = Integer.MAX_VALUE, maxDay = Integer.MIN_VALUE;
+        for (int r = 0; r < spans.length; r += 2) for (int c = spans[r]; c < spans[r + 1]; c++) {
+            if (!matches(c, lo, hi, sMask, pMask)) continue;
+            minDay = Math.min(minDay, day[c]);
+            maxDay = Math.max(maxDay, day[c]);
+        }
+        if (minDay > maxDay) return new Slice(by, 0);
+        int[] monthOf = null;
+        int months = 0;
+        int[] radix = new int[by.length];
+        long groups = 1;
+        boolean overflow = false;
+        for (int k = 0; k < by.length; k++) {
+            switch (by[k]) {
+                case TOTAL: radix[k] = 1; break;
+                case DAY: radix[k] = maxDay - minDay + 1; break;
+                case WEEKDAY: radix[k] = 7; break;
+                case STORE: radix[k] = stores.size(); break;
+                case PRODUCT: radix[k] = products.size(); break;
+                case MONTH:
+                    if (monthOf == null) {
+                        monthOf = new int[maxDay - minDay + 1];
+                        LocalDate first = LocalDate.ofEpochDay(minDay);
+                        for (int d = 0; d < monthOf.length; d++) {
+                            LocalDate date = LocalDate.ofEpochDay(minDay + d);
+                            monthOf[d] = (date.getYear() - first.getYear()) * 12 + date.getMonthValue() - first.getMonthValue();
+                        }
+                        months = monthOf[monthOf.length - 1] + 1;
+                    }
+                    radix[k] = months;
+                    break;
+                default: throw new IllegalArgumentException(String.valueOf(by[k]));
+            }
+            if (groups > Long.MAX_VALUE / radix[k]) overflow = true;
+            groups *= radix[k];
+        }
+        if (overflow) throw new IllegalArgumentException("too many dimensions: " + Arrays.toString(by));
+
+        // 店舗・商品は名前順の順位で数える（ID は登録順のため）。組の座標を詰めた値の順がそのまま結果の順になる
+        int[][] order = new int[by.length][], rank = new int[by.length][];
+        for (int k = 0; k < by.length; k++) {
+            if (by[k] != By.STORE && by[k] != By.PRODUCT) continue;
+            KeyDictionary dict = by[k] == By.STORE ? stores : products;
+            Integer[] ids = new Integer[radix[k]];
+            for (int i = 0; i < ids.length; i++) ids[i] = i;
+            Arrays.sort(ids, (a, b) -> dict.name(a).compareTo(dict.name(b)));
+            order[k] = new int[ids.length];
+            rank[k] = new int[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                order[k][i] = ids[i];
+                rank[k][ids[i]] = i;
+            }
+        }
+
+        Groups g = new Groups(groups);
+        for (int r = 0; r < spans.length; r += 2) for (int c = spans[r]; c < spans[r + 1]; c++) {
+            if (!matches(c, lo, hi, sMask, pMask)) continue;
+            long key = 0;
+            for (int k = 0; k < by.length; k++) {
+                int v = coordinate(c, by[k], minDay, monthOf);
+                key = key * radix[k] + (rank[k] == null ? v : rank[k][v]);
+            }
+            int i = g.slot(key);
+            g.rows[i] += rows[c];
+            g.sold[i] += sold[c];
+            g.waste[i] += waste[c];
+            g.returns[i] += returns[c];
+            g.revenue[i] += revenue[c];
+            g.cost[i] += cost[c];
+        }
+
+        int[] picked = g.sorted();
+        int count = 0;
+        for (int i : picked) if (g.rows[i] != 0) picked[count++] = i;
+        Slice out = new Slice(by, count);
+        for (int j = 0; j < count; j++) {
+            int i = picked[j];
+            out.rows[j] = g.rows[i];
+            out.sold[j] = g.sold[i];
+            out.waste[j] = g.waste[i];
+            out.returns[j] = g.returns[i];
+            out.revenue[j] = g.revenue[i];
+            out.cost[j] = g.cost[i];
+            String[] key = new String[by.length];
+            long packed = g.key[i];
+            for (int k = by.length - 1; k >= 0; k--) {
+                int v = (int) (packed % radix[k]);
+                key[k] = label(by[k], order[k] == null ? v : order[k][v], minDay, monthOf);
+                packed /= radix[k];
+            }
+            out.keys[j] = key;
+        }
+        return out;
+    }
+
+    /**
+     * 切り出しの途中の、切り口の組ごとの合計。組は座標を詰めた long で引き、
+     * 組の数が少なければ配列で直接、多ければセルのある組だけをハッシュ表で持ちます。
+     */
+    private static final class Groups {
+        /** 座標 → 番号+1（0 は未使用）。組が多いときは null でハッシュ表を使う */
+        private final int[] direct;
+        private int[] slots;
+        private int size;
+        long[] key = new long[16];
+        long[] rows = new long[16], sold = new long[16], waste = new long[16], returns = new long[16],
+                revenue = new long[16], cost = new long[16];
+
+        Groups(long groups) {
+            direct = groups <= DENSE_GROUPS ? new int[(int) groups] : null;
+            slots = direct == null ? new int[64] : null;
+        }
+
+        /** 組の番号（なければ作る） */
+        int slot(long k) {
+            if (direct != null) {
+                int slot = direct[(int) k];
+                if (slot == 0) direct[(int) k] = (slot = add(k)) + 1;
+                else slot--;
+                return slot;
+            }
+            int mask = slots.length - 1;
+            for (int i = hash(k) & mask; ; i = (i + 1) & mask) {
+                int slot = slots[i];
+                if (slot == 0) {
+                    int g = add(k);
+                    slots[i] = g + 1;
+                    if (size * 2 > slots.length) rehash(slots.length * 2);
+                    return g;
+                }
+                if (key[slot - 1] == k) return slot - 1;
+            }
+        }
+
+        /** 座標の順（＝結果の順）に並べた組の番号 */
+        int[] sorted() {
+            long[] keys = Arrays.copyOf(key, size);
+            Arrays.sort(keys);
+            int[] out = new int[size];
+            for (int i = 0; i < size; i++) out[i] = slot(keys[i]);
+            return out;
+        }
+
+        private int add(long k) {
+            int g = size++;
+            if (g == key.length) {
+                int n = g * 2;
+                key = Arrays.copyOf(key, n);
+                rows = Arrays.copyOf(rows, n);
+                sold = Arrays.copyOf(sold, n);
+                waste = Arrays.copyOf(waste, n);
+                returns = Arrays.copyOf(returns, n);
+                revenue = Arrays.copyOf(revenue, n);
+                cost = Arrays.copyOf(cost, n);
+            }
+            key[g] = k;
+            return g;
+        }
+
+        private void rehash(int capacity) {
+            int[] next = new int[capacity];
+            int mask = capacity - 1;
+            for (int g = 0; g < size; g++) {
+                int i = hash(key[g]) & mask;
+                while (next[i] != 0) i = (i + 1) & mask;
+                next[i] = g + 1;
+            }
+            slots = next;
+        }
+
+        private static int hash(long k) {
+            long h = k * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+
+    private boolean matches(int c, long lo, long hi, boolean[] sMask, boolean[] pMask) {
+        return rows[c] != 0 && day[c] >= lo && day[c] <= hi
+                && (sMask == null || sMask[store[c]]) && (pMask == null || pMask[product[c]]);
+    }
+
+    private int coordinate(int c, By by, int minDay, int[] monthOf) {
+        switch (by) {
+            case DAY: return day[c] - minDay;
+            case WEEKDAY: return Aggregates.WeekdayDemand.weekday(day[c]);
+            case MONTH: return monthOf[day[c] - minDay];
+            case STORE: return store[c];
+            case PRODUCT: return product[c];
+            default: return 0;
+        }
+    }
+
+    private String label(By by, int v, int minDay, int[] monthOf) {
+        switch (by) {
+            case DAY: return LocalDate.ofEpochDay(minDay + v).toString();
+            case WEEKDAY: return DAY_NAMES[v];
+            case MONTH: return LocalDate.ofEpochDay(minDay).withDayOfMonth(1).plusMonths(v).toString().substring(0, 7);
+            case STORE: return stores.name(v);
+            case PRODUCT: return products.name(v);
+            default: return "全体";
+        }
+    }
+
+    /** 名前の集合 → ID の印（null ならすべて。辞書にない名前は無視） */
+    private static boolean[] mask(KeyDictionary dict, Set<String> names) {
+        if (names == null) return null;
+        boolean[] m = new boolean[dict.size()];
+        for (String name : names) {
+            int id = dict.find(name);
+            if (id >= 0) m[id] = true;
+        }
+        return m;
+    }
+
+    // ===== 差分反映 =====
+
+    /**
+     * 販売実績を書き込み、削除行・追加行（9 列のタブ区切り）をキューブへ反映します。
+     * {@link SalesJournal} が書き込みロックを保持した状態で呼びます。書き込み前から古ければ何もしない（次の切り出しで作り直す）。
+     */
+    static void update(MaterializedAggregates.Write write, List<String> removed, List<String> added) throws IOException {
+        synchronized (LOCK) {
+            boolean fresh = current != null && currentStamp.equals(salesStamp());
+            write.run();
+            if (!fresh) return;
+            try {
+                TsvReader.forEach(toBytes(removed), current::retract);
+                TsvReader.forEach(toBytes(added), current::accept);
+                currentStamp = salesStamp();
+            } catch (IOException | RuntimeException ex) {
+                AppLogger.error("sales cube update error", ex);
+                current = null;
+                currentStamp = "";
+            }
+        }
+    }
+
+    /**
+     * ジャーナルの畳み込みを実行し、空になったジャーナルに合わせてキューブを保存します（内容は変わらない）。
+     * {@link SalesJournal} が書き込みロックを保持した状態で呼びます。
+     */
+    static void compacted(MaterializedAggregates.Write compaction) throws IOException {
+        synchronized (LOCK) {
+            boolean fresh = current != null && currentStamp.equals(salesStamp());
+            compaction.run();
+            if (!fresh) return;
+            currentStamp = salesStamp();
+            current.retain(new ArrayList<>());
+            save(current, stamps(SalesJournal.baseFiles()));
+        }
+    }
+
+    // ===== 読み込み・保存 =====
+
+    /** 保存分から、変わったベースのファイルだけを読み直し、ジャーナルの差分を足して current にします */
+    private static void rebuild(List<Path> bases, SalesJournal.Delta delta) throws IOException {
+        long t0 = System.nanoTime();
+        Map<String, String> now = stamps(bases);
+        Map<String, String> saved = new HashMap<>();
+        SalesCube cube = load(saved);
+        List<Path> rescan = new ArrayList<>();
+        List<long[]> drop = new ArrayList<>();
+        boolean full = cube == null;
+        for (Path p : bases) {
+            if (full || now.get(p.toString()).equals(saved.get(p.toString()))) continue;
+            long[] days = monthDays(p);
+            if (days == null) full = true;
+            else if (days.length > 0) {
+                drop.add(days);
+                rescan.add(p);
+            }
+        }
+        for (String name : saved.keySet()) {
+            if (full || now.containsKey(name)) continue;
+            long[] days = monthDays(Paths.get(name));
+            if (days == null) full = true;
+            else if (days.length > 0) drop.add(days);
+        }
+        if (full) {
+            cube = new SalesCube();
+            rescan = bases;
+        }
+        if (full || !now.equals(saved)) {
+            if (!drop.isEmpty()) cube.retain(drop);
+            for (Path p : rescan) AggregationEngine.scan(p, cube);
+            cube.retain(new ArrayList<>());
+            save(cube, now);
+        }
+        // 保存分はベースだけなので、ジャーナルの削除・追加をここで足し引きする
+        delta.forEachRemoved(cube::retract);
+        delta.forEachAdded(cube::accept);
+        current = cube;
+        currentStamp = salesStamp();
+        AppLogger.info("sales cube " + (full ? "built" : "loaded") + ": " + cube.size + " cells, " + rescan.size()
+                + " base files scanned, " + (System.nanoTime() - t0) / 1_000_000 + " ms");
+    }
+
+    /** 月のセグメントの日の範囲 {最初, 最後}。日付なしのセグメントは空、平の sales.tsv は null（全体に関わる） */
+    private static long[] monthDays(Path file) {
+        if (!AppFiles.SALES_PARTS.equals(file.getParent())) return null;
+        String name = file.getFileName().toString();
+        if (!name.matches("\\d{4}-\\d{2}\\.tsv")) return new long[0];
+        LocalDate first = LocalDate.parse(name.substring(0, 7) + "-01");
+        return new long[]{first.toEpochDay(), first.plusMonths(1).toEpochDay() - 1};
+    }
+
+    private static Map<String, String> stamps(List<Path> files) throws IOException {
+        Map<String, String> map = new LinkedHashMap<>();
+        for (Path p : files) map.put(p.toString(), FileSummary.stamp(p));
+        return map;
+    }
+
+    private static String salesStamp() throws IOException {
+        return FileSummary.stamp(AppFiles.SALES_TSV) + "/" + FileSummary.stamp(AppFiles.SALES_INDEX) + "/"
+                + FileSummary.stamp(AppFiles.SALES_JOURNAL);
+    }
+
+    private static byte[] toBytes(List<String> lines) {
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) sb.append(line).append('\n');
+        return sb.toString().getBytes(AppFiles.CHARSET);
+    }
+
+    /**
+     * sales.cube の形式（リトルエンディアン）: マジック "PDCB" / 版 / ベースのファイル数と（名前, スタンプ）/
+     * 店舗名 / 商品名 / セル数 / 列ごとの配列（日, 店舗, 商品, 行数, 販売数, 廃棄数, 返品数 は int、売上, 原価 は long）。
+     * 文字列は長さ(int) + UTF-8。セルは日付順で、行のないセルは含まない（呼び出し側で retain 済み）。
+     */
+    private static void save(SalesCube cube, Map<String, String> stamps) {
+        List<byte[]> strings = new ArrayList<>();
+        for (Map.Entry<String, String> e : stamps.entrySet()) {
+            strings.add(e.getKey().getBytes(AppFiles.CHARSET));
+            strings.add(e.getValue().getBytes(AppFiles.CHARSET));
+        }
+        for (int i = 0; i < cube.stores.size(); i++) strings.add(cube.stores.bytes(i));
+        for (int i = 0; i < cube.products.size(); i++) strings.add(cube.products.bytes(i));
+        long bytes = 4L * 6 + (4L * 7 + 8L * 2) * cube.size;
+        for (byte[] s : strings) bytes += 4 + s.length;
+        if (bytes > Integer.MAX_VALUE) {
+            AppLogger.warn("sales cube too large to save: " + bytes + " bytes");
+            return;
+        }
+        ByteBuffer buf = ByteBuffer.allocate((int) bytes).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(MAGIC).putInt(VERSION);
+        int at = 0;
+        buf.putInt(stamps.size());
+        for (int i = 0; i < stamps.size() * 2; i++) putBytes(buf, strings.get(at++));
+        buf.putInt(cube.stores.size());
+        for (int i = 0; i < cube.stores.size(); i++) putBytes(buf, strings.get(at++));
+        buf.putInt(cube.products.size());
+        for (int i = 0; i < cube.products.size(); i++) putBytes(buf, strings.get(at++));
+        int n = cube.size;
+        buf.putInt(n);
+        for (int[] col : new int[][]{cube.day, cube.store, cube.product, cube.rows, cube.sold, cube.waste, cube.returns}) {
+            buf.asIntBuffer().put(col, 0, n);
+            buf.position(buf.position() + 4 * n);
+        }
+        for (long[] col : new long[][]{cube.revenue, cube.cost}) {
+            buf.asLongBuffer().put(col, 0, n);
+            buf.position(buf.position() + 8 * n);
+        }
+        try {
+            AtomicFile.write(FILE, buf.array());
+        } catch (IOException ex) {
+            // 保存できなくても集計は使える（次回は全件から作り直す）
+            AppLogger.error("sales cube save error", ex);
+        }
+    }
+
+    /** 保存分を読み、ベースのファイルのスタンプを stamps へ入れます（なし・版違い・壊れている場合は null） */
+    private static SalesCube load(Map<String, String> stamps) throws IOException {
+        if (!Files.exists(FILE)) return null;
+        try {
+            ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(FILE)).order(ByteOrder.LITTLE_ENDIAN);
+            if (buf.getInt() != MAGIC || buf.getInt() != VERSION) return null;
+            SalesCube cube = new SalesCube();
+            for (int i = buf.getInt(); i > 0; i--) stamps.put(getString(buf), getString(buf));
+            for (int i = buf.getInt(); i > 0; i--) cube.stores.idOf(getString(buf));
+            for (int i = buf.getInt(); i > 0; i--) cube.products.idOf(getString(buf));
+            int n = buf.getInt();
+            int capacity = 16;
+            while (capacity < n) capacity *= 2;
+            int[][] ints = new int[7][capacity];
+            for (int[] col : ints) {
+                buf.asIntBuffer().get(col, 0, n);
+                buf.position(buf.position() + 4 * n);
+            }
+            long[][] longs = new long[2][capacity];
+            for (long[] col : longs) {
+                buf.asLongBuffer().get(col, 0, n);
+                buf.position(buf.position() + 8 * n);
+            }
+            cube.day = ints[0];
+            cube.store = ints[1];
+            cube.product = ints[2];
+            cube.rows = ints[3];
+            cube.sold = ints[4];
+            cube.waste = ints[5];
+            cube.returns = ints[6];
+            cube.revenue = longs[0];
+            cube.cost = longs[1];
+            cube.size = n;
+            cube.sorted = n;   // 保存するのは詰め直した（日付順の）キューブだけ
+            int slotsCapacity = 32;
+            while (slotsCapacity < n * 2) slotsCapacity *= 2;
+            cube.rehash(slotsCapacity);
+            return cube;
+        } catch (RuntimeException ex) {
+            AppLogger.warn("sales cube is broken, rebuilding: " + ex);
+            stamps.clear();
+            return null;
+        }
+    }
+
+    private static void putBytes(ByteBuffer buf, byte[] b) {
+        buf.putInt(b.length).put(b);
+    }
+
+    private static String getString(ByteBuffer buf) {
+        byte[] b = new byte[buf.getInt()];
+        buf.get(b);
+        return new String(b, AppFiles.CHARSET);
+    }
+}
@@ -0,0 +1,610 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 販売実績の追記型ジャーナル。
+ * sales.tsv（ベース）を毎回書き直す代わりに、追加・削除を sales.journal へ 1 行ずつ追記します。
+ * 読み込み時はベース＋ジャーナルを再生し、バックグラウンドのコンパクタが定期的にベースへ畳み込みます。
+ *
+ * ジャーナル 1 行の形式: 連番 \t 操作 \t 記録日 \t 店舗 \t 商品 \t 販売数 \t 廃棄数 \t 返品数 \t 返品理由 \t 原価 \t 売価
+ * 操作は A（追加）/ D（削除）。編集は D（旧行）＋ A（新行）として記録します。
+ * S は連番のチェックポイント（コンパクション直後に書かれ、列を持たない）です。
+ *
+ * sales.parts/ があるときはベースを月別セグメントに分けて持ちます（{@link SalesPartitions}）。
+ * 読み込み側からは区別なく使え、{@link #forEachRowInRange} は期間に重なるセグメントだけを読みます。
+ *
+ * sales.changelog があるときは、コンパクションで畳み込む操作をそこへ控え、続けてベースのスタンプを
+ * C 行（連番 \t C \t スタンプ）で記録します。差分エクスポート（{@link DeltaExporter}）が前回以降の操作を読むために使います。
+ *
+ * コンパクションは置き換えるファイルを一時ファイルにすべて書いてから、その一覧（{@link Plan}）を sales.compact に記録し、
+ * 置き換え→変更履歴への控え→ジャーナルの切り詰めの順に進めて最後に sales.compact を消します。
+ * 途中で落ちたら、次の起動時に sales.compact から残りをやり直すので、ジャーナルが二重に畳み込まれることはありません。
+ */
+public final class SalesJournal {
+
+    /** 販売実績 1 行の列数 */
+    public static final int COLUMNS = 9;
+
+    private static final Path BASE = AppFiles.SALES_TSV;
+    private static final Path JOURNAL = AppFiles.SALES_JOURNAL;
+    private static final Path CHANGELOG = AppFiles.SALES_CHANGELOG;
+    private static final Path PLAN = AppFiles.SALES_COMPACT;
+
+    /** この件数を超えたら即座にコンパクションを予約する */
+    private static final int COMPACT_THRESHOLD = 2000;
+    /** 定期コンパクションの間隔（分） */
+    private static final long COMPACT_INTERVAL_MIN = 10;
+
+    private static final ReentrantReadWriteLock LOCK = new ReentrantReadWriteLock();
+    private static final ScheduledExecutorService COMPACTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "sales-journal-compactor");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static long nextSeq = -1;   // 未初期化は -1
+    private static int journalOps = 0;  // 未コンパクションの操作数
+    private static boolean compactScheduled = false;
+
+    static {
+        // 前回のコンパクションが途中で止まっていれば、読み込みより先に終わらせる
+        try {
+            recover();
+        } catch (IOException ex) {
+            AppLogger.error("sales journal recovery error", ex);
+        }
+        COMPACTOR.scheduleWithFixedDelay(SalesJournal::compactQuietly,
+                COMPACT_INTERVAL_MIN, COMPACT_INTERVAL_MIN, TimeUnit.MINUTES);
+        // パーティションが有効になったばかりなら、起動後すぐにベースをセグメントへ移す
+        if (migrationPending()) COMPACTOR.schedule(SalesJournal::compactQuietly, 5, TimeUnit.SECONDS);
+    }
+
+    private SalesJournal() {}
+
+    /** ベースかジャーナルのどちらかが存在するか */
+    public static boolean exists() {
+        return Files.exists(BASE) || Files.exists(JOURNAL) || Files.exists(AppFiles.SALES_INDEX);
+    }
+
+    /** 1 行追加 */
+    public static void append(String[] row) throws IOException {
+        write(Collections.emptyList(), Collections.singletonList(row));
+    }
+
+    /** 1 行削除（トゥームストーン） */
+    public static void delete(String[] row) throws IOException {
+        write(Collections.singletonList(row), Collections.emptyList());
+    }
+
+    /** 1 行更新（旧行の削除＋新行の追加） */
+    public static void update(String[] oldRow, String[] newRow) throws IOException {
+        write(Collections.singletonList(oldRow), Collections.singletonList(newRow));
+    }
+
+    /**
+     * 削除・追加をまとめて 1 回の追記で記録します（削除が先）。
+     */
+    public static void write(List<String[]> removed, List<String[]> added) throws IOException {
+        if (removed.isEmpty() && added.isEmpty()) return;
+        boolean compactNow;
+        LOCK.writeLock().lock();
+        try {
+            ensureSeqLoaded();
+            List<String> removedLines = toLines(removed), addedLines = toLines(added);
+            StringBuilder sb = new StringBuilder();
+            for (String line : removedLines) appendOp(sb, nextSeq++, 'D', line);
+            for (String line : addedLines) appendOp(sb, nextSeq++, 'A', line);
+            // 集計（analytics.agg・集計キューブ）も同じロックの中で差分更新する
+            SalesCube.update(() -> MaterializedAggregates.updateSales(() -> Files.write(JOURNAL,
+                    sb.toString().getBytes(AppFiles.CHARSET),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND),
+                    removedLines, addedLines), removedLines, addedLines);
+            DataWatcher.noteWritten(JOURNAL);
+            journalOps += removed.size() + added.size();
+            compactNow = journalOps >= COMPACT_THRESHOLD && !compactScheduled;
+            if (compactNow) compactScheduled = true;
+        } finally {
+            LOCK.writeLock().unlock();
+        }
+        if (compactNow) COMPACTOR.execute(SalesJournal::compactQuietly);
+    }
+
+    /**
+     * ベース＋ジャーナルを再生した現在の販売実績を 1 行ずつストリーミングで渡します。
+     * 列数が足りない行は読み飛ばします。ベースは保持せずに流すため、メモリはジャーナル分だけです。
+     */
+    public static void forEachRow(TsvReader.RowHandler handler) throws IOException {
+        LOCK.readLock().lock();
+        try {
+            replay(handler);
+        } finally {
+            LOCK.readLock().unlock();
+        }
+    }
+
+    /**
+     * 記録日が [fromDay, toDay]（エポック日）の行だけを渡します。日付が読めない行も含みます。
+     * パーティションが有効なら範囲に重なるセグメントだけを読み、全体が範囲内のセグメントは日付判定も省きます。
+     */
+    public static void forEachRowInRange(long fromDay, long toDay, TsvReader.RowHandler handler) throws IOException {
+        TsvReader.RowHandler inRange = r -> {
+            long day = r.getEpochDay(0);
+            if (day == TsvReader.NO_DATE || (day >= fromDay && day <= toDay)) handler.row(r);
+        };
+        LOCK.readLock().lock();
+        try {
+            Delta delta = loadDelta();
+            if (SalesPartitions.enabled()) {
+                for (SalesPartitions.Segment seg : SalesPartitions.segments()) {
+                    if (!seg.overlaps(fromDay, toDay) || !Files.exists(seg.file())) continue;
+                    TsvReader.RowHandler h = seg.within(fromDay, toDay) ? handler : inRange;
+                    TsvReader.forEach(seg.file(), r -> {
+                        if (delta.isLive(r)) h.row(r);
+                    });
+                }
+            }
+            if (Files.exists(BASE)) {
+                TsvReader.forEach(BASE, r -> {
+                    if (delta.isLive(r)) inRange.row(r);
+                });
+            }
+            delta.forEachAdded(inRange);
+        } finally {
+            LOCK.readLock().unlock();
+        }
+    }
+
+    /**
+     * 読み取りロックを保持したまま、ベースのファイル（平のベースまたは各セグメント）とジャーナル差分を渡します。
+     * ベースを範囲分割して並列に読む場合に使います（{@link Delta#isLive} はスレッドセーフ）。
+     */
+    public static <T> T withDelta(DeltaReader<T> reader) throws IOException {
+        LOCK.readLock().lock();
+        try {
+            return reader.read(baseFiles(), loadDelta());
+        } finally {
+            LOCK.readLock().unlock();
+        }
+    }
+
+    public interface DeltaReader<T> {
+        T read(List<Path> bases, Delta delta) throws IOException;
+    }
+
+    /** ベースのファイルの合計サイズ（並列に読むかの判断用） */
+    public static long baseSize() throws IOException {
+        LOCK.readLock().lock();
+        try {
+            long size = 0;
+            for (Path p : baseFiles()) size += Files.size(p);
+            return size;
+        } finally {
+            LOCK.readLock().unlock();
+        }
+    }
+
+    /** 読み取りロックを保持したまま body を実行します（書き込みと重ならない一貫した読み取り用） */
+    public static <T> T withReadLock(Locked<T> body) throws IOException {
+        LOCK.readLock().lock();
+        try {
+            return body.run();
+        } finally {
+            LOCK.readLock().unlock();
+        }
+    }
+
+    public interface Locked<T> {
+        T run() throws IOException;
+    }
+
+    /**
+     * ベースに対するジャーナルの差分。
+     * removed はベースから取り除く行（同じ内容の行は何行目を消しても結果は同じなので多重集合で持つ）、
+     * added はベースの後ろに続く行です。
+     */
+    public static final class Delta {
+        private final Map<String, Integer> removed = new ConcurrentHashMap<>();
+        private final List<String> added = new ArrayList<>();
+
+        /** ベースの行が生きているか。削除対象なら多重度を 1 つ消費して false */
+        public boolean isLive(TsvReader.Row r) {
+            if (r.isBlank() || r.size() < COLUMNS) return false;
+            if (removed.isEmpty()) return true;
+            boolean[] hit = {false};
+            removed.computeIfPresent(r.join(0, COLUMNS), (k, n) -> {
+                hit[0] = true;
+                return n == 1 ? null : n - 1;
+            });
+            return !hit[0];
+        }
+
+        /** ジャーナルで削除されたベースの行を、多重度の分だけ流します（{@link #isLive} とは別に数える） */
+        public void forEachRemoved(TsvReader.RowHandler handler) throws IOException {
+            if (removed.isEmpty()) return;
+            StringBuilder sb = new StringBuilder();
+            for (Map.Entry<String, Integer> e : removed.entrySet()) {
+                for (int i = 0; i < e.getValue(); i++) sb.append(e.getKey()).append('\n');
+            }
+            TsvReader.forEach(sb.toString().getBytes(AppFiles.CHARSET), handler);
+        }
+
+        /** ジャーナルで追加された行を流します */
+        public void forEachAdded(TsvReader.RowHandler handler) throws IOException {
+            if (added.isEmpty()) return;
+            StringBuilder sb = new StringBuilder();
+            for (String line : added) sb.append(line).append('\n');
+            TsvReader.forEach(sb.toString().getBytes(AppFiles.CHARSET), handler);
+        }
+    }
+
+    /**
+     * ジャーナルをベースへ畳み込み、ジャーナルを連番チェックポイントだけにします。
+     * 新しいベースを一時ファイルにすべて書いてから {@link Plan} で置き換えるため、途中で落ちても
+     * 元のベースとジャーナルのまま、または置き換えの続きから再開されます。
+     */
+    public static void compact() throws IOException {
+        LOCK.writeLock().lock();
+        try {
+            compactScheduled = false;
+            recoverLocked();
+            ensureSeqLoaded();
+            if (journalOps == 0 && !migrationPending()) return;
+            long[] rows = {0};
+            long checkpoint = nextSeq - 1;
+            Plan plan = new Plan(checkpoint);
+            // 内容は変わらないので、集計はスタンプの付け直しだけ（キューブは空になったジャーナルに合わせて保存する）
+            SalesCube.compacted(() -> MaterializedAggregates.updateSales(() -> {
+                try {
+                    if (SalesPartitions.enabled()) {
+                        rows[0] = compactPartitions(plan);
+                    } else {
+                        Path tmp = BASE.resolveSibling(BASE.getFileName() + ".tmp");
+                        try (BufferedWriter w = Files.newBufferedWriter(tmp, AppFiles.CHARSET)) {
+                            replay(r -> {
+                                w.write(r.join(0, COLUMNS));
+                                w.newLine();
+                                rows[0]++;
+                            });
+                        }
+                        plan.move(tmp, BASE);
+                    }
+                } catch (IOException | RuntimeException ex) {
+                    plan.discard();
+                    throw ex;
+                }
+                plan.apply();
+            }, Collections.emptyList(), Collections.emptyList()));
+            AppLogger.info("sales journal compacted: " + journalOps + " ops, " + rows[0] + " rows");
+            journalOps = 0;
+        } finally {
+            LOCK.writeLock().unlock();
+        }
+    }
+
+    /**
+     * コンパクションでの置き換えの一覧。畳み込んだ連番（checkpoint）と、一時ファイル→本来のファイルの置き換え（M）、
+     * 削除（X）を sales.compact に 1 行ずつ持ちます。
+     * {@link #apply} は一覧を記録してから置き換え・変更履歴への控え・ジャーナルの切り詰めを行い、最後に一覧を消します。
+     * どの手順も何度やり直しても同じ結果になるので、途中で落ちたら {@link #recover} が頭からやり直します。
+     */
+    static final class Plan {
+        private final long checkpoint;
+        private final List<String[]> steps = new ArrayList<>();
+
+        Plan(long checkpoint) { this.checkpoint = checkpoint; }
+
+        /** 書き終えた一時ファイル tmp で target を置き換える（tmp はここでディスクに確定させる） */
+        void move(Path tmp, Path target) throws IOException {
+            AtomicFile.sync(tmp);
+            steps.add(new String[] {"M", tmp.toString(), target.toString()});
+        }
+
+        /** path を消す */
+        void delete(Path path) {
+            steps.add(new String[] {"X", path.toString()});
+        }
+
+        /** 記録する前に失敗したとき：一時ファイルを捨てる（元のファイルはそのまま） */
+        void discard() {
+            for (String[] step : steps) {
+                if (!"M".equals(step[0])) continue;
+                try {
+                    Files.deleteIfExists(Paths.get(step[1]));
+                } catch (IOException ex) {
+                    AppLogger.error("discard " + step[1] + " error", ex);
+                }
+            }
+        }
+
+        /** 一覧を記録してから実行します。書き込みロックを保持して呼ぶこと */
+        void apply() throws IOException {
+            StringBuilder sb = new StringBuilder();
+            sb.append(checkpoint).append('\n');
+            for (String[] step : steps) sb.append(String.join("\t", step)).append('\n');
+            AtomicFile.write(PLAN, sb.toString().getBytes(AppFiles.CHARSET));
+            run();
+        }
+
+        private void run() throws IOException {
+            for (String[] step : steps) {
+                Path target = Paths.get(step[step.length - 1]);
+                if ("M".equals(step[0])) {
+                    Path tmp = Paths.get(step[1]);
+                    if (!Files.exists(tmp)) continue;   // やり直しで、もう置き換え済み
+                    AtomicFile.commit(tmp, target);
+                } else if (!Files.deleteIfExists(target)) {
+                    continue;
+                }
+                DataWatcher.noteWritten(target);
+                if (target.equals(BASE) && "X".equals(step[0])) AppLogger.info("sales.tsv moved into monthly partitions");
+            }
+            SalesPartitions.invalidate();
+            if (Files.exists(CHANGELOG)) appendToChangelog(checkpoint);
+            truncateJournal(checkpoint);
+            Files.deleteIfExists(PLAN);
+            nextSeq = -1;
+        }
+
+        /** 記録された一覧（なければ null） */
+        private static Plan load() throws IOException {
+            if (!Files.exists(PLAN)) return null;
+            List<String> lines = Files.readAllLines(PLAN, AppFiles.CHARSET);
+            Plan plan = new Plan(Long.parseLong(lines.get(0).trim()));
+            for (String line : lines.subList(1, lines.size())) {
+                if (!line.isEmpty()) plan.steps.add(line.split("\t", -1));
+            }
+            return plan;
+        }
+    }
+
+    /** 途中で止まったコンパクションがあれば最後まで進めます */
+    private static void recover() throws IOException {
+        LOCK.writeLock().lock();
+        try {
+            recoverLocked();
+        } finally {
+            LOCK.writeLock().unlock();
+        }
+    }
+
+    /** 書き込みロックを保持して呼ぶこと */
+    private static void recoverLocked() throws IOException {
+        Plan plan = Plan.load();
+        if (plan == null) return;
+        AppLogger.info("resuming interrupted sales journal compaction at seq " + plan.checkpoint);
+        plan.run();
+    }
+
+    /**
+     * 変更履歴（sales.changelog → sales.journal の順）を 1 行ずつ渡します。
+     * 行は 連番 \t 操作 \t ...（操作は A / D / S / C）。クラッシュで同じ連番が重なることがあるので、読む側で連番の重複を除くこと。
+     */
+    public static void forEachChange(TsvReader.RowHandler handler) throws IOException {
+        LOCK.readLock().lock();
+        try {
+            if (Files.exists(CHANGELOG)) TsvReader.forEach(CHANGELOG, handler);
+            if (Files.exists(JOURNAL)) TsvReader.forEach(JOURNAL, handler);
+        } finally {
+            LOCK.readLock().unlock();
+        }
+    }
+
+    /** 変更履歴を seq の時点から記録し直します（それ以前の控えは捨てる。差分エクスポートの後に呼ぶ） */
+    public static void startChangelog(long seq) throws IOException {
+        LOCK.readLock().lock();
+        try {
+            AtomicFile.write(CHANGELOG, (seq + "\tC\t" + baseStamp() + "\n").getBytes(AppFiles.CHARSET));
+        } finally {
+            LOCK.readLock().unlock();
+        }
+    }
+
+    /** ベース（sales.tsv と月別パーティションの索引）のスタンプ。外部での書き換えの検出用 */
+    public static String baseStamp() throws IOException {
+        return FileSummary.stamp(BASE) + "/" + FileSummary.stamp(AppFiles.SALES_INDEX);
+    }
+
+    /** 畳み込んだジャーナルの操作（連番が checkpoint まで）と、畳み込み後のベースのスタンプを変更履歴へ追記します */
+    private static void appendToChangelog(long checkpoint) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        if (Files.exists(JOURNAL)) {
+            TsvReader.forEach(JOURNAL, r -> {
+                if (r.size() < 2 + COLUMNS || seqOf(r) > checkpoint) return;
+                String op = r.getString(1);
+                if ("A".equals(op) || "D".equals(op)) sb.append(r.line()).append('\n');
+            });
+        }
+        sb.append(checkpoint).append("\tC\t").append(baseStamp()).append('\n');
+        AtomicFile.append(CHANGELOG, sb.toString().getBytes(AppFiles.CHARSET));
+    }
+
+    /** ジャーナルを連番チェックポイントと、checkpoint より後の操作だけにします */
+    private static void truncateJournal(long checkpoint) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append(checkpoint).append("\tS\n");
+        if (Files.exists(JOURNAL)) {
+            TsvReader.forEach(JOURNAL, r -> {
+                if (r.size() >= 2 && !"S".equals(r.getString(1)) && seqOf(r) > checkpoint) sb.append(r.line()).append('\n');
+            });
+        }
+        AtomicFile.write(JOURNAL, sb.toString().getBytes(AppFiles.CHARSET));
+        DataWatcher.noteWritten(JOURNAL);
+    }
+
+    /** ジャーナル行の連番（読めなければ -1） */
+    private static long seqOf(TsvReader.Row r) {
+        try {
+            return r.getLong(0);
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    private static void compactQuietly() {
+        try {
+            compact();
+        } catch (Exception ex) {
+            AppLogger.error("sales journal compaction error", ex);
+        }
+    }
+
+    // ===== 内部処理 =====
+
+    /** 呼び出し側でロックを保持していること */
+    private static void replay(TsvReader.RowHandler handler) throws IOException {
+        Delta delta = loadDelta();
+        for (Path base : baseFiles()) {
+            TsvReader.forEach(base, r -> {
+                if (!delta.isLive(r)) return;
+                handler.row(r);
+            });
+        }
+        delta.forEachAdded(handler);
+    }
+
+    /** ベースとして読むファイル（セグメント→移行前の sales.tsv の順）。呼び出し側でロックを保持していること */
+    static List<Path> baseFiles() throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (SalesPartitions.enabled()) {
+            for (SalesPartitions.Segment seg : SalesPartitions.segments()) {
+                if (Files.exists(seg.file())) files.add(seg.file());
+            }
+        }
+        if (Files.exists(BASE)) files.add(BASE);
+        return files;
+    }
+
+    /** パーティションが有効なのに、まだ平の sales.tsv が残っているか */
+    private static boolean migrationPending() {
+        return SalesPartitions.enabled() && Files.exists(BASE);
+    }
+
+    /**
+     * ジャーナルで変わった月のセグメントだけを書き直し、残っている sales.tsv があれば各月へ振り分けます。
+     * 置き換えは plan に載せるだけです。書き込みロックを保持して呼ぶこと。書き出した行数を返します。
+     */
+    private static long compactPartitions(Plan plan) throws IOException {
+        Delta delta = loadDelta();
+        Map<String, SalesPartitions.Writer> writers = new TreeMap<>();
+        long[] rows = {0};
+        TsvReader.RowHandler route = r -> {
+            writer(writers, SalesPartitions.segmentOf(r.getEpochDay(0)), delta).write(r);
+            rows[0]++;
+        };
+        try {
+            if (Files.exists(BASE)) {
+                TsvReader.forEach(BASE, r -> {
+                    if (delta.isLive(r)) route.row(r);
+                });
+            }
+            // 削除だけの月も書き直す
+            for (String key : new ArrayList<>(delta.removed.keySet())) writer(writers, SalesPartitions.segmentOf(key), delta);
+            delta.forEachAdded(route);
+            SalesPartitions.prepare(writers.values(), plan);
+        } catch (IOException | RuntimeException ex) {
+            for (SalesPartitions.Writer w : writers.values()) w.abort();
+            throw ex;
+        }
+        if (Files.exists(BASE)) plan.delete(BASE);
+        return rows[0];
+    }
+
+    /** 月のセグメントの書き出し先。初めて開くときは既存セグメントの生きている行を先に写す */
+    private static SalesPartitions.Writer writer(Map<String, SalesPartitions.Writer> writers, String name,
+                                                 Delta delta) throws IOException {
+        SalesPartitions.Writer w = writers.get(name);
+        if (w != null) return w;
+        w = new SalesPartitions.Writer(name);
+        writers.put(name, w);
+        Path existing = SalesPartitions.existing(name);
+        if (existing != null) {
+            SalesPartitions.Writer out = w;
+            TsvReader.forEach(existing, r -> {
+                if (delta.isLive(r)) out.write(r);
+            });
+        }
+        return w;
+    }
+
+    /** 呼び出し側でロックを保持していること */
+    private static Delta loadDelta() throws IOException {
+        // ジャーナルを読み、ベースに対する差分（削除の多重集合＋追加行）にまとめる
+        Delta delta = new Delta();
+        if (Files.exists(JOURNAL)) {
+            // まだ取り消されていない追加の位置（行ごと。D は最後に追加されたものを取り消す）
+            Map<String, ArrayDeque<Integer>> pending = new HashMap<>();
+            TsvReader.forEach(JOURNAL, r -> {
+                if (r.size() < 2 + COLUMNS) return;
+                String op = r.getString(1);
+                String key = r.join(2, COLUMNS);
+                if ("A".equals(op)) {
+                    pending.computeIfAbsent(key, k -> new ArrayDeque<>()).push(delta.added.size());
+                    delta.added.add(key);
+                } else if ("D".equals(op)) {
+                    ArrayDeque<Integer> at = pending.get(key);
+                    if (at != null && !at.isEmpty()) delta.added.set(at.pop(), null);
+                    else delta.removed.merge(key, 1, Integer::sum);
+                }
+            });
+            delta.added.removeIf(Objects::isNull);
+        }
+        return delta;
+    }
+
+    /** 外部でベースかジャーナルが書き換えられたとき：連番と操作数を次回の書き込みで読み直す */
+    static void invalidate() {
+        LOCK.writeLock().lock();
+        try {
+            nextSeq = -1;
+        } finally {
+            LOCK.writeLock().unlock();
+        }
+    }
+
+    /** 呼び出し側で書き込みロックを保持していること */
+    private static void ensureSeqLoaded() throws IOException {
+        if (nextSeq >= 0) return;
+        long[] last = {0};
+        int[] ops = {0};
+        if (Files.exists(JOURNAL)) {
+            TsvReader.forEach(JOURNAL, r -> {
+                if (r.size() < 2) return;
+                try {
+                    last[0] = Math.max(last[0], r.getLong(0));
+                } catch (NumberFormatException ex) {
+                    return;
+                }
+                if (!"S".equals(r.getString(1))) ops[0]++;
+            });
+        }
+        nextSeq = last[0] + 1;
+        journalOps = ops[0];
+    }
+
+    private static void appendOp(StringBuilder sb, long seq, char op, String line) {
+        sb.append(seq).append('\t').append(op).append('\t').append(line).append('\n');
+    }
+
+    /** 各行を 9 列のタブ区切りにします（ジャーナル・集計で同じ形） */
+    private static List<String> toLines(List<String[]> rows) {
+        List<String> lines = new ArrayList<>(rows.size());
+        for (String[] row : rows) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < COLUMNS; i++) {
+                if (i > 0) sb.append('\t');
+                sb.append(i < row.length ? tsvSafe(row[i]) : "");
+            }
+            lines.add(sb.toString());
+        }
+        return lines;
+    }
+
+    private static String tsvSafe(String s) {
+        if (s == null) return "";
+        return s.replace("\t", " ").replace("\r", " ").replace("\n", " ");
+    }
+}
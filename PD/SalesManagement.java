@@ -15,15 +15,20 @@ import java.util.List;
  */
 public class SalesManagement extends JFrame {
 
-    private static final Path DATA_FILE = Paths.get("sales.tsv");
+    /** 行スタイル（SalesTableModel.STYLE_*）ごとの色 */
+    private static final RowStyleRenderer.Style[] ROW_STYLES = {
+        new RowStyleRenderer.Style(Color.WHITE, Color.BLACK, false),
+        new RowStyleRenderer.Style(new Color(255, 240, 240), new Color(180, 20, 20), false),
+    };
+
     private final JFrame parentDashboard;
 
-    private DefaultTableModel model;
+    private SalesTableModel model;
     private JTable table;
-    private TableRowSorter<javax.swing.table.TableModel> sorter;
+    private ColumnRowSorter sorter;
 
     private JComboBox<String> storeFilter;
-    private JButton addBtn, deleteBtn, editBtn, backBtn;
+    private JButton addBtn, scanBtn, deleteBtn, editBtn, backBtn;
 
     public SalesManagement(JFrame dashboard) {
         this.parentDashboard = dashboard;
@@ -37,9 +42,13 @@ public class SalesManagement extends JFrame {
         getContentPane().add(buildHeader(), BorderLayout.NORTH);
         getContentPane().add(buildTableArea(), BorderLayout.CENTER);
 
-        loadDataToModel();
-        buildStoreFilterItems();
-        applyDefaultSort();
+        // 販売実績は初回だけ読み込み、以後は常駐している表モデルをそのまま表示する
+        DataRepository.sales().whenLoaded(this::onDataLoaded);
+        DataRepository.sales().addListener(this, this::onDataLoaded);
+        // 表モデルは画面間で共有なので、閉じたらこの画面の表をモデルから外す
+        addWindowListener(new WindowAdapter() {
+            @Override public void windowClosed(WindowEvent e) { model.removeTableModelListener(table); }
+        });
 
         setVisible(true);
     }
@@ -66,6 +75,10 @@ public class SalesManagement extends JFrame {
         Theme.styleButton(addBtn, new Color(100, 200, 100));
         addBtn.addActionListener(e -> openAddDialog());
 
+        scanBtn = new JButton("スキャン入力");
+        Theme.styleButton(scanBtn, new Color(120, 180, 160));
+        scanBtn.addActionListener(e -> openScanDialog());
+
         editBtn = new JButton("編集");
         Theme.styleButton(editBtn, new Color(100, 160, 220));
         editBtn.setEnabled(false);
@@ -88,6 +101,7 @@ public class SalesManagement extends JFrame {
         right.add(storeFilter);
         right.add(editBtn);
         right.add(deleteBtn);
+        right.add(scanBtn);
         right.add(addBtn);
         right.add(backBtn);
 
@@ -97,10 +111,7 @@ public class SalesManagement extends JFrame {
     }
 
     private JComponent buildTableArea() {
-        String[] cols = {"記録日", "店舗", "商品", "販売数", "廃棄数", "返品数", "返品理由", "原価(円)", "売価(円)"};
-        model = new DefaultTableModel(cols, 0) {
-            @Override public boolean isCellEditable(int r, int c) { return false; }
-        };
+        model = DataRepository.sales().model();
 
         table = new JTable(model);
         table.setRowHeight(28);
@@ -115,53 +126,15 @@ public class SalesManagement extends JFrame {
             }
         });
 
-        sorter = new TableRowSorter<>(table.getModel());
+        // 日付はエポック日、数値列は値、文字列は順位の int キーで並べ替える（セルの再パースなし）
+        sorter = new ColumnRowSorter(model);
         table.setRowSorter(sorter);
 
-        // 日付は新しい順を上に
-        sorter.setComparator(0, (a, b) -> {
-            try {
-                LocalDate da = LocalDate.parse(a.toString());
-                LocalDate db = LocalDate.parse(b.toString());
-                return -da.compareTo(db);
-            } catch (Exception ex) {
-                return 0;
-            }
-        });
-
         JScrollPane sp = new JScrollPane(table);
         sp.setBorder(new EmptyBorder(10, 16, 16, 16));
 
-        // 廃棄数が多い行は薄赤で強調
-        javax.swing.table.DefaultTableCellRenderer rowRenderer = new javax.swing.table.DefaultTableCellRenderer() {
-            @Override
-            public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus, int row, int column) {
-                Component c = super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
-                if (isSelected) {
-                    c.setBackground(table.getSelectionBackground());
-                    c.setForeground(table.getSelectionForeground());
-                } else {
-                    try {
-                        int modelRow = table.convertRowIndexToModel(row);
-                        Object wasteObj = table.getModel().getValueAt(modelRow, 4); // 廃棄数
-                        int waste = 0;
-                        if (wasteObj != null) waste = Integer.parseInt(wasteObj.toString());
-                        if (waste > 0) {
-                            c.setBackground(new Color(255, 240, 240));
-                            c.setForeground(new Color(180, 20, 20));
-                        } else {
-                            c.setBackground(Color.WHITE);
-                            c.setForeground(Color.BLACK);
-                        }
-                        if (c instanceof JComponent) ((JComponent)c).setOpaque(true);
-                    } catch (Exception ex) {
-                        c.setBackground(Color.WHITE);
-                        c.setForeground(Color.BLACK);
-                    }
-                }
-                return c;
-            }
-        };
+        // 廃棄数が多い行は薄赤で強調（スタイルはモデルが行ごとにキャッシュ）
+        RowStyleRenderer rowRenderer = new RowStyleRenderer(model, ROW_STYLES);
         for (int i = 0; i < model.getColumnCount(); i++) {
             table.getColumnModel().getColumn(i).setCellRenderer(rowRenderer);
         }
@@ -169,75 +142,24 @@ public class SalesManagement extends JFrame {
         return sp;
     }
 
-    private void loadDataToModel() {
-        model.setRowCount(0);
-        if (!Files.exists(DATA_FILE)) return;
-
-        new javax.swing.SwingWorker<Void, Object[]>() {
-            private String err = null;
-            @Override protected Void doInBackground() {
-                try {
-                    java.util.List<String> lines = java.nio.file.Files.readAllLines(DATA_FILE, AppFiles.CHARSET);
-                    for (String line : lines) {
-                        if (line.trim().isEmpty()) continue;
-                        String[] c = line.split("\t", -1);
-                        if (c.length < 9) continue;
-                        publish(new Object[]{c[0], c[1], c[2], c[3], c[4], c[5], c[6], c[7], c[8]});
-                    }
-                } catch (Exception ex) {
-                    err = ex.getMessage();
-                    AppLogger.error("loadDataToModel (sales) error", ex);
-                }
-                return null;
-            }
-            @Override protected void process(java.util.List<Object[]> chunks) {
-                for (Object[] row : chunks) model.addRow(row);
-            }
-            @Override protected void done() {
-                if (err != null) JOptionPane.showMessageDialog(SalesManagement.this,
-                        "sales.tsv の読み込みに失敗: " + err, "エラー", JOptionPane.ERROR_MESSAGE);
-                applyDefaultSort();
-            }
-        }.execute();
+    // 読み込み完了（初回・外部変更による読み直し）
+    private void onDataLoaded() {
+        buildStoreFilterItems();
+        applyDefaultSort();
     }
 
-    private void saveModelToFile() {
-        java.util.List<String> out = new ArrayList<>();
-        for (int r = 0; r < model.getRowCount(); r++) {
-            StringBuilder sb = new StringBuilder();
-            for (int c = 0; c < model.getColumnCount(); c++) {
-                if (c > 0) sb.append('\t');
-                Object v = model.getValueAt(r, c);
-                sb.append(v == null ? "" : v.toString());
-            }
-            out.add(sb.toString());
-        }
-
-        new javax.swing.SwingWorker<Void, Void>() {
-            private String err = null;
-            @Override protected Void doInBackground() {
-                try {
-                    java.nio.file.Files.write(DATA_FILE, out, AppFiles.CHARSET);
-                } catch (Exception ex) {
-                    err = ex.getMessage();
-                    AppLogger.error("saveModelToFile (sales) error", ex);
-                }
-                return null;
-            }
-            @Override protected void done() {
-                if (err != null) {
-                    JOptionPane.showMessageDialog(SalesManagement.this,
-                            "sales.tsv の保存に失敗: " + err, "エラー", JOptionPane.ERROR_MESSAGE);
-                }
-            }
-        }.execute();
+    // 変更分だけをジャーナルへ追記（ファイル全体は書き直さない）
+    private void persistChanges(java.util.List<String[]> removed, java.util.List<String[]> added) {
+        DataRepository.saveSales(this, removed, added);
     }
 
     private void buildStoreFilterItems() {
+        // 店舗は辞書 ID で持っているので、使われている ID だけを拾う
+        KeyDictionary dict = model.dictionary(SalesTableModel.STORE);
+        boolean[] used = new boolean[dict.size()];
+        for (int r = 0; r < model.getRowCount(); r++) used[model.getId(r, SalesTableModel.STORE)] = true;
         Set<String> shops = new TreeSet<>();
-        for (int r = 0; r < model.getRowCount(); r++) {
-            shops.add(model.getValueAt(r, 1).toString());
-        }
+        for (int id = 0; id < used.length; id++) if (used[id]) shops.add(dict.name(id));
         storeFilter.removeAllItems();
         storeFilter.addItem("全店舗");
         for (String s : shops) storeFilter.addItem(s);
@@ -249,22 +171,16 @@ public class SalesManagement extends JFrame {
         if (selected == null || "全店舗".equals(selected)) {
             sorter.setRowFilter(null);
         } else {
-            sorter.setRowFilter(new RowFilter<TableModel, Integer>() {
-                @Override
-                public boolean include(Entry<? extends TableModel, ? extends Integer> entry) {
-                    String shop = entry.getStringValue(1);
-                    return selected.equals(shop);
-                }
-            });
+            int storeId = model.dictionary(SalesTableModel.STORE).find(selected);
+            sorter.setRowFilter(r -> model.getId(r, SalesTableModel.STORE) == storeId);
         }
         applyDefaultSort();
     }
 
     private void applyDefaultSort() {
         List<RowSorter.SortKey> keys = new ArrayList<>();
-        keys.add(new RowSorter.SortKey(0, SortOrder.ASCENDING)); // 日付の新しい順
-        sorter.setSortKeys(keys);
-        sorter.sort();
+        keys.add(new RowSorter.SortKey(SalesTableModel.DATE, SortOrder.DESCENDING)); // 日付の新しい順
+        sorter.setSortKeys(keys);   // 同じキーなら何もしない（追加・編集分は差し込み済み）
     }
 
     private void openAddDialog() {
@@ -331,7 +247,7 @@ public class SalesManagement extends JFrame {
             return;
         }
 
-        model.addRow(new Object[]{
+        String[] row = {
             date, shop, item,
             sold,
             waste.isEmpty() ? "0" : waste,
@@ -339,8 +255,29 @@ public class SalesManagement extends JFrame {
             reason,
             costPrice,
             sellPrice
-        });
-        saveModelToFile();
+        };
+        model.addRow(row);
+        persistChanges(Collections.emptyList(), Collections.singletonList(row));
+        buildStoreFilterItems();
+        applyDefaultSort();
+    }
+
+    // スキャナでまとめて読み取り、販売数として 1 回の書き込みで追加する
+    private void openScanDialog() {
+        String[] store = new String[1];
+        List<ScanBatchDialog.Entry> entries = ScanBatchDialog.show(this, "販売実績のスキャン入力", store);
+        if (entries == null) return;
+        String date = LocalDate.now().toString();
+        List<String[]> rows = new ArrayList<>(entries.size());
+        for (ScanBatchDialog.Entry e : entries) {
+            rows.add(new String[]{
+                date, store[0], e.product.name,
+                String.valueOf(e.qty), "0", "0", "",
+                String.valueOf(e.product.costPrice), String.valueOf(e.product.price)
+            });
+        }
+        model.addRows(rows);
+        persistChanges(Collections.emptyList(), rows);
         buildStoreFilterItems();
         applyDefaultSort();
     }
@@ -359,11 +296,11 @@ public class SalesManagement extends JFrame {
         int[] modelRows = new int[viewRows.length];
         for (int i = 0; i < viewRows.length; i++) modelRows[i] = table.convertRowIndexToModel(viewRows[i]);
         java.util.Arrays.sort(modelRows);
-        for (int i = modelRows.length - 1; i >= 0; i--) {
-            model.removeRow(modelRows[i]);
-        }
+        java.util.List<String[]> removed = new ArrayList<>();
+        for (int i = modelRows.length - 1; i >= 0; i--) removed.add(model.getRow(modelRows[i]));
+        model.removeRows(modelRows);
 
-        saveModelToFile();
+        persistChanges(removed, Collections.emptyList());
         buildStoreFilterItems();
         applyDefaultSort();
     }
@@ -373,15 +310,16 @@ public class SalesManagement extends JFrame {
         if (viewRows == null || viewRows.length != 1) return;
         int modelRow = table.convertRowIndexToModel(viewRows[0]);
 
-        JTextField dateField = new JTextField(String.valueOf(model.getValueAt(modelRow, 0)));
-        JTextField storeField = new JTextField(String.valueOf(model.getValueAt(modelRow, 1)));
-        JTextField itemField = new JTextField(String.valueOf(model.getValueAt(modelRow, 2)));
-        JTextField soldField = new JTextField(String.valueOf(model.getValueAt(modelRow, 3)));
-        JTextField wasteField = new JTextField(String.valueOf(model.getValueAt(modelRow, 4)));
-        JTextField returnField = new JTextField(String.valueOf(model.getValueAt(modelRow, 5)));
-        JTextField returnReasonField = new JTextField(String.valueOf(model.getValueAt(modelRow, 6)));
-        JTextField costPriceField = new JTextField(String.valueOf(model.getValueAt(modelRow, 7)));
-        JTextField sellPriceField = new JTextField(String.valueOf(model.getValueAt(modelRow, 8)));
+        String[] before = model.getRow(modelRow);
+        JTextField dateField = new JTextField(before[0]);
+        JTextField storeField = new JTextField(before[1]);
+        JTextField itemField = new JTextField(before[2]);
+        JTextField soldField = new JTextField(before[3]);
+        JTextField wasteField = new JTextField(before[4]);
+        JTextField returnField = new JTextField(before[5]);
+        JTextField returnReasonField = new JTextField(before[6]);
+        JTextField costPriceField = new JTextField(before[7]);
+        JTextField sellPriceField = new JTextField(before[8]);
 
         JPanel form = new JPanel(new GridLayout(0, 2, 8, 8));
         form.add(new JLabel("記録日"));
@@ -422,17 +360,30 @@ public class SalesManagement extends JFrame {
             return;
         }
 
-        model.setValueAt(date, modelRow, 0);
-        model.setValueAt(shop, modelRow, 1);
-        model.setValueAt(item, modelRow, 2);
-        model.setValueAt(sold, modelRow, 3);
-        model.setValueAt(waste, modelRow, 4);
-        model.setValueAt(ret, modelRow, 5);
-        model.setValueAt(reason, modelRow, 6);
-        model.setValueAt(costPrice, modelRow, 7);
-        model.setValueAt(sellPrice, modelRow, 8);
-
-        saveModelToFile();
+        // 数値チェック（追加時と同じ）
+        try {
+            Integer.parseInt(sold);
+            Integer.parseInt(waste.isEmpty() ? "0" : waste);
+            Integer.parseInt(ret.isEmpty() ? "0" : ret);
+            Integer.parseInt(costPrice);
+            Integer.parseInt(sellPrice);
+        } catch (NumberFormatException ex) {
+            JOptionPane.showMessageDialog(this, "数値項目は整数で入力してください。");
+            return;
+        }
+
+        String[] after = {
+            date, shop, item,
+            sold,
+            waste.isEmpty() ? "0" : waste,
+            ret.isEmpty() ? "0" : ret,
+            reason,
+            costPrice,
+            sellPrice
+        };
+        model.setRow(modelRow, after);
+
+        persistChanges(Collections.singletonList(before), Collections.singletonList(after));
         buildStoreFilterItems();
         applyDefaultSort();
     }
@@ -0,0 +1,177 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * 販売実績のベースを月ごとのセグメントに分けて持つレイアウト（任意）。
+ * sales.parts/ ディレクトリを作ると有効になり、次のコンパクションで sales.tsv の内容がセグメントへ移されます。
+ *
+ * セグメントは sales.parts/YYYY-MM.tsv（日付が読めない行は undated.tsv）。
+ * sales.index に各セグメントの名前・最小日付・最大日付（エポック日）・行数を持ち、期間指定の読み込みは
+ * 範囲が重なるセグメントだけを読みます。コンパクションはジャーナルで変わった月だけを書き直します。
+ * 読み書きはすべて {@link SalesJournal} のロックの下で行います。
+ */
+final class SalesPartitions {
+
+    private static final Path DIR = AppFiles.SALES_PARTS;
+    private static final Path INDEX = AppFiles.SALES_INDEX;
+    private static final String UNDATED = "undated";
+
+    /** 1 か月分のセグメント（undated は minDay = maxDay = NO_DATE） */
+    static final class Segment {
+        final String name;
+        final long minDay, maxDay, rows;
+
+        Segment(String name, long minDay, long maxDay, long rows) {
+            this.name = name;
+            this.minDay = minDay;
+            this.maxDay = maxDay;
+            this.rows = rows;
+        }
+
+        Path file() { return DIR.resolve(name + ".tsv"); }
+
+        /** [from, to] と重なるか（日付が読めないセグメントは常に対象） */
+        boolean overlaps(long from, long to) {
+            return minDay == TsvReader.NO_DATE || (maxDay >= from && minDay <= to);
+        }
+
+        /** 全行が [from, to] に入るか（行ごとの日付判定を省ける） */
+        boolean within(long from, long to) {
+            return minDay != TsvReader.NO_DATE && minDay >= from && maxDay <= to;
+        }
+    }
+
+    private static List<Segment> cached = null;
+    private static String cachedStamp = "";
+
+    private SalesPartitions() {}
+
+    static boolean enabled() {
+        return Files.isDirectory(DIR);
+    }
+
+    /** 索引の全セグメント（名前順＝日付順、undated は最後） */
+    static synchronized List<Segment> segments() throws IOException {
+        String stamp = FileSummary.stamp(INDEX);
+        if (cached != null && stamp.equals(cachedStamp)) return cached;
+        List<Segment> list = new ArrayList<>();
+        if (Files.exists(INDEX)) {
+            TsvReader.forEach(INDEX, r -> {
+                if (r.size() < 4) return;
+                list.add(new Segment(r.getString(0), day(r.getString(1)), day(r.getString(2)), r.getLong(3)));
+            });
+        }
+        list.sort(Comparator.comparing(s -> s.name));
+        cached = Collections.unmodifiableList(list);
+        cachedStamp = stamp;
+        return cached;
+    }
+
+    /** 索引を置き換えたとき：次の {@link #segments} で読み直す */
+    static synchronized void invalidate() {
+        cached = null;
+    }
+
+    /** 日付（エポック日）の属するセグメント名 */
+    static String segmentOf(long epochDay) {
+        if (epochDay == TsvReader.NO_DATE) return UNDATED;
+        LocalDate d = LocalDate.ofEpochDay(epochDay);
+        return String.format("%04d-%02d", d.getYear(), d.getMonthValue());
+    }
+
+    /** 行（タブ区切り、先頭が日付）の属するセグメント名 */
+    static String segmentOf(String line) {
+        int tab = line.indexOf('\t');
+        byte[] b = (tab < 0 ? line : line.substring(0, tab)).getBytes(AppFiles.CHARSET);
+        return segmentOf(TsvReader.parseEpochDay(b, 0, b.length));
+    }
+
+    /** セグメントの既存ファイル（なければ null） */
+    static Path existing(String name) {
+        Path f = DIR.resolve(name + ".tsv");
+        return Files.exists(f) ? f : null;
+    }
+
+    // 索引の日付はエポック日、日付なしは "-"
+    private static String day(long epochDay) {
+        return epochDay == TsvReader.NO_DATE ? "-" : Long.toString(epochDay);
+    }
+
+    private static long day(String s) {
+        return "-".equals(s) ? TsvReader.NO_DATE : Long.parseLong(s);
+    }
+
+    /**
+     * 書き直したセグメントと新しい索引を plan に載せます（rows が 0 のものは索引からもファイルからも消す）。
+     * 置き換えは {@link SalesJournal.Plan#apply} でまとめて行います。
+     */
+    static synchronized void prepare(Collection<Writer> writers, SalesJournal.Plan plan) throws IOException {
+        Map<String, Segment> byName = new TreeMap<>();
+        for (Segment s : segments()) byName.put(s.name, s);
+        for (Writer w : writers) {
+            Segment s = w.finish(plan);
+            if (s == null) byName.remove(w.name);
+            else byName.put(s.name, s);
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Segment s : byName.values()) {
+            sb.append(s.name).append('\t').append(day(s.minDay)).append('\t').append(day(s.maxDay)).append('\t').append(s.rows).append('\n');
+        }
+        Path tmp = INDEX.resolveSibling(INDEX.getFileName() + ".tmp");
+        Files.write(tmp, sb.toString().getBytes(AppFiles.CHARSET));
+        plan.move(tmp, INDEX);
+    }
+
+    /** 1 セグメントの書き直し（一時ファイルに書き、{@link #prepare} で置き換えを予約する） */
+    static final class Writer {
+        final String name;
+        private final Path tmp;
+        private final BufferedWriter out;
+        private long minDay = Long.MAX_VALUE, maxDay = Long.MIN_VALUE, rows = 0;
+
+        Writer(String name) throws IOException {
+            this.name = name;
+            Files.createDirectories(DIR);
+            tmp = DIR.resolve(name + ".tsv.tmp");
+            out = Files.newBufferedWriter(tmp, AppFiles.CHARSET);
+        }
+
+        void write(TsvReader.Row r) throws IOException {
+            long day = r.getEpochDay(0);
+            if (day != TsvReader.NO_DATE) {
+                minDay = Math.min(minDay, day);
+                maxDay = Math.max(maxDay, day);
+            }
+            out.write(r.join(0, SalesJournal.COLUMNS));
+            out.newLine();
+            rows++;
+        }
+
+        /** 失敗したとき：一時ファイルを捨てる（元のセグメントはそのまま） */
+        void abort() {
+            try {
+                out.close();
+                Files.deleteIfExists(tmp);
+            } catch (IOException ex) {
+                AppLogger.error("discard " + tmp + " error", ex);
+            }
+        }
+
+        /** 空になったセグメントは消すよう予約して null */
+        private Segment finish(SalesJournal.Plan plan) throws IOException {
+            out.close();
+            Path file = DIR.resolve(name + ".tsv");
+            if (rows == 0) {
+                Files.deleteIfExists(tmp);
+                plan.delete(file);
+                return null;
+            }
+            plan.move(tmp, file);
+            if (UNDATED.equals(name)) return new Segment(name, TsvReader.NO_DATE, TsvReader.NO_DATE, rows);
+            return new Segment(name, minDay, maxDay, rows);
+        }
+    }
+}
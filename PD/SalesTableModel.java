@@ -0,0 +1,20 @@
+/**
+ * 販売実績テーブルのモデル（sales.tsv の 9 列）
+ */
+public final class SalesTableModel extends ColumnTableModel {
+
+    public static final int DATE = 0, STORE = 1, ITEM = 2, SOLD = 3, WASTE = 4,
+            RETURNED = 5, REASON = 6, COST = 7, PRICE = 8;
+
+    /** 行スタイル：通常 / 廃棄あり */
+    public static final int STYLE_NORMAL = 0, STYLE_WASTE = 1;
+
+    public SalesTableModel() {
+        super(new String[]{"記録日", "店舗", "商品", "販売数", "廃棄数", "返品数", "返品理由", "原価(円)", "売価(円)"},
+              new Kind[]{Kind.DATE, Kind.TEXT, Kind.TEXT, Kind.INT, Kind.INT, Kind.INT, Kind.TEXT, Kind.INT, Kind.INT});
+    }
+
+    @Override protected int computeStyle(int r) {
+        return getInt(r, WASTE, 0) > 0 ? STYLE_WASTE : STYLE_NORMAL;
+    }
+}
@@ -0,0 +1,169 @@
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * バーコードスキャナ（キーボードウェッジ）でのまとめ入力ダイアログ。
+ * スキャナはコードを打鍵して Enter を送るので、入力欄の Enter ごとに {@link BarcodeIndex} で商品を引き、
+ * 同じ商品は数量を 1 ずつ加算します。確定するまで保存はしません（呼び出し側でまとめて 1 回保存する）。
+ */
+public final class ScanBatchDialog extends JDialog {
+
+    /** 確定した 1 商品分 */
+    public static final class Entry {
+        public final ProductManagement.Product product;
+        public final int qty;
+
+        Entry(ProductManagement.Product product, int qty) {
+            this.product = product;
+            this.qty = qty;
+        }
+    }
+
+    private final BarcodeIndex index = BarcodeIndex.current();
+    private final List<Pending> rows = new ArrayList<>();   // 読み取り中の商品（読み取り順）
+    private final int[] rowOf = new int[index.capacity()];   // 索引の位置 → 行+1（0 は未読み取り）
+    private final PendingModel tableModel = new PendingModel();
+
+    private final JTextField storeField = new JTextField(12);
+    private final JTextField scanField = new JTextField(16);
+    private final JLabel status = new JLabel(" ");
+    private final JTable table = new JTable(tableModel);
+    private boolean confirmed = false;
+
+    private ScanBatchDialog(Window owner, String title) {
+        super(owner, title, ModalityType.APPLICATION_MODAL);
+
+        JPanel top = new JPanel(new GridLayout(0, 2, 8, 8));
+        top.add(new JLabel("店舗"));
+        top.add(storeField);
+        top.add(new JLabel("バーコード"));
+        top.add(scanField);
+        scanField.addActionListener(e -> onScan());
+
+        table.setRowHeight(24);
+        table.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+
+        JButton removeBtn = new JButton("選択行を削除");
+        removeBtn.addActionListener(e -> removeSelected());
+        JButton okBtn = new JButton("確定");
+        okBtn.addActionListener(e -> onConfirm());
+        JButton cancelBtn = new JButton("取消");
+        cancelBtn.addActionListener(e -> dispose());
+
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT, 8, 0));
+        buttons.add(removeBtn);
+        buttons.add(cancelBtn);
+        buttons.add(okBtn);
+
+        JPanel bottom = new JPanel(new BorderLayout(8, 8));
+        bottom.add(status, BorderLayout.CENTER);
+        bottom.add(buttons, BorderLayout.EAST);
+
+        JPanel root = new JPanel(new BorderLayout(8, 8));
+        root.setBorder(new EmptyBorder(12, 12, 12, 12));
+        root.add(top, BorderLayout.NORTH);
+        root.add(new JScrollPane(table), BorderLayout.CENTER);
+        root.add(bottom, BorderLayout.SOUTH);
+        setContentPane(root);
+
+        setSize(520, 420);
+        setLocationRelativeTo(owner);
+        if (index.size() == 0) status.setText("バーコードが登録された商品がありません。");
+    }
+
+    /**
+     * ダイアログを表示し、確定した内容を返します（取消・0 件なら null）。
+     * store[0] に入力された店舗名を返します。
+     */
+    public static List<Entry> show(Component parent, String title, String[] store) {
+        ScanBatchDialog d = new ScanBatchDialog(SwingUtilities.getWindowAncestor(parent), title);
+        d.addWindowListener(new java.awt.event.WindowAdapter() {
+            @Override public void windowOpened(java.awt.event.WindowEvent e) { d.storeField.requestFocusInWindow(); }
+        });
+        d.setVisible(true);
+        if (!d.confirmed || d.rows.isEmpty()) return null;
+        store[0] = d.storeField.getText().trim();
+        List<Entry> out = new ArrayList<>(d.rows.size());
+        for (Pending p : d.rows) out.add(new Entry(p.product, p.qty));
+        return out;
+    }
+
+    private void onScan() {
+        String text = scanField.getText();
+        scanField.setText("");
+        int slot = index.slot(BarcodeIndex.parse(text));
+        if (slot < 0) {
+            Toolkit.getDefaultToolkit().beep();
+            status.setText("未登録のコード: " + text.trim());
+            return;
+        }
+        Pending p;
+        int r = rowOf[slot] - 1;
+        if (r < 0) {
+            p = new Pending(slot, index.product(slot));
+            rows.add(p);
+            r = rows.size() - 1;
+            rowOf[slot] = r + 1;
+            p.qty = 1;
+            tableModel.fireTableRowsInserted(r, r);
+        } else {
+            p = rows.get(r);
+            p.qty++;
+            tableModel.fireTableRowsUpdated(r, r);
+        }
+        status.setText(p.product.name + "（" + p.qty + "）");
+    }
+
+    private void removeSelected() {
+        int[] sel = table.getSelectedRows();
+        for (int i = sel.length - 1; i >= 0; i--) rows.remove(sel[i]);
+        // 後ろの行が詰まるので、行番号を振り直す
+        Arrays.fill(rowOf, 0);
+        for (int r = 0; r < rows.size(); r++) rowOf[rows.get(r).slot] = r + 1;
+        tableModel.fireTableDataChanged();
+        scanField.requestFocusInWindow();
+    }
+
+    private void onConfirm() {
+        if (storeField.getText().trim().isEmpty()) {
+            JOptionPane.showMessageDialog(this, "店舗を入力してください。", "入力不足", JOptionPane.WARNING_MESSAGE);
+            storeField.requestFocusInWindow();
+            return;
+        }
+        confirmed = true;
+        dispose();
+    }
+
+    private static final class Pending {
+        final int slot;   // 索引の位置
+        final ProductManagement.Product product;
+        int qty;
+
+        Pending(int slot, ProductManagement.Product product) {
+            this.slot = slot;
+            this.product = product;
+        }
+    }
+
+    private final class PendingModel extends AbstractTableModel {
+        private final String[] columns = {"バーコード", "商品", "数量"};
+
+        @Override public int getRowCount() { return rows.size(); }
+        @Override public int getColumnCount() { return columns.length; }
+        @Override public String getColumnName(int c) { return columns[c]; }
+
+        @Override public Object getValueAt(int r, int c) {
+            Pending p = rows.get(r);
+            switch (c) {
+                case 0: return p.product.barcode;
+                case 1: return p.product.name;
+                default: return p.qty;
+            }
+        }
+    }
+}
@@ -9,6 +9,7 @@ import java.util.List;
 
 public class StoreManagement extends JFrame {
 
+    // Serializable は旧形式 stores.dat の移行で読むためだけに残している（保存は RecordFile）
     static class Store implements Serializable {
         private static final long serialVersionUID = 1L;
         String name, category, address, contact, phone;
@@ -17,7 +18,7 @@ public class StoreManagement extends JFrame {
         }
     }
 
-    private final List<Store> stores = new ArrayList<>();
+    private final List<Store> stores = DataRepository.stores().items();   // 画面間で共有
     private final JPanel listPanel = new JPanel();
     private final JLabel header = new JLabel("店舗管理");
     private final JFrame parentDashboard;  // ★ 戻り先参照
@@ -27,8 +28,9 @@ public class StoreManagement extends JFrame {
     public StoreManagement(JFrame dashboard){
         this.parentDashboard = dashboard;
         initUI();
-        loadStores();
-        refreshCards();
+        // 読み込みは初回だけ（以後は常駐分を表示）。外部で変更されたら読み直した内容で描き直す
+        DataRepository.stores().whenLoaded(this::refreshCards);
+        DataRepository.stores().addListener(this, this::refreshCards);
     }
 
     private void initUI(){
@@ -87,62 +89,22 @@ public class StoreManagement extends JFrame {
         getContentPane().add(new JScrollPane(listPanel), BorderLayout.CENTER);
     }
 
-    // --- 保存ファイルパス ---
-    private Path dataFile(){ return AppFiles.STORES_DAT; }
+    // --- 1 件追加（.dat / .tsv の末尾へ追記するだけ） ---
+    private void addStore(Store s){
+        DataRepository.addStore(this, s, this::afterStoresSaved);
+    }
 
-    // --- 保存（.dat + .tsv）★ tsvも同時更新 ---
+    // --- 保存（.dat + .tsv） ---
     private void saveStores(){
-        // 同期保存に変更：即時にファイルへ反映させる（保存完了前にアプリを閉じた場合の取りこぼしを防止）
-        java.util.List<Store> snapshot = new ArrayList<>(stores);
-        Exception err = null;
-        try (ObjectOutputStream oos = new ObjectOutputStream(java.nio.file.Files.newOutputStream(dataFile()))) {
-            oos.writeObject(new ArrayList<>(snapshot));
-        } catch (IOException ex) {
-            err = ex; AppLogger.error("saveStores error", ex);
-        }
-        // TSV
-        java.util.List<String> lines = new ArrayList<>();
-        for (Store s : snapshot) {
-            String name   = tsvSafe(s.name);
-            String cat    = tsvSafe(s.category);
-            String addr   = tsvSafe(s.address);
-            String person = tsvSafe(s.contact);
-            String phone  = tsvSafe(s.phone);
-            lines.add(name + "\t" + cat + "\t" + addr + "\t" + person + "\t" + phone);
-        }
-        try {
-            java.nio.file.Files.write(AppFiles.STORES_TSV, lines, AppFiles.CHARSET,
-                    java.nio.file.StandardOpenOption.CREATE, java.nio.file.StandardOpenOption.TRUNCATE_EXISTING);
-        } catch (IOException ex) {
-            err = ex; AppLogger.error("writeStoresTSV error", ex);
-        }
-
-        if (err != null) {
-            JOptionPane.showMessageDialog(this, "店舗情報の保存に失敗しました: " + err.getMessage(), "保存エラー", JOptionPane.ERROR_MESSAGE);
-        } else {
-            if (parentDashboard instanceof DashboardSimple) {
-                ((DashboardSimple) parentDashboard).refreshStoreCard();
-            }
-        }
+        // バックグラウンドで保存（終了時は書き切ってから終わるので取りこぼさない）
+        DataRepository.saveStores(this, this::afterStoresSaved);
     }
 
-    @SuppressWarnings("unchecked")
-    private void loadStores(){
-        Path f = dataFile();
-        if (!java.nio.file.Files.exists(f)) return;
-        new javax.swing.SwingWorker<Void, Store>(){
-            private Exception err;
-            @Override protected Void doInBackground(){
-                try (ObjectInputStream ois = new ObjectInputStream(java.nio.file.Files.newInputStream(f))){
-                    Object obj = ois.readObject();
-                    java.util.List<Store> loaded = (ArrayList<Store>) obj;
-                    for (Store s : loaded) publish(s);
-                } catch(Exception ex){ err = ex; AppLogger.error("loadStores error", ex); }
-                return null;
-            }
-            @Override protected void process(java.util.List<Store> chunks){ for (Store s : chunks) stores.add(s); }
-            @Override protected void done(){ if (err != null) AppLogger.error("読み込み失敗", err); }
-        }.execute();
+    // 保存完了（ディスクへ確定）後にダッシュボードを更新
+    private void afterStoresSaved(){
+        if (parentDashboard instanceof DashboardSimple) {
+            ((DashboardSimple) parentDashboard).refreshStoreCard();
+        }
     }
 
     private void showAddDialog(){
@@ -165,14 +127,13 @@ public class StoreManagement extends JFrame {
             if(tfName.getText().trim().isEmpty()){
                 JOptionPane.showMessageDialog(this,"店舗名は必須です"); return;
             }
-            stores.add(new Store(
+            addStore(new Store(
                     tfName.getText().trim(),
                     tfCat.getText().trim(),
                     tfAddr.getText().trim(),
                     tfPerson.getText().trim(),
                     tfPhone.getText().trim()
             ));
-            saveStores();
             refreshCards();
         }
     }
@@ -193,9 +154,6 @@ public class StoreManagement extends JFrame {
         header.setText("店舗管理（" + stores.size() + "件）");
         listPanel.revalidate();
         listPanel.repaint();
-
-        // 一覧再描画後も保険でTSV出力（外部編集に強くするなら残す）
-        writeStoresTSV(); // ★ 追加
     }
 
     // 一括削除ダイアログ
@@ -322,28 +280,4 @@ public class StoreManagement extends JFrame {
 
     private String nullSafe(String s){ return (s==null||s.isEmpty()) ? "-" : s; }
 
-    // ===== ここから追加：Dashboard用 TSV 出力 =====
-    private void writeStoresTSV() {
-        List<String> lines = new ArrayList<>();
-        for (Store s : stores) {
-            String name   = tsvSafe(s.name);
-            String cat    = tsvSafe(s.category);
-            String addr   = tsvSafe(s.address);
-            String person = tsvSafe(s.contact);
-            String phone  = tsvSafe(s.phone);
-            lines.add(name + "\t" + cat + "\t" + addr + "\t" + person + "\t" + phone);
-        }
-        try {
-            Files.write(AppFiles.STORES_TSV, lines, AppFiles.CHARSET,
-                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
-                } catch (IOException ex) {
-            AppLogger.error("TSV保存失敗", ex);
-        }
-    }
-
-    private String tsvSafe(String s){
-        if (s == null) return "";
-        return s.replace("\t"," ").replace("\r"," ").replace("\n"," ");
-    }
-    // ============================================
 }
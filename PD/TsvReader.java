@@ -0,0 +1,359 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * ストリーミング TSV リーダー。
+ * 大きめのバッファに NIO で読み込み、タブ／改行をバイト単位で区切って 1 行ずつハンドラへ渡します。
+ * 列は文字列化せずにバッファ上のビューとして保持し、必要になった列だけを String / int に変換します。
+ * （UTF-8 ではタブ・改行のバイトがマルチバイト文字の途中に現れないため、バイト単位の分割で安全です）
+ *
+ * 渡される {@link Row} はハンドラ呼び出しの間だけ有効です。保持したい場合は値を取り出してください。
+ */
+public final class TsvReader {
+
+    /** 1 行ごとに呼ばれるハンドラ */
+    public interface RowHandler {
+        void row(Row row) throws IOException;
+    }
+
+    /** 日付列が解釈できない場合の戻り値 */
+    public static final long NO_DATE = Long.MIN_VALUE;
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private TsvReader() {}
+
+    /** ファイル全体を 1 行ずつ読み込み、読んだ行数を返します */
+    public static long forEach(Path file, RowHandler handler) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            return forEach(ch, handler);
+        }
+    }
+
+    /**
+     * ファイルのバイト範囲 [start, end) だけを読み込みます。
+     * 範囲は {@link #splitLines} で行頭に揃えておくこと。
+     */
+    public static long forEach(Path file, long start, long end, RowHandler handler) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ch.position(start);
+            return forEach(new RangeChannel(ch, end - start), handler);
+        }
+    }
+
+    /**
+     * ファイルをおよそ parts 等分し、各境界を次の行頭にずらした位置を返します。
+     * 戻り値は先頭 0・末尾ファイルサイズの昇順配列で、隣り合う 2 点が 1 つの範囲です。
+     */
+    public static long[] splitLines(Path file, int parts) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            long[] bounds = new long[parts + 1];
+            int n = 0;
+            bounds[n++] = 0;
+            ByteBuffer bb = ByteBuffer.allocate(4096);
+            for (int i = 1; i < parts; i++) {
+                long pos = Math.max(size * i / parts, bounds[n - 1]);
+                long next = size;
+                scan:
+                while (pos < size) {
+                    bb.clear();
+                    int r = ch.read(bb, pos);
+                    if (r <= 0) break;
+                    for (int k = 0; k < r; k++) {
+                        if (bb.get(k) == '\n') {
+                            next = pos + k + 1;
+                            break scan;
+                        }
+                    }
+                    pos += r;
+                }
+                if (next > bounds[n - 1] && next < size) bounds[n++] = next;
+            }
+            bounds[n++] = size;
+            return java.util.Arrays.copyOf(bounds, n);
+        }
+    }
+
+    /** メモリ上の TSV（ジャーナルの差分など）を同じ方法で読み込みます */
+    public static long forEach(byte[] data, RowHandler handler) throws IOException {
+        return forEach(Channels.newChannel(new ByteArrayInputStream(data)), handler);
+    }
+
+    public static long forEach(ReadableByteChannel ch, RowHandler handler) throws IOException {
+        byte[] buf = new byte[BUFFER_SIZE];
+        Row row = new Row();
+        int filled = 0;   // buf 内の有効バイト数
+        int lineStart = 0;
+        int scan = 0;
+        long lines = 0;
+        boolean first = true;
+        while (true) {
+            if (filled == buf.length) {
+                if (lineStart > 0) {
+                    // 未処理の行を先頭へ寄せる
+                    System.arraycopy(buf, lineStart, buf, 0, filled - lineStart);
+                    filled -= lineStart;
+                    scan -= lineStart;
+                    lineStart = 0;
+                } else {
+                    // 1 行がバッファより長い場合は拡張
+                    byte[] bigger = new byte[buf.length * 2];
+                    System.arraycopy(buf, 0, bigger, 0, filled);
+                    buf = bigger;
+                }
+            }
+            int n = ch.read(ByteBuffer.wrap(buf, filled, buf.length - filled));
+            if (n < 0) break;
+            filled += n;
+            if (first && filled >= 3) {
+                // UTF-8 BOM を読み飛ばす
+                if ((buf[0] & 0xFF) == 0xEF && (buf[1] & 0xFF) == 0xBB && (buf[2] & 0xFF) == 0xBF) {
+                    lineStart = scan = 3;
+                }
+                first = false;
+            }
+            for (; scan < filled; scan++) {
+                if (buf[scan] != '\n') continue;
+                row.reset(buf, lineStart, scan);
+                handler.row(row);
+                lines++;
+                lineStart = scan + 1;
+            }
+        }
+        if (lineStart < filled) {
+            // 最終行に改行がない場合
+            row.reset(buf, lineStart, filled);
+            handler.row(row);
+            lines++;
+        }
+        return lines;
+    }
+
+    /**
+     * yyyy-MM-dd をエポック日に変換します（LocalDate を生成しない）。
+     * 形式不正・存在しない日付は {@link #NO_DATE}。
+     */
+    public static long parseEpochDay(byte[] b, int off, int len) {
+        if (len != 10 || b[off + 4] != '-' || b[off + 7] != '-') return NO_DATE;
+        int y = digits(b, off, 4), m = digits(b, off + 5, 2), d = digits(b, off + 8, 2);
+        if (y < 0 || m < 1 || m > 12 || d < 1) return NO_DATE;
+        boolean leap = (y % 4 == 0) && (y % 100 != 0 || y % 400 == 0);
+        int maxDay = m == 2 ? (leap ? 29 : 28) : (m == 4 || m == 6 || m == 9 || m == 11) ? 30 : 31;
+        if (d > maxDay) return NO_DATE;
+        // LocalDate#toEpochDay と同じ計算
+        long total = 365L * y;
+        total += (y + 3) / 4 - (y + 99) / 100 + (y + 399) / 400;
+        total += (367 * m - 362) / 12;
+        total += d - 1;
+        if (m > 2) total -= leap ? 1 : 2;
+        return total - 719528L;
+    }
+
+    private static int digits(byte[] b, int off, int len) {
+        int v = 0;
+        for (int i = 0; i < len; i++) {
+            int c = b[off + i] - '0';
+            if (c < 0 || c > 9) return -1;
+            v = v * 10 + c;
+        }
+        return v;
+    }
+
+    /** 下位チャネルから最大 remaining バイトだけ読ませるラッパー */
+    private static final class RangeChannel implements ReadableByteChannel {
+        private final ReadableByteChannel ch;
+        private long remaining;
+
+        RangeChannel(ReadableByteChannel ch, long remaining) {
+            this.ch = ch;
+            this.remaining = remaining;
+        }
+
+        @Override public int read(ByteBuffer dst) throws IOException {
+            if (remaining <= 0) return -1;
+            if (dst.remaining() > remaining) {
+                ByteBuffer slice = dst.duplicate();
+                slice.limit(dst.position() + (int) remaining);
+                int n = ch.read(slice);
+                if (n > 0) {
+                    dst.position(dst.position() + n);
+                    remaining -= n;
+                }
+                return n;
+            }
+            int n = ch.read(dst);
+            if (n > 0) remaining -= n;
+            return n;
+        }
+
+        @Override public boolean isOpen() { return ch.isOpen(); }
+        @Override public void close() throws IOException { ch.close(); }
+    }
+
+    /**
+     * 1 行分のビュー。列の境界だけを保持し、値は要求時に変換します。
+     */
+    public static final class Row {
+        private byte[] buf;
+        private int start, end;
+        private int[] colStart = new int[16];
+        private int[] colEnd = new int[16];
+        private int count;
+
+        void reset(byte[] b, int s, int e) {
+            if (e > s && b[e - 1] == '\r') e--;
+            buf = b;
+            start = s;
+            end = e;
+            count = 0;
+            int cs = s;
+            for (int i = s; i < e; i++) {
+                if (b[i] == '\t') {
+                    add(cs, i);
+                    cs = i + 1;
+                }
+            }
+            add(cs, e);
+        }
+
+        private void add(int s, int e) {
+            if (count == colStart.length) {
+                colStart = java.util.Arrays.copyOf(colStart, count * 2);
+                colEnd = java.util.Arrays.copyOf(colEnd, count * 2);
+            }
+            colStart[count] = s;
+            colEnd[count] = e;
+            count++;
+        }
+
+        /** 列数（String#split("\t", -1) と同じ数え方） */
+        public int size() { return count; }
+
+        /** 空白のみの行か（line.trim().isEmpty() 相当） */
+        public boolean isBlank() {
+            for (int i = start; i < end; i++) if ((buf[i] & 0xFF) > ' ') return false;
+            return true;
+        }
+
+        public boolean isEmpty(int col) {
+            check(col);
+            return colEnd[col] == colStart[col];
+        }
+
+        /** 列のバイト長 */
+        public int length(int col) {
+            check(col);
+            return colEnd[col] - colStart[col];
+        }
+
+        public String getString(int col) {
+            check(col);
+            return new String(buf, colStart[col], colEnd[col] - colStart[col], StandardCharsets.UTF_8);
+        }
+
+        /** Integer.parseInt と同じ規則で整数に変換します（前後の空白は許容） */
+        public int getInt(int col) {
+            long v = getLong(col);
+            if (v < Integer.MIN_VALUE || v > Integer.MAX_VALUE) throw new NumberFormatException(getString(col));
+            return (int) v;
+        }
+
+        public long getLong(int col) {
+            check(col);
+            int s = colStart[col], e = colEnd[col];
+            while (s < e && buf[s] == ' ') s++;
+            while (e > s && buf[e - 1] == ' ') e--;
+            if (s == e) throw new NumberFormatException("empty column " + col);
+            boolean neg = false;
+            if (buf[s] == '-' || buf[s] == '+') {
+                neg = buf[s] == '-';
+                if (++s == e) throw new NumberFormatException(getString(col));
+            }
+            if (e - s > 18) throw new NumberFormatException(getString(col));
+            long v = 0;
+            for (int i = s; i < e; i++) {
+                int c = buf[i] - '0';
+                if (c < 0 || c > 9) throw new NumberFormatException(getString(col));
+                v = v * 10 + c;
+            }
+            return neg ? -v : v;
+        }
+
+        /** 整数に変換できなければ def を返します */
+        public int getInt(int col, int def) {
+            try {
+                return getInt(col);
+            } catch (NumberFormatException ex) {
+                return def;
+            }
+        }
+
+        /** 日付列（yyyy-MM-dd）をエポック日で返します。解釈できなければ {@link TsvReader#NO_DATE} */
+        public long getEpochDay(int col) {
+            check(col);
+            return parseEpochDay(buf, colStart[col], colEnd[col] - colStart[col]);
+        }
+
+        /** 列に ASCII 文字 c が含まれるか */
+        public boolean contains(int col, char c) {
+            check(col);
+            for (int i = colStart[col]; i < colEnd[col]; i++) if (buf[i] == c) return true;
+            return false;
+        }
+
+        /** 列の値を UTF-8 のバイト列のまま out へ書きます（String を生成しない） */
+        public void writeTo(int col, OutputStream out) throws IOException {
+            check(col);
+            out.write(buf, colStart[col], colEnd[col] - colStart[col]);
+        }
+
+        /** 列の UTF-8 のバイト列を dst[off..] へ写します（{@link #length} バイト） */
+        public void copyTo(int col, byte[] dst, int off) {
+            check(col);
+            System.arraycopy(buf, colStart[col], dst, off, colEnd[col] - colStart[col]);
+        }
+
+        /** 行のバイト数（改行を除く、進捗の目安用） */
+        public int byteLength() { return end - start; }
+
+        /** 列の値を辞書の ID に変換します（String を生成しない） */
+        public int intern(int col, KeyDictionary dict) {
+            check(col);
+            return dict.idOf(buf, colStart[col], colEnd[col] - colStart[col]);
+        }
+
+        /** from 列から n 列をタブ区切りのまま 1 つのキーとして辞書の ID に変換します（店舗＋商品など） */
+        public int intern(int from, int n, KeyDictionary dict) {
+            check(from);
+            check(from + n - 1);
+            return dict.idOf(buf, colStart[from], colEnd[from + n - 1] - colStart[from]);
+        }
+
+        /** from 列から n 列をタブ区切りのまま 1 つの文字列で返します */
+        public String join(int from, int n) {
+            check(from);
+            check(from + n - 1);
+            int s = colStart[from], e = colEnd[from + n - 1];
+            return new String(buf, s, e - s, StandardCharsets.UTF_8);
+        }
+
+        /** 行全体（改行を除く） */
+        public String line() {
+            return new String(buf, start, end - start, StandardCharsets.UTF_8);
+        }
+
+        /** 列の境界の配列は行をまたいで使い回すので、この行にない列は前の行の値を返さないよう弾く */
+        private void check(int col) {
+            if (col < 0 || col >= count) throw new IndexOutOfBoundsException("column " + col + " of " + count);
+        }
+    }
+}
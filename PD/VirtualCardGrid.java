@@ -0,0 +1,153 @@
+import javax.swing.*;
+import javax.swing.event.ChangeListener;
+import java.awt.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 固定サイズのカードを折り返して並べる仮想化グリッド。
+ * 全件分のコンポーネントを作らず、ビューポートに見えている行のカードだけを配置します。
+ * 画面外に出たカードはプールへ戻し、別の項目を bind して使い回します。
+ * JScrollPane のビューとして使うこと。
+ */
+public final class VirtualCardGrid<T> extends JPanel implements Scrollable {
+
+    /** カードの生成と、項目の割り当て */
+    public interface CardFactory<T> {
+        JComponent create();
+        void bind(JComponent card, T item);
+    }
+
+    private final int cardWidth, cardHeight, gap;
+    private final CardFactory<T> factory;
+
+    private List<T> items = Collections.emptyList();
+    private final Map<Integer, JComponent> active = new HashMap<>();   // 項目の添字 → 表示中のカード
+    private final ArrayDeque<JComponent> pool = new ArrayDeque<>();
+    private String emptyText = "";
+    /** スクロールのたびに見えている範囲だけ配置し直す（付けたビューポートを覚えて外す） */
+    private final ChangeListener scrollListener = e -> layoutVisible();
+    private JViewport viewport;
+
+    public VirtualCardGrid(int cardWidth, int cardHeight, int gap, CardFactory<T> factory) {
+        super(null);
+        this.cardWidth = cardWidth;
+        this.cardHeight = cardHeight;
+        this.gap = gap;
+        this.factory = factory;
+        setOpaque(false);
+    }
+
+    /** 表示する項目を差し替えます（カードは再利用し、見えている分だけ bind し直す） */
+    public void setItems(List<T> items) {
+        this.items = new ArrayList<>(items);
+        for (JComponent c : active.values()) release(c);
+        active.clear();
+        revalidate();
+        repaint();
+    }
+
+    /** 項目が 0 件のときに表示する文言 */
+    public void setEmptyText(String text) {
+        this.emptyText = text == null ? "" : text;
+        repaint();
+    }
+
+    @Override public void addNotify() {
+        super.addNotify();
+        if (getParent() instanceof JViewport) {
+            viewport = (JViewport) getParent();
+            viewport.addChangeListener(scrollListener);
+        }
+    }
+
+    @Override public void removeNotify() {
+        if (viewport != null) {
+            viewport.removeChangeListener(scrollListener);
+            viewport = null;
+        }
+        super.removeNotify();
+    }
+
+    @Override public void doLayout() {
+        layoutVisible();
+    }
+
+    private int columns() {
+        int w = getParent() instanceof JViewport ? getParent().getWidth() : getWidth();
+        return Math.max(1, (w - gap) / (cardWidth + gap));
+    }
+
+    private void layoutVisible() {
+        int cols = columns();
+        Rectangle view = getVisibleRect();
+        int rowHeight = cardHeight + gap;
+        int firstRow = Math.max(0, (view.y - gap) / rowHeight);
+        int lastRow = (view.y + view.height) / rowHeight;
+        int first = firstRow * cols;
+        int last = Math.min(items.size() - 1, (lastRow + 1) * cols - 1);
+
+        // 範囲外になったカードをプールへ戻す
+        for (Iterator<Map.Entry<Integer, JComponent>> it = active.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Integer, JComponent> e = it.next();
+            if (e.getKey() < first || e.getKey() > last) {
+                release(e.getValue());
+                it.remove();
+            }
+        }
+        for (int i = first; i <= last; i++) {
+            JComponent card = active.get(i);
+            if (card == null) {
+                card = pool.isEmpty() ? newCard() : pool.pop();
+                factory.bind(card, items.get(i));
+                card.setVisible(true);
+                active.put(i, card);
+            }
+            int row = i / cols, col = i % cols;
+            card.setBounds(gap + col * (cardWidth + gap), gap + row * rowHeight, cardWidth, cardHeight);
+            card.validate();
+        }
+    }
+
+    private JComponent newCard() {
+        JComponent card = factory.create();
+        add(card);
+        return card;
+    }
+
+    private void release(JComponent card) {
+        card.setVisible(false);
+        pool.push(card);
+    }
+
+    @Override public Dimension getPreferredSize() {
+        int cols = columns();
+        int rows = (items.size() + cols - 1) / cols;
+        int w = gap + cols * (cardWidth + gap);
+        return new Dimension(w, Math.max(gap + rows * (cardHeight + gap), cardHeight));
+    }
+
+    @Override protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        if (items.isEmpty() && !emptyText.isEmpty()) {
+            g.setColor(new Color(130, 130, 140));
+            g.setFont(getFont());
+            g.drawString(emptyText, gap, gap + g.getFontMetrics().getAscent());
+        }
+    }
+
+    // ===== Scrollable =====
+
+    @Override public Dimension getPreferredScrollableViewportSize() { return getPreferredSize(); }
+    @Override public int getScrollableUnitIncrement(Rectangle visible, int orientation, int direction) { return 18; }
+    @Override public int getScrollableBlockIncrement(Rectangle visible, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL ? visible.height : visible.width;
+    }
+    @Override public boolean getScrollableTracksViewportWidth() { return true; }
+    @Override public boolean getScrollableTracksViewportHeight() { return false; }
+}
@@ -9,10 +9,9 @@ import java.nio.file.*;
 
 public class WeatherInput extends JFrame {
 
-    private static final Path FILE = AppFiles.WEATHER_TSV; // UTF-8, タブ区切り
 
     private final JFrame parentDashboard;
-    private final List<String[]> records = new ArrayList<>(); // {date, weather, temp, memo}
+    private final List<String[]> records = DataRepository.weather().items(); // {date, weather, temp, memo}（画面間で共有）
     private final DefaultListModel<String> recordModel = new DefaultListModel<>();
 
     public WeatherInput(JFrame dashboard) {
@@ -172,9 +171,9 @@ public class WeatherInput extends JFrame {
         root.add(mainContent, BorderLayout.CENTER);
         add(root);
 
-        // ★ 起動時に読み込み
-        loadRecords();
-        refreshList();
+        // ★ 初回だけ読み込み（以後は常駐分を表示）。外部で変更されたら読み直した内容で描き直す
+        DataRepository.weather().whenLoaded(this::refreshList);
+        DataRepository.weather().addListener(this, this::refreshList);
     }
 
     // ====== ここから保存・読み込みロジック ======
@@ -199,56 +198,14 @@ public class WeatherInput extends JFrame {
         return String.format("%s | %s | %s℃ | %s", r[0], r[1], r[2], r[3]);
     }
 
-    // TSVに保存（UTF-8） — 同期保存に変更（即時ディスク書き込み）
+    // TSVに保存（UTF-8） — バックグラウンドで書き、続いた保存は 1 回にまとめる
     private void saveRecords() {
-        List<String> lines = new ArrayList<>();
-        for (String[] r : records) {
-            lines.add(encodeTSV(r[0]) + "\t" + encodeTSV(r[1]) + "\t" + encodeTSV(r[2]) + "\t" + encodeTSV(r[3]));
-        }
-        java.util.List<String> snapshot = new ArrayList<>(lines);
-        try {
-            java.nio.file.Files.write(FILE, snapshot, AppFiles.CHARSET,
-                    java.nio.file.StandardOpenOption.CREATE, java.nio.file.StandardOpenOption.TRUNCATE_EXISTING);
-            // 保存成功したらダッシュボードを更新
+        DataRepository.saveWeather(this, () -> {
+            // 保存完了したらダッシュボードを更新
             if (parentDashboard instanceof DashboardSimple) {
                 ((DashboardSimple) parentDashboard).refreshWeatherCard();
             }
-        } catch (Exception ex) {
-            AppLogger.error("saveRecords error", ex);
-            JOptionPane.showMessageDialog(WeatherInput.this, "保存に失敗しました: " + ex.getMessage(), "保存エラー", JOptionPane.ERROR_MESSAGE);
-        }
-    }
-
-    // TSV読み込み（UTF-8）
-    private void loadRecords() {
-        records.clear();
-        Path p = FILE;
-        if (!Files.exists(p)) return;
-        // 非同期読み込み
-        new javax.swing.SwingWorker<Void, String[]>(){
-            private Exception err;
-            @Override protected Void doInBackground(){
-                try {
-                    java.util.List<String> lines = java.nio.file.Files.readAllLines(p, AppFiles.CHARSET);
-                    for (String line : lines){
-                        String[] cols = line.split("\t", -1);
-                        if (cols.length >= 4) publish(new String[]{decodeTSV(cols[0]), decodeTSV(cols[1]), decodeTSV(cols[2]), decodeTSV(cols[3])});
-                    }
-                } catch (Exception ex){ err = ex; AppLogger.error("loadRecords error", ex); }
-                return null;
-            }
-            @Override protected void process(java.util.List<String[]> chunks){ for (String[] r : chunks) records.add(r); }
-            @Override protected void done(){ if (err != null) JOptionPane.showMessageDialog(WeatherInput.this, "読み込みに失敗しました: " + err.getMessage(), "読み込みエラー", JOptionPane.ERROR_MESSAGE); }
-        }.execute();
-    }
-
-    // タブ・改行をエスケープ（TSV用の簡易処理）
-    private String encodeTSV(String s) {
-        if (s == null) return "";
-        return s.replace("\t", "    ").replace("\r", " ").replace("\n", " ");
-    }
-    private String decodeTSV(String s) {
-        return s; // 今回はencodeで潰しているのでそのまま
+        });
     }
 
     // ============================================